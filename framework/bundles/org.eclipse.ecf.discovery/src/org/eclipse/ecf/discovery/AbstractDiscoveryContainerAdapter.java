@@ -28,7 +28,9 @@ public abstract class AbstractDiscoveryContainerAdapter extends AbstractContaine
 
 	/**
 	 * Collection of service listeners. NOTE: Access to this collection is
-	 * synchronized, so subclasses should take this into account.
+	 * synchronized, so subclasses should take this into account. Events are
+	 * fired to a snapshot of this collection, so subclasses should change it
+	 * with the add/remove methods or {@link #clearListeners()} only.
 	 */
 	protected final Set allServiceListeners;
 
@@ -37,6 +39,8 @@ public abstract class AbstractDiscoveryContainerAdapter extends AbstractContaine
 	/**
 	 * Map of service type to collection of service listeners. NOTE: Access to
 	 * this map is synchronized, so subclasses should take this into account.
+	 * Events are fired to an index built from this map, so subclasses should
+	 * change it with the add/remove methods or {@link #clearListeners()} only.
 	 */
 	protected final Map serviceListeners;
 	protected final String servicesNamespaceName;
@@ -48,7 +52,11 @@ public abstract class AbstractDiscoveryContainerAdapter extends AbstractContaine
 
 	private DiscoveryServiceListener discoveryServiceListener;
 	private DiscoveryServiceListener discoveryServiceTypeListener;
-	private ServiceTypeComparator discoveryServiceListenerComparator;
+
+	// copy-on-write snapshots of allServiceListeners and serviceListeners, so
+	// that firing service events does not lock the listener collections
+	private volatile Object[] allServiceListenersSnapshot = new Object[0];
+	private volatile ServiceTypeListenerIndex serviceListenersIndex = ServiceTypeListenerIndex.EMPTY;
 
 	private final IServiceInfoServiceListener iServiceInfoServiceListener;
 
@@ -70,8 +78,6 @@ public abstract class AbstractDiscoveryContainerAdapter extends AbstractContaine
 		discoveryServiceListener = new DiscoveryServiceListener(this, IServiceListener.class);
 		discoveryServiceTypeListener = new DiscoveryServiceListener(this, IServiceTypeListener.class);
 
-		discoveryServiceListenerComparator = new ServiceTypeComparator();
-
 		iServiceInfoServiceListener = new IServiceInfoServiceListener(this);
 	}
 
@@ -86,8 +92,8 @@ public abstract class AbstractDiscoveryContainerAdapter extends AbstractContaine
 		Assert.isNotNull(aListener);
 
 		if (aListener.triggerDiscovery()) {
-			final IExecutor executor = new ThreadsExecutor();
-			executor.execute(new IProgressRunnable() {
+			// ordered by container, so that listeners are added in order
+			DiscoveryExecutor.getDefault().execute(new IProgressRunnable() {
 				public Object run(final IProgressMonitor arg0) throws Exception {
 					final IServiceInfo[] services = getServices();
 
@@ -96,11 +102,25 @@ public abstract class AbstractDiscoveryContainerAdapter extends AbstractContaine
 						aListener.serviceDiscovered(getServiceEvent(iServiceInfo, getConfig().getID()));
 					}
 					allServiceListeners.add(aListener);
+					updateAllServiceListenersSnapshot();
 					return null;
 				}
-			}, null);
+			}, null, this);
 		} else {
 			allServiceListeners.add(aListener);
+			updateAllServiceListenersSnapshot();
+		}
+	}
+
+	private void updateAllServiceListenersSnapshot() {
+		synchronized (allServiceListeners) {
+			allServiceListenersSnapshot = allServiceListeners.toArray();
+		}
+	}
+
+	private void updateServiceListenersIndex() {
+		synchronized (serviceListeners) {
+			serviceListenersIndex = new ServiceTypeListenerIndex(serviceListeners);
 		}
 	}
 
@@ -129,8 +149,8 @@ public abstract class AbstractDiscoveryContainerAdapter extends AbstractContaine
 		Assert.isNotNull(aType);
 
 		if (aListener.triggerDiscovery()) {
-			final IExecutor executor = new ThreadsExecutor();
-			executor.execute(new IProgressRunnable() {
+			// ordered by container, so that listeners are added in order
+			DiscoveryExecutor.getDefault().execute(new IProgressRunnable() {
 				public Object run(final IProgressMonitor arg0) throws Exception {
 					final IServiceInfo[] services = getServices(aType);
 
@@ -149,7 +169,7 @@ public abstract class AbstractDiscoveryContainerAdapter extends AbstractContaine
 					addServiceListener0(aType, aListener);
 					return null;
 				}
-			}, null);
+			}, null, this);
 		} else {
 			addServiceListener0(aType, aListener);
 		}
@@ -164,6 +184,7 @@ public abstract class AbstractDiscoveryContainerAdapter extends AbstractContaine
 				serviceListeners.put(aType, v);
 			}
 			v.add(aListener);
+			updateServiceListenersIndex();
 		}
 	}
 
@@ -182,6 +203,8 @@ public abstract class AbstractDiscoveryContainerAdapter extends AbstractContaine
 		serviceListeners.clear();
 		serviceTypeListeners.clear();
 		allServiceListeners.clear();
+		updateServiceListenersIndex();
+		updateAllServiceListenersSnapshot();
 	}
 
 	/*
@@ -312,22 +335,16 @@ public abstract class AbstractDiscoveryContainerAdapter extends AbstractContaine
 	 */
 	protected Collection getListeners(IServiceTypeID aServiceType) {
 		Assert.isNotNull(aServiceType);
-		Collection listeners = new HashSet();
-		synchronized (serviceListeners) {
-			for (Iterator itr = serviceListeners.keySet().iterator(); itr.hasNext();) {
-				final IServiceTypeID typeID = (IServiceTypeID) itr.next();
-				int compare = discoveryServiceListenerComparator.compare(aServiceType, typeID);
-				if (compare == 0) {
-					Collection collection = (Collection) serviceListeners.get(typeID);
-					if (collection != null) {
-						listeners.addAll(collection);
-					}
-				}
-			}
+		final Object[] typeListeners = serviceListenersIndex.getListeners(aServiceType);
+		final Object[] allListeners = allServiceListenersSnapshot;
+		if (allListeners.length == 0) {
+			return Collections.unmodifiableList(Arrays.asList(typeListeners));
 		}
-		synchronized (allServiceListeners) {
-			listeners.addAll(allServiceListeners);
+		if (typeListeners.length == 0) {
+			return Collections.unmodifiableList(Arrays.asList(allListeners));
 		}
+		final Collection listeners = new LinkedHashSet(Arrays.asList(typeListeners));
+		listeners.addAll(Arrays.asList(allListeners));
 		return Collections.unmodifiableCollection(listeners);
 	}
 
@@ -351,6 +368,7 @@ public abstract class AbstractDiscoveryContainerAdapter extends AbstractContaine
 	public void removeServiceListener(IServiceListener aListener) {
 		Assert.isNotNull(aListener);
 		allServiceListeners.remove(aListener);
+		updateAllServiceListenersSnapshot();
 	}
 
 	/*
@@ -367,6 +385,7 @@ public abstract class AbstractDiscoveryContainerAdapter extends AbstractContaine
 			final Collection v = (Collection) serviceListeners.get(aType);
 			if (v != null) {
 				v.remove(aListener);
+				updateServiceListenersIndex();
 			}
 		}
 	}
@@ -403,8 +422,7 @@ public abstract class AbstractDiscoveryContainerAdapter extends AbstractContaine
 	 * @since 3.0
 	 */
 	public IFuture getAsyncServiceInfo(final IServiceID service) {
-		IExecutor executor = new ThreadsExecutor();
-		return executor.execute(new IProgressRunnable() {
+		return DiscoveryExecutor.getDefault().execute(new IProgressRunnable() {
 			public Object run(IProgressMonitor monitor) throws Exception {
 				return getServiceInfo(service);
 			}
@@ -416,8 +434,7 @@ public abstract class AbstractDiscoveryContainerAdapter extends AbstractContaine
 	 * @since 3.0
 	 */
 	public IFuture getAsyncServiceTypes() {
-		IExecutor executor = new ThreadsExecutor();
-		return executor.execute(new IProgressRunnable() {
+		return DiscoveryExecutor.getDefault().execute(new IProgressRunnable() {
 			public Object run(IProgressMonitor monitor) throws Exception {
 				return getServiceTypes();
 			}
@@ -429,8 +446,7 @@ public abstract class AbstractDiscoveryContainerAdapter extends AbstractContaine
 	 * @since 3.0
 	 */
 	public IFuture getAsyncServices() {
-		IExecutor executor = new ThreadsExecutor();
-		return executor.execute(new IProgressRunnable() {
+		return DiscoveryExecutor.getDefault().execute(new IProgressRunnable() {
 			public Object run(IProgressMonitor monitor) throws Exception {
 				return getServices();
 			}
@@ -442,8 +458,7 @@ public abstract class AbstractDiscoveryContainerAdapter extends AbstractContaine
 	 * @since 3.0
 	 */
 	public IFuture getAsyncServices(final IServiceTypeID type) {
-		IExecutor executor = new ThreadsExecutor();
-		return executor.execute(new IProgressRunnable() {
+		return DiscoveryExecutor.getDefault().execute(new IProgressRunnable() {
 			public Object run(IProgressMonitor monitor) throws Exception {
 				return getServices(type);
 			}
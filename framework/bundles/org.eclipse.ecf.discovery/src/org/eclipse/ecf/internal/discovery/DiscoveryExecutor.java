@@ -0,0 +1,352 @@
+/****************************************************************************
+ * Copyright (c) 2026 Composent, Inc. and others.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * Contributors:
+ *   Composent, Inc. - initial API and implementation
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *****************************************************************************/
+package org.eclipse.ecf.internal.discovery;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.eclipse.core.runtime.Assert;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.equinox.concurrent.future.*;
+
+/**
+ * Executor shared by all discovery containers for their asynchronous
+ * operations, instead of a new thread per operation. Operations such as
+ * lookups may block on the network, so it starts a daemon thread per task up
+ * to a maximum number of threads, queues tasks beyond that in a bounded queue,
+ * and lets threads that have been idle for a minute die.
+ * <p>
+ * Tasks submitted with the same key (e.g. the discovery container) are run
+ * one at a time in the order they were submitted, so that the listener
+ * notifications of a container are not reordered. When the pool and its queue
+ * are full, a task without a key fails with a
+ * {@link RejectedExecutionException} and is counted as rejected. A task with
+ * a key waits until a thread has finished a task instead, so that no
+ * listener is lost, unless the executor has been shut down.
+ */
+public class DiscoveryExecutor extends AbstractExecutor {
+
+	public static final String MAX_THREADS_PROP = "org.eclipse.ecf.discovery.executor.maxThreads"; //$NON-NLS-1$
+	public static final String QUEUE_SIZE_PROP = "org.eclipse.ecf.discovery.executor.queueSize"; //$NON-NLS-1$
+
+	public static final int DEFAULT_MAX_THREADS = Integer.parseInt(System.getProperty(MAX_THREADS_PROP, "32")); //$NON-NLS-1$
+	public static final int DEFAULT_QUEUE_SIZE = Integer.parseInt(System.getProperty(QUEUE_SIZE_PROP, "1000")); //$NON-NLS-1$
+
+	private static DiscoveryExecutor defaultExecutor;
+
+	/**
+	 * Tasks waiting for the running task with the same key.
+	 */
+	static class SerialQueue {
+		final LinkedList<Task> held = new LinkedList<Task>();
+	}
+
+	/**
+	 * A future that can be failed without running anything, so that rejected
+	 * tasks are not reported through the safe runner's error log.
+	 */
+	static class DiscoveryFuture extends SingleOperationFuture {
+		DiscoveryFuture(IProgressMonitor progressMonitor) {
+			super(progressMonitor);
+		}
+
+		void reject(RejectedExecutionException e) {
+			setException(e);
+		}
+	}
+
+	/**
+	 * A runnable and the future for its result.
+	 */
+	class Task implements Runnable {
+		final AbstractFuture future;
+		final IProgressRunnable runnable;
+
+		Task(AbstractFuture future, IProgressRunnable runnable) {
+			this.future = future;
+			this.runnable = runnable;
+		}
+
+		public void run() {
+			if (!future.isCanceled())
+				safeRun(future, runnable);
+		}
+
+		void reject(final RejectedExecutionException e) {
+			rejectedCount.incrementAndGet();
+			if (future instanceof DiscoveryFuture) {
+				((DiscoveryFuture) future).reject(e);
+				return;
+			}
+			safeRun(future, new IProgressRunnable() {
+				public Object run(IProgressMonitor monitor) throws Exception {
+					throw e;
+				}
+			});
+		}
+	}
+
+	/**
+	 * Runs a task and then submits the next task with the same key.
+	 */
+	class SerialTask implements Runnable {
+		final Task task;
+		final Object key;
+		final SerialQueue serialQueue;
+
+		SerialTask(Task task, Object key, SerialQueue serialQueue) {
+			this.task = task;
+			this.key = key;
+			this.serialQueue = serialQueue;
+		}
+
+		public void run() {
+			try {
+				task.run();
+			} finally {
+				completed(key, serialQueue);
+			}
+		}
+
+		void reject(RejectedExecutionException e) {
+			task.reject(e);
+			completed(key, serialQueue);
+		}
+	}
+
+	private final String name;
+	private final int queueSize;
+	private final ThreadPoolExecutor pool;
+	private final Map<Object, SerialQueue> serialQueues = new HashMap<Object, SerialQueue>();
+	private int heldCount;
+	/**
+	 * Serial tasks that found the pool and its queue full, in the order they
+	 * were rejected.
+	 */
+	private final LinkedList<SerialTask> waiting = new LinkedList<SerialTask>();
+	private final AtomicLong rejectedCount = new AtomicLong();
+
+	/**
+	 * @return the executor shared by all discovery containers. Never
+	 *         <code>null</code>.
+	 */
+	public static synchronized DiscoveryExecutor getDefault() {
+		if (defaultExecutor == null) {
+			defaultExecutor = new DiscoveryExecutor("ECF Discovery", DEFAULT_MAX_THREADS, DEFAULT_QUEUE_SIZE); //$NON-NLS-1$
+		}
+		return defaultExecutor;
+	}
+
+	/**
+	 * Shut down the shared executor, e.g. when the discovery bundle is
+	 * stopped. Queued tasks are still run.
+	 */
+	public static synchronized void shutdownDefault() {
+		if (defaultExecutor != null) {
+			defaultExecutor.shutdown();
+			defaultExecutor = null;
+		}
+	}
+
+	public DiscoveryExecutor(final String name, int maxThreads, int queueSize) {
+		Assert.isNotNull(name);
+		if (maxThreads <= 0)
+			throw new IllegalArgumentException("maxThreads must be > 0"); //$NON-NLS-1$
+		this.name = name;
+		// at least one, as tasks with a key wait for a queued task to finish
+		this.queueSize = Math.max(1, queueSize);
+		final BlockingQueue<Runnable> queue = new ArrayBlockingQueue<Runnable>(this.queueSize);
+		// As many core threads as the maximum, so that a thread is started for
+		// each task until the maximum is reached, and they all time out when
+		// idle
+		this.pool = new ThreadPoolExecutor(maxThreads, maxThreads, 60L, TimeUnit.SECONDS, queue, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			public Thread newThread(Runnable r) {
+				final Thread t = new Thread(r, name + "-" + count.incrementAndGet()); //$NON-NLS-1$
+				t.setDaemon(true);
+				return t;
+			}
+		}, new ThreadPoolExecutor.AbortPolicy()) {
+			protected void afterExecute(Runnable r, Throwable t) {
+				// this thread is free now
+				runWaiting();
+			}
+		};
+		this.pool.allowCoreThreadTimeOut(true);
+	}
+
+	protected AbstractFuture createFuture(IProgressMonitor progressMonitor) {
+		return new DiscoveryFuture(progressMonitor);
+	}
+
+	protected void safeRun(ISafeProgressRunner runner, IProgressRunnable progressRunnable) {
+		runner.runWithProgress(progressRunnable);
+	}
+
+	public IFuture execute(IProgressRunnable runnable, IProgressMonitor monitor) {
+		return execute(runnable, monitor, null);
+	}
+
+	/**
+	 * Execute the given runnable after all runnables submitted earlier with
+	 * the same key.
+	 *
+	 * @param runnable
+	 *            the runnable to execute. Must not be <code>null</code>.
+	 * @param monitor
+	 *            the progress monitor. May be <code>null</code>.
+	 * @param key
+	 *            the key to order runnables by. If <code>null</code>, the
+	 *            runnable is not ordered with other runnables.
+	 * @return IFuture the future for the result of the runnable
+	 */
+	public IFuture execute(final IProgressRunnable runnable, IProgressMonitor monitor, Object key) {
+		Assert.isNotNull(runnable);
+		final AbstractFuture sof = createFuture(monitor);
+		final Task task = new Task(sof, runnable);
+		if (key == null)
+			submit(task);
+		else
+			submitSerial(task, key);
+		return sof;
+	}
+
+	private void submit(Task task) {
+		try {
+			pool.execute(task);
+		} catch (final RejectedExecutionException e) {
+			// pool and queue full or shut down
+			task.reject(e);
+		}
+	}
+
+	private void submitSerial(final Task task, final Object key) {
+		final SerialQueue serialQueue;
+		synchronized (serialQueues) {
+			SerialQueue sq = serialQueues.get(key);
+			if (sq != null) {
+				// the task runs after the running one for key is done
+				sq.held.add(task);
+				heldCount++;
+				return;
+			}
+			sq = new SerialQueue();
+			serialQueues.put(key, sq);
+			serialQueue = sq;
+		}
+		submitSerial(new SerialTask(task, key, serialQueue));
+	}
+
+	private void submitSerial(SerialTask serialTask) {
+		try {
+			pool.execute(serialTask);
+			return;
+		} catch (final RejectedExecutionException e) {
+			if (pool.isShutdown()) {
+				serialTask.reject(e);
+				return;
+			}
+		}
+		synchronized (serialQueues) {
+			waiting.add(serialTask);
+		}
+		// The queue is full, so a thread that finishes one of the queued
+		// tasks will run the waiting task.  The queue may have been drained
+		// in the meantime though.
+		try {
+			pool.execute(new Runnable() {
+				public void run() {
+					runWaiting();
+				}
+			});
+		} catch (final RejectedExecutionException e) {
+			if (pool.isShutdown())
+				rejectWaiting(e);
+		}
+	}
+
+	void runWaiting() {
+		for (;;) {
+			final SerialTask next;
+			synchronized (serialQueues) {
+				next = waiting.poll();
+			}
+			if (next == null)
+				return;
+			next.run();
+		}
+	}
+
+	private void rejectWaiting(RejectedExecutionException e) {
+		final List<SerialTask> rejected;
+		synchronized (serialQueues) {
+			rejected = new ArrayList<SerialTask>(waiting);
+			waiting.clear();
+		}
+		for (final SerialTask serialTask : rejected)
+			serialTask.reject(e);
+	}
+
+	void completed(Object key, SerialQueue serialQueue) {
+		final Task next;
+		synchronized (serialQueues) {
+			next = serialQueue.held.poll();
+			if (next == null) {
+				serialQueues.remove(key);
+				return;
+			}
+			heldCount--;
+		}
+		submitSerial(new SerialTask(next, key, serialQueue));
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the number of tasks that are waiting for a thread or for an
+	 *         earlier task with the same key
+	 */
+	public int getQueuedCount() {
+		synchronized (serialQueues) {
+			return pool.getQueue().size() + heldCount + waiting.size();
+		}
+	}
+
+	/**
+	 * @return the number of tasks that could not be queued and failed
+	 */
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	public boolean isShutdown() {
+		return pool.isShutdown();
+	}
+
+	public String toString() {
+		final StringBuffer sb = new StringBuffer("DiscoveryExecutor["); //$NON-NLS-1$
+		sb.append("name=").append(name).append(";"); //$NON-NLS-1$ //$NON-NLS-2$
+		sb.append("maxThreads=").append(pool.getMaximumPoolSize()).append(";"); //$NON-NLS-1$ //$NON-NLS-2$
+		sb.append("queued=").append(getQueuedCount()).append(";"); //$NON-NLS-1$ //$NON-NLS-2$
+		sb.append("rejected=").append(getRejectedCount()).append("]"); //$NON-NLS-1$ //$NON-NLS-2$
+		return sb.toString();
+	}
+}
@@ -102,6 +102,7 @@ public class DiscoveryPlugin implements BundleActivator {
 			adapterManagerTracker.close();
 			adapterManagerTracker = null;
 		}
+		DiscoveryExecutor.shutdownDefault();
 		plugin = null;
 		this.context = null;
 	}
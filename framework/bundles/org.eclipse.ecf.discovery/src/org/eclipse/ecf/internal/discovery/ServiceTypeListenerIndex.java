@@ -0,0 +1,237 @@
+/****************************************************************************
+ * Copyright (c) 2026 Composent, Inc. and others.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * Contributors:
+ *   Composent, Inc. - initial API and implementation
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *****************************************************************************/
+package org.eclipse.ecf.internal.discovery;
+
+import java.util.*;
+import org.eclipse.ecf.discovery.identity.IServiceTypeID;
+
+/**
+ * Immutable snapshot of the service listeners registered for service types,
+ * indexed so that the listeners for a discovered service type are found
+ * without comparing the type with every registered one.
+ * <p>
+ * Listeners registered for a type without wildcards are found with a hash
+ * lookup. A type with a wildcard (<code>*</code>) in some of its parts is put
+ * into a bucket keyed by its first concrete part (services, protocols, scopes
+ * or naming authority), and only the types in the buckets of the discovered
+ * type are compared with it by {@link ServiceTypeComparator}. A new snapshot
+ * is created whenever the listeners change, so that readers never lock.
+ */
+public class ServiceTypeListenerIndex {
+
+	public static final ServiceTypeListenerIndex EMPTY = new ServiceTypeListenerIndex(Collections.EMPTY_MAP);
+
+	private static final Object[] NO_LISTENERS = new Object[0];
+	private static final Entry[] NO_ENTRIES = new Entry[0];
+	private static final String WILDCARD = "*"; //$NON-NLS-1$
+
+	private static final int SERVICES = 0;
+	private static final int PROTOCOLS = 1;
+	private static final int SCOPES = 2;
+	private static final int NAMING_AUTHORITY = 3;
+
+	private static class Entry {
+		final IServiceTypeID type;
+		final Object[] listeners;
+
+		Entry(IServiceTypeID type, Object[] listeners) {
+			this.type = type;
+			this.listeners = listeners;
+		}
+	}
+
+	private final ServiceTypeComparator comparator = new ServiceTypeComparator();
+	// String key -> Object[] listeners of types without wildcards
+	private final Map exact;
+	// one map per part: String key -> Entry[] of types with wildcards
+	private final Map[] wildcards;
+	// types with wildcards in all parts
+	private final Entry[] matchAll;
+	private final Entry[] all;
+
+	/**
+	 * @param serviceListeners
+	 *            Map of {@link IServiceTypeID} to Collection of listeners.
+	 *            Callers must hold the lock of the map, the collections are
+	 *            copied under their own locks.
+	 */
+	public ServiceTypeListenerIndex(Map serviceListeners) {
+		final List allEntries = new ArrayList(serviceListeners.size());
+		exact = new HashMap();
+		final Map[] buckets = new Map[] {new HashMap(), new HashMap(), new HashMap(), new HashMap()};
+		final List matchAllEntries = new ArrayList();
+		for (final Iterator i = serviceListeners.entrySet().iterator(); i.hasNext();) {
+			final Map.Entry mapEntry = (Map.Entry) i.next();
+			final Collection c = (Collection) mapEntry.getValue();
+			if (c == null) {
+				continue;
+			}
+			final Object[] listeners;
+			synchronized (c) {
+				listeners = c.toArray();
+			}
+			if (listeners.length == 0) {
+				continue;
+			}
+			final IServiceTypeID type = (IServiceTypeID) mapEntry.getKey();
+			final Entry entry = new Entry(type, listeners);
+			allEntries.add(entry);
+			final int part = getFirstConcretePart(type);
+			if (part < 0) {
+				matchAllEntries.add(entry);
+			} else if (!hasWildcard(type)) {
+				final String key = getKey(type);
+				exact.put(key, merge((Object[]) exact.get(key), listeners));
+			} else {
+				final String key = getKey(type, part);
+				List l = (List) buckets[part].get(key);
+				if (l == null) {
+					l = new ArrayList(1);
+					buckets[part].put(key, l);
+				}
+				l.add(entry);
+			}
+		}
+		wildcards = new Map[buckets.length];
+		for (int i = 0; i < buckets.length; i++) {
+			wildcards[i] = new HashMap(buckets[i].size() * 2);
+			for (final Iterator j = buckets[i].entrySet().iterator(); j.hasNext();) {
+				final Map.Entry e = (Map.Entry) j.next();
+				final List l = (List) e.getValue();
+				wildcards[i].put(e.getKey(), l.toArray(new Entry[l.size()]));
+			}
+		}
+		matchAll = (Entry[]) matchAllEntries.toArray(new Entry[matchAllEntries.size()]);
+		all = (Entry[]) allEntries.toArray(new Entry[allEntries.size()]);
+	}
+
+	/**
+	 * @param aServiceType
+	 *            the discovered service type. Must not be <code>null</code>.
+	 * @return the listeners registered for service types matching the given
+	 *         type, without duplicates. Must not be modified by callers.
+	 */
+	public Object[] getListeners(IServiceTypeID aServiceType) {
+		if (all.length == 0) {
+			return NO_LISTENERS;
+		}
+		if (hasWildcard(aServiceType)) {
+			// wildcards on both sides, fall back to compare with all types
+			return collect(all, aServiceType, NO_LISTENERS);
+		}
+		Object[] result = (Object[]) exact.get(getKey(aServiceType));
+		if (result == null) {
+			result = NO_LISTENERS;
+		}
+		for (int part = SERVICES; part <= NAMING_AUTHORITY; part++) {
+			if (wildcards[part].isEmpty()) {
+				continue;
+			}
+			final Entry[] entries = (Entry[]) wildcards[part].get(getKey(aServiceType, part));
+			if (entries != null) {
+				result = collect(entries, aServiceType, result);
+			}
+		}
+		return collect(matchAll, aServiceType, result);
+	}
+
+	private Object[] collect(Entry[] entries, IServiceTypeID aServiceType, Object[] result) {
+		for (int i = 0; i < entries.length; i++) {
+			if (comparator.compare(aServiceType, entries[i].type) == 0) {
+				result = merge(result, entries[i].listeners);
+			}
+		}
+		return result;
+	}
+
+	private static Object[] merge(Object[] a, Object[] b) {
+		if (a == null || a.length == 0) {
+			return b;
+		}
+		final Set s = new LinkedHashSet(Arrays.asList(a));
+		s.addAll(Arrays.asList(b));
+		return s.toArray();
+	}
+
+	private static boolean isWildcard(String[] s) {
+		return s.length > 0 && WILDCARD.equals(s[0]);
+	}
+
+	private static boolean hasWildcard(IServiceTypeID type) {
+		return isWildcard(type.getServices()) || isWildcard(type.getProtocols()) || isWildcard(type.getScopes())
+				|| WILDCARD.equals(type.getNamingAuthority());
+	}
+
+	private static int getFirstConcretePart(IServiceTypeID type) {
+		if (!isWildcard(type.getServices())) {
+			return SERVICES;
+		}
+		if (!isWildcard(type.getProtocols())) {
+			return PROTOCOLS;
+		}
+		if (!isWildcard(type.getScopes())) {
+			return SCOPES;
+		}
+		if (!WILDCARD.equals(type.getNamingAuthority())) {
+			return NAMING_AUTHORITY;
+		}
+		return -1;
+	}
+
+	private static String getKey(IServiceTypeID type) {
+		final StringBuffer buf = new StringBuffer();
+		append(buf, type.getServices());
+		append(buf, type.getProtocols());
+		append(buf, type.getScopes());
+		append(buf, type.getNamingAuthority());
+		return buf.toString();
+	}
+
+	private static String getKey(IServiceTypeID type, int part) {
+		final StringBuffer buf = new StringBuffer();
+		switch (part) {
+			case SERVICES :
+				append(buf, type.getServices());
+				break;
+			case PROTOCOLS :
+				append(buf, type.getProtocols());
+				break;
+			case SCOPES :
+				append(buf, type.getScopes());
+				break;
+			default :
+				append(buf, type.getNamingAuthority());
+		}
+		return buf.toString();
+	}
+
+	private static void append(StringBuffer buf, String[] strings) {
+		buf.append(strings.length).append('[');
+		for (int i = 0; i < strings.length; i++) {
+			append(buf, strings[i]);
+		}
+		buf.append(']');
+	}
+
+	private static void append(StringBuffer buf, String s) {
+		// length prefix, so that different parts cannot run into each other
+		buf.append(s.length()).append(':').append(s);
+	}
+
+	public String toString() {
+		final StringBuffer buf = new StringBuffer("ServiceTypeListenerIndex["); //$NON-NLS-1$
+		buf.append("types=").append(all.length); //$NON-NLS-1$
+		buf.append(";exact=").append(exact.size()).append("]"); //$NON-NLS-1$ //$NON-NLS-2$
+		return buf.toString();
+	}
+}
@@ -20,6 +20,7 @@ import javax.net.ssl.SSLSocketFactory;
 import org.eclipse.core.runtime.*;
 import org.eclipse.ecf.core.ContainerTypeDescription;
 import org.eclipse.ecf.core.util.*;
+import org.eclipse.ecf.provider.comm.nio.NIOEventLoopGroup;
 import org.eclipse.ecf.provider.generic.GenericContainerInstantiator;
 import org.eclipse.ecf.provider.generic.SSLGenericContainerInstantiator;
 import org.osgi.framework.BundleActivator;
@@ -113,6 +114,7 @@ public class ProviderPlugin implements BundleActivator {
 			sslSocketFactoryTracker.close();
 			sslSocketFactoryTracker = null;
 		}
+		NIOEventLoopGroup.shutdownDefault();
 		this.context = null;
 	}
 
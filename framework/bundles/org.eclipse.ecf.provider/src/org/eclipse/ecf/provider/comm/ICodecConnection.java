@@ -0,0 +1,55 @@
+/****************************************************************************
+ * Copyright (c) 2026 Composent, Inc. and others.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * Contributors:
+ *    Composent, Inc. - initial API and implementation
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *****************************************************************************/
+package org.eclipse.ecf.provider.comm;
+
+import java.io.IOException;
+import org.eclipse.ecf.core.identity.ID;
+
+/**
+ * Connection that negotiates a message codec with the remote when connecting.
+ *
+ * @since 4.10
+ */
+public interface ICodecConnection extends IAsynchConnection {
+	/**
+	 * Set the codec for this connection.  For connections that connect to a remote, this is
+	 * the codec requested of the remote, and must be called before connect.  For accepted
+	 * connections, this is called once the requested codec has been accepted.
+	 *
+	 * @param codec
+	 *            the codec identifier.  If <code>null</code>, no codec is requested and
+	 *            messages are java serialized.
+	 */
+	public void setCodec(String codec);
+
+	/**
+	 * Get the codec used by this connection.
+	 *
+	 * @return String the codec identifier that was accepted by both sides when connecting.
+	 *         <code>null</code> if no codec was accepted.
+	 */
+	public String getCodec();
+
+	/**
+	 * Send a message made of a header followed by a body, as if
+	 * {@link #sendAsynch(ID, byte[])} was called with the concatenation of the two.
+	 * The body is not copied, so the same body may be sent on many connections.
+	 * Neither array may be modified after this call.
+	 *
+	 * @param receiver the receiver of the message.  May be <code>null</code>.
+	 * @param header the message header.  Must not be <code>null</code>.
+	 * @param body the message body.  Must not be <code>null</code>.
+	 * @throws IOException if the message cannot be sent
+	 */
+	public void sendAsynch(ID receiver, byte[] header, byte[] body) throws IOException;
+}
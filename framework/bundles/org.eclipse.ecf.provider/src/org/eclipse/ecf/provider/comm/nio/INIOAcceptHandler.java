@@ -0,0 +1,36 @@
+/****************************************************************************
+ * Copyright (c) 2026 Composent, Inc. and others.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * Contributors:
+ *    Composent, Inc. - initial API and implementation
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *****************************************************************************/
+package org.eclipse.ecf.provider.comm.nio;
+
+import java.io.Serializable;
+import org.eclipse.ecf.provider.comm.tcp.ConnectRequestMessage;
+
+/**
+ * Handler for connect requests arriving at an {@link NIOServer}.
+ *
+ * @since 4.10
+ */
+public interface INIOAcceptHandler {
+	/**
+	 * Handle the connect request received on a newly accepted connection.
+	 * Implementers must set the event handler for the given client via
+	 * {@link NIOClient#setEventHandler(org.eclipse.ecf.provider.comm.ISynchAsynchEventHandler)}
+	 * before returning.  No messages are sent on the client until this method returns.
+	 *
+	 * @param client the newly accepted connection.  Will not be <code>null</code>.
+	 * @param request the connect request read from the client.  Will not be <code>null</code>.
+	 * @return Serializable the response sent back to the client in a ConnectResultMessage
+	 * @throws Exception if the connect request is invalid.  The connection is then closed.
+	 */
+	public Serializable handleAccept(NIOClient client, ConnectRequestMessage request) throws Exception;
+}
@@ -0,0 +1,832 @@
+/****************************************************************************
+ * Copyright (c) 2026 Composent, Inc. and others.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * Contributors:
+ *    Composent, Inc. - initial API and implementation
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *****************************************************************************/
+package org.eclipse.ecf.provider.comm.nio;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.eclipse.ecf.core.identity.ID;
+import org.eclipse.ecf.core.identity.IDFactory;
+import org.eclipse.ecf.core.util.ECFException;
+import org.eclipse.ecf.core.util.Trace;
+import org.eclipse.ecf.internal.provider.ECFProviderDebugOptions;
+import org.eclipse.ecf.internal.provider.ProviderPlugin;
+import org.eclipse.ecf.provider.comm.*;
+import org.eclipse.ecf.provider.comm.tcp.*;
+
+/**
+ * Connection that uses a non-blocking {@link SocketChannel} served by an
+ * {@link NIOEventLoopGroup} rather than dedicated sender, receiver and keep alive
+ * threads.  Messages are exchanged as length-prefixed frames: a four byte length,
+ * a one byte frame type, and the frame payload.  The byte[] data given to
+ * {@link #sendAsynch(ID, byte[])} and {@link #sendSynch(ID, byte[])} is written
+ * as the frame payload without further serialization.
+ * <p>
+ * Received frames are delivered to the {@link ISynchAsynchEventHandler} in order
+ * on the worker threads of the group, so a slow handler does not block the
+ * selector threads.  When the received frames waiting for delivery exceed the inbound
+ * high watermark, the connection stops reading until they are below the low watermark,
+ * so that a slow handler pushes back on the sender rather than filling the heap.
+ *
+ * @since 4.10
+ */
+public final class NIOClient implements ISynchAsynchConnection, ICodecConnection {
+	public static final String PROTOCOL = Client.PROTOCOL;
+	public static final long DEFAULT_CLOSE_TIMEOUT = Client.DEFAULT_CLOSE_TIMEOUT;
+	public static final int DEFAULT_WAIT_INTERVAL = Client.DEFAULT_WAIT_INTERVAL;
+	// Default maximum frame size is 64MB
+	public static final int DEFAULT_MAX_FRAME_SIZE = Integer.parseInt(System.getProperty("org.eclipse.ecf.provider.comm.nio.maxframesize", "67108864")); //$NON-NLS-1$ //$NON-NLS-2$
+	// Default read buffer size is 16K.  Larger frames temporarily grow the buffer
+	public static final int DEFAULT_READ_BUFFER_SIZE = Integer.parseInt(System.getProperty("org.eclipse.ecf.provider.comm.nio.readbuffersize", "16384")); //$NON-NLS-1$ //$NON-NLS-2$
+	// Default inbound high watermark is 16MB.  Reading stops above it
+	public static final int DEFAULT_INBOUND_HIGH_WATERMARK = Integer.parseInt(System.getProperty("org.eclipse.ecf.provider.comm.nio.inbound.highwatermark", "16777216")); //$NON-NLS-1$ //$NON-NLS-2$
+	// Default inbound low watermark is 8MB.  Reading resumes below it
+	public static final int DEFAULT_INBOUND_LOW_WATERMARK = Integer.parseInt(System.getProperty("org.eclipse.ecf.provider.comm.nio.inbound.lowwatermark", "8388608")); //$NON-NLS-1$ //$NON-NLS-2$
+
+	static final byte FRAME_OBJECT = 0;
+	static final byte FRAME_ASYNCH = 1;
+	static final byte FRAME_SYNCH = 2;
+	static final byte FRAME_PING = 3;
+	static final byte FRAME_PING_RESP = 4;
+	// length (4 bytes) + type (1 byte)
+	static final int HEADER_LENGTH = 5;
+	// Maximum number of buffers given to a single gathering write
+	private static final int MAX_GATHER = 64;
+
+	static final class Frame {
+		final byte type;
+		final byte[] data;
+		final Throwable exception;
+
+		Frame(byte type, byte[] data) {
+			this.type = type;
+			this.data = data;
+			this.exception = null;
+		}
+
+		Frame(Throwable exception) {
+			this.type = -1;
+			this.data = null;
+			this.exception = exception;
+		}
+
+		boolean isClose() {
+			return type == -1;
+		}
+	}
+
+	private final NIOEventLoopGroup group;
+	private NIOEventLoop loop;
+	private SocketChannel channel;
+	private volatile SelectionKey key;
+	private String addressPort = "-1:<no endpoint>:-1"; //$NON-NLS-1$
+	// Event handler
+	private volatile ISynchAsynchEventHandler handler;
+	// Only set for connections accepted by NIOServer
+	private final INIOAcceptHandler acceptHandler;
+	private final int keepAlive;
+	private ID containerID = null;
+	private Map properties;
+	private long closeTimeout = DEFAULT_CLOSE_TIMEOUT;
+	// Codec requested by connect, or accepted by the accept handler
+	private volatile String codec;
+
+	// Read state. Only accessed on the event loop thread
+	private ByteBuffer readBuffer = ByteBuffer.allocate(DEFAULT_READ_BUFFER_SIZE);
+
+	// Write state.  Buffers are added while holding outputLock, and removed only on the
+	// event loop thread
+	private final Queue<ByteBuffer> writeQueue = new ConcurrentLinkedQueue<ByteBuffer>();
+	private final AtomicBoolean flushScheduled = new AtomicBoolean();
+	private final Object outputLock = new Object();
+
+	// Inbound frames waiting for delivery on a worker thread
+	private final Queue<Frame> inbound = new ConcurrentLinkedQueue<Frame>();
+	private final AtomicBoolean dispatching = new AtomicBoolean();
+	// Number of bytes of the inbound frames
+	private final AtomicLong inboundBytes = new AtomicLong();
+	// If true, OP_READ has been cleared because of the inbound high watermark.  Only
+	// changed on the event loop thread
+	private volatile boolean readPaused = false;
+
+	private volatile boolean started = false;
+	private final AtomicBoolean closed = new AtomicBoolean();
+	private volatile boolean isClosing = false;
+	volatile boolean disconnectHandled = false;
+	private final Object disconnectLock = new Object();
+
+	private volatile boolean waitForPing = false;
+	private volatile long pingSentTime;
+	private volatile long lastReadTime = System.currentTimeMillis();
+	private ScheduledFuture<?> keepAliveFuture;
+
+	private final NIOEventLoop.Handler selectHandler = new NIOEventLoop.Handler() {
+		public void handleSelected(SelectionKey k) {
+			try {
+				if (k.isReadable())
+					doRead();
+				if (k.isValid() && k.isWritable())
+					doWrite();
+			} catch (final Exception e) {
+				fail(e);
+			}
+		}
+	};
+
+	private final Runnable flushTask = new Runnable() {
+		public void run() {
+			try {
+				doWrite();
+			} catch (final Exception e) {
+				fail(e);
+			}
+		}
+	};
+
+	private final Runnable dispatchTask = new Runnable() {
+		public void run() {
+			dispatch();
+		}
+	};
+
+	private final Runnable resumeReadTask = new Runnable() {
+		public void run() {
+			resumeRead();
+		}
+	};
+
+	/**
+	 * Create a client side connection.  The connection is established by
+	 * {@link #connect(ID, Object, int)}.
+	 *
+	 * @param group the event loop group to use.  Must not be <code>null</code>.
+	 * @param handler the event handler.  Must not be <code>null</code>.
+	 * @param keepAlive the keep alive interval in ms.  If &lt;= 0, no keep alive is done.
+	 */
+	public NIOClient(NIOEventLoopGroup group, ISynchAsynchEventHandler handler, int keepAlive) {
+		if (group == null)
+			throw new NullPointerException("event loop group cannot be null"); //$NON-NLS-1$
+		if (handler == null)
+			throw new NullPointerException("event handler cannot be null"); //$NON-NLS-1$
+		this.group = group;
+		this.handler = handler;
+		this.acceptHandler = null;
+		this.keepAlive = keepAlive;
+		this.containerID = handler.getEventHandlerID();
+		this.properties = new HashMap();
+	}
+
+	/**
+	 * Create a server side connection for an accepted channel.
+	 */
+	NIOClient(NIOEventLoopGroup group, SocketChannel channel, INIOAcceptHandler acceptHandler) {
+		this.group = group;
+		this.acceptHandler = acceptHandler;
+		this.keepAlive = Integer.valueOf(System.getProperty("org.eclipse.ecf.provider.generic.keepalive", "30000")).intValue(); //$NON-NLS-1$ //$NON-NLS-2$
+		this.properties = new Properties();
+		setChannel(channel);
+	}
+
+	private String getHostNameForAddressWithoutLookup(InetAddress inetAddress) {
+		final String inetAddressStr = inetAddress.toString();
+		final int slashPos = inetAddressStr.indexOf('/');
+		if (slashPos == 0)
+			return inetAddressStr.substring(1);
+		return inetAddressStr.substring(0, slashPos);
+	}
+
+	private void setChannel(SocketChannel c) {
+		channel = c;
+		final Socket s = (c == null) ? null : c.socket();
+		if (s != null && s.getInetAddress() != null)
+			addressPort = s.getLocalPort() + ":" //$NON-NLS-1$
+					+ getHostNameForAddressWithoutLookup(s.getInetAddress()) + ":" + s.getPort(); //$NON-NLS-1$
+		else
+			addressPort = "-1:<no endpoint>:-1"; //$NON-NLS-1$
+	}
+
+	/**
+	 * Set the event handler for a connection accepted by an {@link NIOServer}.  Must be called
+	 * once, by the {@link INIOAcceptHandler}.
+	 *
+	 * @param handler the event handler.  Must not be <code>null</code>.
+	 */
+	public void setEventHandler(ISynchAsynchEventHandler handler) {
+		if (handler == null)
+			throw new NullPointerException("event handler cannot be null"); //$NON-NLS-1$
+		synchronized (this) {
+			if (this.handler != null)
+				throw new IllegalStateException("event handler already set"); //$NON-NLS-1$
+			this.handler = handler;
+			this.containerID = handler.getEventHandlerID();
+		}
+	}
+
+	/**
+	 * @return Socket the socket for this connection.  May be <code>null</code> if not connected.
+	 */
+	public synchronized Socket getSocket() {
+		return (channel == null) ? null : channel.socket();
+	}
+
+	public synchronized ID getLocalID() {
+		if (containerID != null)
+			return containerID;
+		final Socket s = getSocket();
+		if (s == null)
+			return null;
+		try {
+			return IDFactory.getDefault().createStringID(PROTOCOL + "://" + getHostNameForAddressWithoutLookup(s.getLocalAddress()) //$NON-NLS-1$
+					+ ":" + s.getLocalPort()); //$NON-NLS-1$
+		} catch (final Exception e) {
+			traceStack("Exception in getLocalID()", e); //$NON-NLS-1$
+			return null;
+		}
+	}
+
+	public void removeListener(IConnectionListener l) {
+		// XXX does not support listeners
+	}
+
+	public void addListener(IConnectionListener l) {
+		// XXX does not support listeners
+	}
+
+	public synchronized boolean isConnected() {
+		if (channel != null)
+			return channel.isConnected();
+		return false;
+	}
+
+	public synchronized boolean isStarted() {
+		return started && !closed.get();
+	}
+
+	/**
+	 * @param remote the remote ID
+	 * @return URI the parsed remote ID
+	 * @throws ECFException if remote ID cannot be parsed
+	 */
+	protected URI parseRemoteID(ID remote) throws ECFException {
+		try {
+			return new URI(remote.getName());
+		} catch (final URISyntaxException e) {
+			throw new ECFException("Invalid URI for remoteID=" + remote, e); //$NON-NLS-1$
+		}
+	}
+
+	public synchronized Object connect(ID remote, Object data, int timeout) throws ECFException {
+		debug("connect(" + remote + "," + data + "," + timeout + ")"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		if (channel != null)
+			throw new ECFException("Already connected"); //$NON-NLS-1$
+		if (remote == null)
+			throw new ECFException("remote cannot be null"); //$NON-NLS-1$
+		final URI anURI = parseRemoteID(remote);
+		SocketChannel c = null;
+		Object res = null;
+		try {
+			c = SocketChannel.open();
+			final Socket s = c.socket();
+			s.setTcpNoDelay(true);
+			if (keepAlive > 0)
+				s.setKeepAlive(true);
+			s.connect(new InetSocketAddress(anURI.getHost(), anURI.getPort()), timeout);
+			setChannel(c);
+			debug("connect;" + anURI); //$NON-NLS-1$
+			// The connect handshake is done in blocking mode. Send connect data and get synchronous response
+			final ByteBuffer req = encodeObject(new ConnectRequestMessage(anURI, (Serializable) data, codec));
+			while (req.hasRemaining())
+				c.write(req);
+			s.setSoTimeout(timeout);
+			res = readObjectFrame(new DataInputStream(s.getInputStream()));
+			s.setSoTimeout(0);
+			c.configureBlocking(false);
+		} catch (final IOException e) {
+			closeChannel(c);
+			setChannel(null);
+			throw new ECFException("Exception during connection to " + remote.getName(), e); //$NON-NLS-1$
+		}
+		debug("connect;rcv:" + res); //$NON-NLS-1$
+		if (!(res instanceof ConnectResultMessage)) {
+			closeChannel(c);
+			setChannel(null);
+			throw new ECFException("Invalid connect result " + res); //$NON-NLS-1$
+		}
+		// Use codec only if accepted by remote
+		if (codec != null && !codec.equals(((ConnectResultMessage) res).getCodec()))
+			codec = null;
+		loop = group.next();
+		final Object ret = ((ConnectResultMessage) res).getData();
+		debug("connect;returning:" + ret); //$NON-NLS-1$
+		return ret;
+	}
+
+	/**
+	 * Register the accepted channel with an event loop, so the connect request can be read.
+	 */
+	void register() {
+		loop = group.next();
+		registerOnLoop(SelectionKey.OP_READ);
+	}
+
+	private void registerOnLoop(final int ops) {
+		loop.execute(new Runnable() {
+			public void run() {
+				try {
+					if (closed.get())
+						return;
+					key = loop.register(channel, ops, selectHandler);
+					// Anything queued prior to registration is written now
+					doWrite();
+				} catch (final IOException e) {
+					fail(e);
+				}
+			}
+		});
+	}
+
+	public synchronized void start() {
+		debug("start()"); //$NON-NLS-1$
+		if (started || closed.get() || channel == null)
+			return;
+		started = true;
+		if (key == null)
+			registerOnLoop(SelectionKey.OP_READ);
+		if (keepAlive > 0)
+			keepAliveFuture = setupPing();
+	}
+
+	public void stop() {
+		debug("stop()"); //$NON-NLS-1$
+	}
+
+	private ScheduledFuture<?> setupPing() {
+		debug("setupPing()"); //$NON-NLS-1$
+		// Setup ping frequency as keepAlive /2, and start after a random interval
+		final int frequency = Math.max(1, keepAlive / 2);
+		final int pingStartWait = (new Random()).nextInt(frequency) + frequency;
+		return group.getTimer().scheduleAtFixedRate(new Runnable() {
+			public void run() {
+				checkKeepAlive(frequency);
+			}
+		}, pingStartWait, frequency, TimeUnit.MILLISECONDS);
+	}
+
+	void checkKeepAlive(int frequency) {
+		if (closed.get() || disconnectHandled) {
+			cancelPing();
+			return;
+		}
+		// Neither data nor ping responses are read while reading is paused
+		if (readPaused)
+			return;
+		final long now = System.currentTimeMillis();
+		try {
+			// If we haven't received a response, then we assume
+			// the remote is not reachable and throw
+			if (waitForPing && (now - pingSentTime) > frequency)
+				throw new IOException(getAddressPort() + " remote not reachable by ping"); //$NON-NLS-1$
+			if ((now - lastReadTime) > keepAlive)
+				throw new SocketTimeoutException(getAddressPort() + " read timed out"); //$NON-NLS-1$
+			if (!waitForPing) {
+				waitForPing = true;
+				pingSentTime = now;
+				queueFrame(encodeControl(FRAME_PING));
+			}
+		} catch (final IOException e) {
+			cancelPing();
+			fail(e);
+		}
+	}
+
+	private synchronized void cancelPing() {
+		if (keepAliveFuture != null) {
+			keepAliveFuture.cancel(false);
+			keepAliveFuture = null;
+		}
+	}
+
+	public synchronized void disconnect() {
+		debug("disconnect()"); //$NON-NLS-1$
+		cancelPing();
+		fail(new SocketException("Socket closed")); //$NON-NLS-1$
+		// Notify any threads waiting to get hold of our lock
+		notifyAll();
+	}
+
+	/**
+	 * Close the channel, and deliver a disconnect event to the handler after
+	 * any frames that have already been received.
+	 */
+	void fail(Throwable e) {
+		if (!closed.compareAndSet(false, true))
+			return;
+		closeChannel(channel);
+		if (loop != null)
+			loop.wakeup();
+		writeQueue.clear();
+		inbound.add(new Frame(e));
+		scheduleDispatch();
+	}
+
+	private void closeChannel(SocketChannel c) {
+		if (c == null)
+			return;
+		try {
+			// closing the channel also cancels its selection key
+			c.close();
+		} catch (final IOException e) {
+			traceStack("closeChannel Exception", e); //$NON-NLS-1$
+		}
+	}
+
+	void handleException(Throwable e) {
+		synchronized (disconnectLock) {
+			if (!disconnectHandled) {
+				disconnectHandled = true;
+				if (e != null)
+					traceStack("handleException in thread=" //$NON-NLS-1$
+							+ Thread.currentThread().getName(), e);
+				final ISynchAsynchEventHandler h = handler;
+				if (h != null)
+					h.handleDisconnectEvent(new DisconnectEvent(this, e, null));
+			}
+		}
+		synchronized (NIOClient.this) {
+			NIOClient.this.notifyAll();
+		}
+	}
+
+	// Frame encoding
+
+	static ByteBuffer encodeObject(Serializable obj) throws IOException {
+		final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		// reserve space for frame header
+		bos.write(new byte[HEADER_LENGTH]);
+		final ObjectOutputStream oos = new ObjectOutputStream(bos);
+		oos.writeObject(obj);
+		oos.close();
+		final ByteBuffer buf = ByteBuffer.wrap(bos.toByteArray());
+		buf.putInt(0, buf.limit() - 4);
+		buf.put(4, FRAME_OBJECT);
+		return buf;
+	}
+
+	static ByteBuffer encodeHeader(byte type, int dataLength) {
+		final ByteBuffer buf = ByteBuffer.allocate(HEADER_LENGTH);
+		buf.putInt(dataLength + 1).put(type);
+		buf.flip();
+		return buf;
+	}
+
+	static ByteBuffer encodeControl(byte type) {
+		return encodeHeader(type, 0);
+	}
+
+	Serializable decodeObject(byte[] bytes) throws IOException {
+		final ObjectInputStream ois = ProviderPlugin.getDefault().createObjectInputStream(new ByteArrayInputStream(bytes));
+		try {
+			return (Serializable) ois.readObject();
+		} catch (final ClassNotFoundException e) {
+			traceStack("readObject;classnotfoundexception", e); //$NON-NLS-1$
+			final IOException except = new IOException("Protocol violation due to class load failure"); //$NON-NLS-1$
+			except.setStackTrace(e.getStackTrace());
+			throw except;
+		}
+	}
+
+	private Serializable readObjectFrame(DataInputStream ins) throws IOException {
+		final int length = ins.readInt();
+		if (length < 1 || length > DEFAULT_MAX_FRAME_SIZE)
+			throw new IOException("Invalid frame length=" + length); //$NON-NLS-1$
+		final byte type = ins.readByte();
+		if (type != FRAME_OBJECT)
+			throw new IOException("Invalid frame type=" + type); //$NON-NLS-1$
+		final byte[] bytes = new byte[length - 1];
+		ins.readFully(bytes);
+		return decodeObject(bytes);
+	}
+
+	// Writing
+
+	private void queueFrame(ByteBuffer frame) throws IOException {
+		synchronized (outputLock) {
+			if (closed.get())
+				throw new ConnectException("Not connected"); //$NON-NLS-1$
+			writeQueue.add(frame);
+		}
+		scheduleFlush();
+	}
+
+	private void queueFrame(byte type, byte[] data) throws IOException {
+		synchronized (outputLock) {
+			if (closed.get())
+				throw new ConnectException("Not connected"); //$NON-NLS-1$
+			// header and data are queued separately, so data is not copied
+			writeQueue.add(encodeHeader(type, data.length));
+			if (data.length > 0)
+				writeQueue.add(ByteBuffer.wrap(data));
+		}
+		scheduleFlush();
+	}
+
+	private void scheduleFlush() {
+		// If not yet registered, queued frames are written upon registration
+		if (key != null && flushScheduled.compareAndSet(false, true))
+			loop.execute(flushTask);
+	}
+
+	// Must only be called on the event loop thread
+	void doWrite() throws IOException {
+		flushScheduled.set(false);
+		final SelectionKey k = key;
+		if (k == null || !k.isValid())
+			return;
+		final ByteBuffer[] bufs = new ByteBuffer[MAX_GATHER];
+		for (;;) {
+			int count = 0;
+			for (final Iterator<ByteBuffer> i = writeQueue.iterator(); i.hasNext() && count < MAX_GATHER;)
+				bufs[count++] = i.next();
+			if (count == 0)
+				break;
+			channel.write(bufs, 0, count);
+			int written = 0;
+			while (written < count && !bufs[written].hasRemaining()) {
+				writeQueue.poll();
+				written++;
+			}
+			Arrays.fill(bufs, 0, count, null);
+			if (written < count) {
+				// socket buffer is full, wait until writable
+				k.interestOps(k.interestOps() | SelectionKey.OP_WRITE);
+				return;
+			}
+		}
+		if ((k.interestOps() & SelectionKey.OP_WRITE) != 0)
+			k.interestOps(k.interestOps() & ~SelectionKey.OP_WRITE);
+	}
+
+	// Reading
+
+	// Must only be called on the event loop thread
+	void doRead() throws IOException {
+		final int count = channel.read(readBuffer);
+		if (count < 0)
+			throw new EOFException(getAddressPort() + " end of stream"); //$NON-NLS-1$
+		if (count == 0)
+			return;
+		lastReadTime = System.currentTimeMillis();
+		readBuffer.flip();
+		int needed = 0;
+		while (readBuffer.remaining() >= 4) {
+			final int length = readBuffer.getInt(readBuffer.position());
+			if (length < 1 || length > DEFAULT_MAX_FRAME_SIZE)
+				throw new IOException("Invalid frame length=" + length); //$NON-NLS-1$
+			if (readBuffer.remaining() < length + 4) {
+				needed = length + 4;
+				break;
+			}
+			readBuffer.getInt();
+			final byte type = readBuffer.get();
+			final byte[] data = new byte[length - 1];
+			readBuffer.get(data);
+			inboundBytes.addAndGet(length + 4);
+			inbound.add(new Frame(type, data));
+		}
+		if (needed > readBuffer.capacity()) {
+			// grow to hold the partially read frame
+			final ByteBuffer newBuffer = ByteBuffer.allocate(needed);
+			newBuffer.put(readBuffer);
+			readBuffer = newBuffer;
+		} else if (!readBuffer.hasRemaining() && readBuffer.capacity() > DEFAULT_READ_BUFFER_SIZE) {
+			// shrink back after a large frame
+			readBuffer = ByteBuffer.allocate(DEFAULT_READ_BUFFER_SIZE);
+		} else
+			readBuffer.compact();
+		if (inboundBytes.get() > DEFAULT_INBOUND_HIGH_WATERMARK)
+			pauseRead();
+		scheduleDispatch();
+	}
+
+	// Must only be called on the event loop thread
+	private void pauseRead() {
+		final SelectionKey k = key;
+		if (readPaused || k == null || !k.isValid())
+			return;
+		k.interestOps(k.interestOps() & ~SelectionKey.OP_READ);
+		readPaused = true;
+		// The dispatcher may have drained the frames before readPaused was set
+		if (inboundBytes.get() <= DEFAULT_INBOUND_LOW_WATERMARK)
+			resumeRead();
+	}
+
+	// Must only be called on the event loop thread
+	void resumeRead() {
+		final SelectionKey k = key;
+		if (!readPaused || k == null || !k.isValid())
+			return;
+		readPaused = false;
+		lastReadTime = System.currentTimeMillis();
+		k.interestOps(k.interestOps() | SelectionKey.OP_READ);
+	}
+
+	// Dispatching on worker threads
+
+	private void scheduleDispatch() {
+		if (!inbound.isEmpty() && dispatching.compareAndSet(false, true))
+			group.getWorkers().execute(dispatchTask);
+	}
+
+	void dispatch() {
+		for (;;) {
+			Frame frame;
+			while ((frame = inbound.poll()) != null) {
+				if (frame.isClose()) {
+					handleException(frame.exception);
+					inbound.clear();
+				} else {
+					if (!closed.get()) {
+						try {
+							handleFrame(frame);
+						} catch (final Exception e) {
+							fail(e);
+						}
+					}
+					final long remaining = inboundBytes.addAndGet(-(frame.data.length + HEADER_LENGTH));
+					if (readPaused && remaining <= DEFAULT_INBOUND_LOW_WATERMARK)
+						loop.execute(resumeReadTask);
+				}
+			}
+			dispatching.set(false);
+			// Check for frames added after the poll returned null
+			if (inbound.isEmpty() || !dispatching.compareAndSet(false, true))
+				return;
+		}
+	}
+
+	void handleFrame(Frame frame) throws Exception {
+		final ISynchAsynchEventHandler h = handler;
+		if (h == null) {
+			// Only a connect request is valid prior to being accepted
+			if (acceptHandler == null || frame.type != FRAME_OBJECT)
+				throw new IOException("Invalid message received prior to connect"); //$NON-NLS-1$
+			final Serializable req = decodeObject(frame.data);
+			if (!(req instanceof ConnectRequestMessage))
+				throw new InvalidObjectException("Invalid connect request " + req); //$NON-NLS-1$
+			handleConnectRequest((ConnectRequestMessage) req);
+			return;
+		}
+		switch (frame.type) {
+			case FRAME_ASYNCH :
+				h.handleAsynchEvent(new AsynchEvent(this, frame.data));
+				break;
+			case FRAME_SYNCH :
+				h.handleSynchEvent(new SynchEvent(this, frame.data));
+				break;
+			case FRAME_PING :
+				// Handle ping by sending response back immediately
+				queueFrame(encodeControl(FRAME_PING_RESP));
+				break;
+			case FRAME_PING_RESP :
+				waitForPing = false;
+				break;
+			case FRAME_OBJECT :
+				final Serializable rcv = decodeObject(frame.data);
+				if (rcv instanceof SynchMessage)
+					h.handleSynchEvent(new SynchEvent(this, ((SynchMessage) rcv).getData()));
+				else if (rcv instanceof AsynchMessage)
+					h.handleAsynchEvent(new AsynchEvent(this, ((AsynchMessage) rcv).getData()));
+				else
+					throw new IOException("Invalid message received"); //$NON-NLS-1$
+				break;
+			default :
+				throw new IOException("Invalid frame type=" + frame.type); //$NON-NLS-1$
+		}
+	}
+
+	private void handleConnectRequest(ConnectRequestMessage req) throws Exception {
+		debug("handleConnectRequest:" + req); //$NON-NLS-1$
+		// No other threads can send on this connection until the accept handler
+		// has accepted or rejected the connect request, and the response is queued
+		synchronized (outputLock) {
+			final Serializable resp = acceptHandler.handleAccept(this, req);
+			if (handler == null)
+				throw new IllegalStateException("Accept handler did not set event handler"); //$NON-NLS-1$
+			queueFrame(encodeObject(new ConnectResultMessage(resp, codec)));
+		}
+	}
+
+	// ISynchAsynchConnection
+
+	public void setCloseTimeout(long t) {
+		closeTimeout = t;
+	}
+
+	private void sendClose(byte[] snd) throws IOException {
+		isClosing = true;
+		debug("sendClose()"); //$NON-NLS-1$
+		queueFrame(FRAME_SYNCH, snd);
+		int count = 0;
+		final int interval = DEFAULT_WAIT_INTERVAL;
+		while (!disconnectHandled && count < interval) {
+			try {
+				wait(closeTimeout / interval);
+				count++;
+			} catch (final InterruptedException e) {
+				traceStack("sendClose wait", e); //$NON-NLS-1$
+				return;
+			}
+		}
+	}
+
+	public void sendAsynch(ID recipient, byte[] obj) throws IOException {
+		if (closed.get() || isClosing)
+			throw new ConnectException("Not connected"); //$NON-NLS-1$
+		queueFrame(FRAME_ASYNCH, obj);
+	}
+
+	public void sendAsynch(ID recipient, byte[] header, byte[] body) throws IOException {
+		if (closed.get() || isClosing)
+			throw new ConnectException("Not connected"); //$NON-NLS-1$
+		synchronized (outputLock) {
+			if (closed.get())
+				throw new ConnectException("Not connected"); //$NON-NLS-1$
+			// The body is wrapped, not copied, so it may be shared with other connections
+			writeQueue.add(encodeHeader(FRAME_ASYNCH, header.length + body.length));
+			writeQueue.add(ByteBuffer.wrap(header));
+			writeQueue.add(ByteBuffer.wrap(body));
+		}
+		scheduleFlush();
+	}
+
+	public void sendAsynch(ID recipient, Object obj) throws IOException {
+		if (obj instanceof byte[])
+			sendAsynch(recipient, (byte[]) obj);
+		else {
+			if (closed.get() || isClosing)
+				throw new ConnectException("Not connected"); //$NON-NLS-1$
+			queueFrame(encodeObject(new AsynchMessage((Serializable) obj)));
+		}
+	}
+
+	public synchronized Object sendSynch(ID rec, byte[] obj) throws IOException {
+		if (closed.get() || isClosing)
+			throw new ConnectException("Not connected"); //$NON-NLS-1$
+		sendClose(obj);
+		return null;
+	}
+
+	public void setCodec(String codec) {
+		this.codec = codec;
+	}
+
+	public String getCodec() {
+		return codec;
+	}
+
+	public Map getProperties() {
+		return properties;
+	}
+
+	public void setProperties(Map props) {
+		this.properties = props;
+	}
+
+	public Object getAdapter(Class clazz) {
+		return null;
+	}
+
+	String getAddressPort() {
+		return addressPort;
+	}
+
+	protected void debug(String msg) {
+		Trace.trace(ProviderPlugin.PLUGIN_ID, ECFProviderDebugOptions.CONNECTION, getLocalID() + "." + msg); //$NON-NLS-1$
+	}
+
+	protected void traceStack(String msg, Throwable e) {
+		Trace.catching(ProviderPlugin.PLUGIN_ID, ECFProviderDebugOptions.EXCEPTIONS_CATCHING, NIOClient.class, msg, e);
+	}
+
+	public String toString() {
+		final StringBuffer buf = new StringBuffer("NIOClient["); //$NON-NLS-1$
+		buf.append(getAddressPort()).append("]"); //$NON-NLS-1$
+		return buf.toString();
+	}
+}
@@ -0,0 +1,120 @@
+/****************************************************************************
+ * Copyright (c) 2026 Composent, Inc. and others.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * Contributors:
+ *    Composent, Inc. - initial API and implementation
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *****************************************************************************/
+package org.eclipse.ecf.provider.comm.nio;
+
+import java.io.IOException;
+import java.nio.channels.*;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import org.eclipse.ecf.core.util.Trace;
+import org.eclipse.ecf.internal.provider.ECFProviderDebugOptions;
+import org.eclipse.ecf.internal.provider.ProviderPlugin;
+
+/**
+ * Single selector thread.  All registration and interest changes for the channels
+ * owned by this loop are run on the loop thread via {@link #execute(Runnable)}.
+ */
+final class NIOEventLoop implements Runnable {
+
+	interface Handler {
+		void handleSelected(SelectionKey key);
+	}
+
+	private final Selector selector;
+	private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+	private final Thread thread;
+	private volatile boolean running = true;
+
+	NIOEventLoop(String name) throws IOException {
+		selector = Selector.open();
+		thread = new Thread(this, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	boolean inEventLoop() {
+		return Thread.currentThread() == thread;
+	}
+
+	void execute(Runnable task) {
+		tasks.add(task);
+		if (!inEventLoop())
+			selector.wakeup();
+	}
+
+	/**
+	 * Wake up the selector, so that the keys of closed channels are deregistered
+	 * (and their sockets actually closed) without waiting for other selector activity.
+	 */
+	void wakeup() {
+		selector.wakeup();
+	}
+
+	SelectionKey register(SelectableChannel channel, int ops, Handler handler) throws ClosedChannelException {
+		return channel.register(selector, ops, handler);
+	}
+
+	public void run() {
+		while (running) {
+			try {
+				// Do not block if tasks were queued by the loop thread itself
+				if (tasks.isEmpty())
+					selector.select();
+				else
+					selector.selectNow();
+				runTasks();
+				final Iterator<SelectionKey> i = selector.selectedKeys().iterator();
+				while (i.hasNext()) {
+					final SelectionKey key = i.next();
+					i.remove();
+					if (key.isValid())
+						((Handler) key.attachment()).handleSelected(key);
+				}
+			} catch (final ClosedSelectorException e) {
+				break;
+			} catch (final Exception e) {
+				traceStack("Exception in event loop " + thread.getName(), e); //$NON-NLS-1$
+			}
+		}
+		debug("EVENT LOOP TERMINATING"); //$NON-NLS-1$
+	}
+
+	private void runTasks() {
+		Runnable task;
+		while ((task = tasks.poll()) != null) {
+			try {
+				task.run();
+			} catch (final Exception e) {
+				traceStack("Exception running event loop task", e); //$NON-NLS-1$
+			}
+		}
+	}
+
+	void shutdown() {
+		running = false;
+		try {
+			selector.close();
+		} catch (final IOException e) {
+			traceStack("Exception closing selector", e); //$NON-NLS-1$
+		}
+	}
+
+	private void debug(String msg) {
+		Trace.trace(ProviderPlugin.PLUGIN_ID, ECFProviderDebugOptions.CONNECTION, thread.getName() + "." + msg); //$NON-NLS-1$
+	}
+
+	private void traceStack(String msg, Throwable e) {
+		Trace.catching(ProviderPlugin.PLUGIN_ID, ECFProviderDebugOptions.EXCEPTIONS_CATCHING, NIOEventLoop.class, msg, e);
+	}
+}
@@ -0,0 +1,121 @@
+/****************************************************************************
+ * Copyright (c) 2026 Composent, Inc. and others.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * Contributors:
+ *    Composent, Inc. - initial API and implementation
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *****************************************************************************/
+package org.eclipse.ecf.provider.comm.nio;
+
+import java.io.IOException;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fixed set of selector threads, a fixed pool of worker threads that
+ * deliver received messages to the connection event handlers, and a single
+ * timer thread used for keep alive.  The number of threads used by a group
+ * does not depend upon the number of connections it serves.
+ *
+ * @since 4.10
+ */
+public class NIOEventLoopGroup {
+
+	public static final String DEFAULT_GROUP_NAME = "ECF NIO"; //$NON-NLS-1$
+
+	public static final int DEFAULT_SELECTORS = Integer.parseInt(System.getProperty("org.eclipse.ecf.provider.comm.nio.selectors", String.valueOf(Math.min(4, Runtime.getRuntime().availableProcessors())))); //$NON-NLS-1$
+
+	public static final int DEFAULT_WORKERS = Integer.parseInt(System.getProperty("org.eclipse.ecf.provider.comm.nio.workers", String.valueOf(2 * Runtime.getRuntime().availableProcessors()))); //$NON-NLS-1$
+
+	private static NIOEventLoopGroup defaultGroup;
+
+	private final String name;
+	private final NIOEventLoop[] loops;
+	private final AtomicInteger nextLoop = new AtomicInteger();
+	private final ExecutorService workers;
+	private final ScheduledExecutorService timer;
+
+	/**
+	 * @return NIOEventLoopGroup the group shared by all nio connections that are not
+	 * given an explicit group.  Will not be <code>null</code>.
+	 * @throws IOException if the selectors for the default group cannot be opened
+	 */
+	public static synchronized NIOEventLoopGroup getDefault() throws IOException {
+		if (defaultGroup == null)
+			defaultGroup = new NIOEventLoopGroup(DEFAULT_GROUP_NAME, DEFAULT_SELECTORS, DEFAULT_WORKERS);
+		return defaultGroup;
+	}
+
+	/**
+	 * Shut down the default group, if it has been created.
+	 */
+	public static void shutdownDefault() {
+		NIOEventLoopGroup g;
+		synchronized (NIOEventLoopGroup.class) {
+			g = defaultGroup;
+		}
+		if (g != null)
+			g.shutdown();
+	}
+
+	public NIOEventLoopGroup(final String name, int selectors, int workerThreads) throws IOException {
+		if (selectors < 1 || workerThreads < 1)
+			throw new IllegalArgumentException("selectors and workerThreads must be > 0"); //$NON-NLS-1$
+		this.name = name;
+		this.loops = new NIOEventLoop[selectors];
+		for (int i = 0; i < selectors; i++)
+			loops[i] = new NIOEventLoop(name + ":selector:" + i); //$NON-NLS-1$
+		this.workers = Executors.newFixedThreadPool(workerThreads, createThreadFactory(name + ":worker:")); //$NON-NLS-1$
+		this.timer = Executors.newSingleThreadScheduledExecutor(createThreadFactory(name + ":timer:")); //$NON-NLS-1$
+	}
+
+	private ThreadFactory createThreadFactory(final String prefix) {
+		return new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			public Thread newThread(Runnable r) {
+				final Thread t = new Thread(r, prefix + count.getAndIncrement());
+				t.setDaemon(true);
+				return t;
+			}
+		};
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	NIOEventLoop next() {
+		return loops[(nextLoop.getAndIncrement() & Integer.MAX_VALUE) % loops.length];
+	}
+
+	Executor getWorkers() {
+		return workers;
+	}
+
+	ScheduledExecutorService getTimer() {
+		return timer;
+	}
+
+	public void shutdown() {
+		synchronized (NIOEventLoopGroup.class) {
+			if (defaultGroup == this)
+				defaultGroup = null;
+		}
+		for (int i = 0; i < loops.length; i++)
+			loops[i].shutdown();
+		workers.shutdown();
+		timer.shutdown();
+	}
+
+	public String toString() {
+		final StringBuffer buf = new StringBuffer("NIOEventLoopGroup["); //$NON-NLS-1$
+		buf.append(name).append(";selectors=").append(loops.length).append("]"); //$NON-NLS-1$ //$NON-NLS-2$
+		return buf.toString();
+	}
+}
@@ -0,0 +1,133 @@
+/****************************************************************************
+ * Copyright (c) 2026 Composent, Inc. and others.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * Contributors:
+ *    Composent, Inc. - initial API and implementation
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *****************************************************************************/
+package org.eclipse.ecf.provider.comm.nio;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.*;
+import org.eclipse.ecf.core.util.Trace;
+import org.eclipse.ecf.internal.provider.ECFProviderDebugOptions;
+import org.eclipse.ecf.internal.provider.ProviderPlugin;
+import org.eclipse.ecf.provider.comm.tcp.Server;
+
+/**
+ * Non-blocking server socket.  Accepted connections are {@link NIOClient}s
+ * that are spread across the event loops of an {@link NIOEventLoopGroup}.
+ * No thread is created per accepted connection.
+ *
+ * @since 4.10
+ */
+public class NIOServer {
+
+	public static final int DEFAULT_BACKLOG = Server.DEFAULT_BACKLOG;
+
+	private final NIOEventLoopGroup group;
+	private final ServerSocketChannel serverChannel;
+	private final NIOEventLoop acceptLoop;
+	private final INIOAcceptHandler acceptHandler;
+
+	private final NIOEventLoop.Handler selectHandler = new NIOEventLoop.Handler() {
+		public void handleSelected(SelectionKey key) {
+			if (!key.isAcceptable())
+				return;
+			try {
+				SocketChannel channel;
+				while ((channel = serverChannel.accept()) != null)
+					handleAccept(channel);
+			} catch (final IOException e) {
+				traceStack("Exception in accept", e); //$NON-NLS-1$
+			}
+		}
+	};
+
+	protected void debug(String msg) {
+		Trace.trace(ProviderPlugin.PLUGIN_ID, ECFProviderDebugOptions.CONNECTION, msg);
+	}
+
+	protected void traceStack(String msg, Throwable e) {
+		Trace.catching(ProviderPlugin.PLUGIN_ID, ECFProviderDebugOptions.EXCEPTIONS_CATCHING, NIOServer.class, msg, e);
+	}
+
+	/**
+	 * @param group the event loop group for accepted connections.  Must not be <code>null</code>.
+	 * @param port port
+	 * @param backlog backlog
+	 * @param bindAddress a bindAddress.  May be <code>null</code>.
+	 * @param handler the accept handler.  Must not be <code>null</code>.
+	 * @throws IOException if server setup cannot be done
+	 */
+	public NIOServer(NIOEventLoopGroup group, int port, int backlog, InetAddress bindAddress, INIOAcceptHandler handler) throws IOException {
+		if (group == null)
+			throw new NullPointerException("Event loop group cannot be null"); //$NON-NLS-1$
+		if (handler == null)
+			throw new NullPointerException("Accept handler cannot be null"); //$NON-NLS-1$
+		this.group = group;
+		this.acceptHandler = handler;
+		this.serverChannel = ServerSocketChannel.open();
+		try {
+			serverChannel.socket().setReuseAddress(true);
+			serverChannel.socket().bind(new InetSocketAddress(bindAddress, port), backlog);
+			serverChannel.configureBlocking(false);
+		} catch (final IOException e) {
+			serverChannel.close();
+			throw e;
+		}
+		this.acceptLoop = group.next();
+		acceptLoop.execute(new Runnable() {
+			public void run() {
+				try {
+					acceptLoop.register(serverChannel, SelectionKey.OP_ACCEPT, selectHandler);
+				} catch (final ClosedChannelException e) {
+					traceStack("Server closed before accept registration", e); //$NON-NLS-1$
+				}
+			}
+		});
+	}
+
+	public NIOServer(NIOEventLoopGroup group, int port, INIOAcceptHandler handler) throws IOException {
+		this(group, port, DEFAULT_BACKLOG, null, handler);
+	}
+
+	protected void handleAccept(SocketChannel channel) {
+		try {
+			debug("accept:" + channel.socket().getInetAddress()); //$NON-NLS-1$
+			channel.configureBlocking(false);
+			channel.socket().setTcpNoDelay(true);
+			new NIOClient(group, channel, acceptHandler).register();
+		} catch (final Exception e) {
+			traceStack("Unexpected exception in handleAccept...closing", e); //$NON-NLS-1$
+			try {
+				channel.close();
+			} catch (final IOException e1) {
+				traceStack("accept.close", e1); //$NON-NLS-1$
+			}
+		}
+	}
+
+	public int getLocalPort() {
+		return serverChannel.socket().getLocalPort();
+	}
+
+	public synchronized void close() throws IOException {
+		// closing the channel also cancels its selection key
+		serverChannel.close();
+		acceptLoop.wakeup();
+	}
+
+	public String toString() {
+		final StringBuffer buf = new StringBuffer("NIOServer["); //$NON-NLS-1$
+		buf.append(getLocalPort()).append(";").append(group.getName()).append("]"); //$NON-NLS-1$ //$NON-NLS-2$
+		return buf.toString();
+	}
+}
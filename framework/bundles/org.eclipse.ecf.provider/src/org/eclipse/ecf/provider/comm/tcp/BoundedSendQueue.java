@@ -0,0 +1,141 @@
+/****************************************************************************
+ * Copyright (c) 2026 Composent, Inc. and others.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * Contributors:
+ *    Composent, Inc. - initial API and implementation
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *****************************************************************************/
+package org.eclipse.ecf.provider.comm.tcp;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import org.eclipse.ecf.core.sharedobject.util.SimpleFIFOQueue;
+
+/**
+ * Send queue bounded by the number of queued data bytes.  Once the high watermark is
+ * reached, {@link #put(Object)} either blocks until the sender has drained the queue to the
+ * low watermark, or fails immediately.  Messages added with {@link #enqueue(Object)}, such as
+ * pings, are not subject to the watermarks.
+ */
+class BoundedSendQueue extends SimpleFIFOQueue {
+
+	// Size assumed for messages without byte array data
+	private static final int DEFAULT_MESSAGE_SIZE = 64;
+
+	private int highWatermark;
+	private int lowWatermark;
+	private boolean block;
+
+	private long bytes;
+	private boolean full;
+	private long blockedCount;
+	private long droppedCount;
+
+	BoundedSendQueue(int highWatermark, int lowWatermark, boolean block) {
+		configure(highWatermark, lowWatermark, block);
+	}
+
+	synchronized void configure(int high, int low, boolean blk) {
+		if (high <= 0)
+			throw new IllegalArgumentException("high watermark must be > 0"); //$NON-NLS-1$
+		this.highWatermark = high;
+		this.lowWatermark = Math.max(0, Math.min(low, high));
+		this.block = blk;
+		notifyAll();
+	}
+
+	static int sizeOf(Object obj) {
+		final Object data = (obj instanceof AsynchMessage) ? ((AsynchMessage) obj).getData() : null;
+		if (data instanceof byte[])
+			return ((byte[]) data).length;
+		if (data instanceof byte[][]) {
+			final byte[][] parts = (byte[][]) data;
+			int size = 0;
+			for (int i = 0; i < parts.length; i++)
+				size += parts[i].length;
+			return size;
+		}
+		return DEFAULT_MESSAGE_SIZE;
+	}
+
+	/**
+	 * Add message subject to the watermarks.
+	 *
+	 * @param obj the message to add.  Must not be <code>null</code>.
+	 * @return boolean <code>true</code> if added, <code>false</code> if the queue is stopped
+	 * @throws IOException if the queue is full and not blocking, or if interrupted while blocked
+	 */
+	synchronized boolean put(Object obj) throws IOException {
+		if (full && !isStopped()) {
+			if (!block) {
+				droppedCount++;
+				throw new IOException("Send queue full"); //$NON-NLS-1$
+			}
+			blockedCount++;
+			while (full && !isStopped()) {
+				try {
+					wait();
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted waiting for send queue"); //$NON-NLS-1$
+				}
+			}
+		}
+		return enqueue(obj);
+	}
+
+	public synchronized boolean enqueue(Object obj) {
+		if (!super.enqueue(obj))
+			return false;
+		bytes += sizeOf(obj);
+		if (bytes >= highWatermark)
+			full = true;
+		// Senders may be waiting on this queue as well as the consumer
+		notifyAll();
+		return true;
+	}
+
+	public synchronized Object removeHead() {
+		final Object obj = super.removeHead();
+		if (obj != null) {
+			bytes -= sizeOf(obj);
+			if (full && bytes <= lowWatermark) {
+				full = false;
+				notifyAll();
+			}
+		}
+		return obj;
+	}
+
+	public synchronized Object[] flush() {
+		final Object[] out = super.flush();
+		bytes = 0;
+		full = false;
+		return out;
+	}
+
+	synchronized long getBytes() {
+		return bytes;
+	}
+
+	synchronized long getBlockedCount() {
+		return blockedCount;
+	}
+
+	synchronized long getDroppedCount() {
+		return droppedCount;
+	}
+
+	public String toString() {
+		final StringBuffer sb = new StringBuffer("BoundedSendQueue["); //$NON-NLS-1$
+		sb.append("size=").append(size()).append(";bytes=").append(getBytes()); //$NON-NLS-1$ //$NON-NLS-2$
+		sb.append(";high=").append(highWatermark).append(";low=").append(lowWatermark); //$NON-NLS-1$ //$NON-NLS-2$
+		sb.append(";block=").append(block).append("]"); //$NON-NLS-1$ //$NON-NLS-2$
+		return sb.toString();
+	}
+}
@@ -27,7 +27,7 @@ import org.eclipse.ecf.internal.provider.ECFProviderDebugOptions;
 import org.eclipse.ecf.internal.provider.ProviderPlugin;
 import org.eclipse.ecf.provider.comm.*;
 
-public final class Client implements ISynchAsynchConnection {
+public final class Client implements ISynchAsynchConnection, ICodecConnection {
 	public static final String PROTOCOL = "ecftcp"; //$NON-NLS-1$
 	public static final int DEFAULT_SNDR_PRIORITY = Thread.NORM_PRIORITY;
 	public static final int DEFAULT_RCVR_PRIORITY = Thread.NORM_PRIORITY;
@@ -35,6 +35,77 @@ public final class Client implements ISynchAsynchConnection {
 	public static final long DEFAULT_CLOSE_TIMEOUT = Integer.parseInt(System.getProperty("org.eclipse.ecf.provider.comm.tcp.client.closetimeout", "2000")); //$NON-NLS-1$ //$NON-NLS-2$
 	// Default maximum cached messages on object stream is 50
 	public static final int DEFAULT_MAX_BUFFER_MSG = Integer.parseInt(System.getProperty("org.eclipse.ecf.provider.comm.tcp.client.maxmsgs", "50")); //$NON-NLS-1$ //$NON-NLS-2$
+	/**
+	 * Maximum size of a raw frame, when a codec is used.  Default is 64MB.
+	 * @since 4.10
+	 */
+	public static final int DEFAULT_MAX_FRAME_SIZE = Integer.parseInt(System.getProperty("org.eclipse.ecf.provider.comm.tcp.client.maxframesize", "67108864")); //$NON-NLS-1$ //$NON-NLS-2$
+	/**
+	 * Container config property for the send queue high watermark, in bytes of queued data.
+	 * @since 4.10
+	 */
+	public static final String SEND_QUEUE_HIGH_WATERMARK_PROP = "org.eclipse.ecf.provider.comm.tcp.client.sendqueue.highwatermark"; //$NON-NLS-1$
+	/**
+	 * Container config property for the send queue low watermark, in bytes of queued data.
+	 * @since 4.10
+	 */
+	public static final String SEND_QUEUE_LOW_WATERMARK_PROP = "org.eclipse.ecf.provider.comm.tcp.client.sendqueue.lowwatermark"; //$NON-NLS-1$
+	/**
+	 * Container config property.  If <code>true</code>, senders block when the send queue is full.
+	 * If <code>false</code>, sending fails with an IOException when the send queue is full.
+	 * @since 4.10
+	 */
+	public static final String SEND_QUEUE_BLOCK_PROP = "org.eclipse.ecf.provider.comm.tcp.client.sendqueue.block"; //$NON-NLS-1$
+	/**
+	 * Default send queue high watermark is 16MB.
+	 * @since 4.10
+	 */
+	public static final int DEFAULT_SEND_QUEUE_HIGH_WATERMARK = Integer.parseInt(System.getProperty(SEND_QUEUE_HIGH_WATERMARK_PROP, "16777216")); //$NON-NLS-1$
+	/**
+	 * Default send queue low watermark is 8MB.
+	 * @since 4.10
+	 */
+	public static final int DEFAULT_SEND_QUEUE_LOW_WATERMARK = Integer.parseInt(System.getProperty(SEND_QUEUE_LOW_WATERMARK_PROP, "8388608")); //$NON-NLS-1$
+	/**
+	 * @since 4.10
+	 */
+	public static final boolean DEFAULT_SEND_QUEUE_BLOCK = Boolean.valueOf(System.getProperty(SEND_QUEUE_BLOCK_PROP, "true")).booleanValue(); //$NON-NLS-1$
+	/**
+	 * Container config property for the connections that a server accepts.  If <code>true</code>, the server blocks
+	 * when the send queue of a member is full, which holds up the delivery to every other member as well as joins and leaves.
+	 * If <code>false</code>, sending to that member fails with an IOException when its send queue is full.
+	 * @since 4.10
+	 */
+	public static final String SERVER_SEND_QUEUE_BLOCK_PROP = "org.eclipse.ecf.provider.comm.tcp.server.sendqueue.block"; //$NON-NLS-1$
+	/**
+	 * @since 4.10
+	 */
+	public static final boolean DEFAULT_SERVER_SEND_QUEUE_BLOCK = Boolean.valueOf(System.getProperty(SERVER_SEND_QUEUE_BLOCK_PROP, "false")).booleanValue(); //$NON-NLS-1$
+	/**
+	 * Maximum number of queued messages written before the output stream is flushed.  Default is 64.
+	 * @since 4.10
+	 */
+	public static final int DEFAULT_MAX_COALESCE = Integer.parseInt(System.getProperty("org.eclipse.ecf.provider.comm.tcp.client.maxcoalesce", "64")); //$NON-NLS-1$ //$NON-NLS-2$
+	/**
+	 * Connection property with the number of messages in the send queue.
+	 * @since 4.10
+	 */
+	public static final String SEND_QUEUE_SIZE = "sendQueueSize"; //$NON-NLS-1$
+	/**
+	 * Connection property with the number of data bytes in the send queue.
+	 * @since 4.10
+	 */
+	public static final String SEND_QUEUE_BYTES = "sendQueueBytes"; //$NON-NLS-1$
+	/**
+	 * Connection property with the number of sends that blocked on a full send queue.
+	 * @since 4.10
+	 */
+	public static final String SEND_QUEUE_BLOCKED = "sendQueueBlocked"; //$NON-NLS-1$
+	/**
+	 * Connection property with the number of sends that failed on a full send queue.
+	 * @since 4.10
+	 */
+	public static final String SEND_QUEUE_DROPPED = "sendQueueDropped"; //$NON-NLS-1$
 	public static final int DEFAULT_WAIT_INTERVAL = Integer.parseInt(System.getProperty("org.eclipse.ecf.provider.comm.tcp.client.waitinterval", "10")); //$NON-NLS-1$ //$NON-NLS-2$
 	protected Socket socket;
 	private String addressPort = "-1:<no endpoint>:-1"; //$NON-NLS-1$
@@ -44,7 +115,7 @@ public final class Client implements ISynchAsynchConnection {
 	// Event handler
 	protected ISynchAsynchEventHandler handler;
 	// Our queue
-	protected SimpleFIFOQueue queue = new SimpleFIFOQueue();
+	protected SimpleFIFOQueue queue = new BoundedSendQueue(DEFAULT_SEND_QUEUE_HIGH_WATERMARK, DEFAULT_SEND_QUEUE_LOW_WATERMARK, DEFAULT_SEND_QUEUE_BLOCK);
 	protected int keepAlive = 0;
 	protected Thread sendThread;
 	protected Thread rcvThread;
@@ -61,6 +132,15 @@ public final class Client implements ISynchAsynchConnection {
 	private final Object disconnectLock = new Object();
 	protected final Object outputStreamLock = new Object();
 	private int maxmsgs = DEFAULT_MAX_BUFFER_MSG;
+	// Negotiated codec.  If non-null, byte array messages are written as raw frames
+	private volatile String codec;
+
+	// Raw frame types used when a codec has been negotiated
+	private static final byte FRAME_OBJECT = 0;
+	private static final byte FRAME_ASYNCH = 1;
+	private static final byte FRAME_SYNCH = 2;
+	private static final byte FRAME_PING = 3;
+	private static final byte FRAME_PING_RESP = 4;
 
 	private String getHostNameForAddressWithoutLookup(InetAddress inetAddress) {
 		// First get InetAddress.toString(), which returns
@@ -214,13 +294,19 @@ public final class Client implements ISynchAsynchConnection {
 			setSocketOptions(s);
 			// Now we've got a connection so set our socket
 			setSocket(s);
-			outputStream = new ObjectOutputStream(s.getOutputStream());
+			// Buffered, so messages coalesced by the send thread are written together
+			outputStream = new ObjectOutputStream(new BufferedOutputStream(s.getOutputStream()));
 			outputStream.flush();
 			inputStream = ProviderPlugin.getDefault().createObjectInputStream(s.getInputStream());
 			debug("connect;" + anURI); //$NON-NLS-1$
 			// send connect data and get synchronous response
-			send(new ConnectRequestMessage(anURI, (Serializable) data));
+			final String requestedCodec = codec;
+			codec = null;
+			send(new ConnectRequestMessage(anURI, (Serializable) data, requestedCodec));
 			res = (ConnectResultMessage) readObject();
+			// Use codec only if accepted by remote
+			if (res != null && requestedCodec != null && requestedCodec.equals(res.getCodec()))
+				codec = requestedCodec;
 		} catch (final IOException e) {
 			throw new ECFException("Exception during connection to " + remote.getName(), e); //$NON-NLS-1$
 		}
@@ -266,10 +352,8 @@ public final class Client implements ISynchAsynchConnection {
 					if (me.isInterrupted() || aMsg == null)
 						break;
 					try {
-						// Actually send message
-						send(aMsg);
-						// Successful...remove message from queue
-						queue.removeHead();
+						// Actually send message, along with any others already queued
+						sendQueued(aMsg);
 					} catch (Exception e) {
 						handleException(e);
 						break;
@@ -285,6 +369,8 @@ public final class Client implements ISynchAsynchConnection {
 	}
 
 	void handleException(Throwable e) {
+		// Release any senders blocked on a full queue
+		queue.close();
 		synchronized (disconnectLock) {
 			if (!disconnectHandled) {
 				disconnectHandled = true;
@@ -314,16 +400,83 @@ public final class Client implements ISynchAsynchConnection {
 
 	void send(Serializable snd) throws IOException {
 		synchronized (outputStreamLock) {
-			outputStream.writeObject(snd);
+			write(snd);
 			outputStream.flush();
-			if (resetCounter > this.maxmsgs) {
-				outputStream.reset();
-				resetCounter = 0;
-			} else
-				resetCounter++;
 		}
 	}
 
+	/**
+	 * Write the given message, which is the head of the queue, and then the messages queued
+	 * behind it up to {@link #DEFAULT_MAX_COALESCE}, with a single flush.
+	 */
+	private void sendQueued(Serializable first) throws IOException {
+		synchronized (outputStreamLock) {
+			Serializable snd = first;
+			int count = 0;
+			do {
+				write(snd);
+				queue.removeHead();
+				// Only the send thread removes messages, so the head cannot change between these calls
+				snd = (++count < DEFAULT_MAX_COALESCE && !queue.isEmpty()) ? (Serializable) queue.peekQueue() : null;
+			} while (snd != null);
+			outputStream.flush();
+		}
+	}
+
+	private void write(Serializable snd) throws IOException {
+		if (codec == null)
+			writeObject(snd);
+		else
+			writeFrame(snd);
+	}
+
+	private void writeObject(Serializable snd) throws IOException {
+		outputStream.writeObject(snd);
+		if (resetCounter > this.maxmsgs) {
+			outputStream.reset();
+			resetCounter = 0;
+		} else
+			resetCounter++;
+	}
+
+	/**
+	 * Write message as raw frame.  Byte array data is written as block data,
+	 * without being wrapped and serialized as an object.
+	 */
+	private void writeFrame(Serializable snd) throws IOException {
+		// SynchMessage extends AsynchMessage, so must be checked first
+		if (snd instanceof SynchMessage && ((SynchMessage) snd).getData() instanceof byte[])
+			writeFrame(FRAME_SYNCH, (byte[]) ((SynchMessage) snd).getData());
+		else if (snd instanceof AsynchMessage && ((AsynchMessage) snd).getData() instanceof byte[])
+			writeFrame(FRAME_ASYNCH, (byte[]) ((AsynchMessage) snd).getData());
+		else if (snd instanceof AsynchMessage && ((AsynchMessage) snd).getData() instanceof byte[][])
+			writeFrame(FRAME_ASYNCH, (byte[][]) ((AsynchMessage) snd).getData());
+		else if (snd instanceof PingMessage)
+			outputStream.writeByte(FRAME_PING);
+		else if (snd instanceof PingResponseMessage)
+			outputStream.writeByte(FRAME_PING_RESP);
+		else {
+			outputStream.writeByte(FRAME_OBJECT);
+			writeObject(snd);
+		}
+	}
+
+	private void writeFrame(byte type, byte[] data) throws IOException {
+		outputStream.writeByte(type);
+		outputStream.writeInt(data.length);
+		outputStream.write(data);
+	}
+
+	private void writeFrame(byte type, byte[][] parts) throws IOException {
+		int length = 0;
+		for (int i = 0; i < parts.length; i++)
+			length += parts[i].length;
+		outputStream.writeByte(type);
+		outputStream.writeInt(length);
+		for (int i = 0; i < parts.length; i++)
+			outputStream.write(parts[i]);
+	}
+
 	private void handlePingResp() {
 		synchronized (pingLock) {
 			waitForPing = false;
@@ -501,10 +654,73 @@ public final class Client implements ISynchAsynchConnection {
 		queueObject(recipient, (Serializable) obj);
 	}
 
-	public synchronized void queueObject(ID recipient, Serializable obj) throws IOException {
+	/**
+	 * @since 4.10
+	 */
+	public void sendAsynch(ID recipient, byte[] header, byte[] body) throws IOException {
+		if (codec == null) {
+			// Without frames, the receiver expects a single byte array
+			final byte[] data = new byte[header.length + body.length];
+			System.arraycopy(header, 0, data, 0, header.length);
+			System.arraycopy(body, 0, data, header.length, body.length);
+			queueObject(recipient, data);
+		} else
+			// Parts are written as one frame by the sender thread
+			queueObject(recipient, new byte[][] {header, body});
+	}
+
+	public void queueObject(ID recipient, Serializable obj) throws IOException {
 		if (queue.isStopped() || isClosing)
 			throw new ConnectException("Not connected"); //$NON-NLS-1$
-		queue.enqueue(new AsynchMessage(obj));
+		// Not synchronized on this client, as the queue may block until the send thread has drained it
+		final boolean added = (queue instanceof BoundedSendQueue) ? ((BoundedSendQueue) queue).put(new AsynchMessage(obj)) : queue.enqueue(new AsynchMessage(obj));
+		if (!added)
+			throw new ConnectException("Not connected"); //$NON-NLS-1$
+	}
+
+	/**
+	 * Set the send queue watermarks and whether senders block when the queue is full, from
+	 * the {@link #SEND_QUEUE_HIGH_WATERMARK_PROP}, {@link #SEND_QUEUE_LOW_WATERMARK_PROP} and
+	 * {@link #SEND_QUEUE_BLOCK_PROP} properties.  Missing properties are set to their defaults.
+	 *
+	 * @param props the properties, typically the container config properties.  May be <code>null</code>.
+	 * @since 4.10
+	 */
+	public void setSendQueueProperties(Map props) {
+		if (queue instanceof BoundedSendQueue)
+			((BoundedSendQueue) queue).configure(getIntProperty(props, SEND_QUEUE_HIGH_WATERMARK_PROP, DEFAULT_SEND_QUEUE_HIGH_WATERMARK), getIntProperty(props, SEND_QUEUE_LOW_WATERMARK_PROP, DEFAULT_SEND_QUEUE_LOW_WATERMARK), getBooleanProperty(props, SEND_QUEUE_BLOCK_PROP, DEFAULT_SEND_QUEUE_BLOCK));
+	}
+
+	/**
+	 * Configure the send queue of a connection accepted by a server.  A server fans messages out to all members
+	 * while it holds the group membership lock, so by default it does not block on the full send queue of a
+	 * slow member.
+	 *
+	 * @param props the container config properties.  May be <code>null</code>.
+	 * @see #SERVER_SEND_QUEUE_BLOCK_PROP
+	 * @since 4.10
+	 */
+	public void setServerSendQueueProperties(Map props) {
+		if (queue instanceof BoundedSendQueue)
+			((BoundedSendQueue) queue).configure(getIntProperty(props, SEND_QUEUE_HIGH_WATERMARK_PROP, DEFAULT_SEND_QUEUE_HIGH_WATERMARK), getIntProperty(props, SEND_QUEUE_LOW_WATERMARK_PROP, DEFAULT_SEND_QUEUE_LOW_WATERMARK), getBooleanProperty(props, SERVER_SEND_QUEUE_BLOCK_PROP, DEFAULT_SERVER_SEND_QUEUE_BLOCK));
+	}
+
+	private static int getIntProperty(Map props, String key, int def) {
+		final Object val = (props == null) ? null : props.get(key);
+		if (val instanceof Number)
+			return ((Number) val).intValue();
+		if (val instanceof String)
+			return Integer.parseInt((String) val);
+		return def;
+	}
+
+	private static boolean getBooleanProperty(Map props, String key, boolean def) {
+		final Object val = (props == null) ? null : props.get(key);
+		if (val instanceof Boolean)
+			return ((Boolean) val).booleanValue();
+		if (val instanceof String)
+			return Boolean.valueOf((String) val).booleanValue();
+		return def;
 	}
 
 	public synchronized Serializable sendObject(ID recipient, Serializable obj) throws IOException {
@@ -523,6 +739,39 @@ public final class Client implements ISynchAsynchConnection {
 	}
 
 	Serializable readObject() throws IOException {
+		if (codec != null)
+			return readFrame();
+		return readJavaObject();
+	}
+
+	private Serializable readFrame() throws IOException {
+		final byte type = inputStream.readByte();
+		switch (type) {
+			case FRAME_ASYNCH :
+				return new AsynchMessage(readFrameData());
+			case FRAME_SYNCH :
+				return new SynchMessage(readFrameData());
+			case FRAME_PING :
+				return ping;
+			case FRAME_PING_RESP :
+				return pingResp;
+			case FRAME_OBJECT :
+				return readJavaObject();
+			default :
+				throw new IOException("Invalid frame type=" + type); //$NON-NLS-1$
+		}
+	}
+
+	private byte[] readFrameData() throws IOException {
+		final int length = inputStream.readInt();
+		if (length < 0 || length > DEFAULT_MAX_FRAME_SIZE)
+			throw new IOException("Invalid frame length=" + length); //$NON-NLS-1$
+		final byte[] data = new byte[length];
+		inputStream.readFully(data);
+		return data;
+	}
+
+	private Serializable readJavaObject() throws IOException {
 		Serializable ret = null;
 		try {
 			ret = (Serializable) inputStream.readObject();
@@ -535,7 +784,15 @@ public final class Client implements ISynchAsynchConnection {
 		return ret;
 	}
 
+	@SuppressWarnings("unchecked")
 	public Map getProperties() {
+		if (queue instanceof BoundedSendQueue) {
+			final BoundedSendQueue q = (BoundedSendQueue) queue;
+			properties.put(SEND_QUEUE_SIZE, Integer.valueOf(q.size()));
+			properties.put(SEND_QUEUE_BYTES, Long.valueOf(q.getBytes()));
+			properties.put(SEND_QUEUE_BLOCKED, Long.valueOf(q.getBlockedCount()));
+			properties.put(SEND_QUEUE_DROPPED, Long.valueOf(q.getDroppedCount()));
+		}
 		return properties;
 	}
 
@@ -560,6 +817,20 @@ public final class Client implements ISynchAsynchConnection {
 		this.properties = props;
 	}
 
+	/**
+	 * @since 4.10
+	 */
+	public void setCodec(String codec) {
+		this.codec = codec;
+	}
+
+	/**
+	 * @since 4.10
+	 */
+	public String getCodec() {
+		return codec;
+	}
+
 	/**
 	 * @return Object the output stream lock
 	 * @since 4.6
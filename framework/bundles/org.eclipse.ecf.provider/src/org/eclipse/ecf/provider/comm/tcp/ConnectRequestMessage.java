@@ -20,12 +20,24 @@ public class ConnectRequestMessage implements Serializable {
 	private static final long serialVersionUID = 3257844363974226229L;
 	URI target;
 	Serializable data;
+	String codec;
 
 	public ConnectRequestMessage(URI target, Serializable data) {
 		this.target = target;
 		this.data = data;
 	}
 
+	/**
+	 * @param target target
+	 * @param data data
+	 * @param codec the codec requested for messages following the connect.  May be <code>null</code>.
+	 * @since 4.10
+	 */
+	public ConnectRequestMessage(URI target, Serializable data, String codec) {
+		this(target, data);
+		this.codec = codec;
+	}
+
 	public URI getTarget() {
 		return target;
 	}
@@ -34,9 +46,21 @@ public class ConnectRequestMessage implements Serializable {
 		return data;
 	}
 
+	/**
+	 * @return String the requested codec.  <code>null</code> if no codec requested, or if
+	 * sent by a version that does not support codecs.
+	 * @since 4.10
+	 */
+	public String getCodec() {
+		return codec;
+	}
+
 	public String toString() {
 		StringBuffer buf = new StringBuffer("ConnectRequestMessage["); //$NON-NLS-1$
-		buf.append(target).append(";").append(data).append("]"); //$NON-NLS-1$ //$NON-NLS-2$
+		buf.append(target).append(";").append(data); //$NON-NLS-1$
+		if (codec != null)
+			buf.append(";").append(codec); //$NON-NLS-1$
+		buf.append("]"); //$NON-NLS-1$
 		return buf.toString();
 	}
 }
\ No newline at end of file
@@ -18,18 +18,40 @@ import java.io.Serializable;
 public class ConnectResultMessage implements Serializable {
 	private static final long serialVersionUID = 3833188038300938804L;
 	Serializable data;
+	String codec;
 
 	public ConnectResultMessage(Serializable data) {
 		this.data = data;
 	}
 
+	/**
+	 * @param data data
+	 * @param codec the accepted codec.  <code>null</code> if the requested codec was not accepted.
+	 * @since 4.10
+	 */
+	public ConnectResultMessage(Serializable data, String codec) {
+		this(data);
+		this.codec = codec;
+	}
+
 	public Serializable getData() {
 		return data;
 	}
 
+	/**
+	 * @return String the accepted codec.  <code>null</code> if no codec was accepted.
+	 * @since 4.10
+	 */
+	public String getCodec() {
+		return codec;
+	}
+
 	public String toString() {
 		StringBuffer buf = new StringBuffer("ConnectResultMessage["); //$NON-NLS-1$
-		buf.append(data).append("]"); //$NON-NLS-1$
+		buf.append(data);
+		if (codec != null)
+			buf.append(";").append(codec); //$NON-NLS-1$
+		buf.append("]"); //$NON-NLS-1$
 		return buf.toString();
 	}
 }
\ No newline at end of file
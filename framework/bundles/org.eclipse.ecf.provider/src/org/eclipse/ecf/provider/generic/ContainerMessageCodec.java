@@ -0,0 +1,349 @@
+/****************************************************************************
+ * Copyright (c) 2026 Composent, Inc. and others.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * Contributors:
+ *    Composent, Inc. - initial API and implementation
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *****************************************************************************/
+package org.eclipse.ecf.provider.generic;
+
+import java.io.*;
+import org.eclipse.ecf.core.identity.*;
+import org.eclipse.ecf.internal.provider.ProviderPlugin;
+import org.eclipse.ecf.provider.comm.ICodecConnection;
+import org.eclipse.ecf.provider.comm.IConnection;
+
+/**
+ * Binary encoding of {@link ContainerMessage} and its inner message types.  An encoded
+ * message is a fixed header (magic, version, sequence, from and to container ids) followed by
+ * a body (type tag and the fields of the inner message).  Byte array data, such as the
+ * serialized shared object message carried by {@link ContainerMessage.SharedObjectMessage},
+ * is written once as raw bytes rather than through nested object streams.  Ids of
+ * type {@link StringID} and {@link GUID} in their default namespaces are written by name, and other ids and data values
+ * fall back to java serialization.
+ * <p>
+ * Encoded messages start with a byte that can not start a java serialization stream, so
+ * {@link #isEncoded(byte[])} distinguishes them from messages created by {@link SOContainer#serialize(Serializable)}.
+ * </p>
+ *
+ * @since 4.10
+ */
+public final class ContainerMessageCodec {
+
+	/**
+	 * Codec identifier negotiated in ConnectRequestMessage/ConnectResultMessage.
+	 */
+	public static final String CODEC_ID = "ecf.generic.binary.1"; //$NON-NLS-1$
+
+	/**
+	 * If <code>true</code> (default), generic tcp and nio connections request and accept use of this codec.
+	 */
+	public static final boolean DEFAULT_ENABLED = Boolean.valueOf(System.getProperty("org.eclipse.ecf.provider.generic.binarycodec", "true")).booleanValue(); //$NON-NLS-1$ //$NON-NLS-2$
+
+	static final byte MAGIC = (byte) 0xEC;
+	static final byte VERSION = 1;
+
+	static final byte TYPE_OTHER = 0;
+	static final byte TYPE_VIEW_CHANGE = 1;
+	static final byte TYPE_CREATE = 2;
+	static final byte TYPE_CREATE_RESPONSE = 3;
+	static final byte TYPE_SHARED_OBJECT = 4;
+	static final byte TYPE_SHARED_OBJECT_DISPOSE = 5;
+	static final byte TYPE_JOIN_GROUP = 6;
+	static final byte TYPE_LEAVE_GROUP = 7;
+
+	private static final byte ID_NULL = 0;
+	private static final byte ID_STRING = 1;
+	private static final byte ID_GUID = 2;
+	private static final byte ID_SERIALIZED = 3;
+
+	private static final byte DATA_NULL = 0;
+	private static final byte DATA_BYTES = 1;
+	private static final byte DATA_SERIALIZED = 2;
+
+	// ids with longer names are serialized, to stay within the writeUTF limit
+	private static final int MAX_UTF_ID_LENGTH = 16384;
+
+	private ContainerMessageCodec() {
+		// no instances
+	}
+
+	/**
+	 * @param codec a codec identifier.  May be <code>null</code>.
+	 * @return boolean <code>true</code> if the given codec is this codec, and the codec is enabled
+	 */
+	public static boolean isSupported(String codec) {
+		return DEFAULT_ENABLED && CODEC_ID.equals(codec);
+	}
+
+	/**
+	 * @param bytes message bytes.  May be <code>null</code>.
+	 * @return boolean <code>true</code> if bytes were created by {@link #encode(ContainerMessage)}
+	 */
+	public static boolean isEncoded(byte[] bytes) {
+		return bytes != null && bytes.length > 1 && bytes[0] == MAGIC;
+	}
+
+	/**
+	 * @param message the message to encode.  Must not be <code>null</code>.
+	 * @return byte[] the encoded message
+	 * @throws IOException if some data in the message cannot be serialized
+	 */
+	public static byte[] encode(ContainerMessage message) throws IOException {
+		final Serializable data = message.getData();
+		final ByteArrayOutputStream bos = new ByteArrayOutputStream(64 + ((data instanceof ContainerMessage.SharedObjectMessage) ? estimateSize(((ContainerMessage.SharedObjectMessage) data).getData()) : 0));
+		final DataOutputStream out = new DataOutputStream(bos);
+		writeHeader(out, message.getFromContainerID(), message.getToContainerID(), message.getSequence());
+		writeBody(out, data);
+		out.flush();
+		return bos.toByteArray();
+	}
+
+	/**
+	 * Encode the header of a message.  The header followed by the bytes from {@link #encodeBody(Serializable)}
+	 * is the same as the bytes from {@link #encode(ContainerMessage)}, so a body can be encoded once and
+	 * sent to many recipients, each with its own header.
+	 *
+	 * @param from the from container id.  May be <code>null</code>.
+	 * @param to the to container id.  May be <code>null</code>.
+	 * @param sequence the message sequence
+	 * @return byte[] the encoded header
+	 * @throws IOException if some id cannot be serialized
+	 */
+	public static byte[] encodeHeader(ID from, ID to, long sequence) throws IOException {
+		final ByteArrayOutputStream bos = new ByteArrayOutputStream(64);
+		final DataOutputStream out = new DataOutputStream(bos);
+		writeHeader(out, from, to, sequence);
+		out.flush();
+		return bos.toByteArray();
+	}
+
+	/**
+	 * Encode the body of a message.
+	 *
+	 * @param data the container message data.  May be <code>null</code>.
+	 * @return byte[] the encoded body
+	 * @throws IOException if some data cannot be serialized
+	 * @see #encodeHeader(ID, ID, long)
+	 */
+	public static byte[] encodeBody(Serializable data) throws IOException {
+		final ByteArrayOutputStream bos = new ByteArrayOutputStream(16 + ((data instanceof ContainerMessage.SharedObjectMessage) ? estimateSize(((ContainerMessage.SharedObjectMessage) data).getData()) : 0));
+		final DataOutputStream out = new DataOutputStream(bos);
+		writeBody(out, data);
+		out.flush();
+		return bos.toByteArray();
+	}
+
+	/**
+	 * @param conn a connection.  May be <code>null</code>.
+	 * @return boolean <code>true</code> if the connection has negotiated use of this codec
+	 */
+	static boolean isCodecConnection(IConnection conn) {
+		return conn instanceof ICodecConnection && CODEC_ID.equals(((ICodecConnection) conn).getCodec());
+	}
+
+	/**
+	 * @param bytes bytes created by {@link #encode(ContainerMessage)}.  Must not be <code>null</code>.
+	 * @return ContainerMessage the decoded message.  Will not be <code>null</code>.
+	 * @throws IOException if bytes are not a valid encoded message
+	 * @throws ClassNotFoundException if a class of some serialized data cannot be loaded
+	 */
+	public static ContainerMessage decode(byte[] bytes) throws IOException, ClassNotFoundException {
+		final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+		if (in.readByte() != MAGIC)
+			throw new InvalidObjectException("Not an encoded container message"); //$NON-NLS-1$
+		final byte version = in.readByte();
+		if (version != VERSION)
+			throw new InvalidObjectException("Unsupported container message version=" + version); //$NON-NLS-1$
+		final long sequence = in.readLong();
+		final ID from = readID(in);
+		final ID to = readID(in);
+		return new ContainerMessage(from, to, sequence, readBody(in));
+	}
+
+	static void writeHeader(DataOutputStream out, ID from, ID to, long sequence) throws IOException {
+		out.writeByte(MAGIC);
+		out.writeByte(VERSION);
+		out.writeLong(sequence);
+		writeID(out, from);
+		writeID(out, to);
+	}
+
+	static void writeBody(DataOutputStream out, Serializable data) throws IOException {
+		if (data instanceof ContainerMessage.SharedObjectMessage) {
+			final ContainerMessage.SharedObjectMessage m = (ContainerMessage.SharedObjectMessage) data;
+			out.writeByte(TYPE_SHARED_OBJECT);
+			writeID(out, m.getFromSharedObjectID());
+			writeData(out, m.getData());
+		} else if (data instanceof ContainerMessage.ViewChangeMessage) {
+			final ContainerMessage.ViewChangeMessage m = (ContainerMessage.ViewChangeMessage) data;
+			out.writeByte(TYPE_VIEW_CHANGE);
+			final ID[] ids = m.getChangeIDs();
+			out.writeInt((ids == null) ? -1 : ids.length);
+			if (ids != null)
+				for (int i = 0; i < ids.length; i++)
+					writeID(out, ids[i]);
+			out.writeBoolean(m.isAdd());
+			writeData(out, m.getData());
+		} else if (data instanceof ContainerMessage.CreateMessage) {
+			out.writeByte(TYPE_CREATE);
+			writeData(out, ((ContainerMessage.CreateMessage) data).getData());
+		} else if (data instanceof ContainerMessage.CreateResponseMessage) {
+			final ContainerMessage.CreateResponseMessage m = (ContainerMessage.CreateResponseMessage) data;
+			out.writeByte(TYPE_CREATE_RESPONSE);
+			writeID(out, m.getSharedObjectID());
+			writeData(out, m.getException());
+			out.writeLong(m.getSequence());
+		} else if (data instanceof ContainerMessage.SharedObjectDisposeMessage) {
+			out.writeByte(TYPE_SHARED_OBJECT_DISPOSE);
+			writeID(out, ((ContainerMessage.SharedObjectDisposeMessage) data).getSharedObjectID());
+		} else if (data instanceof ContainerMessage.JoinGroupMessage) {
+			out.writeByte(TYPE_JOIN_GROUP);
+			writeData(out, ((ContainerMessage.JoinGroupMessage) data).getData());
+		} else if (data instanceof ContainerMessage.LeaveGroupMessage) {
+			out.writeByte(TYPE_LEAVE_GROUP);
+			writeData(out, ((ContainerMessage.LeaveGroupMessage) data).getData());
+		} else {
+			out.writeByte(TYPE_OTHER);
+			writeData(out, data);
+		}
+	}
+
+	static Serializable readBody(DataInputStream in) throws IOException, ClassNotFoundException {
+		final byte type = in.readByte();
+		switch (type) {
+			case TYPE_SHARED_OBJECT :
+				final ID fromSharedObject = readID(in);
+				return new ContainerMessage.SharedObjectMessage(fromSharedObject, readData(in));
+			case TYPE_VIEW_CHANGE :
+				final int count = in.readInt();
+				ID[] ids = null;
+				if (count >= 0) {
+					ids = new ID[count];
+					for (int i = 0; i < count; i++)
+						ids[i] = readID(in);
+				}
+				final boolean add = in.readBoolean();
+				return new ContainerMessage.ViewChangeMessage(ids, add, readData(in));
+			case TYPE_CREATE :
+				return new ContainerMessage.CreateMessage(readData(in));
+			case TYPE_CREATE_RESPONSE :
+				final ID sharedObjectID = readID(in);
+				final Throwable exception = (Throwable) readData(in);
+				return new ContainerMessage.CreateResponseMessage(sharedObjectID, exception, in.readLong());
+			case TYPE_SHARED_OBJECT_DISPOSE :
+				return new ContainerMessage.SharedObjectDisposeMessage(readID(in));
+			case TYPE_JOIN_GROUP :
+				return new ContainerMessage.JoinGroupMessage(readData(in));
+			case TYPE_LEAVE_GROUP :
+				return new ContainerMessage.LeaveGroupMessage(readData(in));
+			case TYPE_OTHER :
+				return readData(in);
+			default :
+				throw new InvalidObjectException("Invalid container message type=" + type); //$NON-NLS-1$
+		}
+	}
+
+	static void writeID(DataOutputStream out, ID id) throws IOException {
+		if (id == null)
+			out.writeByte(ID_NULL);
+		else if (id.getClass() == StringID.class && isDefaultNamespace(id, StringID.class) && id.getName().length() <= MAX_UTF_ID_LENGTH) {
+			out.writeByte(ID_STRING);
+			out.writeUTF(id.getName());
+		} else if (id.getClass() == GUID.class && isDefaultNamespace(id, GUID.class) && id.getName().length() <= MAX_UTF_ID_LENGTH) {
+			out.writeByte(ID_GUID);
+			out.writeUTF(id.getName());
+		} else {
+			out.writeByte(ID_SERIALIZED);
+			writeBytes(out, SOContainer.serialize(id));
+		}
+	}
+
+	/**
+	 * The compact forms are read back in the namespace that IDFactory registers for the id class,
+	 * so ids created in any other namespace have to be serialized to keep their namespace.
+	 */
+	private static boolean isDefaultNamespace(ID id, Class idClass) {
+		final Namespace namespace = id.getNamespace();
+		return namespace != null && idClass.getName().equals(namespace.getName());
+	}
+
+	static ID readID(DataInputStream in) throws IOException, ClassNotFoundException {
+		final byte type = in.readByte();
+		switch (type) {
+			case ID_NULL :
+				return null;
+			case ID_STRING :
+				return IDFactory.getDefault().createStringID(in.readUTF());
+			case ID_GUID :
+				return IDFactory.getDefault().createID(GUID.class.getName(), new Object[] {in.readUTF()});
+			case ID_SERIALIZED :
+				final Object o = deserialize(readBytes(in));
+				if (o == null || o instanceof ID)
+					return (ID) o;
+				throw new InvalidObjectException("Invalid id=" + o); //$NON-NLS-1$
+			default :
+				throw new InvalidObjectException("Invalid id type=" + type); //$NON-NLS-1$
+		}
+	}
+
+	static void writeData(DataOutputStream out, Object data) throws IOException {
+		if (data == null)
+			out.writeByte(DATA_NULL);
+		else if (data instanceof byte[]) {
+			out.writeByte(DATA_BYTES);
+			writeBytes(out, (byte[]) data);
+		} else {
+			if (!(data instanceof Serializable))
+				throw new NotSerializableException(data.getClass().getName());
+			out.writeByte(DATA_SERIALIZED);
+			writeBytes(out, SOContainer.serialize((Serializable) data));
+		}
+	}
+
+	static Serializable readData(DataInputStream in) throws IOException, ClassNotFoundException {
+		final byte type = in.readByte();
+		switch (type) {
+			case DATA_NULL :
+				return null;
+			case DATA_BYTES :
+				return readBytes(in);
+			case DATA_SERIALIZED :
+				return (Serializable) deserialize(readBytes(in));
+			default :
+				throw new InvalidObjectException("Invalid data type=" + type); //$NON-NLS-1$
+		}
+	}
+
+	private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static byte[] readBytes(DataInputStream in) throws IOException {
+		final int length = in.readInt();
+		if (length < 0 || length > in.available())
+			throw new InvalidObjectException("Invalid data length=" + length); //$NON-NLS-1$
+		final byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return bytes;
+	}
+
+	private static Object deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+		final ObjectInputStream ois = ProviderPlugin.getDefault().createObjectInputStream(new ByteArrayInputStream(bytes));
+		try {
+			return ois.readObject();
+		} finally {
+			ois.close();
+		}
+	}
+
+	private static int estimateSize(Object data) {
+		return (data instanceof byte[]) ? ((byte[]) data).length + 8 : 0;
+	}
+}
@@ -48,6 +48,8 @@ public class GenericContainerInstantiator implements IContainerInstantiator, IRe
 
 	private static final String BINDADDRESS_PROP = "bindAddress"; //$NON-NLS-1$
 
+	private static final String NIO_PROP = "nio"; //$NON-NLS-1$
+
 	public GenericContainerInstantiator() {
 		super();
 	}
@@ -84,10 +86,28 @@ public class GenericContainerInstantiator implements IContainerInstantiator, IRe
 			throw new IllegalArgumentException("arg=" + arg + " is not of integer type"); //$NON-NLS-1$ //$NON-NLS-2$
 	}
 
+	/**
+	 * @param arg argument
+	 * @param defaultValue value to return if arg is <code>null</code>
+	 * @return boolean the boolean value of arg
+	 * @since 4.10
+	 */
+	protected boolean getBooleanFromArg(Object arg, boolean defaultValue) {
+		if (arg == null)
+			return defaultValue;
+		if (arg instanceof Boolean)
+			return ((Boolean) arg).booleanValue();
+		else if (arg instanceof String)
+			return Boolean.valueOf((String) arg).booleanValue();
+		else
+			throw new IllegalArgumentException("arg=" + arg + " is not of boolean type"); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
 	protected class GenericContainerArgs {
 		ID id;
 		Integer keepAlive;
 		InetAddress bindAddress;
+		boolean nio = TCPServerSOContainer.DEFAULT_NIO;
 
 		public GenericContainerArgs(ID id, Integer keepAlive) {
 			this.id = id;
@@ -100,6 +120,18 @@ public class GenericContainerInstantiator implements IContainerInstantiator, IRe
 			this.bindAddress = bindAddress;
 		}
 
+		/**
+		 * @param id id
+		 * @param keepAlive keep alive
+		 * @param bindAddress bind address.  May be <code>null</code>
+		 * @param nio <code>true</code> to use the nio transport
+		 * @since 4.10
+		 */
+		public GenericContainerArgs(ID id, Integer keepAlive, InetAddress bindAddress, boolean nio) {
+			this(id, keepAlive, bindAddress);
+			this.nio = nio;
+		}
+
 		public ID getID() {
 			return id;
 		}
@@ -115,6 +147,14 @@ public class GenericContainerInstantiator implements IContainerInstantiator, IRe
 		public InetAddress getBindAddress() {
 			return bindAddress;
 		}
+
+		/**
+		 * @return boolean <code>true</code> if the nio transport is to be used
+		 * @since 4.10
+		 */
+		public boolean isNIO() {
+			return nio;
+		}
 	}
 
 	/**
@@ -126,6 +166,7 @@ public class GenericContainerInstantiator implements IContainerInstantiator, IRe
 	protected GenericContainerArgs getClientArgs(Object[] args) throws IDCreateException {
 		ID newID = null;
 		Integer ka = null;
+		boolean nio = TCPServerSOContainer.DEFAULT_NIO;
 		if (args != null && args.length > 0) {
 			if (args[0] instanceof Map) {
 				Map map = (Map) args[0];
@@ -138,6 +179,7 @@ public class GenericContainerInstantiator implements IContainerInstantiator, IRe
 				if (o == null)
 					o = map.get(KEEPALIVE_PROP.toLowerCase());
 				ka = getIntegerFromArg(o);
+				nio = getBooleanFromArg(map.get(NIO_PROP), nio);
 			} else if (args.length > 1) {
 				if (args[0] instanceof String || args[0] instanceof ID)
 					newID = getIDFromArg(args[0]);
@@ -150,7 +192,7 @@ public class GenericContainerInstantiator implements IContainerInstantiator, IRe
 			newID = IDFactory.getDefault().createStringID(IDFactory.getDefault().createGUID().getName());
 		if (ka == null)
 			ka = Integer.valueOf(TCPServerSOContainer.DEFAULT_KEEPALIVE);
-		return new GenericContainerArgs(newID, ka);
+		return new GenericContainerArgs(newID, ka, null, nio);
 	}
 
 	protected boolean isClient(ContainerTypeDescription description) {
@@ -170,6 +212,7 @@ public class GenericContainerInstantiator implements IContainerInstantiator, IRe
 		ID newID = null;
 		Integer ka = null;
 		InetAddress bindAddress = null;
+		boolean nio = TCPServerSOContainer.DEFAULT_NIO;
 		boolean privateIntent = false;
 		if (args != null && args.length > 0) {
 			if (args[0] instanceof Map) {
@@ -212,6 +255,7 @@ public class GenericContainerInstantiator implements IContainerInstantiator, IRe
 				if (o == null)
 					o = map.get(KEEPALIVE_PROP.toLowerCase());
 				ka = getIntegerFromArg(o);
+				nio = getBooleanFromArg(map.get(NIO_PROP), nio);
 				// Get private intent if present
 				privateIntent = ContainerInstantiatorUtils.containsPrivateIntent(map);
 
@@ -234,7 +278,7 @@ public class GenericContainerInstantiator implements IContainerInstantiator, IRe
 		if (privateIntent)
 			ContainerInstantiatorUtils.checkPrivate(newID);
 
-		return new GenericContainerArgs(newID, ka, bindAddress);
+		return new GenericContainerArgs(newID, ka, bindAddress, nio);
 	}
 
 	private ID createTCPServerID(String hostname, int port, String path) {
@@ -293,7 +337,7 @@ public class GenericContainerInstantiator implements IContainerInstantiator, IRe
 	 * @since 4.5
 	 */
 	protected IContainer createClientContainer(GenericContainerArgs gcargs) throws Exception {
-		return new TCPClientSOContainer(new SOContainerConfig(gcargs.getID()), gcargs.getKeepAlive().intValue());
+		return new TCPClientSOContainer(new SOContainerConfig(gcargs.getID()), gcargs.getKeepAlive().intValue(), gcargs.isNIO());
 	}
 
 	/**
@@ -303,7 +347,7 @@ public class GenericContainerInstantiator implements IContainerInstantiator, IRe
 	 * @since 4.5
 	 */
 	protected IContainer createServerContainer(GenericContainerArgs gcargs) throws Exception {
-		return new TCPServerSOContainer(new SOContainerConfig(gcargs.getID()), gcargs.getBindAddress(), gcargs.getKeepAlive().intValue());
+		return new TCPServerSOContainer(new SOContainerConfig(gcargs.getID()), gcargs.getBindAddress(), gcargs.getKeepAlive().intValue(), gcargs.isNIO());
 	}
 
 	public IContainer createInstance(ContainerTypeDescription description, Object[] args) throws ContainerCreateException {
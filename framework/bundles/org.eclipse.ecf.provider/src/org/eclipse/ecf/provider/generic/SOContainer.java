@@ -489,6 +489,36 @@ public abstract class SOContainer extends AbstractContainer implements ISharedOb
 		return bos.toByteArray();
 	}
 
+	/**
+	 * Serialize a container message for sending on the given connection.  If the connection
+	 * has negotiated the {@link ContainerMessageCodec}, the message is encoded with the codec.
+	 * Otherwise it is java serialized via {@link #serialize(Serializable)}.
+	 *
+	 * @param conn the connection the message will be sent on.  May be <code>null</code>.
+	 * @param message the message to serialize.  Must not be <code>null</code>.
+	 * @return byte[] the serialized message
+	 * @throws IOException if the message cannot be serialized
+	 * @since 4.10
+	 */
+	protected byte[] serializeContainerMessage(IConnection conn, ContainerMessage message) throws IOException {
+		if (ContainerMessageCodec.isCodecConnection(conn))
+			return ContainerMessageCodec.encode(message);
+		return serialize(message);
+	}
+
+	/**
+	 * Encode the data of a container message once, for sending to all connections that use
+	 * the {@link ContainerMessageCodec} with their own message header.
+	 *
+	 * @param data the container message data.  May be <code>null</code>.
+	 * @return byte[] the encoded data
+	 * @throws IOException if data cannot be encoded
+	 * @since 4.10
+	 */
+	protected byte[] encodeContainerMessageBody(Serializable data) throws IOException {
+		return ContainerMessageCodec.encodeBody(data);
+	}
+
 	protected ClassLoader getClassLoaderForContainer() {
 		// Use classloader from SOContainer class (and buddy's as specified
 		// by ECF generic provider plugin org.eclipse.ecf.provider's buddy
@@ -525,12 +555,14 @@ public abstract class SOContainer extends AbstractContainer implements ISharedOb
 	}
 
 	public static ContainerMessage deserializeContainerMessage(byte[] bytes) throws IOException {
-		final ByteArrayInputStream bis = new ByteArrayInputStream(bytes);
-
-		final ObjectInputStream ois = ProviderPlugin.getDefault().createObjectInputStream(bis);
 		Object obj = null;
 		try {
-			obj = ois.readObject();
+			if (ContainerMessageCodec.isEncoded(bytes))
+				obj = ContainerMessageCodec.decode(bytes);
+			else {
+				final ObjectInputStream ois = ProviderPlugin.getDefault().createObjectInputStream(new ByteArrayInputStream(bytes));
+				obj = ois.readObject();
+			}
 		} catch (final ClassNotFoundException e) {
 			ProviderPlugin.getDefault().log(new Status(IStatus.ERROR, ProviderPlugin.PLUGIN_ID, "class not found on deserialize", e)); //$NON-NLS-1$
 			printToSystemError("deserializeContainerMessage class not found", e); //$NON-NLS-1$
@@ -19,9 +19,11 @@ import java.net.URI;
 import java.util.*;
 import org.eclipse.ecf.internal.provider.ProviderPlugin;
 import org.eclipse.ecf.provider.comm.IConnectRequestHandler;
+import org.eclipse.ecf.provider.comm.nio.INIOAcceptHandler;
+import org.eclipse.ecf.provider.comm.nio.NIOClient;
 import org.eclipse.ecf.provider.comm.tcp.*;
 
-public class SOContainerGroup implements ISocketAcceptHandler {
+public class SOContainerGroup implements ISocketAcceptHandler, INIOAcceptHandler {
 
 	/**
 	 * @since 4.7
@@ -76,7 +78,8 @@ public class SOContainerGroup implements ISocketAcceptHandler {
 	 * @since 4.7
 	 */
 	protected ObjectOutputStream createObjectOutputStream(Socket aSocket) throws IOException {
-		return new ObjectOutputStream(aSocket.getOutputStream());
+		// Buffered, so messages coalesced by the client send thread are written together
+		return new ObjectOutputStream(new BufferedOutputStream(aSocket.getOutputStream()));
 	}
 
 	/**
@@ -103,6 +106,46 @@ public class SOContainerGroup implements ISocketAcceptHandler {
 		return req;
 	}
 
+	/**
+	 * @param req connect request message.  Will not be <code>null</code>
+	 * @return String the path of the connect request target
+	 * @throws InvalidObjectException if the connect request target is invalid
+	 * @since 4.10
+	 */
+	protected String getTargetPath(ConnectRequestMessage req) throws InvalidObjectException {
+		final URI uri = req.getTarget();
+		if (uri == null)
+			throw new InvalidObjectException(INVALID_CONNECT + " URI connect target cannot be null"); //$NON-NLS-1$
+		final String path = uri.getPath();
+		if (path == null)
+			throw new InvalidObjectException(INVALID_CONNECT + " Path cannot be null"); //$NON-NLS-1$
+		return path;
+	}
+
+	/**
+	 * @param path the connect request target path
+	 * @return SOContainer the container in this group for the given path
+	 * @throws InvalidObjectException if there is no container for the given path
+	 * @since 4.10
+	 */
+	protected SOContainer getTargetContainer(String path) throws InvalidObjectException {
+		final SOContainer srs = get(path);
+		if (srs == null)
+			throw new InvalidObjectException("Container not found for path=" + path); //$NON-NLS-1$
+		return srs;
+	}
+
+	/**
+	 * @param req connect request message.  Will not be <code>null</code>
+	 * @return String the codec to use for the new connection, or <code>null</code> if the
+	 * codec requested by the client is not supported
+	 * @since 4.10
+	 */
+	protected String selectCodec(ConnectRequestMessage req) {
+		final String codec = req.getCodec();
+		return ContainerMessageCodec.isSupported(codec) ? codec : null;
+	}
+
 	/**
 	 * @param aSocket socket
 	 * @since 4.7
@@ -117,20 +160,15 @@ public class SOContainerGroup implements ISocketAcceptHandler {
 
 		final ConnectRequestMessage req = readConnectRequestMessage(iStream);
 
-		final URI uri = req.getTarget();
-		if (uri == null)
-			throw new InvalidObjectException(INVALID_CONNECT + " URI connect target cannot be null"); //$NON-NLS-1$
-		final String path = uri.getPath();
-		if (path == null)
-			throw new InvalidObjectException(INVALID_CONNECT + " Path cannot be null"); //$NON-NLS-1$
-
+		final String path = getTargetPath(req);
 		// Given path, lookup associated container
-		final SOContainer srs = get(path);
-		if (srs == null)
-			throw new InvalidObjectException("Container not found for path=" + path); //$NON-NLS-1$
+		final SOContainer srs = getTargetContainer(path);
 
 		// Create our local messaging interface
 		final Client newClient = new Client(aSocket, iStream, oStream, srs.getMessageReceiver());
+		newClient.setServerSendQueueProperties(srs.getConfig().getProperties());
+		// Set codec before the connect request handler starts the client
+		newClient.setCodec(selectCodec(req));
 		// Get output stream lock so nothing is sent until we've responded
 		Object outputStreamLock = newClient.getOutputStreamLock();
 		// No other threads can access messaging interface until connect request handler has
@@ -139,9 +177,25 @@ public class SOContainerGroup implements ISocketAcceptHandler {
 			// Call checkConnect
 			final Serializable resp = ((IConnectRequestHandler) srs).handleConnectRequest(aSocket, path, req.getData(), newClient);
 			// Create connect response wrapper and send it back
-			oStream.writeObject(new ConnectResultMessage(resp));
+			oStream.writeObject(new ConnectResultMessage(resp, newClient.getCodec()));
 			oStream.flush();
 		}
 	}
 
+	/**
+	 * @param client the accepted nio connection
+	 * @param req the connect request read from the client
+	 * @since 4.10
+	 */
+	public Serializable handleAccept(NIOClient client, ConnectRequestMessage req) throws Exception {
+		final String path = getTargetPath(req);
+		// Given path, lookup associated container
+		final SOContainer srs = getTargetContainer(path);
+		client.setEventHandler(srs.getMessageReceiver());
+		client.setCodec(selectCodec(req));
+		// The client does not send anything until the connect request handler has
+		// accepted or rejected connect request, and the response is queued
+		return ((IConnectRequestHandler) srs).handleConnectRequest(client.getSocket(), path, req.getData(), client);
+	}
+
 }
\ No newline at end of file
@@ -76,7 +76,7 @@ public class ServerSOContainer extends SOContainer implements ISharedObjectConta
 			if (conn == null)
 				return;
 			try {
-				conn.sendSynch(memberID, serialize(ContainerMessage.createLeaveGroupMessage(getID(), memberID, getNextSequenceNumber(), reason)));
+				conn.sendSynch(memberID, serializeContainerMessage(conn, ContainerMessage.createLeaveGroupMessage(getID(), memberID, getNextSequenceNumber(), reason)));
 			} catch (final Exception e) {
 				traceStack("Exception in ejectGroupMember.sendAsynch()", e); //$NON-NLS-1$
 			}
@@ -139,7 +139,7 @@ public class ServerSOContainer extends SOContainer implements ISharedObjectConta
 		} else {
 			final IAsynchConnection conn = getConnectionForID(message.getToContainerID());
 			if (conn != null)
-				conn.sendAsynch(message.getToContainerID(), serialize(message));
+				conn.sendAsynch(message.getToContainerID(), serializeContainerMessage(conn, message));
 		}
 	}
 
@@ -151,6 +151,10 @@ public class ServerSOContainer extends SOContainer implements ISharedObjectConta
 		if (excluding == null) {
 			queueContainerMessage(new ContainerMessage(from, null, getNextSequenceNumber(), data.getData()));
 		} else {
+			final Serializable payload = data.getData();
+			// The payload is encoded once, and the same body is sent to every
+			// codec connection after a per member header (to id and sequence)
+			byte[] body = null;
 			final Object ms[] = groupManager.getMembers();
 			for (int i = 0; i < ms.length; i++) {
 				final Member m = (Member) ms[i];
@@ -159,7 +163,13 @@ public class ServerSOContainer extends SOContainer implements ISharedObjectConta
 					final IAsynchConnection conn = (IAsynchConnection) m.getData();
 					if (conn != null) {
 						try {
-							conn.sendAsynch(oldID, serialize(new ContainerMessage(from, oldID, getNextSequenceNumber(), data.getData())));
+							final long sequence = getNextSequenceNumber();
+							if (ContainerMessageCodec.isCodecConnection(conn)) {
+								if (body == null)
+									body = encodeContainerMessageBody(payload);
+								((ICodecConnection) conn).sendAsynch(oldID, ContainerMessageCodec.encodeHeader(from, oldID, sequence), body);
+							} else
+								conn.sendAsynch(oldID, serializeContainerMessage(conn, new ContainerMessage(from, oldID, sequence, payload)));
 						} catch (final IOException e) {
 							traceStack("Exception in forwardExcluding from " //$NON-NLS-1$
 									+ from + " with oldID " + oldID, e); //$NON-NLS-1$
@@ -285,12 +295,26 @@ public class ServerSOContainer extends SOContainer implements ISharedObjectConta
 	}
 
 	private final void queueToAll(ContainerMessage message) {
+		// The message is the same for all members, so it is serialized at most
+		// once for codec connections and once for other connections
+		byte[] encoded = null;
+		byte[] serialized = null;
 		final Object[] members = groupManager.getMembers();
 		for (int i = 0; i < members.length; i++) {
 			final IAsynchConnection conn = (IAsynchConnection) ((Member) members[i]).getData();
 			if (conn != null) {
 				try {
-					conn.sendAsynch(message.getToContainerID(), serialize(message));
+					byte[] bytes;
+					if (ContainerMessageCodec.isCodecConnection(conn)) {
+						if (encoded == null)
+							encoded = serializeContainerMessage(conn, message);
+						bytes = encoded;
+					} else {
+						if (serialized == null)
+							serialized = serializeContainerMessage(conn, message);
+						bytes = serialized;
+					}
+					conn.sendAsynch(message.getToContainerID(), bytes);
 				} catch (final IOException e) {
 					traceStack("Exception in queueToAll for ContainerMessage " + message, e); //$NON-NLS-1$
 				}
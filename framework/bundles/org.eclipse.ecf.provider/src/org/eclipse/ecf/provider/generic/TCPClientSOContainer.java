@@ -13,16 +13,20 @@
 
 package org.eclipse.ecf.provider.generic;
 
+import java.io.IOException;
 import org.eclipse.ecf.core.identity.ID;
 import org.eclipse.ecf.core.identity.IDFactory;
 import org.eclipse.ecf.core.sharedobject.ISharedObjectContainerConfig;
-import org.eclipse.ecf.provider.comm.ConnectionCreateException;
-import org.eclipse.ecf.provider.comm.ISynchAsynchConnection;
+import org.eclipse.ecf.provider.comm.*;
+import org.eclipse.ecf.provider.comm.nio.NIOClient;
+import org.eclipse.ecf.provider.comm.nio.NIOEventLoopGroup;
 import org.eclipse.ecf.provider.comm.tcp.Client;
 
 public class TCPClientSOContainer extends ClientSOContainer {
 	int keepAlive = 0;
 
+	boolean nio = TCPServerSOContainer.DEFAULT_NIO;
+
 	public static final int DEFAULT_TCP_CONNECT_TIMEOUT = Integer.parseInt(System.getProperty("org.eclipse.ecf.provider.generic.TCPClientSOContainer.defaultConnectTimeout", "30000")); //$NON-NLS-1$ //$NON-NLS-2$
 
 	public static final String DEFAULT_COMM_NAME = org.eclipse.ecf.provider.comm.tcp.Client.class.getName();
@@ -36,6 +40,18 @@ public class TCPClientSOContainer extends ClientSOContainer {
 		keepAlive = ka;
 	}
 
+	/**
+	 * @param config config
+	 * @param ka keep alive
+	 * @param nio <code>true</code> to connect using the nio transport
+	 * @since 4.10
+	 */
+	public TCPClientSOContainer(ISharedObjectContainerConfig config, int ka, boolean nio) {
+		super(config);
+		keepAlive = ka;
+		this.nio = nio;
+	}
+
 	protected int getConnectTimeout() {
 		return DEFAULT_TCP_CONNECT_TIMEOUT;
 	}
@@ -44,11 +60,24 @@ public class TCPClientSOContainer extends ClientSOContainer {
 	 * @param remoteSpace remote space
 	 * @param data and data
 	 * @return ISynchAsynchConnection a non-<code>null</code> instance.
-	 * @throws ConnectionCreateException not thrown by this implementation.
+	 * @throws ConnectionCreateException if the nio event loop group cannot be created.
 	 */
 	protected ISynchAsynchConnection createConnection(ID remoteSpace, Object data) throws ConnectionCreateException {
 		debug("createClientConnection:" + remoteSpace + ":" + data); //$NON-NLS-1$ //$NON-NLS-2$
-		ISynchAsynchConnection conn = new Client(receiver, keepAlive);
+		ISynchAsynchConnection conn = null;
+		if (nio) {
+			try {
+				conn = new NIOClient(NIOEventLoopGroup.getDefault(), receiver, keepAlive);
+			} catch (final IOException e) {
+				throw new ConnectionCreateException("Could not create nio connection to " + remoteSpace, e); //$NON-NLS-1$
+			}
+		} else {
+			conn = new Client(receiver, keepAlive);
+			((Client) conn).setSendQueueProperties(getConfig().getProperties());
+		}
+		// Request binary container message codec.  Not used if server does not accept it
+		if (ContainerMessageCodec.DEFAULT_ENABLED)
+			((ICodecConnection) conn).setCodec(ContainerMessageCodec.CODEC_ID);
 		return conn;
 	}
 
@@ -37,6 +37,14 @@ public class TCPServerSOContainer extends ServerSOContainer implements IConnectR
 	 */
 	public static final boolean DEFAULT_FALLBACK_PORT = Boolean.valueOf(System.getProperty("org.eclipse.ecf.provider.generic.port.fallback", "true")).booleanValue(); //$NON-NLS-1$//$NON-NLS-2$
 
+	/**
+	 * If <code>true</code>, generic containers use the selector based transport in
+	 * {@link org.eclipse.ecf.provider.comm.nio} rather than a thread per connection.
+	 * Default is <code>false</code>.
+	 * @since 4.10
+	 */
+	public static final boolean DEFAULT_NIO = Boolean.valueOf(System.getProperty("org.eclipse.ecf.provider.generic.nio", "false")).booleanValue(); //$NON-NLS-1$//$NON-NLS-2$
+
 	static {
 		final Boolean useHostname = Boolean.valueOf(System.getProperty("org.eclipse.ecf.provider.generic.host.useHostName", "true")); //$NON-NLS-1$ //$NON-NLS-2$
 		if (useHostname.booleanValue()) {
@@ -95,6 +103,19 @@ public class TCPServerSOContainer extends ServerSOContainer implements IConnectR
 	 * @since 4.4
 	 */
 	public TCPServerSOContainer(ISharedObjectContainerConfig config, InetAddress bindAddress, int keepAlive) throws IOException, URISyntaxException {
+		this(config, bindAddress, keepAlive, DEFAULT_NIO);
+	}
+
+	/**
+	 * @param config config
+	 * @param bindAddress bind address
+	 * @param keepAlive keep alive
+	 * @param nio <code>true</code> to use the nio transport for client connections
+	 * @throws IOException if some problem creating
+	 * @throws URISyntaxException if some problem creating
+	 * @since 4.10
+	 */
+	public TCPServerSOContainer(ISharedObjectContainerConfig config, InetAddress bindAddress, int keepAlive, boolean nio) throws IOException, URISyntaxException {
 		super(config);
 		isSingle = true;
 		URI actualURI = parseAndValidateURI();
@@ -102,7 +123,7 @@ public class TCPServerSOContainer extends ServerSOContainer implements IConnectR
 		String path = actualURI.getPath();
 		if (path == null)
 			throw new NullPointerException("path cannot be null"); //$NON-NLS-1$
-		this.group = new TCPServerSOContainerGroup(TCPServerSOContainerGroup.DEFAULT_GROUP_NAME, null, port, Server.DEFAULT_BACKLOG, bindAddress);
+		this.group = new TCPServerSOContainerGroup(TCPServerSOContainerGroup.DEFAULT_GROUP_NAME, null, port, Server.DEFAULT_BACKLOG, bindAddress, nio);
 		this.group.add(path, this);
 		this.group.putOnTheAir();
 	}
@@ -17,6 +17,8 @@ import java.net.InetAddress;
 import org.eclipse.ecf.core.util.Trace;
 import org.eclipse.ecf.internal.provider.ECFProviderDebugOptions;
 import org.eclipse.ecf.internal.provider.ProviderPlugin;
+import org.eclipse.ecf.provider.comm.nio.NIOEventLoopGroup;
+import org.eclipse.ecf.provider.comm.nio.NIOServer;
 import org.eclipse.ecf.provider.comm.tcp.Server;
 
 public class TCPServerSOContainerGroup extends SOContainerGroup {
@@ -24,26 +26,43 @@ public class TCPServerSOContainerGroup extends SOContainerGroup {
 	public static final String DEFAULT_GROUP_NAME = TCPServerSOContainerGroup.class.getName();
 	private int port;
 	private Server listener;
+	private NIOServer nioListener;
 	private boolean isOnTheAir = false;
 	private final ThreadGroup threadGroup;
 
 	private int backlog = Server.DEFAULT_BACKLOG;
 	private InetAddress bindAddress;
+	private final boolean nio;
 
 	/**
 	 * @param name name
-	 * @param group thread group to use
+	 * @param group thread group to use.  Not used if nio is <code>true</code>
 	 * @param port port
 	 * @param backlog backlog
 	 * @param bindAddress bind address
-	 * @since 4.4
+	 * @param nio <code>true</code> if accepted connections should be served by the shared
+	 * selector threads of {@link NIOEventLoopGroup#getDefault()} rather than a thread per connection
+	 * @since 4.10
 	 */
-	public TCPServerSOContainerGroup(String name, ThreadGroup group, int port, int backlog, InetAddress bindAddress) {
+	public TCPServerSOContainerGroup(String name, ThreadGroup group, int port, int backlog, InetAddress bindAddress, boolean nio) {
 		super(name);
 		threadGroup = group;
 		this.port = port;
 		this.backlog = backlog;
 		this.bindAddress = bindAddress;
+		this.nio = nio;
+	}
+
+	/**
+	 * @param name name
+	 * @param group thread group to use
+	 * @param port port
+	 * @param backlog backlog
+	 * @param bindAddress bind address
+	 * @since 4.4
+	 */
+	public TCPServerSOContainerGroup(String name, ThreadGroup group, int port, int backlog, InetAddress bindAddress) {
+		this(name, group, port, backlog, bindAddress, TCPServerSOContainer.DEFAULT_NIO);
 	}
 
 	/**
@@ -79,8 +98,13 @@ public class TCPServerSOContainerGroup extends SOContainerGroup {
 
 	public synchronized void putOnTheAir() throws IOException {
 		trace("TCPServerSOContainerGroup at port " + port + " on the air"); //$NON-NLS-1$ //$NON-NLS-2$
-		listener = new Server(threadGroup, port, backlog, bindAddress, this);
-		port = listener.getLocalPort();
+		if (nio) {
+			nioListener = new NIOServer(NIOEventLoopGroup.getDefault(), port, backlog, bindAddress, this);
+			port = nioListener.getLocalPort();
+		} else {
+			listener = new Server(threadGroup, port, backlog, bindAddress, this);
+			port = listener.getLocalPort();
+		}
 		isOnTheAir = true;
 	}
 
@@ -98,9 +122,26 @@ public class TCPServerSOContainerGroup extends SOContainerGroup {
 			}
 			listener = null;
 		}
+		if (nioListener != null) {
+			trace("Taking " + getName() + " off the air."); //$NON-NLS-1$ //$NON-NLS-2$
+			try {
+				nioListener.close();
+			} catch (final IOException e) {
+				traceStack("Exception in closeListener", e); //$NON-NLS-1$
+			}
+			nioListener = null;
+		}
 		isOnTheAir = false;
 	}
 
+	/**
+	 * @return boolean <code>true</code> if this group uses the nio transport
+	 * @since 4.10
+	 */
+	public boolean isNIO() {
+		return nio;
+	}
+
 	public int getPort() {
 		return port;
 	}
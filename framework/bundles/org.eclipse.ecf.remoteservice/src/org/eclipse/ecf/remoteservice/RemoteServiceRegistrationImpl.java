@@ -14,11 +14,9 @@ package org.eclipse.ecf.remoteservice;
 import java.io.Serializable;
 import java.lang.reflect.Array;
 import java.lang.reflect.Method;
-import java.security.AccessController;
-import java.security.PrivilegedExceptionAction;
 import java.util.*;
 import org.eclipse.ecf.core.identity.ID;
-import org.eclipse.ecf.core.util.reflection.ClassUtil;
+import org.eclipse.ecf.remoteservice.util.MethodDispatchCache;
 
 /**
  * @since 8.3
@@ -52,6 +50,8 @@ public class RemoteServiceRegistrationImpl implements IRemoteServiceRegistration
 
 	protected transient RemoteServiceReferenceImpl reference = null;
 
+	private transient MethodDispatchCache methodCache;
+
 	/**
 	 * @since 3.0
 	 */
@@ -133,6 +133,12 @@ public class RemoteServiceRegistrationImpl implements IRemoteServiceRegistration
 		if (this.registrationListener != null) {
 			this.registrationListener.unregister(this);
 		}
+		synchronized (this) {
+			if (methodCache != null) {
+				methodCache.clear();
+				methodCache = null;
+			}
+		}
 		this.classLoader = null;
 	}
 
@@ -437,17 +443,22 @@ public class RemoteServiceRegistrationImpl implements IRemoteServiceRegistration
 	public Object callService(IRemoteCall call) throws Exception {
 		Object[] callArgs = call.getParameters();
 		Object[] args = (callArgs == null) ? NULL_ARGS : callArgs;
-		final Method method = ClassUtil.getMethod(service.getClass(), call.getMethod(), getTypesForParameters(args));
-		AccessController.doPrivileged(new PrivilegedExceptionAction() {
-			public Object run() throws Exception {
-				if (!method.isAccessible())
-					method.setAccessible(true);
-				return null;
-			}
-		});
+		final Method method = getMethodDispatchCache().getMethod(call.getMethod(), getTypesForParameters(args));
 		return method.invoke(service, args);
 	}
 
+	/**
+	 * @return MethodDispatchCache the cache of methods resolved for calls on this registration's service
+	 * @since 8.15
+	 */
+	protected MethodDispatchCache getMethodDispatchCache() {
+		synchronized (this) {
+			if (methodCache == null || methodCache.getServiceClass() != service.getClass())
+				methodCache = new MethodDispatchCache(service.getClass());
+			return methodCache;
+		}
+	}
+
 	public String toString() {
 		StringBuffer buf = new StringBuffer("RemoteServiceRegistrationImpl["); //$NON-NLS-1$
 		buf.append("remoteServiceID=").append(getID()).append(";"); //$NON-NLS-1$ //$NON-NLS-2$
@@ -0,0 +1,138 @@
+/****************************************************************************
+ * Copyright (c) 2026 Composent, Inc. and others.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * Contributors:
+ *    Composent, Inc. - initial API and implementation
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *****************************************************************************/
+package org.eclipse.ecf.remoteservice.util;
+
+import java.lang.reflect.Method;
+import java.security.AccessController;
+import java.security.PrivilegedExceptionAction;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.eclipse.ecf.core.util.reflection.ClassUtil;
+
+/**
+ * Cache of service methods resolved for remote calls on a single service object.
+ * Methods are looked up once for each method name and argument type signature via
+ * {@link ClassUtil#getMethod(Class, String, Class[])}, made accessible, and then reused
+ * for subsequent calls with the same signature.
+ *
+ * @since 8.15
+ */
+public class MethodDispatchCache {
+
+	/**
+	 * Maximum number of method signatures cached.  Once reached, further signatures are
+	 * still resolved but not cached.
+	 */
+	public static final int DEFAULT_MAX_ENTRIES = 256;
+
+	static class Key {
+		private final String name;
+		private final Class[] types;
+		private final int hash;
+
+		Key(String name, Class[] types) {
+			this.name = name;
+			this.types = types;
+			this.hash = 31 * name.hashCode() + Arrays.hashCode(types);
+		}
+
+		public boolean equals(Object o) {
+			if (this == o)
+				return true;
+			if (!(o instanceof Key))
+				return false;
+			final Key other = (Key) o;
+			return hash == other.hash && name.equals(other.name) && Arrays.equals(types, other.types);
+		}
+
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+	private final Class serviceClass;
+	private final int maxEntries;
+	private final ConcurrentMap<Key, Method> methods = new ConcurrentHashMap<Key, Method>();
+
+	public MethodDispatchCache(Class serviceClass) {
+		this(serviceClass, DEFAULT_MAX_ENTRIES);
+	}
+
+	public MethodDispatchCache(Class serviceClass, int maxEntries) {
+		if (serviceClass == null)
+			throw new NullPointerException("serviceClass cannot be null"); //$NON-NLS-1$
+		this.serviceClass = serviceClass;
+		this.maxEntries = maxEntries;
+	}
+
+	public Class getServiceClass() {
+		return serviceClass;
+	}
+
+	/**
+	 * Get the accessible method to invoke for the given method name and arguments.
+	 *
+	 * @param methodName the name of the method to call.  Must not be <code>null</code>.
+	 * @param argTypes the types of the arguments, as returned by <code>getTypesForParameters</code>.
+	 * Elements are <code>null</code> for <code>null</code> arguments.
+	 * @return Method the method to invoke.  Will not be <code>null</code>.
+	 * @throws NoSuchMethodException if no method matches the given name and argument types
+	 */
+	public Method getMethod(String methodName, Class[] argTypes) throws NoSuchMethodException {
+		final Key key = new Key(methodName, argTypes);
+		Method method = methods.get(key);
+		if (method != null)
+			return method;
+		method = ClassUtil.getMethod(serviceClass, methodName, argTypes);
+		makeAccessible(method);
+		if (methods.size() < maxEntries)
+			methods.putIfAbsent(key, method);
+		return method;
+	}
+
+	private static void makeAccessible(final Method method) throws NoSuchMethodException {
+		if (method.isAccessible())
+			return;
+		try {
+			AccessController.doPrivileged(new PrivilegedExceptionAction() {
+				public Object run() throws Exception {
+					method.setAccessible(true);
+					return null;
+				}
+			});
+		} catch (final Exception e) {
+			final NoSuchMethodException t = new NoSuchMethodException("Cannot make method accessible: " + method); //$NON-NLS-1$
+			t.initCause(e);
+			throw t;
+		}
+	}
+
+	public int size() {
+		return methods.size();
+	}
+
+	/**
+	 * Remove all cached methods.
+	 */
+	public void clear() {
+		methods.clear();
+	}
+
+	public String toString() {
+		final StringBuffer buf = new StringBuffer("MethodDispatchCache["); //$NON-NLS-1$
+		buf.append("serviceClass=").append(serviceClass.getName()).append(";"); //$NON-NLS-1$ //$NON-NLS-2$
+		buf.append("size=").append(methods.size()).append("]"); //$NON-NLS-1$ //$NON-NLS-2$
+		return buf.toString();
+	}
+}
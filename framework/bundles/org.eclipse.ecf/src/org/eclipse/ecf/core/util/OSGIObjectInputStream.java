@@ -13,6 +13,8 @@ package org.eclipse.ecf.core.util;
 
 import java.io.*;
 import java.lang.reflect.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.Version;
@@ -32,6 +34,8 @@ public class OSGIObjectInputStream extends ObjectInputStream implements OSGIObje
 	 */
 	ClassLoader classLoader;
 
+	private byte[] chunk;
+
 	class ReplaceableObjectInputStream extends ObjectInputStream {
 		public ReplaceableObjectInputStream(InputStream ins) throws IOException {
 			super(ins);
@@ -146,9 +150,17 @@ public class OSGIObjectInputStream extends ObjectInputStream implements OSGIObje
 				// read component type and create array for that component type
 				Class<?> clazz = getClassForType(in.readUTF());
 				Object oresult = Array.newInstance(clazz, ol);
-				for (int i = 0; i < ol; i++)
-					Array.set(oresult, i, readObjectOverride());
+				if (clazz.isPrimitive()) {
+					for (int i = 0; i < ol; i++)
+						Array.set(oresult, i, readObjectOverride());
+				} else {
+					Object[] objs = (Object[]) oresult;
+					for (int i = 0; i < ol; i++)
+						objs[i] = readObjectOverride();
+				}
 				return oresult;
+			case C_PARRAY : // primitive array
+				return readPrimitiveArray();
 			case C_DICT : // Dictionary
 				Class<?> dictClazz = loadClass(in.readUTF());
 				Dictionary dict = null;
@@ -205,6 +217,10 @@ public class OSGIObjectInputStream extends ObjectInputStream implements OSGIObje
 				return in.readObject();
 			case C_STRING : // String
 				return in.readUTF();
+			case C_USTRING : // length-prefixed UTF-8 String
+				byte[] bytes = new byte[readLength()];
+				in.readFully(bytes);
+				return new String(bytes, StandardCharsets.UTF_8);
 			case C_LONG :
 			case C_OLONG :
 				return in.readLong();
@@ -238,26 +254,137 @@ public class OSGIObjectInputStream extends ObjectInputStream implements OSGIObje
 		}
 	}
 
+	private int readLength() throws IOException {
+		int len = in.readInt();
+		if (len < 0)
+			throw new StreamCorruptedException("Invalid length=" + len); //$NON-NLS-1$
+		return len;
+	}
+
+	private byte[] getChunk() {
+		if (chunk == null)
+			chunk = new byte[OSGIObjectOutputStream.ARRAY_CHUNK_SIZE];
+		return chunk;
+	}
+
+	/**
+	 * Read a primitive array written by {@link OSGIObjectOutputStream#writePrimitiveArray(Object, Class)}.
+	 * 
+	 * @return Object the primitive array
+	 * @throws IOException if the array cannot be read
+	 * @since 3.12
+	 */
+	protected Object readPrimitiveArray() throws IOException {
+		final byte type = in.readByte();
+		final int len = readLength();
+		switch (type) {
+			case C_BYTE : {
+				byte[] a = new byte[len];
+				in.readFully(a);
+				return a;
+			}
+			case C_INT : {
+				int[] a = new int[len];
+				for (int off = 0; off < len;) {
+					int n = Math.min(len - off, OSGIObjectOutputStream.ARRAY_CHUNK_SIZE / 4);
+					in.readFully(getChunk(), 0, n * 4);
+					ByteBuffer.wrap(chunk, 0, n * 4).asIntBuffer().get(a, off, n);
+					off += n;
+				}
+				return a;
+			}
+			case C_LONG : {
+				long[] a = new long[len];
+				for (int off = 0; off < len;) {
+					int n = Math.min(len - off, OSGIObjectOutputStream.ARRAY_CHUNK_SIZE / 8);
+					in.readFully(getChunk(), 0, n * 8);
+					ByteBuffer.wrap(chunk, 0, n * 8).asLongBuffer().get(a, off, n);
+					off += n;
+				}
+				return a;
+			}
+			case C_DOUBLE : {
+				double[] a = new double[len];
+				for (int off = 0; off < len;) {
+					int n = Math.min(len - off, OSGIObjectOutputStream.ARRAY_CHUNK_SIZE / 8);
+					in.readFully(getChunk(), 0, n * 8);
+					ByteBuffer.wrap(chunk, 0, n * 8).asDoubleBuffer().get(a, off, n);
+					off += n;
+				}
+				return a;
+			}
+			case C_FLOAT : {
+				float[] a = new float[len];
+				for (int off = 0; off < len;) {
+					int n = Math.min(len - off, OSGIObjectOutputStream.ARRAY_CHUNK_SIZE / 4);
+					in.readFully(getChunk(), 0, n * 4);
+					ByteBuffer.wrap(chunk, 0, n * 4).asFloatBuffer().get(a, off, n);
+					off += n;
+				}
+				return a;
+			}
+			case C_CHAR : {
+				char[] a = new char[len];
+				for (int off = 0; off < len;) {
+					int n = Math.min(len - off, OSGIObjectOutputStream.ARRAY_CHUNK_SIZE / 2);
+					in.readFully(getChunk(), 0, n * 2);
+					ByteBuffer.wrap(chunk, 0, n * 2).asCharBuffer().get(a, off, n);
+					off += n;
+				}
+				return a;
+			}
+			case C_SHORT : {
+				short[] a = new short[len];
+				for (int off = 0; off < len;) {
+					int n = Math.min(len - off, OSGIObjectOutputStream.ARRAY_CHUNK_SIZE / 2);
+					in.readFully(getChunk(), 0, n * 2);
+					ByteBuffer.wrap(chunk, 0, n * 2).asShortBuffer().get(a, off, n);
+					off += n;
+				}
+				return a;
+			}
+			case C_BOOL : {
+				boolean[] a = new boolean[len];
+				for (int off = 0; off < len;) {
+					int n = Math.min(len - off, OSGIObjectOutputStream.ARRAY_CHUNK_SIZE);
+					byte[] c = getChunk();
+					in.readFully(c, 0, n);
+					for (int i = 0; i < n; i++)
+						a[off + i] = c[i] != 0;
+					off += n;
+				}
+				return a;
+			}
+			default :
+				throw new StreamCorruptedException("Cannot deserialize primitive array with type=" + type); //$NON-NLS-1$
+		}
+	}
+
 	protected Object readExternalizable() throws ClassNotFoundException, IOException {
 		return in.readObject();
 	}
 
 	protected Object readFields(Class<?> clazz, Object inst) throws IOException {
+		final SerializationPlan plan = SerializationPlan.get(clazz);
+		int depth = 0;
 		try {
 			int fieldCount = in.readInt();
 			while (fieldCount > -1) {
+				final SerializationPlan.Level level = plan.getLevel(depth);
+				if (level == null)
+					throw new NoSuchFieldException("No superclass at depth " + depth); //$NON-NLS-1$
+				clazz = level.getType();
 				for (int i = 0; i < fieldCount; i++) {
 					final String fieldName = in.readUTF();
-					final Field field = clazz.getDeclaredField(fieldName);
-					final int mod = field.getModifiers();
-					if (!Modifier.isPublic(mod))
-						field.setAccessible(true);
+					final Field field = level.getDeclaredField(fieldName);
+					if (field == null)
+						throw new NoSuchFieldException(fieldName);
 
 					//
 					final Object value = readObjectOverride();
 					field.set(inst, value);
 				}
-				clazz = clazz.getSuperclass();
+				depth++;
 				fieldCount = in.readInt();
 			}
 			return inst;
@@ -270,7 +397,7 @@ public class OSGIObjectInputStream extends ObjectInputStream implements OSGIObje
 
 	protected Object createInstance(Class<?> clazz) throws IOException {
 		try {
-			return clazz.getDeclaredConstructor().newInstance();
+			return SerializationPlan.get(clazz).newInstance();
 		} catch (Exception e) {
 			throw new IOException("Could create new instance of class=" + clazz.getName() + ".  Class must have public no-arg constructor"); //$NON-NLS-1$ //$NON-NLS-2$
 		}
@@ -13,6 +13,8 @@ package org.eclipse.ecf.core.util;
 
 import java.io.*;
 import java.lang.reflect.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import org.osgi.framework.Version;
 import org.osgi.service.log.LogService;
@@ -22,9 +24,32 @@ import org.osgi.service.log.LogService;
  */
 public class OSGIObjectOutputStream extends ObjectOutputStream implements OSGIObjectStreamConstants {
 
+	/**
+	 * System property to write primitive arrays and Strings in the encoding used before
+	 * version 3.12, for peers that cannot read {@link #C_PARRAY} and {@link #C_USTRING}.
+	 * Defaults to <code>true</code> so that older peers can read what is written. Set it
+	 * to <code>false</code>, or call {@link #setLegacyEncoding(boolean)}, only when every
+	 * peer is at version 3.12 or later.
+	 * @since 3.12
+	 */
+	public static final String LEGACY_ENCODING_PROP = "org.eclipse.ecf.core.util.osgiobjectstream.legacyEncoding"; //$NON-NLS-1$
+
+	/**
+	 * @since 3.12
+	 */
+	public static final boolean DEFAULT_LEGACY_ENCODING = Boolean.parseBoolean(System.getProperty(LEGACY_ENCODING_PROP, "true")); //$NON-NLS-1$
+
+	// Size of chunks used to copy non-byte primitive arrays
+	static final int ARRAY_CHUNK_SIZE = 8192;
+
 	protected final ObjectOutputStream out;
 	protected LogService logger;
 	protected boolean allowNonSerializable = false;
+	/**
+	 * @since 3.12
+	 */
+	protected boolean legacyEncoding = DEFAULT_LEGACY_ENCODING;
+	private byte[] chunk;
 
 	class ReplaceableObjectOutputStream extends ObjectOutputStream {
 
@@ -67,6 +92,15 @@ public class OSGIObjectOutputStream extends ObjectOutputStream implements OSGIOb
 		this.logger = log;
 	}
 
+	/**
+	 * @param value <code>true</code> to write primitive arrays and Strings in the encoding
+	 * used before version 3.12
+	 * @since 3.12
+	 */
+	public void setLegacyEncoding(boolean value) {
+		this.legacyEncoding = value;
+	}
+
 	protected void writeExternalizable(Externalizable obj, Class<?> clazz) throws IOException {
 		out.writeObject(obj);
 	}
@@ -80,29 +114,18 @@ public class OSGIObjectOutputStream extends ObjectOutputStream implements OSGIOb
 	}
 
 	protected void writeFields(Object obj, Class<?> clazz) throws IOException {
-		while (clazz != Object.class) {
+		final SerializationPlan.Level[] levels = SerializationPlan.get(clazz).getLevels();
+		for (int l = 0; l < levels.length; l++) {
+			final Field[] fields = levels[l].getFields();
 			try {
-				final Field[] allFields = clazz.getDeclaredFields();
-				final int allFieldCount = allFields.length;
-				int actualFieldCount = 0;
-				for (int i = 0; i < allFieldCount; i++) {
-					final int mod = allFields[i].getModifiers();
-					if (!(Modifier.isStatic(mod) || Modifier.isTransient(mod)))
-						actualFieldCount++;
-				}
 				// write field count
-				out.writeInt(actualFieldCount);
-				for (int i = 0; i < allFieldCount; i++) {
-					final int mod = allFields[i].getModifiers();
-					if (Modifier.isStatic(mod) || Modifier.isTransient(mod))
-						continue;
-					else if (!Modifier.isPublic(mod))
-						allFields[i].setAccessible(true);
-					Object val = allFields[i].get(obj);
+				out.writeInt(fields.length);
+				for (int i = 0; i < fields.length; i++) {
+					Object val = fields[i].get(obj);
 					// Check to see it's not a circular ref
 					if (val != obj) {
 						// write field name
-						out.writeUTF(allFields[i].getName());
+						out.write(levels[l].getFieldNameToken(i));
 						// field value
 						writeObjectOverride(val);
 					}
@@ -111,7 +134,6 @@ public class OSGIObjectOutputStream extends ObjectOutputStream implements OSGIOb
 				throw new NotSerializableException("Exception while serializing " + obj.toString() //$NON-NLS-1$
 						+ ":\n" + e.getMessage()); //$NON-NLS-1$ 
 			}
-			clazz = clazz.getSuperclass();
 		}
 		// Write out a terminator so reader can detect end of object
 		out.writeInt(-1);
@@ -135,15 +157,27 @@ public class OSGIObjectOutputStream extends ObjectOutputStream implements OSGIOb
 		}
 		Class<?> clazz = obj.getClass();
 		if (clazz.isArray()) {
+			Class<?> componentType = clazz.getComponentType();
+			if (componentType.isPrimitive() && !legacyEncoding) {
+				out.writeByte(C_PARRAY);
+				writePrimitiveArray(obj, componentType);
+				return;
+			}
 			out.writeByte(C_ARRAY);
 			int len = Array.getLength(obj);
 			// write length
 			out.writeInt(len);
 			// write component type
-			out.writeUTF(clazz.getComponentType().getName());
+			out.writeUTF(componentType.getName());
 			// write out each array entry
-			for (int i = 0; i < len; i++)
-				writeObjectOverride(Array.get(obj, i));
+			if (componentType.isPrimitive()) {
+				for (int i = 0; i < len; i++)
+					writeObjectOverride(Array.get(obj, i));
+			} else {
+				Object[] objs = (Object[]) obj;
+				for (int i = 0; i < len; i++)
+					writeObjectOverride(objs[i]);
+			}
 			return;
 		} else if (obj instanceof Long) {
 			if (clazz.isPrimitive()) {
@@ -210,8 +244,17 @@ public class OSGIObjectOutputStream extends ObjectOutputStream implements OSGIOb
 			out.writeDouble((Double) obj);
 			return;
 		} else if (obj instanceof String) {
-			out.writeByte(C_STRING);
-			out.writeUTF((String) obj);
+			// Strings too long for writeUTF could not be written at all before
+			// version 3.12, so they do not need the legacy encoding
+			if (legacyEncoding && canWriteUTF((String) obj)) {
+				out.writeByte(C_STRING);
+				out.writeUTF((String) obj);
+			} else {
+				out.writeByte(C_USTRING);
+				byte[] bytes = ((String) obj).getBytes(StandardCharsets.UTF_8);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			}
 			return;
 		} else if (obj instanceof Dictionary) {
 			trace("writing dictionary"); //$NON-NLS-1$
@@ -307,6 +350,122 @@ public class OSGIObjectOutputStream extends ObjectOutputStream implements OSGIOb
 		}
 	}
 
+	/**
+	 * Write a primitive array as the type of its components, its length and its contents
+	 * copied in bulk.
+	 * 
+	 * @param array the array to write
+	 * @param componentType the primitive component type of array
+	 * @throws IOException if the array cannot be written
+	 * @since 3.12
+	 */
+	protected void writePrimitiveArray(Object array, Class<?> componentType) throws IOException {
+		if (componentType == byte.class) {
+			byte[] a = (byte[]) array;
+			out.writeByte(C_BYTE);
+			out.writeInt(a.length);
+			out.write(a);
+		} else if (componentType == int.class) {
+			int[] a = (int[]) array;
+			out.writeByte(C_INT);
+			out.writeInt(a.length);
+			for (int off = 0; off < a.length;) {
+				int n = Math.min(a.length - off, ARRAY_CHUNK_SIZE / 4);
+				ByteBuffer.wrap(getChunk()).asIntBuffer().put(a, off, n);
+				out.write(chunk, 0, n * 4);
+				off += n;
+			}
+		} else if (componentType == long.class) {
+			long[] a = (long[]) array;
+			out.writeByte(C_LONG);
+			out.writeInt(a.length);
+			for (int off = 0; off < a.length;) {
+				int n = Math.min(a.length - off, ARRAY_CHUNK_SIZE / 8);
+				ByteBuffer.wrap(getChunk()).asLongBuffer().put(a, off, n);
+				out.write(chunk, 0, n * 8);
+				off += n;
+			}
+		} else if (componentType == double.class) {
+			double[] a = (double[]) array;
+			out.writeByte(C_DOUBLE);
+			out.writeInt(a.length);
+			for (int off = 0; off < a.length;) {
+				int n = Math.min(a.length - off, ARRAY_CHUNK_SIZE / 8);
+				ByteBuffer.wrap(getChunk()).asDoubleBuffer().put(a, off, n);
+				out.write(chunk, 0, n * 8);
+				off += n;
+			}
+		} else if (componentType == float.class) {
+			float[] a = (float[]) array;
+			out.writeByte(C_FLOAT);
+			out.writeInt(a.length);
+			for (int off = 0; off < a.length;) {
+				int n = Math.min(a.length - off, ARRAY_CHUNK_SIZE / 4);
+				ByteBuffer.wrap(getChunk()).asFloatBuffer().put(a, off, n);
+				out.write(chunk, 0, n * 4);
+				off += n;
+			}
+		} else if (componentType == char.class) {
+			char[] a = (char[]) array;
+			out.writeByte(C_CHAR);
+			out.writeInt(a.length);
+			for (int off = 0; off < a.length;) {
+				int n = Math.min(a.length - off, ARRAY_CHUNK_SIZE / 2);
+				ByteBuffer.wrap(getChunk()).asCharBuffer().put(a, off, n);
+				out.write(chunk, 0, n * 2);
+				off += n;
+			}
+		} else if (componentType == short.class) {
+			short[] a = (short[]) array;
+			out.writeByte(C_SHORT);
+			out.writeInt(a.length);
+			for (int off = 0; off < a.length;) {
+				int n = Math.min(a.length - off, ARRAY_CHUNK_SIZE / 2);
+				ByteBuffer.wrap(getChunk()).asShortBuffer().put(a, off, n);
+				out.write(chunk, 0, n * 2);
+				off += n;
+			}
+		} else if (componentType == boolean.class) {
+			boolean[] a = (boolean[]) array;
+			out.writeByte(C_BOOL);
+			out.writeInt(a.length);
+			for (int off = 0; off < a.length;) {
+				int n = Math.min(a.length - off, ARRAY_CHUNK_SIZE);
+				byte[] c = getChunk();
+				for (int i = 0; i < n; i++)
+					c[i] = (byte) (a[off + i] ? 1 : 0);
+				out.write(c, 0, n);
+				off += n;
+			}
+		} else
+			throw new NotSerializableException("Unsupported primitive array type " + componentType.getName()); //$NON-NLS-1$
+	}
+
+	private byte[] getChunk() {
+		if (chunk == null)
+			chunk = new byte[ARRAY_CHUNK_SIZE];
+		return chunk;
+	}
+
+	// Whether the modified UTF-8 encoding that writeUTF uses fits in 64KB
+	private static boolean canWriteUTF(String s) {
+		int len = s.length();
+		// each char takes at most 3 bytes
+		if (len <= 0xFFFF / 3)
+			return true;
+		long utflen = 0;
+		for (int i = 0; i < len; i++) {
+			char c = s.charAt(i);
+			if (c >= 0x0001 && c <= 0x007F)
+				utflen++;
+			else if (c > 0x07FF)
+				utflen += 3;
+			else
+				utflen += 2;
+		}
+		return utflen <= 0xFFFF;
+	}
+
 	/**
 	 * 
 	 * @see java.io.ObjectOutputStream#write(int)
@@ -31,6 +31,14 @@ public interface OSGIObjectStreamConstants {
 	public static final byte C_ENUM = 12; // Enum
 	public static final byte C_OBJECT = 13; // Everything else
 	public static final byte C_DICT = 14; // Dictionary
+	/**
+	 * @since 3.12
+	 */
+	public static final byte C_PARRAY = 15; // primitive array
+	/**
+	 * @since 3.12
+	 */
+	public static final byte C_USTRING = 16; // length-prefixed UTF-8 String
 
 	// primitive types
 	public static final byte C_LONG = 20; // primitive long
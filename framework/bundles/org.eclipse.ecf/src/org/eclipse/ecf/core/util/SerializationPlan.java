@@ -0,0 +1,237 @@
+/****************************************************************************
+ * Copyright (c) 2026 Composent, Inc. and others.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * Contributors:
+ *    Composent, Inc. - initial API and implementation
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *****************************************************************************/
+package org.eclipse.ecf.core.util;
+
+import java.io.*;
+import java.lang.reflect.*;
+import java.util.*;
+
+/**
+ * Field by field serialization plan for a class, as used by streams that serialize
+ * objects which do not implement {@link Serializable}.  A plan holds, for the class and
+ * each of its superclasses up to {@link Object}, the non-static non-transient fields made
+ * accessible, and their names already encoded as by {@link DataOutput#writeUTF(String)}.
+ * <p>
+ * Plans are computed once per class and cached with a {@link ClassValue}, so the plan for
+ * a class does not prevent the class and its class loader from being garbage collected
+ * when, for example, the bundle that loaded it is uninstalled.
+ *
+ * @since 3.12
+ */
+public final class SerializationPlan {
+
+	private static final ClassValue<SerializationPlan> plans = new ClassValue<SerializationPlan>() {
+		@Override
+		protected SerializationPlan computeValue(Class<?> type) {
+			return new SerializationPlan(type);
+		}
+	};
+
+	/**
+	 * The fields of one class of a class hierarchy.
+	 */
+	public static final class Level {
+		private final Class<?> clazz;
+		private final Field[] fields;
+		private final String[] names;
+		private final byte[][] nameTokens;
+		private final Map<String, Field> declaredFields;
+
+		Level(Class<?> clazz) throws IOException {
+			this.clazz = clazz;
+			final Field[] all = clazz.getDeclaredFields();
+			final List<Field> serialized = new ArrayList<Field>(all.length);
+			this.declaredFields = new HashMap<String, Field>(all.length * 2);
+			for (int i = 0; i < all.length; i++) {
+				final int mod = all[i].getModifiers();
+				final boolean accessible = setAccessible(all[i], mod);
+				declaredFields.put(all[i].getName(), all[i]);
+				if (Modifier.isStatic(mod) || Modifier.isTransient(mod))
+					continue;
+				if (!accessible)
+					throw new IOException("Cannot access field " + all[i].getName() + " of " + clazz.getName()); //$NON-NLS-1$ //$NON-NLS-2$
+				serialized.add(all[i]);
+			}
+			this.fields = serialized.toArray(new Field[serialized.size()]);
+			this.names = new String[fields.length];
+			this.nameTokens = new byte[fields.length][];
+			final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+			final DataOutputStream dos = new DataOutputStream(bos);
+			for (int i = 0; i < fields.length; i++) {
+				names[i] = fields[i].getName();
+				bos.reset();
+				dos.writeUTF(names[i]);
+				dos.flush();
+				nameTokens[i] = bos.toByteArray();
+			}
+		}
+
+		private static boolean setAccessible(Field field, int mod) {
+			if (Modifier.isPublic(mod) && Modifier.isPublic(field.getDeclaringClass().getModifiers()))
+				return true;
+			try {
+				field.setAccessible(true);
+				return true;
+			} catch (final RuntimeException e) {
+				// e.g. inaccessible module
+				return false;
+			}
+		}
+
+		public Class<?> getType() {
+			return clazz;
+		}
+
+		/**
+		 * @return Field[] the non-static non-transient fields of this level, made accessible.
+		 * Callers must not modify the returned array.
+		 */
+		public Field[] getFields() {
+			return fields;
+		}
+
+		/**
+		 * @return String[] the names of the fields returned by {@link #getFields()}.
+		 * Callers must not modify the returned array.
+		 */
+		public String[] getFieldNames() {
+			return names;
+		}
+
+		/**
+		 * Get the name of the field at the given index as written by {@link DataOutput#writeUTF(String)}.
+		 *
+		 * @param index the index of the field in {@link #getFields()}
+		 * @return byte[] the encoded name.  Callers must not modify the returned array.
+		 */
+		public byte[] getFieldNameToken(int index) {
+			return nameTokens[index];
+		}
+
+		/**
+		 * Get a field declared by this level's class by name, for reading a serialized value.
+		 *
+		 * @param name the name of the field
+		 * @return Field the declared field, made accessible if possible, or <code>null</code> if not declared
+		 */
+		public Field getDeclaredField(String name) {
+			return declaredFields.get(name);
+		}
+	}
+
+	private final Class<?> type;
+	private final Level[] levels;
+	private final String error;
+	private volatile Constructor<?> constructor;
+	private volatile String nativeClassName;
+	private volatile boolean nativeChecked;
+
+	SerializationPlan(Class<?> type) {
+		this.type = type;
+		final List<Level> ls = new ArrayList<Level>();
+		String err = null;
+		try {
+			for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass())
+				ls.add(new Level(c));
+		} catch (final Exception e) {
+			err = e.getMessage();
+		} catch (final LinkageError e) {
+			err = e.toString();
+		}
+		this.levels = ls.toArray(new Level[ls.size()]);
+		this.error = err;
+	}
+
+	/**
+	 * Get the serialization plan for a class.
+	 *
+	 * @param clazz the class.  Must not be <code>null</code>.
+	 * @return SerializationPlan the plan for the class.  Will not be <code>null</code>.
+	 */
+	public static SerializationPlan get(Class<?> clazz) {
+		return plans.get(clazz);
+	}
+
+	public Class<?> getType() {
+		return type;
+	}
+
+	/**
+	 * @return Level[] the levels of the class hierarchy, starting with the class itself and
+	 * excluding {@link Object}.  Callers must not modify the returned array.
+	 * @throws NotSerializableException if the fields of the class cannot be accessed
+	 */
+	public Level[] getLevels() throws NotSerializableException {
+		if (error != null)
+			throw new NotSerializableException("Class " + type.getName() + " cannot be serialized: " + error); //$NON-NLS-1$ //$NON-NLS-2$
+		return levels;
+	}
+
+	/**
+	 * Get the level of the class hierarchy at the given depth, for reading.
+	 *
+	 * @param depth the depth, where 0 is the class itself
+	 * @return Level the level, or <code>null</code> if the hierarchy is not that deep or could not be read
+	 */
+	public Level getLevel(int depth) {
+		return (depth < levels.length) ? levels[depth] : null;
+	}
+
+	/**
+	 * @return String the name of the first class in the class hierarchy that declares native methods,
+	 * or <code>null</code> if no class in the hierarchy, excluding {@link Object}, declares native methods
+	 */
+	public String getNativeClassName() {
+		if (!nativeChecked) {
+			String result = null;
+			for (Class<?> c = type; c != null && c != Object.class && result == null; c = c.getSuperclass()) {
+				final Method[] methods = c.getDeclaredMethods();
+				for (int i = 0; i < methods.length; i++) {
+					if (Modifier.isNative(methods[i].getModifiers())) {
+						result = c.getName();
+						break;
+					}
+				}
+			}
+			nativeClassName = result;
+			nativeChecked = true;
+		}
+		return nativeClassName;
+	}
+
+	/**
+	 * Create a new instance of the class with its no-arg constructor.
+	 *
+	 * @return Object the new instance
+	 * @throws Exception if the class has no no-arg constructor or it fails
+	 */
+	public Object newInstance() throws Exception {
+		Constructor<?> cons = constructor;
+		if (cons == null) {
+			cons = type.getDeclaredConstructor((Class[]) null);
+			cons.setAccessible(true);
+			constructor = cons;
+		}
+		return cons.newInstance((Object[]) null);
+	}
+
+	public String toString() {
+		final StringBuffer buf = new StringBuffer("SerializationPlan["); //$NON-NLS-1$
+		buf.append("type=").append(type.getName()).append(";"); //$NON-NLS-1$ //$NON-NLS-2$
+		buf.append("levels=").append(levels.length); //$NON-NLS-1$
+		if (error != null)
+			buf.append(";error=").append(error); //$NON-NLS-1$
+		buf.append("]"); //$NON-NLS-1$
+		return buf.toString();
+	}
+}
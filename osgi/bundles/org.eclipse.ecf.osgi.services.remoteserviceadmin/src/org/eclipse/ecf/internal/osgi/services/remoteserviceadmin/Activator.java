@@ -23,6 +23,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.xml.parsers.SAXParserFactory;
 
@@ -109,6 +115,40 @@ public class Activator implements BundleActivator {
 	private Collection<ExportRegistration> exportedRegistrations;
 	private Collection<ImportRegistration> importedRegistrations;
 
+	private static final int IMPORT_LOOKUP_THREADS = Integer
+			.getInteger("org.eclipse.ecf.osgi.services.remoteserviceadmin.importParallelism", 8).intValue(); //$NON-NLS-1$
+
+	// Looks up remote services for RemoteServiceAdmin.importServices
+	private ThreadPoolExecutor importLookupExecutor;
+
+	/**
+	 * Get the executor that looks up remote services for batch imports. It is
+	 * shared by all RemoteServiceAdmin instances and has at most
+	 * <code>org.eclipse.ecf.osgi.services.remoteserviceadmin.importParallelism</code>
+	 * threads, which time out when idle.
+	 *
+	 * @return the executor, or <code>null</code> if lookups should be done on
+	 *         the calling thread
+	 */
+	public synchronized ExecutorService getImportLookupExecutor() {
+		if (IMPORT_LOOKUP_THREADS <= 1 || context == null)
+			return null;
+		if (importLookupExecutor == null) {
+			importLookupExecutor = new ThreadPoolExecutor(IMPORT_LOOKUP_THREADS, IMPORT_LOOKUP_THREADS, 60L,
+					TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+						private final AtomicInteger count = new AtomicInteger();
+
+						public Thread newThread(Runnable r) {
+							Thread t = new Thread(r, "RSA importServices lookup " + count.incrementAndGet()); //$NON-NLS-1$
+							t.setDaemon(true);
+							return t;
+						}
+					});
+			importLookupExecutor.allowCoreThreadTimeOut(true);
+		}
+		return importLookupExecutor;
+	}
+
 	private void initializeProxyServiceFactoryBundle() throws Exception {
 		// First, find proxy bundle
 		for (Bundle b : context.getBundles()) {
@@ -253,8 +293,8 @@ public class Activator implements BundleActivator {
 	public void start(BundleContext bundleContext) throws Exception {
 		Activator.context = bundleContext;
 		Activator.instance = this;
-		this.exportedRegistrations = new ArrayList<ExportRegistration>();
-		this.importedRegistrations = new ArrayList<ImportRegistration>();
+		this.exportedRegistrations = new IndexedRegistrations<ExportRegistration>();
+		this.importedRegistrations = new IndexedRegistrations<ImportRegistration>();
 		// start dependent bundles first
 		initializeDependents();
 		// initialize the RSA proxy service factory bundle...so that we
@@ -391,6 +431,12 @@ public class Activator implements BundleActivator {
 		}
 		stopProxyServiceFactoryBundle();
 
+		synchronized (this) {
+			if (importLookupExecutor != null) {
+				importLookupExecutor.shutdownNow();
+				importLookupExecutor = null;
+			}
+		}
 		synchronized (importedRegistrations) {
 			if (importedRegistrations != null) {
 				importedRegistrations.clear();
@@ -0,0 +1,187 @@
+/****************************************************************************
+ * Copyright (c) 2026 Composent, Inc. and others.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * Contributors:
+ *   Composent, Inc. - initial API and implementation
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *****************************************************************************/
+package org.eclipse.ecf.internal.osgi.services.remoteserviceadmin;
+
+import java.util.ArrayList;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import org.osgi.framework.Filter;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.service.remoteserviceadmin.EndpointDescription;
+
+/**
+ * The scope of an endpoint listener or endpoint event listener, with its
+ * filters compiled once when the listener is added or modified, rather than
+ * for every endpoint event.
+ * <p>
+ * For each filter the equality terms on <code>objectClass</code> and
+ * <code>endpoint.framework.uuid</code> that the filter requires at its top
+ * level are extracted, so that most endpoints can be rejected by comparing
+ * strings instead of evaluating the filter.
+ */
+public class EndpointListenerScope {
+
+	private static final String OBJECTCLASS = org.osgi.framework.Constants.OBJECTCLASS;
+	private static final String FRAMEWORK_UUID = org.osgi.service.remoteserviceadmin.RemoteConstants.ENDPOINT_FRAMEWORK_UUID;
+
+	private final Object listener;
+	private final String[] filters;
+	private final Filter[] compiled;
+	private final String[] requiredObjectClasses;
+	private final String[] requiredFrameworkUUIDs;
+
+	/**
+	 * An endpoint description prepared for matching against many scopes.
+	 */
+	public static class Target {
+		final EndpointDescription description;
+		final Dictionary<String, Object> properties;
+		final String frameworkUUID;
+		final List<String> interfaces;
+
+		public Target(EndpointDescription description) {
+			this.description = description;
+			Map<String, Object> props = description.getProperties();
+			this.properties = new Hashtable<String, Object>(props.size() * 2);
+			for (Map.Entry<String, Object> entry : props.entrySet())
+				if (entry.getValue() != null)
+					this.properties.put(entry.getKey(), entry.getValue());
+			this.frameworkUUID = description.getFrameworkUUID();
+			this.interfaces = description.getInterfaces();
+		}
+
+		public EndpointDescription getDescription() {
+			return description;
+		}
+	}
+
+	public EndpointListenerScope(Object listener, List<String> scope) {
+		this.listener = listener;
+		List<String> fs = new ArrayList<String>(scope.size());
+		for (String f : scope)
+			if (f != null && !"".equals(f)) //$NON-NLS-1$
+				fs.add(f);
+		this.filters = fs.toArray(new String[fs.size()]);
+		this.compiled = new Filter[filters.length];
+		this.requiredObjectClasses = new String[filters.length];
+		this.requiredFrameworkUUIDs = new String[filters.length];
+		for (int i = 0; i < filters.length; i++) {
+			try {
+				compiled[i] = FrameworkUtil.createFilter(filters[i]);
+			} catch (InvalidSyntaxException e) {
+				LogUtility.logError("EndpointListenerScope", DebugOptions.ENDPOINT_DESCRIPTION_LOCATOR, //$NON-NLS-1$
+						EndpointListenerScope.class, "invalid endpoint listener filter=" + filters[i], e); //$NON-NLS-1$
+				continue;
+			}
+			List<String[]> terms = getRequiredEqualityTerms(filters[i]);
+			for (String[] term : terms) {
+				if (OBJECTCLASS.equalsIgnoreCase(term[0]))
+					requiredObjectClasses[i] = term[1];
+				else if (FRAMEWORK_UUID.equalsIgnoreCase(term[0]))
+					requiredFrameworkUUIDs[i] = term[1];
+			}
+		}
+	}
+
+	public Object getListener() {
+		return listener;
+	}
+
+	/**
+	 * @return <code>true</code> if the scope has no filters, so the listener
+	 *         is not interested in any endpoint
+	 */
+	public boolean isEmpty() {
+		return filters.length == 0;
+	}
+
+	/**
+	 * Get the first filter of this scope that matches an endpoint.
+	 *
+	 * @param target the endpoint
+	 * @return String the matching filter, or <code>null</code> if no filter
+	 *         matches
+	 */
+	public String match(Target target) {
+		for (int i = 0; i < filters.length; i++) {
+			if (compiled[i] == null)
+				continue;
+			if (requiredFrameworkUUIDs[i] != null && !requiredFrameworkUUIDs[i].equals(target.frameworkUUID))
+				continue;
+			if (requiredObjectClasses[i] != null && !target.interfaces.contains(requiredObjectClasses[i]))
+				continue;
+			if (compiled[i].match(target.properties))
+				return filters[i];
+		}
+		return null;
+	}
+
+	/**
+	 * Get the simple equality terms <code>(name=value)</code> that a filter
+	 * requires at its top level, either as the whole filter or as operands of
+	 * a top level <code>&amp;</code>. Terms with wildcards or escapes are left
+	 * out, as are all terms of other filters.
+	 *
+	 * @param filter the filter
+	 * @return List of String[] { name, value }
+	 */
+	public static List<String[]> getRequiredEqualityTerms(String filter) {
+		List<String[]> results = new ArrayList<String[]>();
+		String f = filter.trim();
+		if (f.startsWith("(&") && f.endsWith(")")) { //$NON-NLS-1$ //$NON-NLS-2$
+			String operands = f.substring(2, f.length() - 1);
+			int depth = 0;
+			int start = -1;
+			for (int i = 0; i < operands.length(); i++) {
+				char c = operands.charAt(i);
+				if (c == '\\') {
+					i++;
+				} else if (c == '(') {
+					if (depth++ == 0)
+						start = i;
+				} else if (c == ')') {
+					if (--depth == 0)
+						addEqualityTerm(operands.substring(start, i + 1), results);
+					else if (depth < 0)
+						return new ArrayList<String[]>();
+				}
+			}
+		} else
+			addEqualityTerm(f, results);
+		return results;
+	}
+
+	private static void addEqualityTerm(String term, List<String[]> results) {
+		if (!term.startsWith("(") || !term.endsWith(")")) //$NON-NLS-1$ //$NON-NLS-2$
+			return;
+		String body = term.substring(1, term.length() - 1);
+		int eq = body.indexOf('=');
+		if (eq <= 0 || body.indexOf('(') >= 0 || body.indexOf(')') >= 0 || body.indexOf('*') >= 0
+				|| body.indexOf('\\') >= 0)
+			return;
+		char op = body.charAt(eq - 1);
+		if (op == '~' || op == '<' || op == '>')
+			return;
+		results.add(new String[] { body.substring(0, eq).trim(), body.substring(eq + 1) });
+	}
+
+	public String toString() {
+		StringBuffer buf = new StringBuffer("EndpointListenerScope["); //$NON-NLS-1$
+		buf.append("listener=").append(listener); //$NON-NLS-1$
+		buf.append(";filters=").append(java.util.Arrays.asList(filters)).append("]"); //$NON-NLS-1$ //$NON-NLS-2$
+		return buf.toString();
+	}
+}
@@ -0,0 +1,135 @@
+/****************************************************************************
+ * Copyright (c) 2026 Composent, Inc. and others.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * Contributors:
+ *   Composent, Inc. - initial API and implementation
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *****************************************************************************/
+package org.eclipse.ecf.internal.osgi.services.remoteserviceadmin;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collection of export or import registrations that are also indexed by
+ * keys, e.g. the exported service reference, the endpoint id or the remote
+ * service id, so that the registrations for a key are found without scanning
+ * all of them.
+ * <p>
+ * The keys of a registration are given when it is added with
+ * {@link #add(Object, Object...)}. Like the collection used before, this class
+ * is not synchronized; callers synchronize on the collection itself.
+ *
+ * @param <R> registration type
+ */
+public class IndexedRegistrations<R> extends AbstractCollection<R> {
+
+	private static final Object[] NO_KEYS = new Object[0];
+
+	private final Map<R, Object[]> registrations = new LinkedHashMap<R, Object[]>();
+	private final Map<Object, List<R>> index = new HashMap<Object, List<R>>();
+
+	public boolean add(R registration) {
+		return add(registration, NO_KEYS);
+	}
+
+	/**
+	 * Add a registration.
+	 *
+	 * @param registration the registration. Must not be <code>null</code>.
+	 * @param keys         the keys to find the registration with. Null keys
+	 *                     are ignored.
+	 * @return <code>true</code> if the registration was added,
+	 *         <code>false</code> if it was already present
+	 */
+	public boolean add(R registration, Object... keys) {
+		if (registrations.containsKey(registration))
+			return false;
+		registrations.put(registration, keys);
+		for (Object key : keys) {
+			if (key == null)
+				continue;
+			List<R> l = index.get(key);
+			if (l == null) {
+				l = new ArrayList<R>(1);
+				index.put(key, l);
+			}
+			l.add(registration);
+		}
+		return true;
+	}
+
+	/**
+	 * @param key the key
+	 * @return List of the registrations added with the given key. Never
+	 *         <code>null</code>.
+	 */
+	public List<R> get(Object key) {
+		List<R> l = (key == null) ? null : index.get(key);
+		return (l == null) ? Collections.<R>emptyList() : new ArrayList<R>(l);
+	}
+
+	public boolean remove(Object registration) {
+		Object[] keys = registrations.remove(registration);
+		if (keys == null)
+			return false;
+		unindex(registration, keys);
+		return true;
+	}
+
+	private void unindex(Object registration, Object[] keys) {
+		for (Object key : keys) {
+			if (key == null)
+				continue;
+			List<R> l = index.get(key);
+			if (l != null && l.remove(registration) && l.isEmpty())
+				index.remove(key);
+		}
+	}
+
+	public boolean contains(Object registration) {
+		return registrations.containsKey(registration);
+	}
+
+	public void clear() {
+		registrations.clear();
+		index.clear();
+	}
+
+	public int size() {
+		return registrations.size();
+	}
+
+	public Iterator<R> iterator() {
+		final Iterator<Map.Entry<R, Object[]>> i = registrations.entrySet().iterator();
+		return new Iterator<R>() {
+			private Map.Entry<R, Object[]> current;
+
+			public boolean hasNext() {
+				return i.hasNext();
+			}
+
+			public R next() {
+				current = i.next();
+				return current.getKey();
+			}
+
+			public void remove() {
+				i.remove();
+				unindex(current.getKey(), current.getValue());
+				current = null;
+			}
+		};
+	}
+}
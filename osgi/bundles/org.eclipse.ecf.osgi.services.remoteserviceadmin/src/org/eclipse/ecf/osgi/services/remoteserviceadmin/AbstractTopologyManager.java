@@ -16,6 +16,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -34,6 +36,7 @@ import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.framework.ServiceEvent;
 import org.osgi.framework.ServiceReference;
 import org.osgi.framework.ServiceRegistration;
+import org.osgi.service.remoteserviceadmin.EndpointEvent;
 import org.osgi.service.remoteserviceadmin.EndpointEventListener;
 import org.osgi.service.remoteserviceadmin.EndpointListener;
 import org.osgi.service.remoteserviceadmin.ImportRegistration;
@@ -89,6 +92,26 @@ public abstract class AbstractTopologyManager {
 			"org.eclipse.ecf.osgi.services.remoteserviceadmin.AbstractTopologyManager.requireServiceExportedConfigs", //$NON-NLS-1$
 			"false")).booleanValue(); //$NON-NLS-1$
 
+	// Off by default: with batch imports an added endpoint is imported later
+	// on the dispatcher thread, not before handleECFEndpointAdded returns
+	private boolean batchImports = new Boolean(System.getProperty(
+			"org.eclipse.ecf.osgi.services.remoteserviceadmin.AbstractTopologyManager.batchImports", //$NON-NLS-1$
+			"false")).booleanValue(); //$NON-NLS-1$
+
+	class ECFEndpointEvent {
+		final int type;
+		final org.osgi.service.remoteserviceadmin.EndpointDescription endpointDescription;
+
+		ECFEndpointEvent(int type, org.osgi.service.remoteserviceadmin.EndpointDescription endpointDescription) {
+			this.type = type;
+			this.endpointDescription = endpointDescription;
+		}
+	}
+
+	// ECF endpoint events not yet handled, in the order they were received
+	private final LinkedList<ECFEndpointEvent> ecfEndpointEvents = new LinkedList<ECFEndpointEvent>();
+	private boolean ecfEndpointEventsDispatching;
+
 	public AbstractTopologyManager(BundleContext context) {
 		serviceInfoFactoryTracker = new ServiceTracker(context, createISIFFilter(context), null);
 		serviceInfoFactoryTracker.open();
@@ -113,6 +136,9 @@ public abstract class AbstractTopologyManager {
 	}
 
 	public void close() {
+		synchronized (ecfEndpointEvents) {
+			ecfEndpointEvents.clear();
+		}
 		registrationLock.lock();
 		try {
 			registrations.entrySet().stream().forEach(entry -> {
@@ -327,12 +353,87 @@ public abstract class AbstractTopologyManager {
 	protected void handleECFEndpointAdded(EndpointDescription endpointDescription) {
 		trace("handleECFEndpointAdded", "endpointDescription=" //$NON-NLS-1$ //$NON-NLS-2$
 				+ endpointDescription);
+		if (batchImports) {
+			queueECFEndpointEvent(EndpointEvent.ADDED, endpointDescription);
+			return;
+		}
 		// Import service
 		RemoteServiceAdmin rsa = (RemoteServiceAdmin) getRemoteServiceAdmin();
 		if (rsa != null)
 			rsa.importService(endpointDescription);
 	}
 
+	/**
+	 * Queue an ECF endpoint event, to be handled by a dispatcher thread in the
+	 * order received. Consecutive added endpoints are imported together with
+	 * {@link RemoteServiceAdmin#importServices(java.util.Collection)}, so a burst
+	 * of discovered endpoints is imported in one batch rather than one by one.
+	 */
+	private void queueECFEndpointEvent(int type,
+			org.osgi.service.remoteserviceadmin.EndpointDescription endpointDescription) {
+		synchronized (ecfEndpointEvents) {
+			ecfEndpointEvents.add(new ECFEndpointEvent(type, endpointDescription));
+			if (ecfEndpointEventsDispatching)
+				return;
+			ecfEndpointEventsDispatching = true;
+		}
+		Thread t = new Thread(new Runnable() {
+			public void run() {
+				dispatchECFEndpointEvents();
+			}
+		}, "RSA TopologyManager ECF Endpoint Dispatcher"); //$NON-NLS-1$
+		t.setDaemon(true);
+		t.start();
+	}
+
+	private void dispatchECFEndpointEvents() {
+		while (true) {
+			List<ECFEndpointEvent> events = new ArrayList<ECFEndpointEvent>();
+			synchronized (ecfEndpointEvents) {
+				if (ecfEndpointEvents.isEmpty()) {
+					ecfEndpointEventsDispatching = false;
+					return;
+				}
+				events.add(ecfEndpointEvents.removeFirst());
+				// Take all consecutive added events
+				if (events.get(0).type == EndpointEvent.ADDED)
+					while (!ecfEndpointEvents.isEmpty() && ecfEndpointEvents.getFirst().type == EndpointEvent.ADDED)
+						events.add(ecfEndpointEvents.removeFirst());
+			}
+			try {
+				switch (events.get(0).type) {
+				case EndpointEvent.ADDED:
+					importECFEndpoints(events);
+					break;
+				case EndpointEvent.REMOVED:
+					unimportECFEndpoint(events.get(0).endpointDescription);
+					break;
+				case EndpointEvent.MODIFIED:
+					updateECFEndpoint((EndpointDescription) events.get(0).endpointDescription);
+					break;
+				default:
+					break;
+				}
+			} catch (Throwable t) {
+				logError("dispatchECFEndpointEvents", "Exception handling ECF endpoint events=" + events.size(), t); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+		}
+	}
+
+	private void importECFEndpoints(List<ECFEndpointEvent> events) {
+		RemoteServiceAdmin rsa = (RemoteServiceAdmin) getRemoteServiceAdmin();
+		if (rsa == null)
+			return;
+		// An endpoint added twice in a row is imported once
+		Map<String, EndpointDescription> eds = new LinkedHashMap<String, EndpointDescription>();
+		for (ECFEndpointEvent event : events)
+			eds.put(event.endpointDescription.getId(), (EndpointDescription) event.endpointDescription);
+		if (eds.size() == 1)
+			rsa.importService(eds.values().iterator().next());
+		else
+			rsa.importServices(eds.values());
+	}
+
 	/**
 	 * @param endpointDescription endpoint description
 	 * @since 3.0
@@ -341,9 +442,17 @@ public abstract class AbstractTopologyManager {
 			org.osgi.service.remoteserviceadmin.EndpointDescription endpointDescription) {
 		trace("handleECFEndpointRemoved", "endpointDescription=" //$NON-NLS-1$ //$NON-NLS-2$
 				+ endpointDescription);
+		if (batchImports)
+			queueECFEndpointEvent(EndpointEvent.REMOVED, endpointDescription);
+		else
+			unimportECFEndpoint(endpointDescription);
+	}
+
+	private void unimportECFEndpoint(org.osgi.service.remoteserviceadmin.EndpointDescription endpointDescription) {
 		RemoteServiceAdmin rsa = (RemoteServiceAdmin) getRemoteServiceAdmin();
 		if (rsa != null) {
-			List<RemoteServiceAdmin.ImportRegistration> importedRegistrations = rsa.getImportedRegistrations();
+			List<RemoteServiceAdmin.ImportRegistration> importedRegistrations = rsa
+					.getImportedRegistrations(endpointDescription);
 			org.eclipse.ecf.osgi.services.remoteserviceadmin.EndpointDescription ed = (org.eclipse.ecf.osgi.services.remoteserviceadmin.EndpointDescription) endpointDescription;
 			for (RemoteServiceAdmin.ImportRegistration importedRegistration : importedRegistrations) {
 				if (importedRegistration.match(ed)) {
@@ -362,9 +471,16 @@ public abstract class AbstractTopologyManager {
 	protected void handleECFEndpointModified(EndpointDescription endpoint) {
 		trace("handleECFEndpointModified", "endpointDescription=" //$NON-NLS-1$ //$NON-NLS-2$
 				+ endpoint);
+		if (batchImports)
+			queueECFEndpointEvent(EndpointEvent.MODIFIED, endpoint);
+		else
+			updateECFEndpoint(endpoint);
+	}
+
+	private void updateECFEndpoint(EndpointDescription endpoint) {
 		RemoteServiceAdmin rsa = (RemoteServiceAdmin) getRemoteServiceAdmin();
 		if (rsa != null) {
-			List<RemoteServiceAdmin.ImportRegistration> importedRegistrations = rsa.getImportedRegistrations();
+			List<RemoteServiceAdmin.ImportRegistration> importedRegistrations = rsa.getImportedRegistrations(endpoint);
 			org.eclipse.ecf.osgi.services.remoteserviceadmin.EndpointDescription ed = (org.eclipse.ecf.osgi.services.remoteserviceadmin.EndpointDescription) endpoint;
 			for (RemoteServiceAdmin.ImportRegistration importedRegistration : importedRegistrations) {
 				if (importedRegistration.match(ed)) {
@@ -458,12 +574,48 @@ public abstract class AbstractTopologyManager {
 	}
 
 	protected void handleServiceRegistering(ServiceReference serviceReference) {
+		Map<String, Object> exportProperties = getExportProperties(serviceReference);
+		if (exportProperties == null)
+			return;
+		trace("handleServiceRegistering", "serviceReference=" //$NON-NLS-1$ //$NON-NLS-2$
+				+ serviceReference + " exportProperties=" + exportProperties); //$NON-NLS-1$
+		org.osgi.service.remoteserviceadmin.RemoteServiceAdmin rsa = getRemoteServiceAdmin();
+		// Do the export with RSA
+		if (rsa != null)
+			rsa.exportService(serviceReference, exportProperties);
+	}
+
+	/**
+	 * Export several services at once, as if each of them were registering.
+	 *
+	 * @param serviceReferences the service references
+	 * @since 4.10
+	 */
+	protected void handleServicesRegistering(ServiceReference[] serviceReferences) {
+		Map<ServiceReference<?>, Map<String, ?>> exports = new LinkedHashMap<ServiceReference<?>, Map<String, ?>>();
+		for (int i = 0; i < serviceReferences.length; i++) {
+			Map<String, Object> exportProperties = getExportProperties(serviceReferences[i]);
+			if (exportProperties != null)
+				exports.put(serviceReferences[i], exportProperties);
+		}
+		trace("handleServicesRegistering", "exports=" + exports.size()); //$NON-NLS-1$ //$NON-NLS-2$
+		if (exports.isEmpty())
+			return;
+		org.osgi.service.remoteserviceadmin.RemoteServiceAdmin rsa = getRemoteServiceAdmin();
+		if (rsa instanceof RemoteServiceAdmin)
+			((RemoteServiceAdmin) rsa).exportServices(exports);
+		else if (rsa != null)
+			for (Map.Entry<ServiceReference<?>, Map<String, ?>> entry : exports.entrySet())
+				rsa.exportService(entry.getKey(), entry.getValue());
+	}
+
+	private Map<String, Object> getExportProperties(ServiceReference serviceReference) {
 		// Using OSGI 5 Chap 13 Remote Services spec, get the specified remote
 		// interfaces for the given service reference
 		String[] exportedInterfaces = PropertiesUtil.getExportedInterfaces(serviceReference);
 		// If no remote interfaces set, then we don't do anything with it
 		if (exportedInterfaces == null)
-			return;
+			return null;
 
 		// Get serviceExportedConfigs property
 		String[] serviceExportedConfigs = PropertiesUtil.getStringArrayFromPropertyValue(serviceReference
@@ -473,24 +625,20 @@ public abstract class AbstractTopologyManager {
 		// is null/not set, then we don't do anything with this service registration
 		if (requireServiceExportedConfigs
 				&& (serviceExportedConfigs == null || Arrays.asList(serviceExportedConfigs).size() == 0))
-			return;
+			return null;
 		// If we get this far, then we are going to export it
 		// prepare export properties
 		Map<String, Object> exportProperties = new TreeMap<String, Object>(String.CASE_INSENSITIVE_ORDER);
 		exportProperties.put(org.osgi.service.remoteserviceadmin.RemoteConstants.SERVICE_EXPORTED_INTERFACES,
 				exportedInterfaces);
-		trace("handleServiceRegistering", "serviceReference=" //$NON-NLS-1$ //$NON-NLS-2$
-				+ serviceReference + " exportProperties=" + exportProperties); //$NON-NLS-1$
-		org.osgi.service.remoteserviceadmin.RemoteServiceAdmin rsa = getRemoteServiceAdmin();
-		// Do the export with RSA
-		if (rsa != null)
-			rsa.exportService(serviceReference, exportProperties);
+		return exportProperties;
 	}
 
 	protected void handleServiceModifying(ServiceReference serviceReference) {
 		RemoteServiceAdmin rsa = (RemoteServiceAdmin) getRemoteServiceAdmin();
 		if (rsa != null) {
-			List<RemoteServiceAdmin.ExportRegistration> exportedRegistrations = rsa.getExportedRegistrations();
+			List<RemoteServiceAdmin.ExportRegistration> exportedRegistrations = rsa
+					.getExportedRegistrations(serviceReference);
 			for (RemoteServiceAdmin.ExportRegistration exportedRegistration : exportedRegistrations) {
 				if (exportedRegistration.match(serviceReference)) {
 					trace("handleServiceModifying", "modifying exportRegistration for serviceReference=" //$NON-NLS-1$ //$NON-NLS-2$
@@ -507,8 +655,8 @@ public abstract class AbstractTopologyManager {
 	protected void handleServiceUnregistering(ServiceReference serviceReference) {
 		RemoteServiceAdmin rsa = (RemoteServiceAdmin) getRemoteServiceAdmin();
 		if (rsa != null) {
-			List<RemoteServiceAdmin.ExportRegistration> exportedRegistrations = ((RemoteServiceAdmin) getRemoteServiceAdmin())
-					.getExportedRegistrations();
+			List<RemoteServiceAdmin.ExportRegistration> exportedRegistrations = rsa
+					.getExportedRegistrations(serviceReference);
 			for (RemoteServiceAdmin.ExportRegistration exportedRegistration : exportedRegistrations) {
 				if (exportedRegistration.match(serviceReference)) {
 					trace("handleServiceUnregistering", "closing exportRegistration for serviceReference=" //$NON-NLS-1$ //$NON-NLS-2$
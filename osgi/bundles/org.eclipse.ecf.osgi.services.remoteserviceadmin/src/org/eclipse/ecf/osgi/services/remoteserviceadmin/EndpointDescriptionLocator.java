@@ -48,6 +48,7 @@ import org.eclipse.ecf.discovery.IServiceListener;
 import org.eclipse.ecf.discovery.identity.IServiceID;
 import org.eclipse.ecf.internal.osgi.services.remoteserviceadmin.Activator;
 import org.eclipse.ecf.internal.osgi.services.remoteserviceadmin.DebugOptions;
+import org.eclipse.ecf.internal.osgi.services.remoteserviceadmin.EndpointListenerScope;
 import org.eclipse.ecf.internal.osgi.services.remoteserviceadmin.LogUtility;
 import org.eclipse.ecf.internal.osgi.services.remoteserviceadmin.PropertiesUtil;
 import org.eclipse.equinox.concurrent.future.IExecutor;
@@ -255,6 +256,10 @@ public class EndpointDescriptionLocator implements IEndpointDescriptionLocator {
 						EndpointListener listener = (EndpointListener) context.getService(reference);
 						if (listener == null)
 							return null;
+						synchronized (endpointListenerServiceTrackerLock) {
+							endpointListenerScopes.put(reference, createEndpointListenerScope(reference, listener,
+									EndpointListener.ENDPOINT_LISTENER_SCOPE));
+						}
 						Collection<org.osgi.service.remoteserviceadmin.EndpointDescription> allDiscoveredEndpointDescriptions = getEDs();
 						for (org.osgi.service.remoteserviceadmin.EndpointDescription ed : allDiscoveredEndpointDescriptions) {
 							EndpointDescriptionLocator.EndpointListenerHolder[] endpointListenerHolders = getMatchingEndpointListenerHolders(
@@ -271,9 +276,19 @@ public class EndpointDescriptionLocator implements IEndpointDescriptionLocator {
 					}
 
 					public void modifiedService(ServiceReference reference, Object service) {
+						// The scope may have changed
+						synchronized (endpointListenerServiceTrackerLock) {
+							endpointListenerScopes.put(reference, createEndpointListenerScope(reference, service,
+									EndpointListener.ENDPOINT_LISTENER_SCOPE));
+						}
 					}
 
 					public void removedService(ServiceReference reference, Object service) {
+						synchronized (endpointListenerServiceTrackerLock) {
+							endpointListenerScopes.remove(reference);
+						}
+						if (context != null)
+							context.ungetService(reference);
 					}
 				});
 
@@ -291,6 +306,10 @@ public class EndpointDescriptionLocator implements IEndpointDescriptionLocator {
 						EndpointEventListener listener = (EndpointEventListener) context.getService(reference);
 						if (listener == null)
 							return null;
+						synchronized (endpointEventListenerServiceTrackerLock) {
+							endpointEventListenerScopes.put(reference, createEndpointListenerScope(reference,
+									listener, EndpointEventListener.ENDPOINT_LISTENER_SCOPE));
+						}
 						Collection<org.osgi.service.remoteserviceadmin.EndpointDescription> allDiscoveredEndpointDescriptions = getEDs();
 						for (org.osgi.service.remoteserviceadmin.EndpointDescription ed : allDiscoveredEndpointDescriptions) {
 							EndpointDescriptionLocator.EndpointEventListenerHolder[] endpointEventListenerHolders = getMatchingEndpointEventListenerHolders(
@@ -308,9 +327,19 @@ public class EndpointDescriptionLocator implements IEndpointDescriptionLocator {
 					}
 
 					public void modifiedService(ServiceReference reference, Object service) {
+						// The scope may have changed
+						synchronized (endpointEventListenerServiceTrackerLock) {
+							endpointEventListenerScopes.put(reference, createEndpointListenerScope(reference,
+									service, EndpointEventListener.ENDPOINT_LISTENER_SCOPE));
+						}
 					}
 
 					public void removedService(ServiceReference reference, Object service) {
+						synchronized (endpointEventListenerServiceTrackerLock) {
+							endpointEventListenerScopes.remove(reference);
+						}
+						if (context != null)
+							context.ungetService(reference);
 					}
 				});
 
@@ -696,6 +725,12 @@ public class EndpointDescriptionLocator implements IEndpointDescriptionLocator {
 
 	private Object endpointEventListenerServiceTrackerLock = new Object();
 
+	// Scopes of the tracked endpoint listeners, with their filters compiled once
+	// rather than for every endpoint event
+	private Map<ServiceReference, EndpointListenerScope> endpointListenerScopes = new HashMap<ServiceReference, EndpointListenerScope>();
+
+	private Map<ServiceReference, EndpointListenerScope> endpointEventListenerScopes = new HashMap<ServiceReference, EndpointListenerScope>();
+
 	protected EndpointListenerHolder[] getMatchingEndpointListenerHolders(final EndpointDescription description) {
 		return AccessController.doPrivileged(new PrivilegedAction<EndpointListenerHolder[]>() {
 			public EndpointListenerHolder[] run() {
@@ -797,18 +832,22 @@ public class EndpointDescriptionLocator implements IEndpointDescriptionLocator {
 		if (refs == null)
 			return null;
 		List results = new ArrayList();
+		EndpointListenerScope.Target target = new EndpointListenerScope.Target(description);
 		for (int i = 0; i < refs.length; i++) {
-			EndpointEventListener listener = (EndpointEventListener) context.getService(refs[i]);
-			if (listener == null)
-				continue;
-			List<String> filters = PropertiesUtil.getStringPlusProperty(getMapFromProperties(refs[i]),
-					EndpointEventListener.ENDPOINT_LISTENER_SCOPE);
-			// Only proceed if there is a filter present
-			if (filters.size() > 0) {
-				String matchingFilter = isMatch(description, filters);
-				if (matchingFilter != null)
-					results.add(new EndpointEventListenerHolder(listener, description, matchingFilter, type));
+			EndpointListenerScope scope;
+			synchronized (endpointEventListenerServiceTrackerLock) {
+				scope = endpointEventListenerScopes.get(refs[i]);
 			}
+			if (scope == null)
+				scope = createEndpointListenerScope(refs[i], context.getService(refs[i]),
+						EndpointEventListener.ENDPOINT_LISTENER_SCOPE);
+			// Only proceed if there is a filter present
+			if (scope.getListener() == null || scope.isEmpty())
+				continue;
+			String matchingFilter = scope.match(target);
+			if (matchingFilter != null)
+				results.add(new EndpointEventListenerHolder((EndpointEventListener) scope.getListener(), description,
+						matchingFilter, type));
 		}
 		return (EndpointEventListenerHolder[]) results.toArray(new EndpointEventListenerHolder[results.size()]);
 	}
@@ -818,34 +857,29 @@ public class EndpointDescriptionLocator implements IEndpointDescriptionLocator {
 		if (refs == null)
 			return null;
 		List results = new ArrayList();
+		EndpointListenerScope.Target target = new EndpointListenerScope.Target(description);
 		for (int i = 0; i < refs.length; i++) {
-			EndpointListener listener = (EndpointListener) context.getService(refs[i]);
-			if (listener == null)
-				continue;
-			List<String> filters = PropertiesUtil.getStringPlusProperty(getMapFromProperties(refs[i]),
-					EndpointListener.ENDPOINT_LISTENER_SCOPE);
-			if (filters.size() > 0) {
-				String matchingFilter = isMatch(description, filters);
-				if (matchingFilter != null)
-					results.add(new EndpointListenerHolder(listener, description, matchingFilter));
+			EndpointListenerScope scope;
+			synchronized (endpointListenerServiceTrackerLock) {
+				scope = endpointListenerScopes.get(refs[i]);
 			}
+			if (scope == null)
+				scope = createEndpointListenerScope(refs[i], context.getService(refs[i]),
+						EndpointListener.ENDPOINT_LISTENER_SCOPE);
+			if (scope.getListener() == null || scope.isEmpty())
+				continue;
+			String matchingFilter = scope.match(target);
+			if (matchingFilter != null)
+				results.add(new EndpointListenerHolder((EndpointListener) scope.getListener(), description,
+						matchingFilter));
 		}
 		return (EndpointListenerHolder[]) results.toArray(new EndpointListenerHolder[results.size()]);
 	}
 
-	private String isMatch(EndpointDescription description, List<String> filters) {
-		for (String filter : filters) {
-			if (filter == null || "".equals(filter)) //$NON-NLS-1$
-				continue;
-			try {
-				if (description.matches(filter))
-					return filter;
-			} catch (IllegalArgumentException e) {
-				logError("isMatch", "invalid endpoint listener filter=" //$NON-NLS-1$ //$NON-NLS-2$
-						+ filters, e);
-			}
-		}
-		return null;
+	private EndpointListenerScope createEndpointListenerScope(ServiceReference ref, Object listener,
+			String scopeProperty) {
+		return new EndpointListenerScope(listener,
+				PropertiesUtil.getStringPlusProperty(getMapFromProperties(ref), scopeProperty));
 	}
 
 	private Map getMapFromProperties(ServiceReference ref) {
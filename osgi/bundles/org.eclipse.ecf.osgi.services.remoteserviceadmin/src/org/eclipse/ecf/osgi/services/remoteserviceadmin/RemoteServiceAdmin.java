@@ -25,12 +25,19 @@ import java.util.Dictionary;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.core.runtime.ISafeRunnable;
@@ -44,6 +51,7 @@ import org.eclipse.ecf.core.identity.StringID;
 import org.eclipse.ecf.core.util.ECFException;
 import org.eclipse.ecf.internal.osgi.services.remoteserviceadmin.Activator;
 import org.eclipse.ecf.internal.osgi.services.remoteserviceadmin.DebugOptions;
+import org.eclipse.ecf.internal.osgi.services.remoteserviceadmin.IndexedRegistrations;
 import org.eclipse.ecf.internal.osgi.services.remoteserviceadmin.LogUtility;
 import org.eclipse.ecf.internal.osgi.services.remoteserviceadmin.PropertiesUtil;
 import org.eclipse.ecf.remoteservice.IExtendedRemoteServiceRegistration;
@@ -215,8 +223,7 @@ public class RemoteServiceAdmin implements org.osgi.service.remoteserviceadmin.R
 	}
 
 	private void handleServiceUnregistering(ServiceReference serviceReference) {
-		List<ExportRegistration> ers = getExportedRegistrations();
-		for (ExportRegistration exportedRegistration : ers) {
+		for (ExportRegistration exportedRegistration : getExportedRegistrations(serviceReference)) {
 			if (exportedRegistration.match(serviceReference)) {
 				trace("handleServiceUnregistering", "closing exportRegistration for serviceReference=" //$NON-NLS-1$ //$NON-NLS-2$
 						+ serviceReference);
@@ -454,6 +461,250 @@ public class RemoteServiceAdmin implements org.osgi.service.remoteserviceadmin.R
 		return importRegistration;
 	}
 
+	/**
+	 * Export several services at once. This is equivalent to calling
+	 * {@link #exportService(ServiceReference, Map)} for each of the given
+	 * service references, except that an {@link IllegalArgumentException} for
+	 * one service does not prevent the export of the others. It is logged, and
+	 * the service gets an empty collection of export registrations.
+	 *
+	 * @param services map of service reference to export to the overriding
+	 *                 properties to export it with (may be <code>null</code>)
+	 * @return Map of service reference to the export registrations for it, in
+	 *         the order of the given map
+	 * @since 4.10
+	 */
+	public Map<ServiceReference<?>, Collection<org.osgi.service.remoteserviceadmin.ExportRegistration>> exportServices(
+			Map<ServiceReference<?>, Map<String, ?>> services) {
+		long start = System.nanoTime();
+		Map<ServiceReference<?>, Collection<org.osgi.service.remoteserviceadmin.ExportRegistration>> results = new LinkedHashMap<ServiceReference<?>, Collection<org.osgi.service.remoteserviceadmin.ExportRegistration>>();
+		int exported = 0;
+		for (Map.Entry<ServiceReference<?>, Map<String, ?>> entry : services.entrySet()) {
+			Collection<org.osgi.service.remoteserviceadmin.ExportRegistration> regs = null;
+			try {
+				regs = exportService(entry.getKey(), entry.getValue());
+			} catch (IllegalArgumentException e) {
+				logError("exportServices", "Could not export serviceReference=" + entry.getKey(), e); //$NON-NLS-1$ //$NON-NLS-2$
+				regs = Collections.EMPTY_LIST;
+			}
+			if (!regs.isEmpty())
+				exported++;
+			results.put(entry.getKey(), regs);
+		}
+		trace("exportServices", "services=" + services.size() + ",exported=" + exported + ",exportMillis=" //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+				+ ((System.nanoTime() - start) / 1000000));
+		return results;
+	}
+
+	/**
+	 * Import several endpoints at once. This is equivalent to calling
+	 * {@link #importService(org.osgi.service.remoteserviceadmin.EndpointDescription)}
+	 * for each of the given endpoint descriptions, but it is done in three
+	 * phases rather than one endpoint at a time:
+	 * <ol>
+	 * <li>The endpoints are grouped by their remote container, connect target
+	 * and imported configs, and the consumer container is selected, and
+	 * connected, once per group.</li>
+	 * <li>The remote service references of all endpoints are looked up in
+	 * parallel, on a pool that is shared by all batches. The number of lookup
+	 * threads is set by the
+	 * <code>org.eclipse.ecf.osgi.services.remoteserviceadmin.importParallelism</code>
+	 * system property (default 8).</li>
+	 * <li>The proxies are registered, and the import events published.</li>
+	 * </ol>
+	 * The time of each phase is traced.
+	 *
+	 * @param endpointDescriptions the endpoint descriptions to import
+	 * @return Map of endpoint description to its import registration, in the
+	 *         order of the given endpoint descriptions. As for
+	 *         {@link #importService(org.osgi.service.remoteserviceadmin.EndpointDescription)},
+	 *         the import registration is <code>null</code> if no container was
+	 *         selected for the endpoint. It is also <code>null</code> if the
+	 *         caller lacks import permission for the endpoint, or if it is not
+	 *         a valid ECF endpoint description.
+	 * @since 4.10
+	 */
+	public Map<org.osgi.service.remoteserviceadmin.EndpointDescription, org.osgi.service.remoteserviceadmin.ImportRegistration> importServices(
+			Collection<? extends org.osgi.service.remoteserviceadmin.EndpointDescription> endpointDescriptions) {
+		trace("importServices", "endpointDescriptions=" + endpointDescriptions.size()); //$NON-NLS-1$ //$NON-NLS-2$
+		long start = System.nanoTime();
+		Map<org.osgi.service.remoteserviceadmin.EndpointDescription, org.osgi.service.remoteserviceadmin.ImportRegistration> results = new LinkedHashMap<org.osgi.service.remoteserviceadmin.EndpointDescription, org.osgi.service.remoteserviceadmin.ImportRegistration>();
+		final IConsumerContainerSelector consumerContainerSelector = getConsumerContainerSelector();
+		if (consumerContainerSelector == null) {
+			String errorMessage = "No consumerContainerSelector available"; //$NON-NLS-1$
+			logError("importServices", errorMessage, new SelectContainerException(errorMessage, null, null)); //$NON-NLS-1$
+			for (org.osgi.service.remoteserviceadmin.EndpointDescription endpointDescription : endpointDescriptions)
+				results.put(endpointDescription, null);
+			return results;
+		}
+		// Phase 1: select the container for each group of endpoints. The
+		// ImportLookup is null if no container is selected
+		Map<org.osgi.service.remoteserviceadmin.EndpointDescription, ImportLookup> lookups = new LinkedHashMap<org.osgi.service.remoteserviceadmin.EndpointDescription, ImportLookup>();
+		Map<List<Object>, Object> selections = new HashMap<List<Object>, Object>();
+		List<ImportLookup> toLookup = new ArrayList<ImportLookup>();
+		for (org.osgi.service.remoteserviceadmin.EndpointDescription endpointDescription : endpointDescriptions) {
+			try {
+				checkEndpointPermission(endpointDescription, EndpointPermission.IMPORT);
+			} catch (SecurityException e) {
+				logError("importServices", "No import permission for endpointDescription=" + endpointDescription, e); //$NON-NLS-1$ //$NON-NLS-2$
+				lookups.put(endpointDescription, null);
+				continue;
+			}
+			final EndpointDescription ed;
+			try {
+				ed = (endpointDescription instanceof EndpointDescription)
+						? (EndpointDescription) endpointDescription
+						: new EndpointDescription(endpointDescription.getProperties());
+			} catch (IllegalArgumentException e) {
+				logError("importServices", "Invalid endpointDescription=" + endpointDescription, e); //$NON-NLS-1$ //$NON-NLS-2$
+				lookups.put(endpointDescription, null);
+				continue;
+			}
+			List<Object> selectionKey = getContainerSelectionKey(ed);
+			Object selection = selections.get(selectionKey);
+			if (selection == null) {
+				try {
+					selection = AccessController
+							.doPrivileged(new PrivilegedExceptionAction<IRemoteServiceContainer>() {
+								public IRemoteServiceContainer run() throws SelectContainerException {
+									return consumerContainerSelector.selectConsumerContainer(ed);
+								}
+							});
+				} catch (PrivilegedActionException e) {
+					logError("importServices", "Unexpected exception in selectConsumerContainer", e.getException()); //$NON-NLS-1$ //$NON-NLS-2$
+					selection = e.getException();
+				} catch (Exception e) {
+					logError("importServices", "Unexpected exception in selectConsumerContainer", e); //$NON-NLS-1$ //$NON-NLS-2$
+					selection = e;
+				}
+				if (selection == null) {
+					String errorMessage = "No remote service container selected for endpoint=" //$NON-NLS-1$
+							+ endpointDescription + ". Remote service NOT IMPORTED"; //$NON-NLS-1$
+					logError("importServices", errorMessage, new SelectContainerException(errorMessage, null, null)); //$NON-NLS-1$
+					selection = NO_SELECTION;
+				}
+				selections.put(selectionKey, selection);
+			}
+			if (selection instanceof IRemoteServiceContainer) {
+				ImportLookup lookup = new ImportLookup(ed, (IRemoteServiceContainer) selection);
+				lookups.put(endpointDescription, lookup);
+				// Endpoints that are already imported need no lookup
+				synchronized (importedRegistrations) {
+					if (findImportEndpoint(ed) == null)
+						toLookup.add(lookup);
+				}
+			} else if (selection instanceof Throwable) {
+				ImportLookup lookup = new ImportLookup(ed, null);
+				lookup.exception = (Throwable) selection;
+				lookups.put(endpointDescription, lookup);
+			} else
+				lookups.put(endpointDescription, null);
+		}
+		long selected = System.nanoTime();
+		// Phase 2: look up the remote service references in parallel
+		lookupRemoteServices(toLookup);
+		long lookedUp = System.nanoTime();
+		// Phase 3: register proxies
+		List<ImportRegistration> importRegistrations = new ArrayList<ImportRegistration>();
+		synchronized (importedRegistrations) {
+			for (org.osgi.service.remoteserviceadmin.EndpointDescription endpointDescription : lookups.keySet()) {
+				ImportLookup lookup = lookups.get(endpointDescription);
+				ImportRegistration importRegistration = null;
+				if (lookup != null) {
+					if (lookup.rsContainer == null)
+						importRegistration = new ImportRegistration(lookup.endpointDescription, lookup.exception);
+					else {
+						ImportEndpoint importEndpoint = findImportEndpoint(lookup.endpointDescription);
+						if (importEndpoint != null)
+							importRegistration = new ImportRegistration(importEndpoint);
+						else {
+							// Looked up above, unless it was imported when the lookup started
+							if (lookup.selectedRsReference == null && lookup.exception == null)
+								lookupRemoteService(lookup);
+							importRegistration = importService(lookup);
+						}
+					}
+					addImportRegistration(importRegistration);
+					importRegistrations.add(importRegistration);
+				}
+				results.put(endpointDescription, importRegistration);
+			}
+		}
+		for (ImportRegistration importRegistration : importRegistrations)
+			publishImportEvent(importRegistration);
+		long registered = System.nanoTime();
+		trace("importServices", "endpointDescriptions=" + lookups.size() + ",containerSelections=" //$NON-NLS-1$ //$NON-NLS-2$
+				+ selections.size() + ",lookups=" + toLookup.size() + ",selectMillis=" //$NON-NLS-1$ //$NON-NLS-2$
+				+ ((selected - start) / 1000000) + ",lookupMillis=" + ((lookedUp - selected) / 1000000) //$NON-NLS-1$
+				+ ",registerMillis=" + ((registered - lookedUp) / 1000000)); //$NON-NLS-1$
+		return results;
+	}
+
+	private static final Object NO_SELECTION = new Object();
+
+	private List<Object> getContainerSelectionKey(EndpointDescription ed) {
+		// The consumer container selector selects the container by these
+		List<Object> key = new ArrayList<Object>(3);
+		try {
+			key.add(ed.getContainerID());
+			key.add(ed.getConnectTargetID());
+		} catch (RuntimeException e) {
+			// Let the selector fail for this endpoint alone
+			key.add(ed);
+		}
+		key.add(new HashSet<String>(PropertiesUtil.getStringPlusProperty(ed.getProperties(),
+				org.osgi.service.remoteserviceadmin.RemoteConstants.SERVICE_IMPORTED_CONFIGS)));
+		return key;
+	}
+
+	private void lookupRemoteServices(List<ImportLookup> lookups) {
+		Activator a = Activator.getDefault();
+		ExecutorService executor = (a == null || lookups.size() <= 1) ? null : a.getImportLookupExecutor();
+		if (executor == null) {
+			for (ImportLookup lookup : lookups)
+				lookupRemoteService(lookup);
+			return;
+		}
+		// The executor is shared by all batches, its threads bound the
+		// number of concurrent lookups
+		List<Future<ImportLookup>> futures = new ArrayList<Future<ImportLookup>>(lookups.size());
+		for (final ImportLookup lookup : lookups) {
+			Future<ImportLookup> future = null;
+			try {
+				future = executor.submit(new Callable<ImportLookup>() {
+					public ImportLookup call() {
+						return lookupRemoteService(lookup);
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				// The bundle is being stopped
+				lookupRemoteService(lookup);
+			}
+			futures.add(future);
+		}
+		for (int i = 0; i < futures.size(); i++) {
+			Future<ImportLookup> future = futures.get(i);
+			if (future == null)
+				continue;
+			try {
+				future.get();
+			} catch (ExecutionException e) {
+				lookups.get(i).exception = e.getCause();
+			} catch (CancellationException e) {
+				lookups.get(i).exception = e;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				for (int j = i; j < futures.size(); j++) {
+					if (futures.get(j) != null)
+						futures.get(j).cancel(true);
+					if (lookups.get(j).selectedRsReference == null)
+						lookups.get(j).exception = e;
+				}
+				break;
+			}
+		}
+	}
+
 	public Collection<org.osgi.service.remoteserviceadmin.ExportReference> getExportedServices() {
 		Collection<org.osgi.service.remoteserviceadmin.ExportReference> results = new ArrayList<org.osgi.service.remoteserviceadmin.ExportReference>();
 		synchronized (exportedRegistrations) {
@@ -535,18 +786,73 @@ public class RemoteServiceAdmin implements org.osgi.service.remoteserviceadmin.R
 
 	private void addImportRegistration(ImportRegistration importRegistration) {
 		synchronized (importedRegistrations) {
-			importedRegistrations.add(importRegistration);
+			if (importedRegistrations instanceof IndexedRegistrations) {
+				// Index by endpoint id and by remote service id
+				ImportReference importReference = importRegistration.importReference;
+				EndpointDescription ed = (importReference == null) ? null : importReference.getEndpointDescription();
+				((IndexedRegistrations<org.osgi.service.remoteserviceadmin.ImportRegistration>) importedRegistrations)
+						.add(importRegistration, (ed == null) ? null : ed.getId(),
+								(importReference == null) ? null : importReference.getRemoteServiceID());
+			} else
+				importedRegistrations.add(importRegistration);
 			localImportedRegistrations.add(importRegistration);
 		}
 	}
 
 	private void addExportRegistration(ExportRegistration exportRegistration) {
 		synchronized (exportedRegistrations) {
-			exportedRegistrations.add(exportRegistration);
+			if (exportedRegistrations instanceof IndexedRegistrations)
+				// Index by exported service reference
+				((IndexedRegistrations<org.osgi.service.remoteserviceadmin.ExportRegistration>) exportedRegistrations)
+						.add(exportRegistration, exportRegistration.getServiceReference());
+			else
+				exportedRegistrations.add(exportRegistration);
 			localExportedRegistrations.add(exportRegistration);
 		}
 	}
 
+	// Must be called while synchronized on exportedRegistrations
+	private Collection<org.osgi.service.remoteserviceadmin.ExportRegistration> findExportedRegistrations(
+			ServiceReference serviceReference) {
+		if (exportedRegistrations instanceof IndexedRegistrations)
+			return ((IndexedRegistrations<org.osgi.service.remoteserviceadmin.ExportRegistration>) exportedRegistrations)
+					.get(serviceReference);
+		return exportedRegistrations;
+	}
+
+	// Must be called while synchronized on importedRegistrations. key is the
+	// endpoint id or the remote service id
+	private Collection<org.osgi.service.remoteserviceadmin.ImportRegistration> findImportedRegistrations(
+			Object key) {
+		if (importedRegistrations instanceof IndexedRegistrations)
+			return ((IndexedRegistrations<org.osgi.service.remoteserviceadmin.ImportRegistration>) importedRegistrations)
+					.get(key);
+		return importedRegistrations;
+	}
+
+	List<ExportRegistration> getExportedRegistrations(ServiceReference serviceReference) {
+		List<ExportRegistration> results = new ArrayList<ExportRegistration>();
+		synchronized (exportedRegistrations) {
+			for (org.osgi.service.remoteserviceadmin.ExportRegistration reg : findExportedRegistrations(
+					serviceReference))
+				if (reg instanceof ExportRegistration)
+					results.add((ExportRegistration) reg);
+		}
+		return results;
+	}
+
+	List<ImportRegistration> getImportedRegistrations(
+			org.osgi.service.remoteserviceadmin.EndpointDescription endpointDescription) {
+		List<ImportRegistration> results = new ArrayList<ImportRegistration>();
+		synchronized (importedRegistrations) {
+			for (org.osgi.service.remoteserviceadmin.ImportRegistration reg : findImportedRegistrations(
+					endpointDescription.getId()))
+				if (reg instanceof ImportRegistration)
+					results.add((ImportRegistration) reg);
+		}
+		return results;
+	}
+
 	private boolean removeExportRegistration(ExportRegistration exportRegistration) {
 		synchronized (exportedRegistrations) {
 			localExportedRegistrations.remove(exportRegistration);
@@ -1211,6 +1517,13 @@ public class RemoteServiceAdmin implements org.osgi.service.remoteserviceadmin.R
 			return ref.getID().getContainerRelativeID();
 		}
 
+		synchronized IRemoteServiceID getRemoteServiceID() {
+			if (importEndpoint == null)
+				return null;
+			IRemoteServiceReference ref = importEndpoint.rsReference;
+			return (ref == null) ? null : ref.getID();
+		}
+
 		public synchronized ServiceReference getImportedService() {
 			return (importEndpoint == null) ? null : importEndpoint.getProxyRegistration().getReference();
 		}
@@ -1447,7 +1760,8 @@ public class RemoteServiceAdmin implements org.osgi.service.remoteserviceadmin.R
 	}
 
 	private ExportEndpoint findExistingExportEndpoint(ServiceReference serviceReference, ID containerID) {
-		for (org.osgi.service.remoteserviceadmin.ExportRegistration eReg : exportedRegistrations) {
+		for (org.osgi.service.remoteserviceadmin.ExportRegistration eReg : findExportedRegistrations(
+				serviceReference)) {
 			if (eReg instanceof ExportRegistration) {
 
 				ExportEndpoint exportEndpoint = ((ExportRegistration) eReg).getExportEndpoint(serviceReference,
@@ -2220,10 +2534,41 @@ public class RemoteServiceAdmin implements org.osgi.service.remoteserviceadmin.R
 
 	private ImportRegistration importService(final EndpointDescription endpointDescription,
 			IRemoteServiceContainer rsContainer) {
+		return importService(lookupRemoteService(new ImportLookup(endpointDescription, rsContainer)));
+	}
+
+	/**
+	 * Remote service reference lookup for an endpoint description, done before
+	 * the proxy is registered.
+	 */
+	class ImportLookup {
+		final EndpointDescription endpointDescription;
+		final IRemoteServiceContainer rsContainer;
+		ID targetID;
+		ID[] idFilter;
+		String rsFilter;
+		Collection<String> interfaces;
+		Collection<IRemoteServiceReference> rsRefs = new ArrayList<IRemoteServiceReference>();
+		IRemoteServiceReference selectedRsReference;
+		Throwable exception;
+
+		ImportLookup(EndpointDescription endpointDescription, IRemoteServiceContainer rsContainer) {
+			this.endpointDescription = endpointDescription;
+			this.rsContainer = rsContainer;
+		}
+
+		ID getRsContainerID() {
+			return rsContainer.getContainer().getID();
+		}
+	}
+
+	private ImportLookup lookupRemoteService(final ImportLookup lookup) {
+		final EndpointDescription endpointDescription = lookup.endpointDescription;
 		// Get interfaces from endpoint description
 		Collection<String> interfaces = endpointDescription.getInterfaces();
 		Assert.isNotNull(interfaces);
 		Assert.isTrue(interfaces.size() > 0);
+		lookup.interfaces = interfaces;
 		// Get ECF endpoint ID...if this throws IDCreateException (because the
 		// local system does not have
 		// namespace for creating ID, or no namespace is present in
@@ -2236,16 +2581,15 @@ public class RemoteServiceAdmin implements org.osgi.service.remoteserviceadmin.R
 		if (tID == null)
 			tID = endpointContainerID;
 		final ID targetID = tID;
+		lookup.targetID = targetID;
 		// Get idFilter...also may be null
 		final ID[] idFilter = getIDFilter(endpointDescription, targetID);
+		lookup.idFilter = idFilter;
 		// Get remote service filter
 		final String rsFilter = getRemoteServiceFilter(endpointDescription);
-		// IRemoteServiceReferences from query
-		Collection<IRemoteServiceReference> rsRefs = new ArrayList<IRemoteServiceReference>();
+		lookup.rsFilter = rsFilter;
 		// Get IRemoteServiceContainerAdapter
-		final IRemoteServiceContainerAdapter containerAdapter = rsContainer.getContainerAdapter();
-		// rsContainerID
-		ID rsContainerID = rsContainer.getContainer().getID();
+		final IRemoteServiceContainerAdapter containerAdapter = lookup.rsContainer.getContainerAdapter();
 		try {
 			final IRSAConsumerContainerAdapter cca = (IRSAConsumerContainerAdapter) containerAdapter
 					.getAdapter(IRSAConsumerContainerAdapter.class);
@@ -2271,35 +2615,41 @@ public class RemoteServiceAdmin implements org.osgi.service.remoteserviceadmin.R
 						"getRemoteServiceReferences return null for targetID=" //$NON-NLS-1$
 								+ targetID + ",idFilter=" + idFilter //$NON-NLS-1$
 								+ ",intf=" + intf + ",rsFilter=" + rsFilter //$NON-NLS-1$ //$NON-NLS-2$
-								+ " on rsContainerID=" + rsContainerID); //$NON-NLS-1$
+								+ " on rsContainerID=" + lookup.getRsContainerID()); //$NON-NLS-1$
 			} else
 				for (int i = 0; i < refs.length; i++)
-					rsRefs.add(refs[i]);
+					lookup.rsRefs.add(refs[i]);
 			// If there are several refs resulting (should not be)
 			// we select the one to use
-			IRemoteServiceReference selectedRsReference = selectRemoteServiceReference(rsRefs, targetID, idFilter,
-					interfaces, rsFilter, rsContainer);
+			lookup.selectedRsReference = selectRemoteServiceReference(lookup.rsRefs, targetID, idFilter, interfaces,
+					rsFilter, lookup.rsContainer);
 			// If none found, we obviously can't continue
-			if (selectedRsReference == null)
+			if (lookup.selectedRsReference == null)
 				throw new RemoteReferenceNotFoundException(targetID, idFilter, interfaces, rsFilter);
-
-			return new ImportRegistration(
-					createAndRegisterProxy(endpointDescription, rsContainer, selectedRsReference));
 		} catch (PrivilegedActionException e) {
-			logError("importService", "selectRemoteServiceReference returned null for rsRefs=" //$NON-NLS-1$ //$NON-NLS-2$
-					+ rsRefs + ",targetID=" + targetID //$NON-NLS-1$
-					+ ",idFilter=" + idFilter + ",interfaces=" //$NON-NLS-1$ //$NON-NLS-2$
-					+ interfaces + ",rsFilter=" + rsFilter //$NON-NLS-1$
-					+ ",rsContainerID=" + rsContainerID, e.getException()); //$NON-NLS-1$
-			return new ImportRegistration(endpointDescription, e.getException());
+			lookup.exception = e.getException();
 		} catch (Exception e) {
-			logError("importService", "selectRemoteServiceReference returned null for rsRefs=" //$NON-NLS-1$ //$NON-NLS-2$
-					+ rsRefs + ",targetID=" + targetID //$NON-NLS-1$
-					+ ",idFilter=" + idFilter + ",interfaces=" //$NON-NLS-1$ //$NON-NLS-2$
-					+ interfaces + ",rsFilter=" + rsFilter //$NON-NLS-1$
-					+ ",rsContainerID=" + rsContainerID, e); //$NON-NLS-1$
-			return new ImportRegistration(endpointDescription, e);
+			lookup.exception = e;
+		}
+		return lookup;
+	}
+
+	private ImportRegistration importService(ImportLookup lookup) {
+		Throwable exception = lookup.exception;
+		if (exception == null) {
+			try {
+				return new ImportRegistration(
+						createAndRegisterProxy(lookup.endpointDescription, lookup.rsContainer, lookup.selectedRsReference));
+			} catch (Exception e) {
+				exception = e;
+			}
 		}
+		logError("importService", "selectRemoteServiceReference returned null for rsRefs=" //$NON-NLS-1$ //$NON-NLS-2$
+				+ lookup.rsRefs + ",targetID=" + lookup.targetID //$NON-NLS-1$
+				+ ",idFilter=" + lookup.idFilter + ",interfaces=" //$NON-NLS-1$ //$NON-NLS-2$
+				+ lookup.interfaces + ",rsFilter=" + lookup.rsFilter //$NON-NLS-1$
+				+ ",rsContainerID=" + lookup.getRsContainerID(), exception); //$NON-NLS-1$
+		return new ImportRegistration(lookup.endpointDescription, exception);
 	}
 
 	public void close() {
@@ -2382,7 +2732,8 @@ public class RemoteServiceAdmin implements org.osgi.service.remoteserviceadmin.R
 	}
 
 	private ImportEndpoint findImportEndpoint(EndpointDescription ed) {
-		for (org.osgi.service.remoteserviceadmin.ImportRegistration reg : importedRegistrations) {
+		for (org.osgi.service.remoteserviceadmin.ImportRegistration reg : findImportedRegistrations(
+				ed.getId())) {
 			if (reg instanceof ImportRegistration) {
 				ImportEndpoint endpoint = ((ImportRegistration) reg).getImportEndpoint(ed);
 				if (endpoint != null)
@@ -2395,8 +2746,8 @@ public class RemoteServiceAdmin implements org.osgi.service.remoteserviceadmin.R
 	private void unimportService(IRemoteServiceID remoteServiceID) {
 		List<ImportRegistration> removedRegistrations = new ArrayList<ImportRegistration>();
 		synchronized (importedRegistrations) {
-			for (Iterator<org.osgi.service.remoteserviceadmin.ImportRegistration> i = importedRegistrations
-					.iterator(); i.hasNext();) {
+			for (Iterator<org.osgi.service.remoteserviceadmin.ImportRegistration> i = findImportedRegistrations(
+					remoteServiceID).iterator(); i.hasNext();) {
 				org.osgi.service.remoteserviceadmin.ImportRegistration iReg = i.next();
 				if (iReg instanceof ImportRegistration) {
 					ImportRegistration importRegistration = (ImportRegistration) iReg;
@@ -377,14 +377,12 @@ public class TopologyManagerImpl extends AbstractTopologyManager implements Endp
 						// discovery I/O...) and thus should no be carried out in the
 						// OSGi FW thread. (https://bugs.eclipse.org/405027)
 
-						for (int i = 0; i < existingServiceRefs.length; i++) {
-							// This method will check the service properties for
-							// remote service props. If previously registered as
-							// a
-							// remote service, it will export the remote
-							// service if not it will simply return/skip
-							handleServiceRegistering(existingServiceRefs[i]);
-						}
+						// This method will check the service properties for
+						// remote service props. If previously registered as
+						// a
+						// remote service, it will export the remote
+						// service if not it will simply return/skip
+						handleServicesRegistering(existingServiceRefs);
 					}
 				} catch (Exception e) {
 					logError("exportRegisteredServices", //$NON-NLS-1$
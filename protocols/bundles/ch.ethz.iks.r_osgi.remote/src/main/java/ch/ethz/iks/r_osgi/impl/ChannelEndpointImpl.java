@@ -46,6 +46,7 @@ import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.eclipse.ecf.remoteservice.asyncproxy.AsyncReturnUtil;
 import org.objectweb.asm.Type;
@@ -150,9 +151,26 @@ public final class ChannelEndpointImpl implements ChannelEndpoint {
 			"ch.ethz.iks.r_osgi.channelEndpointImpl.timeout", "120000"));
 
 	/**
-	 * the callback register
+	 * bytes of stream data a stream proxy requests ahead of the reader, or
+	 * writes ahead of the acknowledgements of the remote peer. 0 disables
+	 * windowing and every stream operation waits for its result.
 	 */
-	protected final Map callbacks = new HashMap(0);
+	static final int STREAM_WINDOW = Integer.parseInt(System.getProperty(
+			"ch.ethz.iks.r_osgi.streams.window", "262144")); //$NON-NLS-1$ //$NON-NLS-2$
+
+	/**
+	 * the size of the chunks of stream data transferred by windowed stream
+	 * proxies.
+	 */
+	static final int STREAM_CHUNK_SIZE = Integer.parseInt(System.getProperty(
+			"ch.ethz.iks.r_osgi.streams.chunkSize", "32768")); //$NON-NLS-1$ //$NON-NLS-2$
+
+	/**
+	 * the callback register. Concurrent, so that many threads can have calls
+	 * in flight on the channel and results can be dispatched without a common
+	 * lock.
+	 */
+	protected final Map callbacks = new ConcurrentHashMap();
 
 	/**
 	 * map of service uri -&gt; RemoteServiceRegistration.
@@ -196,7 +214,15 @@ public final class ChannelEndpointImpl implements ChannelEndpoint {
 							+ "=org/osgi/service/remoteserviceadmin/*))" //$NON-NLS-1$
 					+ ")"; //$NON-NLS-1$
 
-	private ArrayList workQueue = new ArrayList();
+	/**
+	 * order key of the requests that change the state of the channel.
+	 */
+	private static final Object LEASE_ORDER_KEY = new Object();
+
+	/**
+	 * the incoming requests waiting to be handled.
+	 */
+	private final EndpointWorkQueue workQueue;
 
 	/**
 	 * used by the multiplexer and serves as a marker whether or not the channel
@@ -235,12 +261,13 @@ public final class ChannelEndpointImpl implements ChannelEndpoint {
 	ChannelEndpointImpl(final NetworkChannelFactory factory,
 			final URI endpointAddress) throws RemoteOSGiException, IOException {
 		trace("<init>(factory="+factory+",endpointAddress="+endpointAddress+")");
+		workQueue = new EndpointWorkQueue(String.valueOf(endpointAddress),
+				RemoteOSGiServiceImpl.MAX_THREADS_PER_ENDPOINT);
 		networkChannel = factory.getConnection(this, endpointAddress);
 		if (RemoteOSGiServiceImpl.DEBUG) {
 			RemoteOSGiServiceImpl.log.log(LogService.LOG_DEBUG,
 					"opening new channel " + getRemoteAddress()); //$NON-NLS-1$
 		}
-		initThreadPool();
 		RemoteOSGiServiceImpl.registerChannelEndpoint(this);
 	}
 
@@ -253,42 +280,13 @@ public final class ChannelEndpointImpl implements ChannelEndpoint {
 	ChannelEndpointImpl(final NetworkChannel channel) {
 		trace("<init>(channel="+channel+";remoteAddress="+channel.getRemoteAddress()+";localAddress="+channel.getLocalAddress()+")");
 		networkChannel = channel;
+		workQueue = new EndpointWorkQueue(String.valueOf(channel
+				.getRemoteAddress()),
+				RemoteOSGiServiceImpl.MAX_THREADS_PER_ENDPOINT);
 		channel.bind(this);
-		initThreadPool();
 		RemoteOSGiServiceImpl.registerChannelEndpoint(this);
 	}
 
-	/**
-	 * initialize the thread pool
-	 */
-	private void initThreadPool() {
-		// TODO: tradeoff, could as well be central for all endpoints...
-		final ThreadGroup threadPool = new ThreadGroup("WorkerThreads"
-				+ toString());
-		for (int i = 0; i < RemoteOSGiServiceImpl.MAX_THREADS_PER_ENDPOINT; i++) {
-			final Thread t = new Thread(threadPool, "r-OSGi ChannelWorkerThread" + i) {
-				public void run() {
-					try {
-						while (!isInterrupted()) {
-							final Runnable r;
-							synchronized (workQueue) {
-								while (workQueue.isEmpty()) {
-									workQueue.wait();
-								}
-								r = (Runnable) workQueue.remove(0);
-							}
-							r.run();
-						}
-					} catch (InterruptedException ie) {
-						ie.printStackTrace();
-					}
-				}
-			};
-			t.setDaemon(true);
-			t.start();
-		}
-	}
-
 	/**
 	 * process a recieved message. Called by the channel.
 	 * 
@@ -303,12 +301,27 @@ public final class ChannelEndpointImpl implements ChannelEndpoint {
 			return;
 		}
 		final Integer xid = Integer.valueOf(msg.getXID());
-		final WaitingCallback callback;
-		synchronized (callbacks) {
-			callback = (WaitingCallback) callbacks.remove(xid);
-		}
+		final AsyncCallback callback = (AsyncCallback) callbacks.remove(xid);
 		if (callback != null) {
-			callback.result(msg);
+			if (callback instanceof WaitingCallback) {
+				callback.result(msg);
+				return;
+			}
+			// the callback of an asynchronous call runs client code that may
+			// make calls of its own, so it must not hold up the thread that
+			// receives their replies
+			final Runnable r = new Runnable() {
+				public void run() {
+					callback.result(msg);
+				}
+			};
+			if (!workQueue.execute(r, null)) {
+				r.run();
+			}
+			return;
+		} else if (msg.getFuncID() == RemoteOSGiMessage.STREAM_RESULT) {
+			// result of a stream operation read ahead by a proxy that has
+			// been closed since
 			return;
 		} else {
 			final Runnable r = new Runnable() {
@@ -330,13 +343,43 @@ public final class ChannelEndpointImpl implements ChannelEndpoint {
 					}
 				}
 			};
-			synchronized (workQueue) {
-				workQueue.add(r);
-				workQueue.notify();
-			}
+			workQueue.execute(r, getOrderKey(msg));
 		}
 	}
 
+	/**
+	 * get the order key of a request. Requests with the same key are handled
+	 * one at a time in the order they were received. Leases, lease updates and
+	 * events change the state of the channel in the order they were sent,
+	 * stream requests operate on the position of their stream.
+	 * 
+	 * @param msg
+	 *            the request.
+	 * @return the order key, or <code>null</code> if the request can run
+	 *         concurrently with any other request.
+	 */
+	private static Object getOrderKey(final RemoteOSGiMessage msg) {
+		switch (msg.getFuncID()) {
+		case RemoteOSGiMessage.LEASE:
+		case RemoteOSGiMessage.LEASE_UPDATE:
+		case RemoteOSGiMessage.REMOTE_EVENT:
+			return LEASE_ORDER_KEY;
+		case RemoteOSGiMessage.STREAM_REQUEST:
+			return Integer.valueOf(((StreamRequestMessage) msg).getStreamID());
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * get the number of received requests not yet handled, for monitoring.
+	 * 
+	 * @return the number of queued requests.
+	 */
+	public int getWorkQueueDepth() {
+		return workQueue.size();
+	}
+
 	/**
 	 * invoke a method on the remote host. This function is used by all proxy
 	 * bundles.
@@ -416,27 +459,25 @@ public final class ChannelEndpointImpl implements ChannelEndpoint {
 
 		final Integer xid = Integer.valueOf(RemoteOSGiServiceImpl.nextXid());
 
-		synchronized (callbacks) {
-			callbacks.put(xid, new AsyncCallback() {
-				public void result(final RemoteOSGiMessage msg) {
-					final RemoteCallResultMessage resultMsg = (RemoteCallResultMessage) msg;
-					if (resultMsg.causedException()) {
-						callback.remoteCallResult(false, resultMsg
-								.getException());
-					}
-					final Object result = resultMsg.getResult();
-					final Object res;
-					if (result instanceof InputStreamHandle) {
-						res = getInputStreamProxy((InputStreamHandle) result);
-					} else if (result instanceof OutputStreamHandle) {
-						res = getOutputStreamProxy((OutputStreamHandle) result);
-					} else {
-						res = result;
-					}
-					callback.remoteCallResult(true, res);
+		callbacks.put(xid, new AsyncCallback() {
+			public void result(final RemoteOSGiMessage msg) {
+				final RemoteCallResultMessage resultMsg = (RemoteCallResultMessage) msg;
+				if (resultMsg.causedException()) {
+					callback.remoteCallResult(false, resultMsg
+							.getException());
 				}
-			});
-		}
+				final Object result = resultMsg.getResult();
+				final Object res;
+				if (result instanceof InputStreamHandle) {
+					res = getInputStreamProxy((InputStreamHandle) result);
+				} else if (result instanceof OutputStreamHandle) {
+					res = getOutputStreamProxy((OutputStreamHandle) result);
+				} else {
+					res = result;
+				}
+				callback.remoteCallResult(true, res);
+			}
+		});
 
 		final RemoteCallMessage invokeMsg = new RemoteCallMessage();
 		invokeMsg.setServiceID(fragment);
@@ -565,6 +606,7 @@ public final class ChannelEndpointImpl implements ChannelEndpoint {
 
 		final NetworkChannel oldchannel = networkChannel;
 		networkChannel = null;
+		workQueue.close();
 
 		try {
 			oldchannel.close();
@@ -601,14 +643,20 @@ public final class ChannelEndpointImpl implements ChannelEndpoint {
 		remoteServices = null;
 		remoteTopics = null;
 		timeOffset = null;
+		final Object[] pending = callbacks.values().toArray();
 		callbacks.clear();
 		localServices.clear();
 		proxiedServices.clear();
 		closeStreams();
 		streams.clear();
 		handlerReg = null;
-		synchronized (callbacks) {
-			callbacks.notifyAll();
+		// wake up the callers still waiting for a result
+		for (int i = 0; i < pending.length; i++) {
+			if (pending[i] instanceof WaitingCallback) {
+				synchronized (pending[i]) {
+					pending[i].notifyAll();
+				}
+			}
 		}
 	}
 
@@ -827,9 +875,12 @@ public final class ChannelEndpointImpl implements ChannelEndpoint {
 		// declarations for the bundle.
 		final DeliverServiceMessage deliv = (DeliverServiceMessage) sendAndWait(req);
 
-		// generate a proxy bundle for the service
-		final InputStream in = new ProxyGenerator().generateProxyBundle(ref
-				.getURI(), deliv);
+		// generate a proxy bundle for the service, or reuse the one generated
+		// for the same service before
+		final ProxyBundleCache cache = RemoteOSGiServiceImpl.proxyBundleCache;
+		final InputStream in = cache != null ? cache.getProxyBundle(ref
+				.getURI(), deliv) : new ProxyGenerator().generateProxyBundle(
+				ref.getURI(), deliv);
 
 		installResolveAndStartBundle(ref, in, true);
 	}
@@ -1432,18 +1483,49 @@ public final class ChannelEndpointImpl implements ChannelEndpoint {
 	 * @return the result message.
 	 */
 	private RemoteOSGiMessage sendAndWait(final RemoteOSGiMessage msg) {
+		final WaitingCallback blocking = new WaitingCallback();
+		sendWithCallback(msg, blocking);
+		try {
+			return waitForResult(blocking);
+		} finally {
+			// still registered if the result did not arrive
+			callbacks.remove(Integer.valueOf(msg.getXID()));
+		}
+	}
+
+	/**
+	 * send a message and register a callback for the reply.
+	 * 
+	 * @param msg
+	 *            the message.
+	 * @param callback
+	 *            the callback.
+	 */
+	private void sendWithCallback(final RemoteOSGiMessage msg,
+			final WaitingCallback callback) {
 		if (msg.getXID() == 0) {
 			msg.setXID(RemoteOSGiServiceImpl.nextXid());
 		}
 		final Integer xid = Integer.valueOf(msg.getXID());
-		final WaitingCallback blocking = new WaitingCallback();
 
-		synchronized (callbacks) {
-			callbacks.put(xid, blocking);
-		}
+		callbacks.put(xid, callback);
 
-		send(msg);
+		try {
+			send(msg);
+		} catch (final RuntimeException re) {
+			callbacks.remove(xid);
+			throw re;
+		}
+	}
 
+	/**
+	 * wait for the reply of a message sent with a callback.
+	 * 
+	 * @param blocking
+	 *            the callback.
+	 * @return the reply.
+	 */
+	private RemoteOSGiMessage waitForResult(final WaitingCallback blocking) {
 		// wait for the reply
 		synchronized (blocking) {
 			final long timeout = System.currentTimeMillis() + TIMEOUT;
@@ -1579,6 +1661,30 @@ public final class ChannelEndpointImpl implements ChannelEndpoint {
 					+ requestMsg.getStreamID() + " failed.", e); //$NON-NLS-1$
 		}
 	}
+	/**
+	 * start a stream operation without waiting for its result. Used by
+	 * windowed stream proxies, the peer holding the stream handles the
+	 * operations on a stream in the order they were sent.
+	 * 
+	 * @param requestMsg
+	 *            the stream request.
+	 * @return the pending operation.
+	 * @throws IOException
+	 *             if the request cannot be sent.
+	 */
+	public PendingStreamOp startStreamOp(final StreamRequestMessage requestMsg)
+			throws IOException {
+		final PendingStreamOp op = new PendingStreamOp(requestMsg);
+		try {
+			sendWithCallback(requestMsg, op);
+		} catch (final RemoteOSGiException e) {
+			throw new IOException("Invocation of operation " //$NON-NLS-1$
+					+ requestMsg.getOp() + " on stream " //$NON-NLS-1$
+					+ requestMsg.getStreamID() + " failed.", e); //$NON-NLS-1$
+		}
+		return op;
+	}
+
 
 	/**
 	 * update the topics
@@ -1651,7 +1757,7 @@ public final class ChannelEndpointImpl implements ChannelEndpoint {
 	 * @return the placeholder object that is sent to the actual client
 	 */
 	private InputStreamHandle getInputStreamPlaceholder(final InputStream origIS) {
-		final InputStreamHandle sp = new InputStreamHandle(nextStreamID());
+		final InputStreamHandle sp = new InputStreamHandle(nextStreamID(), true);
 		streams.put(Integer.valueOf(sp.getStreamID()), origIS);
 		return sp;
 	}
@@ -1664,6 +1770,10 @@ public final class ChannelEndpointImpl implements ChannelEndpoint {
 	 * @return the proxy for the input stream
 	 */
 	private InputStream getInputStreamProxy(final InputStreamHandle placeholder) {
+		if (placeholder.isWindowed() && STREAM_WINDOW > 0) {
+			return new InputStreamProxy(placeholder.getStreamID(), this,
+					STREAM_WINDOW, STREAM_CHUNK_SIZE);
+		}
 		return new InputStreamProxy(placeholder.getStreamID(), this);
 	}
 
@@ -1677,7 +1787,7 @@ public final class ChannelEndpointImpl implements ChannelEndpoint {
 	 */
 	private OutputStreamHandle getOutputStreamPlaceholder(
 			final OutputStream origOS) {
-		final OutputStreamHandle sp = new OutputStreamHandle(nextStreamID());
+		final OutputStreamHandle sp = new OutputStreamHandle(nextStreamID(), true);
 		streams.put(Integer.valueOf(sp.getStreamID()), origOS);
 		return sp;
 	}
@@ -1692,6 +1802,10 @@ public final class ChannelEndpointImpl implements ChannelEndpoint {
 	 */
 	private OutputStream getOutputStreamProxy(
 			final OutputStreamHandle placeholder) {
+		if (placeholder.isWindowed() && STREAM_WINDOW > 0) {
+			return new OutputStreamProxy(placeholder.getStreamID(), this,
+					STREAM_WINDOW, STREAM_CHUNK_SIZE);
+		}
 		return new OutputStreamProxy(placeholder.getStreamID(), this);
 	}
 
@@ -1788,4 +1902,63 @@ public final class ChannelEndpointImpl implements ChannelEndpoint {
 
 	}
 
+	/**
+	 * a stream operation started with
+	 * {@link ChannelEndpointImpl#startStreamOp(StreamRequestMessage)}.
+	 */
+	public final class PendingStreamOp extends WaitingCallback {
+
+		private final StreamRequestMessage request;
+
+		PendingStreamOp(final StreamRequestMessage request) {
+			this.request = request;
+		}
+
+		/**
+		 * @return the number of bytes written by the operation.
+		 */
+		public int getLength() {
+			final byte[] data = request.getData();
+			return data == null ? 0 : data.length;
+		}
+
+		/**
+		 * @return <code>true</code> if the result has been received.
+		 */
+		public boolean isDone() {
+			return getResult() != null;
+		}
+
+		/**
+		 * wait for the result of the operation.
+		 * 
+		 * @return the result.
+		 * @throws IOException
+		 *             if the operation failed on the remote peer, the result
+		 *             did not arrive in time or the channel was closed.
+		 */
+		public StreamResultMessage get() throws IOException {
+			final StreamResultMessage result;
+			try {
+				result = (StreamResultMessage) waitForResult(this);
+			} catch (final RemoteOSGiException e) {
+				cancel();
+				throw new IOException("Invocation of operation " //$NON-NLS-1$
+						+ request.getOp() + " on stream " //$NON-NLS-1$
+						+ request.getStreamID() + " failed.", e); //$NON-NLS-1$
+			}
+			if (result.causedException()) {
+				throw result.getException();
+			}
+			return result;
+		}
+
+		/**
+		 * stop waiting for the result.
+		 */
+		public void cancel() {
+			callbacks.remove(Integer.valueOf(request.getXID()));
+		}
+	}
+
 }
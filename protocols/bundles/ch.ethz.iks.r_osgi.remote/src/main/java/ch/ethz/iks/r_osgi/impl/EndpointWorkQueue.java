@@ -0,0 +1,315 @@
+/****************************************************************************
+ * Copyright (c) 2026 Composent, Inc. and others.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * Contributors:
+ *    Composent, Inc. - initial API and implementation
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *****************************************************************************/
+package ch.ethz.iks.r_osgi.impl;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.osgi.service.log.LogService;
+
+/**
+ * <p>
+ * Work queue of a single channel endpoint. The incoming requests of all
+ * endpoints are handled by one framework-wide fork-join pool instead of a
+ * fixed set of threads per endpoint, so idle endpoints do not hold threads and
+ * a busy endpoint is not limited to a pool of its own. Requests run as managed
+ * blockers, so the pool adds threads while requests block in slow services
+ * instead of letting them hold every worker.
+ * </p>
+ * <p>
+ * Each endpoint runs at most <code>maxConcurrent</code> requests at a time
+ * and gives its pool thread back after a few requests, so one busy peer cannot
+ * starve the others. Requests with the same order key, such as the lease
+ * updates of the endpoint or the requests on one stream, run one at a time in
+ * the order they were received.
+ * </p>
+ */
+final class EndpointWorkQueue {
+
+	/**
+	 * the number of threads of the shared worker pool, not counting the
+	 * threads added while requests block.
+	 */
+	static final String WORKER_THREADS = "ch.ethz.iks.r_osgi.workerThreads"; //$NON-NLS-1$
+
+	static final int MAX_WORKER_THREADS = Integer.getInteger(WORKER_THREADS,
+			Math.max(8, 4 * Runtime.getRuntime().availableProcessors()))
+			.intValue();
+
+	/**
+	 * requests run before the pool thread is given back to other endpoints.
+	 */
+	private static final int QUANTUM = 8;
+
+	private static ForkJoinPool pool;
+
+	private final String name;
+
+	private final int maxConcurrent;
+
+	private final LinkedList tasks = new LinkedList();
+
+	/**
+	 * map of order key -&gt; LinkedList of requests.
+	 */
+	private final Map orderedTasks = new HashMap(0);
+
+	/**
+	 * order keys with queued requests and no request running.
+	 */
+	private final LinkedList readyKeys = new LinkedList();
+
+	/**
+	 * order keys with a request running.
+	 */
+	private final Set activeKeys = new HashSet(0);
+
+	private int orderedCount;
+
+	private int active;
+
+	private boolean closed;
+
+	private final Runnable runner = new Runnable() {
+		public void run() {
+			drain();
+		}
+	};
+
+	EndpointWorkQueue(final String name, final int maxConcurrent) {
+		this.name = name;
+		this.maxConcurrent = Math.max(1, maxConcurrent);
+	}
+
+	static synchronized ForkJoinPool getPool() {
+		if (pool == null) {
+			pool = new ForkJoinPool(MAX_WORKER_THREADS,
+					new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+						private int count = 0;
+
+						public synchronized ForkJoinWorkerThread newThread(
+								final ForkJoinPool p) {
+							final ForkJoinWorkerThread t = new ForkJoinWorkerThread(
+									p) {
+							};
+							t.setName("r-OSGi ChannelWorkerThread" + count++); //$NON-NLS-1$
+							t.setDaemon(true);
+							return t;
+						}
+					}, null, true);
+		}
+		return pool;
+	}
+
+	/**
+	 * shut down the shared pool. Called when the R-OSGi bundle is stopped.
+	 */
+	static synchronized void shutdown() {
+		if (pool != null) {
+			pool.shutdown();
+			pool = null;
+		}
+	}
+
+	/**
+	 * queue a request of the endpoint.
+	 *
+	 * @param task
+	 *            the request handler.
+	 * @param orderKey
+	 *            if not <code>null</code>, the request runs after all requests
+	 *            with an equal order key queued before it have completed.
+	 * @return <code>false</code> if the queue is closed.
+	 */
+	boolean execute(final Runnable task, final Object orderKey) {
+		synchronized (this) {
+			if (closed) {
+				return false;
+			}
+			if (orderKey != null) {
+				LinkedList lane = (LinkedList) orderedTasks.get(orderKey);
+				if (lane == null) {
+					lane = new LinkedList();
+					orderedTasks.put(orderKey, lane);
+				}
+				if (lane.isEmpty() && !activeKeys.contains(orderKey)) {
+					readyKeys.addLast(orderKey);
+				}
+				lane.addLast(task);
+				orderedCount++;
+			} else {
+				tasks.addLast(task);
+			}
+			if (active >= maxConcurrent || !hasRunnable()) {
+				return true;
+			}
+			active++;
+		}
+		schedule();
+		return true;
+	}
+
+	private boolean hasRunnable() {
+		return !tasks.isEmpty() || !readyKeys.isEmpty();
+	}
+
+	private void schedule() {
+		try {
+			getPool().execute(runner);
+		} catch (final RejectedExecutionException ree) {
+			synchronized (this) {
+				active--;
+			}
+		}
+	}
+
+	void drain() {
+		for (int i = 0; i < QUANTUM; i++) {
+			final Runnable task;
+			final Object key;
+			synchronized (this) {
+				if (!readyKeys.isEmpty()) {
+					key = readyKeys.removeFirst();
+					task = (Runnable) ((LinkedList) orderedTasks.get(key))
+							.removeFirst();
+					orderedCount--;
+					activeKeys.add(key);
+				} else if (!tasks.isEmpty()) {
+					task = (Runnable) tasks.removeFirst();
+					key = null;
+				} else {
+					active--;
+					return;
+				}
+			}
+			try {
+				runBlocking(task);
+			} catch (final Throwable t) {
+				if (RemoteOSGiServiceImpl.log != null) {
+					RemoteOSGiServiceImpl.log.log(LogService.LOG_ERROR,
+							"Error handling request of " + name, t); //$NON-NLS-1$
+				} else {
+					t.printStackTrace();
+				}
+			} finally {
+				if (key != null) {
+					synchronized (this) {
+						activeKeys.remove(key);
+						final LinkedList lane = (LinkedList) orderedTasks
+								.get(key);
+						if (lane != null && !lane.isEmpty()) {
+							readyKeys.addLast(key);
+						} else {
+							orderedTasks.remove(key);
+						}
+					}
+				}
+			}
+		}
+		synchronized (this) {
+			if (!hasRunnable()) {
+				active--;
+				return;
+			}
+		}
+		// give the thread to other endpoints, continue later
+		schedule();
+	}
+
+	/**
+	 * run a request as a managed blocker, so that the pool adds a thread while
+	 * the request blocks in a service invocation or a stream read and the
+	 * requests of other endpoints are still served.
+	 */
+	private static void runBlocking(final Runnable task) throws Throwable {
+		final Blocker blocker = new Blocker(task);
+		try {
+			ForkJoinPool.managedBlock(blocker);
+		} catch (final RejectedExecutionException ree) {
+			// the pool cannot add more threads, run without compensation
+			if (!blocker.isReleasable()) {
+				task.run();
+			}
+		}
+		if (blocker.failure != null) {
+			throw blocker.failure;
+		}
+	}
+
+	private static final class Blocker implements ForkJoinPool.ManagedBlocker {
+
+		private final Runnable task;
+
+		private boolean done;
+
+		Throwable failure;
+
+		Blocker(final Runnable task) {
+			this.task = task;
+		}
+
+		public boolean block() {
+			try {
+				task.run();
+			} catch (final Throwable t) {
+				failure = t;
+			}
+			done = true;
+			return true;
+		}
+
+		public boolean isReleasable() {
+			return done;
+		}
+	}
+
+	/**
+	 * close the queue and drop all requests not yet started.
+	 */
+	synchronized void close() {
+		closed = true;
+		tasks.clear();
+		orderedTasks.clear();
+		readyKeys.clear();
+		orderedCount = 0;
+	}
+
+	/**
+	 * @return the number of queued requests that have not been started yet.
+	 */
+	synchronized int size() {
+		return tasks.size() + orderedCount;
+	}
+
+	/**
+	 * @return the number of pool threads currently working for the endpoint.
+	 */
+	synchronized int getActiveCount() {
+		return active;
+	}
+
+	public String toString() {
+		final StringBuffer buffer = new StringBuffer("EndpointWorkQueue["); //$NON-NLS-1$
+		buffer.append(name);
+		buffer.append(";queued=").append(size()); //$NON-NLS-1$
+		buffer.append(";active=").append(getActiveCount()); //$NON-NLS-1$
+		buffer.append("]"); //$NON-NLS-1$
+		return buffer.toString();
+	}
+}
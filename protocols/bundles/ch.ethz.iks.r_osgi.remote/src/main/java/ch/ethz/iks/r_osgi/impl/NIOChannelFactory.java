@@ -0,0 +1,951 @@
+/****************************************************************************
+ * Copyright (c) 2026 Composent, Inc. and others.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * Contributors:
+ *    Composent, Inc. - initial API and implementation
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *****************************************************************************/
+package ch.ethz.iks.r_osgi.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+import java.net.BindException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.eclipse.ecf.core.util.OSGIObjectInputStream;
+import org.eclipse.ecf.core.util.OSGIObjectOutputStream;
+import org.osgi.framework.Bundle;
+import org.osgi.service.log.LogService;
+
+import ch.ethz.iks.r_osgi.Remoting;
+import ch.ethz.iks.r_osgi.URI;
+import ch.ethz.iks.r_osgi.channels.ChannelEndpoint;
+import ch.ethz.iks.r_osgi.channels.NetworkChannel;
+import ch.ethz.iks.r_osgi.channels.NetworkChannelFactory;
+import ch.ethz.iks.r_osgi.messages.RemoteOSGiMessage;
+import ch.ethz.iks.util.SmartObjectInputStream;
+import ch.ethz.iks.util.SmartObjectOutputStream;
+
+/**
+ * <p>
+ * channel factory for non-blocking TCP transport. All channels are
+ * multiplexed over a few selector threads instead of a receiver thread per
+ * channel, so a peer can keep thousands of idle connections open.
+ * </p>
+ * <p>
+ * Every message is sent as a frame of its length followed by the message
+ * serialized with a stream of its own. Frames are read into pooled direct
+ * buffers by the selector threads and decoded in order by a decoder thread
+ * that belongs to the selector thread of the channel. Frames are never decoded
+ * on the shared worker pool: a reply has to get through even while all workers
+ * are handling requests that wait for replies. The decoder thread does not run
+ * service or client code either, the endpoint hands requests and the results
+ * of asynchronous calls to its work queue. The factory is registered for the
+ * protocol <code>r-osgi+nio</code> and listens on a port of its own, so peers
+ * that only speak <code>r-osgi</code> are not affected.
+ * </p>
+ */
+final class NIOChannelFactory implements NetworkChannelFactory {
+
+	static final String PROTOCOL = "r-osgi+nio"; //$NON-NLS-1$
+
+	/**
+	 * the port property.
+	 */
+	static final String PORT_PROPERTY = "ch.ethz.iks.r_osgi.nio.port"; //$NON-NLS-1$
+
+	static final int DEFAULT_PORT = 9279;
+
+	/**
+	 * the number of selector threads.
+	 */
+	static final String SELECTOR_THREADS = "ch.ethz.iks.r_osgi.nio.selectorThreads"; //$NON-NLS-1$
+
+	/**
+	 * the size of the largest frame accepted from a peer.
+	 */
+	static final String MAX_FRAME_SIZE = "ch.ethz.iks.r_osgi.nio.maxFrameSize"; //$NON-NLS-1$
+
+	private static final int SELECTORS = Math.max(1, Integer.getInteger(
+			SELECTOR_THREADS,
+			Math.min(4, Runtime.getRuntime().availableProcessors()))
+			.intValue());
+
+	private static final int MAX_FRAME = Integer.getInteger(MAX_FRAME_SIZE,
+			64 * 1024 * 1024).intValue();
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * bytes queued for sending before senders block.
+	 */
+	private static final int WRITE_HIGH_WATER = 1024 * 1024;
+
+	/**
+	 * bytes received but not yet decoded before the channel stops reading.
+	 */
+	private static final int READ_HIGH_WATER = 1024 * 1024;
+
+	private static final BufferPool bufferPool = new BufferPool(BUFFER_SIZE,
+			4 * SELECTORS + 16);
+
+	Remoting remoting;
+
+	protected int listeningPort;
+
+	private SelectorThread[] selectors;
+
+	private ServerSocketChannel serverChannel;
+
+	private int nextSelector;
+
+	/**
+	 * get a new connection.
+	 *
+	 * @param endpoint
+	 *            the channel endpoint.
+	 * @param endpointURI
+	 *            the URI of the remote host.
+	 * @return the transport channel.
+	 * @throws IOException
+	 *             if the connection cannot be established.
+	 */
+	public NetworkChannel getConnection(final ChannelEndpoint endpoint,
+			final URI endpointURI) throws IOException {
+		int port = endpointURI.getPort();
+		if (port <= 0) {
+			port = DEFAULT_PORT;
+		}
+		final SocketChannel socketChannel = SocketChannel
+				.open(new InetSocketAddress(endpointURI.getHost(), port));
+		final NIOChannel channel = new NIOChannel(socketChannel,
+				nextSelector(), endpointURI);
+		channel.bind(endpoint);
+		return channel;
+	}
+
+	/**
+	 * Activate the factory. Is called by R-OSGi when the factory is discovered.
+	 *
+	 * @see ch.ethz.iks.r_osgi.channels.NetworkChannelFactory#activate(ch.ethz.iks.r_osgi.Remoting)
+	 */
+	public synchronized void activate(final Remoting r) throws IOException {
+		remoting = r;
+		final String prop = RemoteOSGiActivator.getActivator().getContext()
+				.getProperty(PORT_PROPERTY);
+		final int port = prop != null ? Integer.parseInt(prop) : DEFAULT_PORT;
+
+		serverChannel = ServerSocketChannel.open();
+		int e = 0;
+		while (true) {
+			try {
+				listeningPort = port + e;
+				serverChannel.socket().bind(new InetSocketAddress(listeningPort));
+				if (e != 0) {
+					log(LogService.LOG_WARNING, "Port " + port //$NON-NLS-1$
+							+ " already in use. R-OSGi is listening for " //$NON-NLS-1$
+							+ PROTOCOL + " on port " + listeningPort, null); //$NON-NLS-1$
+				}
+				break;
+			} catch (final BindException b) {
+				e++;
+			}
+		}
+		serverChannel.configureBlocking(false);
+
+		selectors = new SelectorThread[SELECTORS];
+		for (int i = 0; i < selectors.length; i++) {
+			selectors[i] = new SelectorThread(i);
+			selectors[i].start();
+		}
+		final ServerSocketChannel server = serverChannel;
+		final SelectorThread acceptor = selectors[0];
+		acceptor.invoke(new Runnable() {
+			public void run() {
+				try {
+					server.register(acceptor.selector, SelectionKey.OP_ACCEPT,
+							server);
+				} catch (final IOException ioe) {
+					log("Cannot accept " + PROTOCOL + " connections", ioe); //$NON-NLS-1$ //$NON-NLS-2$
+				}
+			}
+		});
+	}
+
+	/**
+	 * Deactivate the factory. Stops listening and closes all channels.
+	 *
+	 * @see ch.ethz.iks.r_osgi.channels.NetworkChannelFactory#deactivate(ch.ethz.iks.r_osgi.Remoting)
+	 */
+	public synchronized void deactivate(final Remoting r) throws IOException {
+		if (serverChannel != null) {
+			serverChannel.close();
+			serverChannel = null;
+		}
+		if (selectors != null) {
+			for (int i = 0; i < selectors.length; i++) {
+				selectors[i].shutdown();
+			}
+			selectors = null;
+		}
+		remoting = null;
+	}
+
+	/**
+	 * get the listening port.
+	 *
+	 * @see ch.ethz.iks.r_osgi.channels.NetworkChannelFactory#getListeningPort(java.lang.String)
+	 */
+	public int getListeningPort(final String protocol) {
+		return listeningPort;
+	}
+
+	private synchronized SelectorThread nextSelector() throws IOException {
+		if (selectors == null) {
+			throw new IOException("Channel factory for " + PROTOCOL //$NON-NLS-1$
+					+ " is not active"); //$NON-NLS-1$
+		}
+		final SelectorThread selector = selectors[nextSelector];
+		nextSelector = (nextSelector + 1) % selectors.length;
+		return selector;
+	}
+
+	/**
+	 * accept an incoming connection. Called by the selector thread.
+	 */
+	void accept(final ServerSocketChannel server) {
+		final SocketChannel socketChannel;
+		try {
+			socketChannel = server.accept();
+			if (socketChannel == null) {
+				return;
+			}
+		} catch (final IOException ioe) {
+			log("Error accepting " + PROTOCOL + " connection", ioe); //$NON-NLS-1$ //$NON-NLS-2$
+			return;
+		}
+		// host name lookup and endpoint creation are not done on the
+		// selector thread
+		try {
+			EndpointWorkQueue.getPool().execute(new Runnable() {
+				public void run() {
+					try {
+						final Remoting r = remoting;
+						if (r == null) {
+							socketChannel.close();
+							return;
+						}
+						r.createEndpoint(new NIOChannel(socketChannel,
+								nextSelector(), null));
+					} catch (final IOException ioe) {
+						close(socketChannel);
+						log("Error accepting " + PROTOCOL + " connection", ioe); //$NON-NLS-1$ //$NON-NLS-2$
+					}
+				}
+			});
+		} catch (final RejectedExecutionException ree) {
+			// the pool has been shut down
+			close(socketChannel);
+		}
+	}
+
+	private static void close(final SocketChannel socketChannel) {
+		try {
+			socketChannel.close();
+		} catch (final IOException ioe) {
+		}
+	}
+
+	static void log(final String message, final Throwable t) {
+		log(LogService.LOG_ERROR, message, t);
+	}
+
+	static void log(final int level, final String message, final Throwable t) {
+		if (RemoteOSGiServiceImpl.log != null) {
+			RemoteOSGiServiceImpl.log.log(level, message, t);
+		} else {
+			System.err.println(message);
+			if (t != null) {
+				t.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * a pool of direct buffers for socket reads and writes.
+	 */
+	private static final class BufferPool {
+
+		private final LinkedList buffers = new LinkedList();
+
+		private final int bufferSize;
+
+		private final int maxPooled;
+
+		BufferPool(final int bufferSize, final int maxPooled) {
+			this.bufferSize = bufferSize;
+			this.maxPooled = maxPooled;
+		}
+
+		synchronized ByteBuffer acquire() {
+			if (buffers.isEmpty()) {
+				return ByteBuffer.allocateDirect(bufferSize);
+			}
+			return (ByteBuffer) buffers.removeFirst();
+		}
+
+		synchronized void release(final ByteBuffer buffer) {
+			if (buffers.size() < maxPooled) {
+				buffer.clear();
+				buffers.addLast(buffer);
+			}
+		}
+	}
+
+	/**
+	 * output stream that reserves the length field of a frame and gives
+	 * access to its buffer without copying.
+	 */
+	private static final class FrameOutputStream extends ByteArrayOutputStream {
+
+		FrameOutputStream() {
+			super(512);
+			count = 4;
+		}
+
+		ByteBuffer toFrame() {
+			final int length = count - 4;
+			buf[0] = (byte) (length >>> 24);
+			buf[1] = (byte) (length >>> 16);
+			buf[2] = (byte) (length >>> 8);
+			buf[3] = (byte) length;
+			return ByteBuffer.wrap(buf, 0, count);
+		}
+	}
+
+	/**
+	 * a thread multiplexing many channels over one selector.
+	 */
+	private final class SelectorThread extends Thread {
+
+		final Selector selector;
+
+		/**
+		 * decodes the frames received by the channels of this thread.
+		 */
+		final DecoderThread decoder;
+
+		/**
+		 * tasks that have to run on this thread, e.g. registrations and
+		 * changes of interest.
+		 */
+		private final LinkedList tasks = new LinkedList();
+
+		private volatile boolean running = true;
+
+		SelectorThread(final int i) throws IOException {
+			setName("NIOChannel:SelectorThread" + i); //$NON-NLS-1$
+			setDaemon(true);
+			selector = Selector.open();
+			decoder = new DecoderThread(i);
+		}
+
+		public void start() {
+			decoder.start();
+			super.start();
+		}
+
+		void invoke(final Runnable task) {
+			synchronized (tasks) {
+				tasks.addLast(task);
+			}
+			selector.wakeup();
+		}
+
+		void shutdown() {
+			running = false;
+			selector.wakeup();
+		}
+
+		private void runTasks() {
+			while (true) {
+				final Runnable task;
+				synchronized (tasks) {
+					if (tasks.isEmpty()) {
+						return;
+					}
+					task = (Runnable) tasks.removeFirst();
+				}
+				task.run();
+			}
+		}
+
+		public void run() {
+			try {
+				while (running) {
+					try {
+						selector.select();
+						runTasks();
+						final Iterator it = selector.selectedKeys().iterator();
+						while (it.hasNext()) {
+							final SelectionKey key = (SelectionKey) it.next();
+							it.remove();
+							if (!key.isValid()) {
+								continue;
+							}
+							final Object attachment = key.attachment();
+							if (attachment instanceof NIOChannel) {
+								((NIOChannel) attachment).ready(key);
+							} else if (key.isAcceptable()) {
+								accept((ServerSocketChannel) attachment);
+							}
+						}
+					} catch (final ClosedSelectorException cse) {
+						return;
+					} catch (final IOException ioe) {
+						log("Error in " + getName(), ioe); //$NON-NLS-1$
+					}
+				}
+			} finally {
+				try {
+					final Iterator it = selector.keys().iterator();
+					while (it.hasNext()) {
+						final Object attachment = ((SelectionKey) it.next())
+								.attachment();
+						if (attachment instanceof NIOChannel) {
+							((NIOChannel) attachment).disconnect();
+						}
+					}
+				} catch (final ClosedSelectorException cse) {
+					// already closed
+				}
+				try {
+					selector.close();
+				} catch (final IOException ioe) {
+				}
+				// lets the channels closed above tell their endpoints
+				decoder.shutdown();
+			}
+		}
+	}
+
+	/**
+	 * a thread decoding the received frames of the channels of one selector
+	 * thread, in the order they were received.
+	 */
+	private static final class DecoderThread extends Thread {
+
+		private final LinkedList tasks = new LinkedList();
+
+		private boolean running = true;
+
+		DecoderThread(final int i) {
+			setName("NIOChannel:DecoderThread" + i); //$NON-NLS-1$
+			setDaemon(true);
+		}
+
+		/**
+		 * queue a task.
+		 *
+		 * @return <code>false</code> if the thread has been shut down.
+		 */
+		boolean execute(final Runnable task) {
+			synchronized (tasks) {
+				if (!running) {
+					return false;
+				}
+				tasks.addLast(task);
+				tasks.notify();
+				return true;
+			}
+		}
+
+		/**
+		 * stop the thread after the queued tasks have run.
+		 */
+		void shutdown() {
+			synchronized (tasks) {
+				running = false;
+				tasks.notify();
+			}
+		}
+
+		public void run() {
+			while (true) {
+				final Runnable task;
+				synchronized (tasks) {
+					while (running && tasks.isEmpty()) {
+						try {
+							tasks.wait();
+						} catch (final InterruptedException ie) {
+							return;
+						}
+					}
+					if (tasks.isEmpty()) {
+						return;
+					}
+					task = (Runnable) tasks.removeFirst();
+				}
+				try {
+					task.run();
+				} catch (final Throwable t) {
+					log("Error in " + getName(), t); //$NON-NLS-1$
+				}
+			}
+		}
+	}
+
+	/**
+	 * the inner class representing a channel with non-blocking TCP transport.
+	 */
+	private static final class NIOChannel implements NetworkChannel {
+
+		private final SocketChannel socketChannel;
+
+		private final SelectorThread owner;
+
+		/**
+		 * the remote endpoint address.
+		 */
+		private final URI remoteEndpointAddress;
+
+		/**
+		 * the local endpoint address.
+		 */
+		private final URI localEndpointAddress;
+
+		/**
+		 * the bundle for resolving classes of received messages.
+		 */
+		private final Bundle bundle;
+
+		/**
+		 * decodes the received frames, one at a time.
+		 */
+		private final DecoderThread decoder;
+
+		/**
+		 * the channel endpoint.
+		 */
+		ChannelEndpoint endpoint;
+
+		private volatile SelectionKey key;
+
+		// read state, only used by the selector thread
+
+		private final byte[] header = new byte[4];
+
+		private int headerPos;
+
+		private byte[] frame;
+
+		private int framePos;
+
+		// guarded by readLock
+
+		private final Object readLock = new Object();
+
+		private int undecoded;
+
+		private boolean reading = true;
+
+		// guarded by writeQueue
+
+		/**
+		 * frames waiting to be copied into the write buffer.
+		 */
+		private final LinkedList writeQueue = new LinkedList();
+
+		private int queuedBytes;
+
+		private ByteBuffer writeBuffer;
+
+		private boolean writeRequested;
+
+		private boolean open = true;
+
+		private final Runnable flushTask = new Runnable() {
+			public void run() {
+				try {
+					flush();
+				} catch (final IOException ioe) {
+					disconnect();
+				}
+			}
+		};
+
+		NIOChannel(final SocketChannel socketChannel,
+				final SelectorThread owner, final URI remoteAddress)
+				throws IOException {
+			this.socketChannel = socketChannel;
+			this.owner = owner;
+			final Socket socket = socketChannel.socket();
+			try {
+				socket.setKeepAlive(true);
+			} catch (final Throwable t) {
+				// not supported
+			}
+			socket.setTcpNoDelay(true);
+			socketChannel.configureBlocking(false);
+			remoteEndpointAddress = remoteAddress != null ? remoteAddress
+					: URI.create(getProtocol() + "://" //$NON-NLS-1$
+							+ socket.getInetAddress().getHostName() + ":" //$NON-NLS-1$
+							+ socket.getPort());
+			localEndpointAddress = URI.create(getProtocol() + "://" //$NON-NLS-1$
+					+ socket.getLocalAddress().getHostName() + ":" //$NON-NLS-1$
+					+ socket.getLocalPort());
+			bundle = RemoteOSGiActivator.getActivator().getContext()
+					.getBundle();
+			decoder = owner.decoder;
+		}
+
+		/**
+		 * bind the channel to a channel endpoint and start reading.
+		 *
+		 * @see ch.ethz.iks.r_osgi.channels.NetworkChannel#bind(ch.ethz.iks.r_osgi.channels.ChannelEndpoint)
+		 */
+		public void bind(final ChannelEndpoint e) {
+			endpoint = e;
+			owner.invoke(new Runnable() {
+				public void run() {
+					try {
+						key = socketChannel.register(owner.selector,
+								SelectionKey.OP_READ, NIOChannel.this);
+					} catch (final IOException ioe) {
+						disconnect();
+					}
+				}
+			});
+		}
+
+		public String toString() {
+			return "NIOChannel (" + getRemoteAddress() + ")"; //$NON-NLS-1$ //$NON-NLS-2$
+		}
+
+		/**
+		 * close the channel.
+		 *
+		 * @see ch.ethz.iks.r_osgi.channels.NetworkChannel#close()
+		 */
+		public void close() throws IOException {
+			disconnect();
+		}
+
+		/**
+		 * close the socket and tell the endpoint, after all frames received
+		 * before have been decoded.
+		 */
+		void disconnect() {
+			synchronized (writeQueue) {
+				if (!open) {
+					return;
+				}
+				open = false;
+				writeQueue.clear();
+				queuedBytes = 0;
+				writeQueue.notifyAll();
+			}
+			final SelectionKey k = key;
+			if (k != null) {
+				k.cancel();
+			}
+			try {
+				socketChannel.close();
+			} catch (final IOException ioe) {
+			}
+			final Runnable closed = new Runnable() {
+				public void run() {
+					if (endpoint != null) {
+						endpoint.receivedMessage(null);
+					}
+				}
+			};
+			if (!decoder.execute(closed)) {
+				closed.run();
+			}
+		}
+
+		/**
+		 * get the protocol that is implemented by the channel.
+		 *
+		 * @see ch.ethz.iks.r_osgi.channels.NetworkChannel#getProtocol()
+		 */
+		public String getProtocol() {
+			return PROTOCOL;
+		}
+
+		/**
+		 * get the remote address.
+		 *
+		 * @see ch.ethz.iks.r_osgi.channels.NetworkChannel#getRemoteAddress()
+		 */
+		public URI getRemoteAddress() {
+			return remoteEndpointAddress;
+		}
+
+		/**
+		 * get the local address.
+		 *
+		 * @see ch.ethz.iks.r_osgi.channels.NetworkChannel#getLocalAddress()
+		 */
+		public URI getLocalAddress() {
+			return localEndpointAddress;
+		}
+
+		/**
+		 * send a message through the channel. The message is written right
+		 * away if nothing is queued and the socket accepts it, otherwise it is
+		 * queued for the selector thread. Blocks while too many bytes are
+		 * queued.
+		 *
+		 * @param message
+		 *            the message.
+		 * @throws IOException
+		 *             in case of IO errors.
+		 */
+		public void sendMessage(final RemoteOSGiMessage message)
+				throws IOException {
+			if (RemoteOSGiServiceImpl.MSG_DEBUG) {
+				RemoteOSGiServiceImpl.log.log(LogService.LOG_DEBUG,
+						"{NIO Channel} sending " + message); //$NON-NLS-1$
+			}
+			final FrameOutputStream bytes = new FrameOutputStream();
+			final ObjectOutputStream out = TCPChannelFactory.SERIALIZATION_DEFAULT
+					.equals(TCPChannelFactory.OSGI_SERIALIZATION) ? (ObjectOutputStream) new OSGIObjectOutputStream(
+					bytes, true)
+					: new SmartObjectOutputStream(bytes);
+			message.send(out);
+			out.close();
+			final ByteBuffer frame = bytes.toFrame();
+
+			synchronized (writeQueue) {
+				while (open && queuedBytes > WRITE_HIGH_WATER) {
+					try {
+						writeQueue.wait();
+					} catch (final InterruptedException ie) {
+						Thread.currentThread().interrupt();
+						throw new InterruptedIOException();
+					}
+				}
+				if (!open) {
+					throw new IOException("Channel " + this + " is closed"); //$NON-NLS-1$ //$NON-NLS-2$
+				}
+				if (writeQueue.isEmpty() && writeBuffer == null) {
+					socketChannel.write(frame);
+					if (!frame.hasRemaining()) {
+						return;
+					}
+				}
+				writeQueue.addLast(frame);
+				queuedBytes += frame.remaining();
+				if (!writeRequested) {
+					writeRequested = true;
+					owner.invoke(flushTask);
+				}
+			}
+		}
+
+		/**
+		 * called by the selector thread when the socket is ready.
+		 */
+		void ready(final SelectionKey k) {
+			try {
+				if (k.isReadable()) {
+					read();
+				}
+				if (k.isValid() && k.isWritable()) {
+					flush();
+				}
+			} catch (final IOException ioe) {
+				disconnect();
+			}
+		}
+
+		/**
+		 * write queued frames through pooled direct buffers. Called by the
+		 * selector thread.
+		 */
+		void flush() throws IOException {
+			synchronized (writeQueue) {
+				while (open) {
+					if (writeBuffer == null) {
+						if (writeQueue.isEmpty()) {
+							break;
+						}
+						writeBuffer = bufferPool.acquire();
+						while (writeBuffer.hasRemaining()
+								&& !writeQueue.isEmpty()) {
+							final ByteBuffer head = (ByteBuffer) writeQueue
+									.getFirst();
+							final int n = Math.min(head.remaining(),
+									writeBuffer.remaining());
+							final int limit = head.limit();
+							head.limit(head.position() + n);
+							writeBuffer.put(head);
+							head.limit(limit);
+							queuedBytes -= n;
+							if (!head.hasRemaining()) {
+								writeQueue.removeFirst();
+							}
+						}
+						writeBuffer.flip();
+						writeQueue.notifyAll();
+					}
+					socketChannel.write(writeBuffer);
+					if (writeBuffer.hasRemaining()) {
+						interest(SelectionKey.OP_WRITE, true);
+						return;
+					}
+					bufferPool.release(writeBuffer);
+					writeBuffer = null;
+				}
+				interest(SelectionKey.OP_WRITE, false);
+				writeRequested = false;
+			}
+		}
+
+		/**
+		 * read from the socket and split the bytes into frames. Called by the
+		 * selector thread.
+		 */
+		private void read() throws IOException {
+			final ByteBuffer buffer = bufferPool.acquire();
+			try {
+				final int n = socketChannel.read(buffer);
+				if (n < 0) {
+					disconnect();
+					return;
+				}
+				buffer.flip();
+				while (buffer.hasRemaining()) {
+					if (frame == null) {
+						final int h = Math.min(4 - headerPos,
+								buffer.remaining());
+						buffer.get(header, headerPos, h);
+						headerPos += h;
+						if (headerPos < 4) {
+							return;
+						}
+						headerPos = 0;
+						final int length = ((header[0] & 0xFF) << 24)
+								| ((header[1] & 0xFF) << 16)
+								| ((header[2] & 0xFF) << 8)
+								| (header[3] & 0xFF);
+						if (length <= 0 || length > MAX_FRAME) {
+							throw new StreamCorruptedException(
+									"Invalid frame length " + length); //$NON-NLS-1$
+						}
+						frame = new byte[length];
+						framePos = 0;
+					}
+					final int b = Math.min(frame.length - framePos,
+							buffer.remaining());
+					buffer.get(frame, framePos, b);
+					framePos += b;
+					if (framePos == frame.length) {
+						received(frame);
+						frame = null;
+					}
+				}
+			} finally {
+				bufferPool.release(buffer);
+			}
+		}
+
+		/**
+		 * hand a complete frame to the decoder, and stop reading while too
+		 * many bytes wait for decoding.
+		 */
+		private void received(final byte[] bytes) {
+			synchronized (readLock) {
+				undecoded += bytes.length;
+				if (reading && undecoded > READ_HIGH_WATER) {
+					reading = false;
+					interest(SelectionKey.OP_READ, false);
+				}
+			}
+			decoder.execute(new Runnable() {
+				public void run() {
+					try {
+						decode(bytes);
+					} finally {
+						synchronized (readLock) {
+							undecoded -= bytes.length;
+							if (!reading && undecoded <= READ_HIGH_WATER / 2) {
+								reading = true;
+								owner.invoke(new Runnable() {
+									public void run() {
+										interest(SelectionKey.OP_READ, true);
+									}
+								});
+							}
+						}
+					}
+				}
+			});
+		}
+
+		/**
+		 * decode a frame and hand the message to the endpoint. The endpoint
+		 * only wakes up waiting callers or queues the message on its work
+		 * queue, so this thread is never held up by service or client code.
+		 * A frame that cannot be decoded closes the channel.
+		 */
+		void decode(final byte[] bytes) {
+			if (!open) {
+				return;
+			}
+			final RemoteOSGiMessage msg;
+			try {
+				final ByteArrayInputStream in = new ByteArrayInputStream(bytes);
+				final ObjectInputStream input = TCPChannelFactory.SERIALIZATION_DEFAULT
+						.equals(TCPChannelFactory.OSGI_SERIALIZATION) ? (ObjectInputStream) new OSGIObjectInputStream(
+						bundle, in)
+						: new SmartObjectInputStream(in);
+				msg = RemoteOSGiMessage.parse(input);
+			} catch (final Throwable t) {
+				log("Cannot decode message received by " + this, t); //$NON-NLS-1$
+				disconnect();
+				return;
+			}
+			if (RemoteOSGiServiceImpl.MSG_DEBUG) {
+				RemoteOSGiServiceImpl.log.log(LogService.LOG_DEBUG,
+						"{NIO Channel} received " + msg); //$NON-NLS-1$
+			}
+			endpoint.receivedMessage(msg);
+		}
+
+		/**
+		 * change the interest of the selection key. Called by the selector
+		 * thread.
+		 */
+		void interest(final int op, final boolean on) {
+			final SelectionKey k = key;
+			if (k == null || !k.isValid()) {
+				return;
+			}
+			final int ops = k.interestOps();
+			k.interestOps(on ? ops | op : ops & ~op);
+		}
+	}
+}
@@ -0,0 +1,424 @@
+/****************************************************************************
+ * Copyright (c) 2026 Composent, Inc. and others.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * Contributors:
+ *    Composent, Inc. - initial API and implementation
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *****************************************************************************/
+package ch.ethz.iks.r_osgi.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.osgi.service.log.LogService;
+
+import ch.ethz.iks.r_osgi.URI;
+import ch.ethz.iks.r_osgi.messages.DeliverServiceMessage;
+
+/**
+ * <p>
+ * Disk cache of generated proxy bundles. A proxy bundle only depends on the
+ * service URI and the content of the <code>DeliverServiceMessage</code>, and
+ * the URI only appears in the symbolic name and in string constants of the
+ * generated classes. So the bundle is generated once for a placeholder URI,
+ * stored under a hash of the message and bound to the URI of the service
+ * whenever it is fetched, also from a peer that was restarted on another
+ * address or registered the service under another id.
+ * </p>
+ * <p>
+ * The cache is kept in the data area of the R-OSGi bundle. When it grows
+ * larger than its maximum size, the least recently used bundles are removed.
+ * </p>
+ */
+final class ProxyBundleCache {
+
+	/**
+	 * enable the cache? If not set to "false", proxy bundles are cached.
+	 */
+	static final String PROXY_CACHE_PROPERTY = "ch.ethz.iks.r_osgi.proxyCache"; //$NON-NLS-1$
+
+	/**
+	 * the maximum size of the cache in bytes.
+	 */
+	static final String PROXY_CACHE_SIZE_PROPERTY = "ch.ethz.iks.r_osgi.proxyCache.maxSize"; //$NON-NLS-1$
+
+	static final long DEFAULT_MAX_SIZE = 64L * 1024 * 1024;
+
+	/**
+	 * changes whenever the generated bundles change, so that bundles of
+	 * older versions are not reused.
+	 */
+	private static final String FORMAT = "r-osgi-proxy-2"; //$NON-NLS-1$
+
+	/**
+	 * the URI the cached bundles are generated for.
+	 */
+	static final URI PLACEHOLDER = URI.create("r-osgi://proxy.cache:0#0"); //$NON-NLS-1$
+
+	/**
+	 * the folder of the generated classes in a proxy bundle.
+	 */
+	private static final String PROXY_FOLDER = "proxy/"; //$NON-NLS-1$
+
+	private static final String SUFFIX = ".jar"; //$NON-NLS-1$
+
+	private final File dir;
+
+	private final long maxSize;
+
+	private long size;
+
+	private int hits;
+
+	private int misses;
+
+	private long hitNanos;
+
+	private long missNanos;
+
+	ProxyBundleCache(final File dir, final long maxSize) {
+		this.dir = dir;
+		this.maxSize = maxSize;
+		dir.mkdirs();
+		final File[] files = listFiles();
+		for (int i = 0; i < files.length; i++) {
+			size += files[i].length();
+		}
+	}
+
+	/**
+	 * get the proxy bundle for a service, from the cache if possible.
+	 *
+	 * @param service
+	 *            the service URI.
+	 * @param deliv
+	 *            the service description.
+	 * @return the proxy bundle.
+	 * @throws IOException
+	 *             if the bundle cannot be generated.
+	 */
+	InputStream getProxyBundle(final URI service,
+			final DeliverServiceMessage deliv) throws IOException {
+		final long start = System.nanoTime();
+		final String key = getKey(deliv);
+		final File file = new File(dir, key + SUFFIX);
+		final byte[] cached = read(file);
+		if (cached != null) {
+			try {
+				final byte[] bytes = bind(cached, service);
+				synchronized (this) {
+					hits++;
+					hitNanos += System.nanoTime() - start;
+				}
+				if (RemoteOSGiServiceImpl.PROXY_DEBUG) {
+					RemoteOSGiServiceImpl.log.log(LogService.LOG_DEBUG,
+							"Reusing cached proxy bundle for " + service); //$NON-NLS-1$
+				}
+				return new ByteArrayInputStream(bytes);
+			} catch (final IOException ioe) {
+				log("Cannot read cached proxy bundle " + file, ioe); //$NON-NLS-1$
+			}
+		}
+
+		final byte[] template = new ProxyGenerator()
+				.generateProxyBundleBytes(PLACEHOLDER, deliv);
+		write(file, template);
+		final byte[] bytes = bind(template, service);
+		synchronized (this) {
+			misses++;
+			missNanos += System.nanoTime() - start;
+		}
+		return new ByteArrayInputStream(bytes);
+	}
+
+	/**
+	 * bind a proxy bundle generated for the placeholder URI to a service.
+	 *
+	 * @param template
+	 *            the proxy bundle generated for the placeholder URI.
+	 * @param service
+	 *            the service URI.
+	 * @return the proxy bundle for the service.
+	 * @throws IOException
+	 *             if the template is not a valid bundle.
+	 */
+	static byte[] bind(final byte[] template, final URI service)
+			throws IOException {
+		final String placeholder = PLACEHOLDER.toString();
+		final String uri = service.toString();
+		final JarInputStream in = new JarInputStream(new ByteArrayInputStream(
+				template));
+		if (in.getManifest() == null) {
+			throw new IOException("No manifest"); //$NON-NLS-1$
+		}
+		final Manifest mf = new Manifest(in.getManifest());
+		mf.getMainAttributes().putValue("Bundle-SymbolicName", //$NON-NLS-1$
+				ProxyGenerator.getSymbolicName(service));
+		final ByteArrayOutputStream bout = new ByteArrayOutputStream(
+				template.length + 256);
+		final JarOutputStream out = new JarOutputStream(bout, mf);
+		final byte[] chunk = new byte[8192];
+		JarEntry entry;
+		while ((entry = in.getNextJarEntry()) != null) {
+			final ByteArrayOutputStream data = new ByteArrayOutputStream();
+			int len;
+			while ((len = in.read(chunk)) > -1) {
+				data.write(chunk, 0, len);
+			}
+			byte[] bytes = data.toByteArray();
+			if (entry.getName().startsWith(PROXY_FOLDER)
+					&& entry.getName().endsWith(".class")) { //$NON-NLS-1$
+				bytes = replaceConstant(bytes, placeholder, uri);
+			}
+			out.putNextEntry(new JarEntry(entry.getName()));
+			out.write(bytes);
+			out.closeEntry();
+		}
+		out.close();
+		return bout.toByteArray();
+	}
+
+	/**
+	 * replace a string constant loaded by the methods of a class.
+	 */
+	private static byte[] replaceConstant(final byte[] bytes,
+			final String from, final String to) {
+		final ClassReader reader = new ClassReader(bytes);
+		final ClassWriter writer = new ClassWriter(reader, 0);
+		reader.accept(new ClassVisitor(Opcodes.ASM5, writer) {
+			public MethodVisitor visitMethod(final int access,
+					final String name, final String desc,
+					final String signature, final String[] exceptions) {
+				return new MethodVisitor(Opcodes.ASM5, super.visitMethod(
+						access, name, desc, signature, exceptions)) {
+					public void visitLdcInsn(final Object cst) {
+						super.visitLdcInsn(from.equals(cst) ? to : cst);
+					}
+				};
+			}
+		}, 0);
+		return writer.toByteArray();
+	}
+
+	/**
+	 * compute the cache key of a proxy bundle. It does not depend on the
+	 * service URI, the bundle is bound to the URI when it is handed out.
+	 */
+	static String getKey(final DeliverServiceMessage deliv) {
+		final MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256"); //$NON-NLS-1$
+		} catch (final NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e.getMessage());
+		}
+		update(digest, FORMAT);
+		final String[] interfaceNames = deliv.getInterfaceNames();
+		for (int i = 0; i < interfaceNames.length; i++) {
+			update(digest, interfaceNames[i]);
+		}
+		update(digest, deliv.getInterfaceClass());
+		update(digest, deliv.getSmartProxyName());
+		update(digest, deliv.getProxyClass());
+		final Map injections = deliv.getInjections();
+		final String[] names = (String[]) injections.keySet().toArray(
+				new String[injections.size()]);
+		Arrays.sort(names);
+		for (int i = 0; i < names.length; i++) {
+			update(digest, names[i]);
+			update(digest, (byte[]) injections.get(names[i]));
+		}
+		update(digest, deliv.getImports());
+		update(digest, deliv.getExports());
+		update(digest, deliv.getOptionalImports());
+
+		final byte[] hash = digest.digest();
+		final StringBuffer buffer = new StringBuffer(hash.length * 2);
+		for (int i = 0; i < hash.length; i++) {
+			buffer.append(Character.forDigit((hash[i] >> 4) & 0xF, 16));
+			buffer.append(Character.forDigit(hash[i] & 0xF, 16));
+		}
+		return buffer.toString();
+	}
+
+	private static void update(final MessageDigest digest, final String s) {
+		if (s == null) {
+			update(digest, (byte[]) null);
+			return;
+		}
+		try {
+			// the key must not depend on the platform's default encoding
+			update(digest, s.getBytes("UTF-8")); //$NON-NLS-1$
+		} catch (final UnsupportedEncodingException e) {
+			throw new IllegalStateException(e.getMessage());
+		}
+	}
+
+	private static void update(final MessageDigest digest, final byte[] b) {
+		// length prefix, so that different fields cannot run into each other
+		final int len = b == null ? -1 : b.length;
+		digest.update((byte) (len >>> 24));
+		digest.update((byte) (len >>> 16));
+		digest.update((byte) (len >>> 8));
+		digest.update((byte) len);
+		if (b != null) {
+			digest.update(b);
+		}
+	}
+
+	private byte[] read(final File file) {
+		if (!file.isFile()) {
+			return null;
+		}
+		try {
+			final FileInputStream in = new FileInputStream(file);
+			try {
+				final ByteArrayOutputStream out = new ByteArrayOutputStream(
+						(int) file.length());
+				final byte[] chunk = new byte[8192];
+				int len;
+				while ((len = in.read(chunk)) > -1) {
+					out.write(chunk, 0, len);
+				}
+				// remember the use for the eviction
+				file.setLastModified(System.currentTimeMillis());
+				return out.toByteArray();
+			} finally {
+				in.close();
+			}
+		} catch (final IOException ioe) {
+			log("Cannot read cached proxy bundle " + file, ioe); //$NON-NLS-1$
+			return null;
+		}
+	}
+
+	private void write(final File file, final byte[] bytes) {
+		final File tmp = new File(dir, file.getName() + ".tmp" //$NON-NLS-1$
+				+ Thread.currentThread().getId());
+		try {
+			final FileOutputStream out = new FileOutputStream(tmp);
+			try {
+				out.write(bytes);
+			} finally {
+				out.close();
+			}
+			synchronized (this) {
+				final long old = file.length();
+				if (file.exists() && !file.delete() || !tmp.renameTo(file)) {
+					tmp.delete();
+					return;
+				}
+				size += bytes.length - old;
+				evict();
+			}
+		} catch (final IOException ioe) {
+			tmp.delete();
+			log("Cannot cache proxy bundle " + file, ioe); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * remove the least recently used bundles until the cache is small enough.
+	 */
+	private void evict() {
+		if (size <= maxSize) {
+			return;
+		}
+		final File[] files = listFiles();
+		final long[] used = new long[files.length];
+		final Integer[] order = new Integer[files.length];
+		for (int i = 0; i < files.length; i++) {
+			used[i] = files[i].lastModified();
+			order[i] = Integer.valueOf(i);
+		}
+		Arrays.sort(order, new Comparator() {
+			public int compare(final Object o1, final Object o2) {
+				final long u1 = used[((Integer) o1).intValue()];
+				final long u2 = used[((Integer) o2).intValue()];
+				return u1 < u2 ? -1 : u1 == u2 ? 0 : 1;
+			}
+		});
+		size = 0;
+		for (int i = 0; i < files.length; i++) {
+			size += files[i].length();
+		}
+		for (int i = 0; i < order.length && size > maxSize; i++) {
+			final File file = files[order[i].intValue()];
+			final long len = file.length();
+			if (file.delete()) {
+				size -= len;
+			}
+		}
+	}
+
+	private File[] listFiles() {
+		final File[] files = dir.listFiles();
+		if (files == null) {
+			return new File[0];
+		}
+		int n = 0;
+		for (int i = 0; i < files.length; i++) {
+			if (files[i].getName().endsWith(SUFFIX)) {
+				files[n++] = files[i];
+			}
+		}
+		final File[] result = new File[n];
+		System.arraycopy(files, 0, result, 0, n);
+		return result;
+	}
+
+	private static void log(final String message, final Throwable t) {
+		if (RemoteOSGiServiceImpl.log != null) {
+			RemoteOSGiServiceImpl.log.log(LogService.LOG_WARNING, message, t);
+		}
+	}
+
+	/**
+	 * get the statistics of the cache since R-OSGi was started.
+	 *
+	 * @return map of statistic name -&gt; Long value.
+	 */
+	synchronized Map getStatistics() {
+		final Map result = new HashMap(8);
+		result.put("hits", Long.valueOf(hits)); //$NON-NLS-1$
+		result.put("regenerations", Long.valueOf(misses)); //$NON-NLS-1$
+		result.put("hitMillis", Long.valueOf(hitNanos / 1000000)); //$NON-NLS-1$
+		result.put("regenerationMillis", Long.valueOf(missNanos / 1000000)); //$NON-NLS-1$
+		result.put("size", Long.valueOf(size)); //$NON-NLS-1$
+		result.put("maxSize", Long.valueOf(maxSize)); //$NON-NLS-1$
+		return result;
+	}
+
+	public String toString() {
+		final StringBuffer buffer = new StringBuffer("ProxyBundleCache["); //$NON-NLS-1$
+		buffer.append(dir);
+		buffer.append(";statistics=").append(getStatistics()); //$NON-NLS-1$
+		buffer.append("]"); //$NON-NLS-1$
+		return buffer.toString();
+	}
+}
@@ -198,6 +198,22 @@ class ProxyGenerator extends ClassVisitor implements Opcodes {
 	 */
 	protected InputStream generateProxyBundle(final URI service,
 			final DeliverServiceMessage deliv) throws IOException {
+		return new ByteArrayInputStream(generateProxyBundleBytes(service,
+				deliv));
+	}
+
+	/**
+	 * 
+	 * @param service
+	 *            ServiceURL
+	 * @param deliv
+	 *            DeliverServiceMessage
+	 * @return the bytes of the proxy bundle
+	 * @throws IOException
+	 *             in case of proxy generation error
+	 */
+	byte[] generateProxyBundleBytes(final URI service,
+			final DeliverServiceMessage deliv) throws IOException {
 
 		uri = service.toString();
 		sourceID = generateSourceID(uri);
@@ -220,8 +236,7 @@ class ProxyGenerator extends ClassVisitor implements Opcodes {
 		attr.putValue("Created-By", "R-OSGi Proxy Generator"); //$NON-NLS-1$ //$NON-NLS-2$
 		attr.putValue("Bundle-Activator", className); //$NON-NLS-1$
 		attr.putValue("Bundle-Classpath", "."); //$NON-NLS-1$ //$NON-NLS-2$
-		attr.putValue(
-				"Bundle-SymbolicName", RemoteOSGiService.R_OSGi_PROXY_PREFIX + service.getHost()+"."+service.getPort()+"."+service.getFragment()); //$NON-NLS-1$ //$NON-NLS-2$
+		attr.putValue("Bundle-SymbolicName", getSymbolicName(service)); //$NON-NLS-1$
 		attr.putValue(
 				"Import-Package", //$NON-NLS-1$
 				"org.osgi.framework, ch.ethz.iks.r_osgi, ch.ethz.iks.r_osgi.types, ch.ethz.iks.r_osgi.channels" //$NON-NLS-1$
@@ -301,7 +316,19 @@ class ProxyGenerator extends ClassVisitor implements Opcodes {
 			// "Created Proxy Bundle " + file);
 		}
 
-		return new ByteArrayInputStream(bout.toByteArray());
+		return bout.toByteArray();
+	}
+
+	/**
+	 * get the symbolic name of the proxy bundle of a service.
+	 * 
+	 * @param service
+	 *            the service URI.
+	 * @return the symbolic name.
+	 */
+	static String getSymbolicName(final URI service) {
+		return RemoteOSGiService.R_OSGi_PROXY_PREFIX + service.getHost() + "." //$NON-NLS-1$
+				+ service.getPort() + "." + service.getFragment(); //$NON-NLS-1$
 	}
 
 	/**
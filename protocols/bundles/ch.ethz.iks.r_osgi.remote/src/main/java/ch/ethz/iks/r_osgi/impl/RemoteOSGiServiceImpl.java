@@ -48,6 +48,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.JarEntry;
 import java.util.jar.JarOutputStream;
 import java.util.jar.Manifest;
@@ -150,8 +151,20 @@ final class RemoteOSGiServiceImpl implements RemoteOSGiService, Remoting {
 	static final String REGISTER_DEFAULT_TCP_CHANNEL = "ch.ethz.iks.r_osgi.registerDefaultChannel"; //$NON-NLS-1$
 
 	/**
-	 * register the default tcp channel? If not set to "false", the channel gets
-	 * registered.
+	 * register the non-blocking tcp channel for the protocol r-osgi+nio? Only
+	 * if set to "true", the channel gets registered.
+	 */
+	static final String REGISTER_NIO_CHANNEL = "ch.ethz.iks.r_osgi.registerNIOChannel"; //$NON-NLS-1$
+
+	/**
+	 * the disk cache of generated proxy bundles, or <code>null</code> if
+	 * disabled.
+	 */
+	static ProxyBundleCache proxyBundleCache;
+
+	/**
+	 * the maximum number of requests of a single endpoint handled at the same
+	 * time.
 	 */
 	static final String THREADS_PER_ENDPOINT = "ch.ethz.iks.r_osgi.threadsPerEndpoint"; //$NON-NLS-1$
 
@@ -193,7 +206,8 @@ final class RemoteOSGiServiceImpl implements RemoteOSGiService, Remoting {
 	private static final int BUFFER_SIZE = 2048;
 
 	/**
-	 * how many worker threads per endpoint?
+	 * how many requests per endpoint can run at the same time on the shared
+	 * worker pool?
 	 */
 	static final int MAX_THREADS_PER_ENDPOINT = Integer.getInteger(
 			THREADS_PER_ENDPOINT, 2).intValue();
@@ -226,7 +240,7 @@ final class RemoteOSGiServiceImpl implements RemoteOSGiService, Remoting {
 	/**
 	 * next transaction id.
 	 */
-	private static int nextXid;
+	private static final AtomicInteger nextXid = new AtomicInteger();
 
 	/**
 	 * OSGi log service instance.
@@ -345,8 +359,21 @@ final class RemoteOSGiServiceImpl implements RemoteOSGiService, Remoting {
 		prop = context.getProperty(R_OSGi_PORT_PROPERTY);
 		R_OSGI_PORT = prop != null ? Integer.parseInt(prop) : 9278;
 
+		// set up the proxy bundle cache
+		if (!"false".equals(context //$NON-NLS-1$
+				.getProperty(ProxyBundleCache.PROXY_CACHE_PROPERTY))) {
+			final File cacheDir = context.getDataFile("proxies"); //$NON-NLS-1$
+			if (cacheDir != null) {
+				prop = context
+						.getProperty(ProxyBundleCache.PROXY_CACHE_SIZE_PROPERTY);
+				proxyBundleCache = new ProxyBundleCache(cacheDir,
+						prop != null ? Long.parseLong(prop)
+								: ProxyBundleCache.DEFAULT_MAX_SIZE);
+			}
+		}
+
 		// initialize the transactionID with a random value
-		nextXid = (short) Math.round(Math.random() * Short.MAX_VALUE);
+		nextXid.set((short) Math.round(Math.random() * Short.MAX_VALUE));
 
 		// get the package admin
 		final ServiceReference ref = context
@@ -976,6 +1003,8 @@ final class RemoteOSGiServiceImpl implements RemoteOSGiService, Remoting {
 		for (int i = 0; i < c.length; i++) {
 			c[i].dispose();
 		}
+		EndpointWorkQueue.shutdown();
+		proxyBundleCache = null;
 		final Object[] factories = networkChannelFactoryTracker.getServices();
 		if (factories != null) {
 			for (int i = 0; i < factories.length; i++) {
@@ -1063,11 +1092,12 @@ final class RemoteOSGiServiceImpl implements RemoteOSGiService, Remoting {
 	 * 
 	 * @return the next xid.
 	 */
-	static synchronized int nextXid() {
-		if (nextXid == -1) {
-			nextXid = 0;
-		}
-		return (++nextXid);
+	static int nextXid() {
+		int xid;
+		do {
+			xid = nextXid.incrementAndGet();
+		} while (xid == 0);
+		return xid;
 	}
 
 	/**
@@ -1090,6 +1120,36 @@ final class RemoteOSGiServiceImpl implements RemoteOSGiService, Remoting {
 		channels.remove(channelURI);
 	}
 
+	/**
+	 * get the number of received requests not yet handled by each channel
+	 * endpoint, for monitoring.
+	 * 
+	 * @return map of channel uri -&gt; Integer queue depth.
+	 */
+	public static Map getWorkQueueDepths() {
+		final ChannelEndpointImpl[] endpoints = (ChannelEndpointImpl[]) channels
+				.values().toArray(new ChannelEndpointImpl[channels.size()]);
+		final Map result = new HashMap(endpoints.length);
+		for (int i = 0; i < endpoints.length; i++) {
+			result.put(endpoints[i].getRemoteAddress().toString(), Integer
+					.valueOf(endpoints[i].getWorkQueueDepth()));
+		}
+		return result;
+	}
+
+	/**
+	 * get the statistics of the proxy bundle cache since R-OSGi was started,
+	 * for monitoring how many proxy bundles were reused and how many had to be
+	 * generated.
+	 * 
+	 * @return map of statistic name -&gt; Long value, empty if the cache is
+	 *         disabled.
+	 */
+	public static Map getProxyBundleCacheStatistics() {
+		final ProxyBundleCache cache = proxyBundleCache;
+		return cache == null ? new HashMap(0) : cache.getStatistics();
+	}
+
 	/**
 	 * update the leases.
 	 */
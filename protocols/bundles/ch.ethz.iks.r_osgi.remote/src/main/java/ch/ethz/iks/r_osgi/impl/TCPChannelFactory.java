@@ -63,8 +63,8 @@ final class TCPChannelFactory implements NetworkChannelFactory {
 	private TCPAcceptorThread thread;
 	protected int listeningPort;
 
-	private static final String OSGI_SERIALIZATION = "osgi.basic";
-	private static final String SERIALIZATION_DEFAULT = System.getProperty("ch.ethz.iks.r_osgi.remote.serialization",OSGI_SERIALIZATION);
+	static final String OSGI_SERIALIZATION = "osgi.basic";
+	static final String SERIALIZATION_DEFAULT = System.getProperty("ch.ethz.iks.r_osgi.remote.serialization",OSGI_SERIALIZATION);
 	
 	/**
 	 * get a new connection.
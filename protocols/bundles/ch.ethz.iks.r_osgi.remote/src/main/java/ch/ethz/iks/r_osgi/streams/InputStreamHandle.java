@@ -48,6 +48,14 @@ public class InputStreamHandle implements Serializable {
 	 */
 	private final short streamID;
 
+	/**
+	 * <code>true</code> if the peer holding the stream handles the operations
+	 * on the stream in the order they were sent. Handles sent by peers of
+	 * earlier versions do not have the field and are read with
+	 * <code>false</code>.
+	 */
+	private final boolean windowed;
+
 	/**
 	 * Create a new stream handle.
 	 * 
@@ -55,7 +63,22 @@ public class InputStreamHandle implements Serializable {
 	 *            the stream id.
 	 */
 	public InputStreamHandle(final short streamID) {
+		this(streamID, false);
+	}
+
+	/**
+	 * Create a new stream handle.
+	 * 
+	 * @param streamID
+	 *            the stream id.
+	 * @param windowed
+	 *            <code>true</code> if the operations on the stream are handled
+	 *            in the order they were sent, so that a proxy can pipeline
+	 *            them.
+	 */
+	public InputStreamHandle(final short streamID, final boolean windowed) {
 		this.streamID = streamID;
+		this.windowed = windowed;
 	}
 
 	/**
@@ -67,4 +90,14 @@ public class InputStreamHandle implements Serializable {
 		return streamID;
 	}
 
+	/**
+	 * Check if the stream can be pipelined.
+	 * 
+	 * @return <code>true</code> if the operations on the stream are handled in
+	 *         the order they were sent.
+	 */
+	public boolean isWindowed() {
+		return windowed;
+	}
+
 }
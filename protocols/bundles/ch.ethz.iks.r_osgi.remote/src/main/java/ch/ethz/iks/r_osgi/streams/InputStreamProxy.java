@@ -30,8 +30,11 @@ package ch.ethz.iks.r_osgi.streams;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.LinkedList;
 
 import ch.ethz.iks.r_osgi.impl.ChannelEndpointImpl;
+import ch.ethz.iks.r_osgi.messages.StreamRequestMessage;
+import ch.ethz.iks.r_osgi.messages.StreamResultMessage;
 
 /**
  * Proxy object for input streams.
@@ -50,6 +53,36 @@ public class InputStreamProxy extends InputStream {
 	 */
 	private final ChannelEndpointImpl endpoint;
 
+	/**
+	 * bytes requested ahead of the reader, 0 if every read waits for its
+	 * result.
+	 */
+	private final int window;
+
+	/**
+	 * the size of the requested chunks.
+	 */
+	private final int chunkSize;
+
+	/**
+	 * the read requests sent and not yet consumed, in the order they were
+	 * sent.
+	 */
+	private final LinkedList pending = new LinkedList();
+
+	/**
+	 * the chunk currently read from.
+	 */
+	private byte[] buffer;
+
+	private int pos;
+
+	private int count;
+
+	private boolean eof;
+
+	private IOException failure;
+
 	/**
 	 * Create a new input stream proxy.
 	 * 
@@ -60,8 +93,31 @@ public class InputStreamProxy extends InputStream {
 	 */
 	public InputStreamProxy(final short streamID,
 			final ChannelEndpointImpl endpoint) {
+		this(streamID, endpoint, 0, 0);
+	}
+
+	/**
+	 * Create a new input stream proxy that reads ahead. Up to
+	 * <code>window</code> bytes are requested in chunks of
+	 * <code>chunkSize</code> bytes before the reader consumes them.
+	 * 
+	 * @param streamID
+	 *            the stream id.
+	 * @param endpoint
+	 *            the channel endpoint.
+	 * @param window
+	 *            the number of bytes to request ahead, 0 to wait for the
+	 *            result of every read.
+	 * @param chunkSize
+	 *            the size of the requested chunks.
+	 */
+	public InputStreamProxy(final short streamID,
+			final ChannelEndpointImpl endpoint, final int window,
+			final int chunkSize) {
 		this.streamID = streamID;
 		this.endpoint = endpoint;
+		this.chunkSize = Math.max(1, chunkSize);
+		this.window = window > 0 ? Math.max(window, this.chunkSize) : 0;
 	}
 
 	/**
@@ -69,8 +125,14 @@ public class InputStreamProxy extends InputStream {
 	 * 
 	 * @see java.io.InputStream#read()
 	 */
-	public int read() throws IOException {
-		return endpoint.readStream(streamID);
+	public synchronized int read() throws IOException {
+		if (window == 0) {
+			return endpoint.readStream(streamID);
+		}
+		if (!fill()) {
+			return -1;
+		}
+		return buffer[pos++] & 0xFF;
 	}
 
 	/**
@@ -78,9 +140,120 @@ public class InputStreamProxy extends InputStream {
 	 * 
 	 * @see java.io.InputStream#read(byte[], int, int)
 	 */
-	public int read(final byte[] b, final int off, final int len)
+	public synchronized int read(final byte[] b, final int off, final int len)
 			throws IOException {
-		return endpoint.readStream(streamID, b, off, len);
+		if (window == 0) {
+			return endpoint.readStream(streamID, b, off, len);
+		}
+		if (b == null) {
+			throw new NullPointerException();
+		}
+		if ((off < 0) || (len < 0) || (len + off > b.length)) {
+			throw new IndexOutOfBoundsException();
+		}
+		if (len == 0) {
+			return 0;
+		}
+		if (!fill()) {
+			return -1;
+		}
+		final int n = Math.min(len, count - pos);
+		System.arraycopy(buffer, pos, b, off, n);
+		pos += n;
+		return n;
+	}
+
+	/**
+	 * get the number of bytes that have already been received.
+	 * 
+	 * @see java.io.InputStream#available()
+	 */
+	public synchronized int available() throws IOException {
+		return window == 0 ? 0 : count - pos;
+	}
+
+	/**
+	 * Close the proxy and stop reading ahead.
+	 * 
+	 * @see java.io.InputStream#close()
+	 */
+	public synchronized void close() throws IOException {
+		eof = true;
+		cancelPending();
+		buffer = null;
+		pos = count = 0;
+	}
+
+	/**
+	 * stop reading ahead if the proxy is dropped without being closed.
+	 * 
+	 * @see java.lang.Object#finalize()
+	 */
+	protected void finalize() throws Throwable {
+		try {
+			close();
+		} finally {
+			super.finalize();
+		}
+	}
+
+	/**
+	 * make sure the buffer has bytes to read.
+	 * 
+	 * @return <code>false</code> at the end of the stream.
+	 * @throws IOException
+	 *             if a read on the remote stream failed.
+	 */
+	private boolean fill() throws IOException {
+		while (pos >= count) {
+			if (failure != null) {
+				throw failure;
+			}
+			if (eof) {
+				return false;
+			}
+			final StreamResultMessage result;
+			try {
+				requestAhead();
+				result = ((ChannelEndpointImpl.PendingStreamOp) pending
+						.removeFirst()).get();
+			} catch (final IOException ioe) {
+				failure = ioe;
+				cancelPending();
+				throw ioe;
+			}
+			final int length = result.getLen();
+			if (length < 0) {
+				eof = true;
+				cancelPending();
+				return false;
+			}
+			buffer = result.getData();
+			pos = 0;
+			count = buffer == null ? 0 : length;
+		}
+		return true;
+	}
+
+	/**
+	 * send read requests until the window is full.
+	 */
+	private void requestAhead() throws IOException {
+		while (pending.isEmpty()
+				|| (pending.size() + 1) * chunkSize <= window) {
+			final StreamRequestMessage requestMsg = new StreamRequestMessage();
+			requestMsg.setOp(StreamRequestMessage.READ_ARRAY);
+			requestMsg.setStreamID(streamID);
+			requestMsg.setLenOrVal(chunkSize);
+			pending.addLast(endpoint.startStreamOp(requestMsg));
+		}
+	}
+
+	private void cancelPending() {
+		while (!pending.isEmpty()) {
+			((ChannelEndpointImpl.PendingStreamOp) pending.removeFirst())
+					.cancel();
+		}
 	}
 
 }
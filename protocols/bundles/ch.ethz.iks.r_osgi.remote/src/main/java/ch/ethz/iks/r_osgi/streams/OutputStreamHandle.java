@@ -47,6 +47,14 @@ public final class OutputStreamHandle implements Serializable {
 	 */
 	private final short streamID;
 
+	/**
+	 * <code>true</code> if the peer holding the stream handles the operations
+	 * on the stream in the order they were sent. Handles sent by peers of
+	 * earlier versions do not have the field and are read with
+	 * <code>false</code>.
+	 */
+	private final boolean windowed;
+
 	/**
 	 * create a new output stream handle.
 	 * 
@@ -54,7 +62,22 @@ public final class OutputStreamHandle implements Serializable {
 	 *            the stream ID.
 	 */
 	public OutputStreamHandle(final short streamID) {
+		this(streamID, false);
+	}
+
+	/**
+	 * create a new output stream handle.
+	 * 
+	 * @param streamID
+	 *            the stream ID.
+	 * @param windowed
+	 *            <code>true</code> if the operations on the stream are handled
+	 *            in the order they were sent, so that a proxy can pipeline
+	 *            them.
+	 */
+	public OutputStreamHandle(final short streamID, final boolean windowed) {
 		this.streamID = streamID;
+		this.windowed = windowed;
 	}
 
 	/**
@@ -66,4 +89,14 @@ public final class OutputStreamHandle implements Serializable {
 		return streamID;
 	}
 
+	/**
+	 * check if the stream can be pipelined.
+	 * 
+	 * @return <code>true</code> if the operations on the stream are handled in
+	 *         the order they were sent.
+	 */
+	public boolean isWindowed() {
+		return windowed;
+	}
+
 }
@@ -30,8 +30,10 @@ package ch.ethz.iks.r_osgi.streams;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.LinkedList;
 
 import ch.ethz.iks.r_osgi.impl.ChannelEndpointImpl;
+import ch.ethz.iks.r_osgi.messages.StreamRequestMessage;
 
 /**
  * Output stream proxy.
@@ -50,6 +52,34 @@ public class OutputStreamProxy extends OutputStream {
 	 */
 	private final ChannelEndpointImpl endpoint;
 
+	/**
+	 * bytes written ahead of the acknowledgements, 0 if every write waits for
+	 * its result.
+	 */
+	private final int window;
+
+	/**
+	 * the buffer collecting the next chunk.
+	 */
+	private final byte[] buffer;
+
+	private int count;
+
+	/**
+	 * the write requests sent and not yet acknowledged, in the order they were
+	 * sent.
+	 */
+	private final LinkedList pending = new LinkedList();
+
+	/**
+	 * bytes sent and not yet acknowledged.
+	 */
+	private int unacknowledged;
+
+	private IOException failure;
+
+	private boolean closed;
+
 	/**
 	 * create a new output stream proxy.
 	 * 
@@ -60,8 +90,38 @@ public class OutputStreamProxy extends OutputStream {
 	 */
 	public OutputStreamProxy(final short streamID,
 			final ChannelEndpointImpl endpoint) {
+		this(streamID, endpoint, 0, 0);
+	}
+
+	/**
+	 * create a new output stream proxy that writes behind. Writes are
+	 * collected in chunks of <code>chunkSize</code> bytes and up to
+	 * <code>window</code> bytes are sent before waiting for the remote peer
+	 * to acknowledge them. {@link #flush()} waits for all acknowledgements.
+	 * 
+	 * @param streamID
+	 *            the stream ID.
+	 * @param endpoint
+	 *            the endpoint.
+	 * @param window
+	 *            the number of bytes to send ahead of the acknowledgements, 0
+	 *            to wait for the result of every write.
+	 * @param chunkSize
+	 *            the size of the sent chunks.
+	 */
+	public OutputStreamProxy(final short streamID,
+			final ChannelEndpointImpl endpoint, final int window,
+			final int chunkSize) {
 		this.streamID = streamID;
 		this.endpoint = endpoint;
+		if (window > 0) {
+			final int size = Math.max(1, chunkSize);
+			this.window = Math.max(window, size);
+			this.buffer = new byte[size];
+		} else {
+			this.window = 0;
+			this.buffer = null;
+		}
 	}
 
 	/**
@@ -72,8 +132,16 @@ public class OutputStreamProxy extends OutputStream {
 	 * @throws IOException
 	 *             in case of IO failures.
 	 */
-	public void write(final int b) throws IOException {
-		endpoint.writeStream(streamID, b);
+	public synchronized void write(final int b) throws IOException {
+		if (window == 0) {
+			endpoint.writeStream(streamID, b);
+			return;
+		}
+		ensureOpen();
+		buffer[count++] = (byte) b;
+		if (count == buffer.length) {
+			sendBuffer();
+		}
 	}
 
 	/**
@@ -86,9 +154,144 @@ public class OutputStreamProxy extends OutputStream {
 	 *            the length.
 	 * @throws IOException 
 	 */
-	public void write(final byte[] b, final int off, final int len)
+	public synchronized void write(final byte[] b, final int off, final int len)
 			throws IOException {
-		endpoint.writeStream(streamID, b, off, len);
+		if (window == 0) {
+			endpoint.writeStream(streamID, b, off, len);
+			return;
+		}
+		if (b == null) {
+			throw new NullPointerException();
+		}
+		if ((off < 0) || (len < 0) || (len + off > b.length)) {
+			throw new IndexOutOfBoundsException();
+		}
+		ensureOpen();
+		int o = off;
+		int remaining = len;
+		while (remaining > 0) {
+			final int n = Math.min(remaining, buffer.length - count);
+			System.arraycopy(b, o, buffer, count, n);
+			count += n;
+			o += n;
+			remaining -= n;
+			if (count == buffer.length) {
+				sendBuffer();
+			}
+		}
+	}
+
+	/**
+	 * send the buffered bytes and wait until the remote peer has written all
+	 * bytes to its stream.
+	 * 
+	 * @see java.io.OutputStream#flush()
+	 */
+	public synchronized void flush() throws IOException {
+		if (window == 0) {
+			return;
+		}
+		ensureOpen();
+		if (count > 0) {
+			sendBuffer();
+		}
+		while (!pending.isEmpty()) {
+			acknowledge();
+		}
+	}
+
+	/**
+	 * flush and close the proxy.
+	 * 
+	 * @see java.io.OutputStream#close()
+	 */
+	public synchronized void close() throws IOException {
+		if (window == 0 || closed) {
+			return;
+		}
+		try {
+			flush();
+		} finally {
+			closed = true;
+		}
+	}
+
+	/**
+	 * stop waiting for acknowledgements if the proxy is dropped without being
+	 * closed. Bytes still in the buffer are not sent.
+	 * 
+	 * @see java.lang.Object#finalize()
+	 */
+	protected void finalize() throws Throwable {
+		try {
+			synchronized (this) {
+				closed = true;
+				cancelPending();
+			}
+		} finally {
+			super.finalize();
+		}
+	}
+
+	private void ensureOpen() throws IOException {
+		if (failure != null) {
+			throw failure;
+		}
+		if (closed) {
+			throw new IOException("Stream closed"); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * send the buffered bytes, first waiting for acknowledgements if the
+	 * window is full.
+	 */
+	private void sendBuffer() throws IOException {
+		while (!pending.isEmpty()
+				&& (unacknowledged + count > window || ((ChannelEndpointImpl.PendingStreamOp) pending
+						.getFirst()).isDone())) {
+			acknowledge();
+		}
+		final byte[] data = new byte[count];
+		System.arraycopy(buffer, 0, data, 0, count);
+		final StreamRequestMessage requestMsg = new StreamRequestMessage();
+		requestMsg.setOp(StreamRequestMessage.WRITE_ARRAY);
+		requestMsg.setStreamID(streamID);
+		requestMsg.setData(data);
+		requestMsg.setLenOrVal(count);
+		try {
+			pending.addLast(endpoint.startStreamOp(requestMsg));
+		} catch (final IOException ioe) {
+			failure = ioe;
+			cancelPending();
+			throw ioe;
+		}
+		unacknowledged += count;
+		count = 0;
+	}
+
+	/**
+	 * wait for the acknowledgement of the oldest write.
+	 */
+	private void acknowledge() throws IOException {
+		final ChannelEndpointImpl.PendingStreamOp op = (ChannelEndpointImpl.PendingStreamOp) pending
+				.removeFirst();
+		unacknowledged -= op.getLength();
+		try {
+			op.get();
+		} catch (final IOException ioe) {
+			failure = ioe;
+			cancelPending();
+			throw ioe;
+		}
+	}
+
+	private void cancelPending() {
+		while (!pending.isEmpty()) {
+			((ChannelEndpointImpl.PendingStreamOp) pending.removeFirst())
+					.cancel();
+		}
+		unacknowledged = 0;
 	}
 
 }
@@ -34,7 +34,8 @@ import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
-import java.lang.reflect.Modifier;
+
+import org.eclipse.ecf.core.util.SerializationPlan;
 
 /**
  * Smart object input stream that is able to deserialize classes which do not
@@ -105,29 +106,30 @@ public final class SmartObjectInputStream extends ObjectInputStream {
 		// smart serialized object
 		final String clazzName = in.readUTF();
 
-		// TODO: cache this information...
-		Class clazz = Class.forName(clazzName);
+		final Class clazz = Class.forName(clazzName);
+		final SerializationPlan plan = SerializationPlan.get(clazz);
 
 		try {
-			final Constructor constr = clazz.getDeclaredConstructor(null);
-			constr.setAccessible(true);
-			final Object newInstance = constr.newInstance(null);
+			final Object newInstance = plan.newInstance();
 
+			int depth = 0;
 			int fieldCount = in.readInt();
 			while (fieldCount > -1) {
+				final SerializationPlan.Level level = plan.getLevel(depth);
+				if (level == null) {
+					throw new NoSuchFieldException("No superclass at depth " + depth); //$NON-NLS-1$
+				}
 				for (int i = 0; i < fieldCount; i++) {
 					final String fieldName = in.readUTF();
 					final Object value = readObjectOverride();
-					final Field field = clazz.getDeclaredField(fieldName);
-
-					final int mod = field.getModifiers();
-					if (!Modifier.isPublic(mod)) {
-						field.setAccessible(true);
+					final Field field = level.getDeclaredField(fieldName);
+					if (field == null) {
+						throw new NoSuchFieldException(fieldName);
 					}
 
 					field.set(newInstance, value);
 				}
-				clazz = clazz.getSuperclass();
+				depth++;
 				fieldCount = in.readInt();
 			}
 			return newInstance;
@@ -35,8 +35,8 @@ import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
 import java.lang.reflect.Field;
-import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
+
+import org.eclipse.ecf.core.util.SerializationPlan;
 
 import ch.ethz.iks.r_osgi.types.BoxedPrimitive;
 
@@ -129,39 +129,23 @@ public final class SmartObjectOutputStream extends ObjectOutputStream {
 
 		out.writeUTF(clazz.getName());
 
-		// TODO: cache this information...
-		while (clazz != Object.class) {
-			// check for native methods
-			final Method[] methods = clazz.getDeclaredMethods();
-			for (int j = 0; j < methods.length; j++) {
-				final int mod = methods[j].getModifiers();
-				if (Modifier.isNative(mod)) {
-					throw new NotSerializableException(
-							"Class " //$NON-NLS-1$
-									+ clazz.getName()
-									+ " contains native methods and is therefore not serializable."); //$NON-NLS-1$ 
-				}
-			}
+		final SerializationPlan plan = SerializationPlan.get(clazz);
+		// check for native methods
+		final String nativeClass = plan.getNativeClassName();
+		if (nativeClass != null) {
+			throw new NotSerializableException(
+					"Class " //$NON-NLS-1$
+							+ nativeClass
+							+ " contains native methods and is therefore not serializable."); //$NON-NLS-1$ 
+		}
 
+		final SerializationPlan.Level[] levels = plan.getLevels();
+		for (int l = 0; l < levels.length; l++) {
+			final Field[] fields = levels[l].getFields();
 			try {
-				final Field[] fields = clazz.getDeclaredFields();					
-				final int fieldCount = fields.length;
-				int realFieldCount = 0;
-				for (int i = 0; i < fieldCount; i++) {
-					final int mod = fields[i].getModifiers();
-					if (!(Modifier.isStatic(mod) || Modifier.isTransient(mod))) {
-						realFieldCount++;
-					}								
-				}							
-				out.writeInt(realFieldCount);
-				for (int i = 0; i < fieldCount; i++) {
-					final int mod = fields[i].getModifiers();
-					if (Modifier.isStatic(mod) || Modifier.isTransient(mod)) {
-						continue;
-					} else if (!Modifier.isPublic(mod)) {
-						fields[i].setAccessible(true);
-					}
-					out.writeUTF(fields[i].getName());
+				out.writeInt(fields.length);
+				for (int i = 0; i < fields.length; i++) {
+					out.write(levels[l].getFieldNameToken(i));
 					writeObjectOverride(fields[i].get(obj));
 				}
 			} catch (final Exception e) {
@@ -169,7 +153,6 @@ public final class SmartObjectOutputStream extends ObjectOutputStream {
 						"Exception while serializing " + obj.toString() //$NON-NLS-1$
 								+ ":\n" + e.getMessage()); //$NON-NLS-1$ 
 			}
-			clazz = clazz.getSuperclass();
 		}
 		out.writeInt(-1);
 	}
@@ -34,7 +34,7 @@ import org.eclipse.ecf.protocol.bittorrent.internal.encode.Decode;
  */
 public class TorrentFile {
 
-	static MessageDigest shaDigest;
+	private final MessageDigest shaDigest;
 
 	private final String[] filenames;
 
@@ -67,14 +67,6 @@ public class TorrentFile {
 
 	private final int numPieces;
 
-	static {
-		try {
-			shaDigest = MessageDigest.getInstance("SHA-1"); //$NON-NLS-1$
-		} catch (final NoSuchAlgorithmException e) {
-			throw new RuntimeException(e);
-		}
-	}
-
 	/**
 	 * Creates a new <code>Torrent</code> to analyze the provided torrent
 	 * file.
@@ -92,6 +84,11 @@ public class TorrentFile {
 		} else if (file.isDirectory()) {
 			throw new IllegalArgumentException("The provided file is a directory"); //$NON-NLS-1$
 		}
+		try {
+			shaDigest = MessageDigest.getInstance("SHA-1"); //$NON-NLS-1$
+		} catch (final NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
 		name = file.getName();
 		if (name.endsWith(".torrent")) { //$NON-NLS-1$
 			name = name.substring(0, name.length() - 8);
@@ -103,7 +103,7 @@ public class TorrentServer {
 		return port;
 	}
 
-	static void addTorrent(String hash, Torrent torrent) {
+	static void addTorrent(String hash, Torrent torrent) throws IOException {
 		if (!activeTorrents.containsKey(hash)) {
 			activeTorrents.put(hash, torrent);
 			if (activeTorrents.size() == 1) {
@@ -142,8 +142,19 @@ public class TorrentServer {
 
 	/**
 	 * Starts a new thread and begins listening for incoming connections.
+	 * 
+	 * @throws IOException
+	 *             If the channel had been closed when the last torrent was
+	 *             removed and it could not be bound to its port again
 	 */
-	private void listen() {
+	private void listen() throws IOException {
+		if (!channel.isOpen()) {
+			InetSocketAddress address = new InetSocketAddress(serverSocket
+					.getInetAddress(), port);
+			channel = ServerSocketChannel.open();
+			serverSocket = channel.socket();
+			serverSocket.bind(address);
+		}
 		if (listeningThread == null) {
 			listeningThread = new ListeningThread();
 			listeningThread.start();
@@ -162,6 +173,9 @@ public class TorrentServer {
 			while (true) {
 				try {
 					SocketChannel socketChannel = channel.accept();
+					// every handshake is read from the start of the buffer
+					buffer.clear();
+					read = 0;
 					ret = socketChannel.read(buffer);
 					if (ret == -1) {
 						try {
@@ -12,16 +12,20 @@
  *****************************************************************************/
 package org.eclipse.ecf.protocol.bittorrent.internal.net;
 
-import java.io.UnsupportedEncodingException;
+import java.io.IOException;
 import java.net.Socket;
 import java.nio.channels.SocketChannel;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 import java.util.Vector;
 
+import org.eclipse.ecf.protocol.bittorrent.TorrentConfiguration;
+
 /**
- * A pool of threads to be allocated when a connection needs to be made with a
- * peer.
+ * A pool of the connections with the peers of a torrent. The connections are
+ * driven by a single {@link PeerEngine} thread, which also calls this pool
+ * once per second to rotate the optimistic unchokes.
  */
 class ConnectionPool {
 
@@ -42,161 +46,179 @@ class ConnectionPool {
 	 */
 	private static final int MAX_UNCHOKED_PEERS = 4;
 
+	/**
+	 * The {@link PeerConnection}s that are currently open. Connections are
+	 * only added and removed by the engine's thread.
+	 */
 	private final Vector connections;
 
-	private final LinkedList targets;
-
 	/**
 	 * The manager associated with this pool.
 	 */
 	private final TorrentManager manager;
 
-	private Thread unchokingThread;
+	private PeerEngine engine;
 
 	/**
 	 * The maximum number of connections that this pool should be managing. This
 	 * can be set with the {@link #setMaxConnections(int)} method, but should be
 	 * increased with caution as it may cause TCP congestions.
 	 */
-	private int maxConnections = 50;
+	private volatile int maxConnections = 50;
 
 	/**
-	 * The number of active connections.
+	 * The number of unchoked peers.
 	 */
-	private int size = 0;
+	private int unchokedPeers = 0;
 
 	/**
-	 * The number of unchoked peers.
+	 * The number of seconds since the optimistic unchokes were last rotated.
 	 */
-	private int unchokedPeers = 0;
+	private int ticks = 0;
+
+	/**
+	 * Indicates that have messages have been queued up for the connections.
+	 */
+	private volatile boolean haveMessagesQueued = false;
+
+	/**
+	 * Indicates that the connections to seeds should be closed.
+	 */
+	private volatile boolean disconnectSeeds = false;
 
 	private boolean connected = false;
 
 	ConnectionPool(TorrentManager manager) {
 		this.manager = manager;
 		connections = new Vector(maxConnections);
-		targets = new LinkedList();
 	}
 
-	private synchronized void unchoke() {
-		if (size <= MAX_UNCHOKED_PEERS || unchokedPeers < MAX_UNCHOKED_PEERS) {
-			return;
-		}
-
-		int unchoke = RANDOM.nextInt(size);
-		PeerConnection connection = (PeerConnection) connections.get(unchoke);
-		while (connection.isChoking()) {
-			unchoke = RANDOM.nextInt(size);
-			connection = (PeerConnection) connections.get(unchoke);
-		}
-		connection.queueUnchokeMessage();
-
-		int choke = RANDOM.nextInt(size);
-		connection = (PeerConnection) connections.get(choke);
-		while (choke != unchoke && !connection.isChoking()) {
-			choke = RANDOM.nextInt(size);
-			connection = (PeerConnection) connections.get(choke);
+	/**
+	 * Starts the engine that drives the connections of this pool if it is not
+	 * already running.
+	 *
+	 * @throws IOException
+	 *             If the selector used by the engine could not be opened
+	 */
+	synchronized void open() throws IOException {
+		if (engine == null) {
+			engine = new PeerEngine(this, manager.getTorrentFile().getName());
+			engine.start();
 		}
-		connection.queueChokeMessage();
+		connected = true;
 	}
 
 	/**
-	 * Creates a connection to the specified ip at the given port. If the
-	 * current number of active threads is equal to the maximum number of
-	 * allowed connections, <code>false</code> will be returned.
-	 * 
+	 * Creates a connection to the specified ip at the given port. If the pool
+	 * has not been opened or if it already manages the maximum number of
+	 * allowed connections, the peer will be ignored.
+	 *
 	 * @param ip
 	 *            the IP of the peer
 	 * @param port
 	 *            the port that the peer is listening on
-	 * @throws UnsupportedEncodingException
-	 *             If the <code>ISO-8859-1</code> encoding is not supported
 	 */
-	void connectTo(String ip, int port) throws UnsupportedEncodingException {
-		if (unchokingThread == null) {
-			unchokingThread = new OptimisticUnchokingThread();
-			unchokingThread.start();
-		} else if (size == maxConnections) {
-			return;
+	synchronized void connectTo(String ip, int port) {
+		if (engine != null && connections.size() < maxConnections) {
+			engine.queue(new ConnectionInfo(ip, port));
 		}
-		connected = true;
-
-		synchronized (this) {
-			for (int i = 0; i < connections.size(); i++) {
-				PeerConnection connection = (PeerConnection) connections.get(i);
-				if (connection.isInitialized()
-						&& connection.isConnectedTo(ip, port)) {
-					return;
-				}
-			}
+	}
 
-			targets.add(new ConnectionInfo(ip, port));
-			for (int i = 0; i < connections.size(); i++) {
-				if (!((PeerConnection) connections.get(i)).isInitialized()) {
-					notify();
-					return;
-				}
+	synchronized void connectTo(SocketChannel channel) {
+		if (engine != null && connections.size() < maxConnections) {
+			engine.queue(new ConnectionInfo(channel));
+		} else {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				// ignored
 			}
-			PeerConnection connection = new PeerConnection(this, manager);
-			connections.add(connection);
-			connection.start();
 		}
 	}
 
-	void connectTo(SocketChannel channel) throws UnsupportedEncodingException {
-		if (unchokingThread == null) {
-			unchokingThread = new OptimisticUnchokingThread();
-			unchokingThread.start();
-		} else if (size == maxConnections) {
-			return;
+	/**
+	 * Creates the connection for the given peer. This is called by the
+	 * engine's thread.
+	 */
+	void createConnection(ConnectionInfo info, PeerEngine engine) {
+		String ip;
+		int port;
+		if (info.isChannel()) {
+			Socket socket = info.getChannel().socket();
+			ip = socket.getInetAddress().getHostAddress();
+			port = socket.getPort();
+		} else {
+			ip = info.getIP();
+			port = info.getPort();
 		}
-		connected = true;
 
-		Socket socket = channel.socket();
-		String ip = socket.getLocalAddress().getHostAddress();
-		int port = socket.getLocalPort();
-		synchronized (this) {
-			for (int i = 0; i < connections.size(); i++) {
-				PeerConnection connection = (PeerConnection) connections.get(i);
-				if (connection.isConnectedTo(ip, port)) {
-					return;
-				}
+		boolean accepted = connections.size() < maxConnections;
+		for (int i = 0; accepted && i < connections.size(); i++) {
+			if (((PeerConnection) connections.get(i)).isConnectedTo(ip, port)) {
+				accepted = false;
 			}
-
-			targets.add(new ConnectionInfo(channel));
-			for (int i = 0; i < connections.size(); i++) {
-				if (!((PeerConnection) connections.get(i)).isInitialized()) {
-					notify();
-					return;
+		}
+		if (!accepted) {
+			if (info.isChannel()) {
+				try {
+					info.getChannel().close();
+				} catch (IOException e) {
+					// ignored
 				}
 			}
-			PeerConnection connection = new PeerConnection(this, manager);
+			return;
+		}
+
+		PeerConnection connection = null;
+		try {
+			connection = new PeerConnection(this, manager, engine, ip, port);
 			connections.add(connection);
-			connection.start();
+			if (info.isChannel()) {
+				connection.accept(info.getChannel());
+			} else {
+				connection.connect();
+			}
+		} catch (IOException e) {
+			TorrentConfiguration.debug("Unable to connect to " + ip + ":" //$NON-NLS-1$ //$NON-NLS-2$
+					+ port + " - " + e.getMessage()); //$NON-NLS-1$
+			if (connection != null) {
+				connection.close();
+			}
 		}
 	}
 
 	/**
-	 * Closes all of the channels that are currently active.
+	 * Closes all of the channels that are currently active and stops the
+	 * engine.
 	 */
 	synchronized void close() {
 		connected = false;
-		for (int i = 0; i < connections.size(); i++) {
-			((PeerConnection) connections.get(i)).close();
+		if (engine != null) {
+			engine.shutdown();
+			engine = null;
 		}
-		targets.clear();
-		notifyAll();
 	}
 
-	synchronized boolean isConnected() {
-		return connected;
+	/**
+	 * Closes all the connections driven by the given engine. This is called by
+	 * the engine's thread before it exits.
+	 */
+	void closeAll(PeerEngine engine) {
+		PeerConnection[] open = getConnections();
+		for (int i = 0; i < open.length; i++) {
+			if (open[i].getEngine() == engine) {
+				open[i].close();
+			}
+		}
+		synchronized (this) {
+			if (this.engine == engine) {
+				this.engine = null;
+			}
+		}
 	}
 
-	ConnectionInfo dequeue() {
-		synchronized (targets) {
-			return targets.isEmpty() ? null : (ConnectionInfo) targets
-					.removeFirst();
-		}
+	synchronized boolean isConnected() {
+		return connected;
 	}
 
 	/**
@@ -205,138 +227,213 @@ class ConnectionPool {
 	 * necessary to be connected to seeds since no pieces will be requested.
 	 */
 	void disconnectSeeds() {
-		for (int i = 0; i < connections.size(); i++) {
-			PeerConnection connection = (PeerConnection) connections.get(i);
-			if (connection.isInitialized() && connection.isSeed()) {
-				connection.close();
+		disconnectSeeds = true;
+		wakeup();
+	}
+
+	private synchronized void wakeup() {
+		if (engine != null) {
+			engine.wakeup();
+		}
+	}
+
+	private PeerConnection[] getConnections() {
+		synchronized (connections) {
+			return (PeerConnection[]) connections
+					.toArray(new PeerConnection[connections.size()]);
+		}
+	}
+
+	/**
+	 * Sends the messages that have been queued up for the connections. This is
+	 * called by the engine's thread whenever it wakes up.
+	 */
+	void flush() {
+		if (haveMessagesQueued) {
+			haveMessagesQueued = false;
+			PeerConnection[] open = getConnections();
+			for (int i = 0; i < open.length; i++) {
+				open[i].sendQueuedMessages();
+			}
+		}
+		if (disconnectSeeds) {
+			disconnectSeeds = false;
+			PeerConnection[] open = getConnections();
+			for (int i = 0; i < open.length; i++) {
+				if (open[i].isSeed()) {
+					open[i].close();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Cancels the requests for a block that have been sent to other peers. This
+	 * is called by the engine's thread when a block has been received in
+	 * end-game mode.
+	 *
+	 * @param piece
+	 *            the number of the piece
+	 * @param index
+	 *            the index within the piece that the block starts at
+	 * @param source
+	 *            the connection that the block has been received from
+	 */
+	void cancelRequest(int piece, int index, PeerConnection source) {
+		PeerConnection[] open = getConnections();
+		for (int i = 0; i < open.length; i++) {
+			if (open[i] != source && open[i].getEngine() == source.getEngine()) {
+				open[i].cancelRequest(piece, index);
+			}
+		}
+	}
+
+	/**
+	 * Called by the engine's thread once per second to update the speeds of
+	 * the connections, send keep-alives and rotate the optimistic unchokes.
+	 *
+	 * @param now
+	 *            the current time in milliseconds
+	 */
+	void tick(long now) {
+		PeerConnection[] open = getConnections();
+		for (int i = 0; i < open.length; i++) {
+			open[i].tick(now);
+		}
+
+		// close all extraneous connections
+		open = getConnections();
+		for (int i = maxConnections; i < open.length; i++) {
+			open[i].close();
+		}
+
+		if (++ticks >= OPTIMISTIC_UNCHOKE_ROTATION_TIME) {
+			ticks = 0;
+			rotateOptimisticUnchoke();
+		}
+	}
+
+	/**
+	 * Chokes one of the unchoked peers and unchokes one of the choked peers
+	 * that are interested so that every peer eventually gets a chance to
+	 * download.
+	 */
+	private void rotateOptimisticUnchoke() {
+		List choked = new ArrayList();
+		List unchoked = new ArrayList();
+		PeerConnection[] open = getConnections();
+		for (int i = 0; i < open.length; i++) {
+			if (!open[i].isChoking()) {
+				unchoked.add(open[i]);
+			} else if (open[i].isPeerInterested()) {
+				choked.add(open[i]);
+			}
+		}
+		if (choked.isEmpty()) {
+			return;
+		} else if (unchokedPeers < MAX_UNCHOKED_PEERS || unchoked.isEmpty()) {
+			unchokeNext();
+			return;
+		}
+
+		PeerConnection connection = (PeerConnection) unchoked.get(RANDOM
+				.nextInt(unchoked.size()));
+		connection.choke();
+		connection = (PeerConnection) choked.get(RANDOM.nextInt(choked.size()));
+		connection.unchoke();
+	}
+
+	/**
+	 * Unchokes the next peer that is interested, if there is a free slot.
+	 */
+	private void unchokeNext() {
+		PeerConnection[] open = getConnections();
+		if (open.length == 0) {
+			return;
+		}
+		int start = RANDOM.nextInt(open.length);
+		for (int i = 0; i < open.length; i++) {
+			PeerConnection connection = open[(start + i) % open.length];
+			if (connection.isChoking() && connection.isPeerInterested()) {
+				if (checkUnchoke()) {
+					connection.unchoke();
+				}
+				return;
 			}
 		}
 	}
 
 	/**
 	 * Called to inform this pool that one of the unchoked connections has been
-	 * now been choked. This allows for another peer to be unchoked permanently
-	 * during the next rotation.
+	 * now been choked. This allows for another peer to be unchoked.
 	 */
 	void unchokedPeerCleared() {
 		unchokedPeers--;
+		unchokeNext();
 	}
 
 	/**
 	 * Sets the maximum number of connections that this pool should manage.
-	 * 
+	 * Extraneous connections are closed by the engine's thread.
+	 *
 	 * @param maxConnections
 	 *            the maximum amount of connections to manage
 	 */
-	synchronized void setMaxConnections(int maxConnections) {
-		if (this.maxConnections < maxConnections) {
-			connections.ensureCapacity(maxConnections);
-		} else if (this.maxConnections > maxConnections) {
-			// push back all active connections
-			for (int i = 0; i < maxConnections; i++) {
-				if (!((PeerConnection) connections.get(i)).isInitialized()) {
-					for (int j = connections.size(); j > i; j--) {
-						PeerConnection conn = (PeerConnection) connections
-								.get(j);
-						if (conn.isInitialized()) {
-							connections.remove(i);
-							connections.add(i, connections.remove(j - 1));
-						}
-					}
-				}
-			}
-			// close all extraneous connections
-			for (int i = maxConnections; i < this.maxConnections; i++) {
-				((PeerConnection) connections.get(i)).close();
-			}
-		}
+	void setMaxConnections(int maxConnections) {
 		this.maxConnections = maxConnections;
+		wakeup();
 	}
 
-	synchronized boolean checkUnchoke() {
-		if (unchokedPeers == MAX_UNCHOKED_PEERS) {
+	boolean checkUnchoke() {
+		if (unchokedPeers >= MAX_UNCHOKED_PEERS) {
 			return false;
 		}
 		unchokedPeers++;
 		return true;
 	}
 
-	void connectionCreated() {
-		size++;
-	}
-
 	/**
-	 * Indicates to the pool that a connection has ended. This means that one of
-	 * the {@link PeerConnection}s are no longer running.
+	 * Indicates to the pool that a connection has ended.
+	 *
+	 * @param connection
+	 *            the connection that has been closed
+	 * @param wasUnchoked
+	 *            whether the peer had been unchoked
 	 */
-	void connectionClosed() {
-		size--;
-		if (size == 0 && unchokingThread != null) {
-			unchokingThread.interrupt();
-			unchokingThread = null;
-		}
-	}
-
-	void connectionDestroyed(PeerConnection connection) {
+	void connectionClosed(PeerConnection connection, boolean wasUnchoked) {
 		connections.remove(connection);
+		if (wasUnchoked) {
+			unchokedPeerCleared();
+		}
 	}
 
 	/**
 	 * Retrieves the current number of active connections.
-	 * 
+	 *
 	 * @return the number of active connections of this pool
 	 */
 	int getConnected() {
-		return size;
+		return connections.size();
 	}
 
 	/**
-	 * Instructs all running threads to send a have message of the specified
-	 * piece to the connected peer.
-	 * 
+	 * Queues up a have message of the specified piece for all connected peers.
+	 *
 	 * @param piece
 	 *            the number of the piece that the have message should
 	 *            correspond to
 	 */
 	void queueHaveMessage(int piece) {
-		for (int i = 0; i < connections.size(); i++) {
-			PeerConnection connection = (PeerConnection) connections.get(i);
-			if (connection.isInitialized()) {
-				connection.queueHaveMessage(piece);
-			}
+		PeerConnection[] open = getConnections();
+		for (int i = 0; i < open.length; i++) {
+			open[i].queueHaveMessage(piece);
 		}
+		haveMessagesQueued = true;
+		wakeup();
 	}
 
 	boolean isEmpty() {
 		return connections.isEmpty();
 	}
 
-	private class OptimisticUnchokingThread extends Thread {
-
-		public OptimisticUnchokingThread() {
-			super("Optimistic Unchoking Thread " //$NON-NLS-1$
-					+ manager.getTorrentFile().getName());
-		}
-
-		public void run() {
-			while (true) {
-				for (int i = 0; i < OPTIMISTIC_UNCHOKE_ROTATION_TIME; i++) {
-					try {
-						Thread.sleep(1000);
-					} catch (InterruptedException e) {
-						return;
-					}
-					for (int j = 0; j < connections.size(); j++) {
-						PeerConnection conn = (PeerConnection) connections
-								.get(j);
-						if (conn.isInitialized()) {
-							conn.queueSpeeds();
-						}
-					}
-				}
-				unchoke();
-			}
-		}
-	}
-
 }
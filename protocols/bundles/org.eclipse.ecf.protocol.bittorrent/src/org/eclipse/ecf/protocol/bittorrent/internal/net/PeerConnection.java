@@ -15,23 +15,29 @@ package org.eclipse.ecf.protocol.bittorrent.internal.net;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.InetSocketAddress;
-import java.net.Socket;
-import java.net.SocketException;
 import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
-import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedList;
 
 import org.eclipse.ecf.protocol.bittorrent.TorrentConfiguration;
 import org.eclipse.ecf.protocol.bittorrent.TorrentFile;
-import org.eclipse.ecf.protocol.bittorrent.internal.encode.Decode;
-import org.eclipse.ecf.protocol.bittorrent.internal.encode.Encode;
 import org.eclipse.ecf.protocol.bittorrent.internal.torrent.Piece;
 
 /**
- * An extension of the <code>Thread</code> class to manage a connection with a
- * peer.
+ * The state of a connection with a peer. A connection does not have a thread
+ * of its own, it is driven by the {@link PeerEngine} of its
+ * {@link ConnectionPool} whenever its channel can be read from or written to.
+ * <p>
+ * A connection first exchanges handshakes and bitfields with the peer. It
+ * then keeps up to {@link #MAX_PENDING_REQUESTS} block requests outstanding
+ * while the peer is not choking it, and answers the requests of the peer
+ * while it is not choking the peer itself. Messages are queued up and written
+ * when the channel is ready, so no call ever blocks. The blocks are read from
+ * and written to the local files by the {@link TorrentManager}'s disk thread.
  */
-class PeerConnection extends Thread {
+class PeerConnection {
 
 	private static final byte[] CHOKE = { 0x00, 0x00, 0x00, 0x01, 0x00 };
 
@@ -45,6 +51,8 @@ class PeerConnection extends Thread {
 	 */
 	private static final byte[] NOT_INTERESTED = { 0x00, 0x00, 0x00, 0x01, 0x03 };
 
+	private static final byte[] KEEP_ALIVE = { 0x00, 0x00, 0x00, 0x00 };
+
 	/**
 	 * This is a specially formed string created by a byte array to represent
 	 * the string literal "BitTorrent protocol" led by a value of '19' along
@@ -56,62 +64,138 @@ class PeerConnection extends Thread {
 			116, 111, 99, 111, 108, 0, 0, 0, 0, 0, 0, 0, 0 });
 
 	/**
-	 * The amount of space allocated for the <code>ByteBuffer</code>s. The
-	 * value is 1024.
+	 * The length of a handshake, the protocol string followed by the info hash
+	 * and the peer's id.
+	 */
+	private static final int HANDSHAKE_LENGTH = 68;
+
+	/**
+	 * The amount of space initially allocated for reading messages, enough
+	 * for a piece message with a block of 16384 bytes.
+	 */
+	private static final int BUFFER_SIZE = 16384 + 13;
+
+	/**
+	 * The maximum length of a block that a peer may request.
+	 */
+	private static final int MAX_REQUEST_LENGTH = 131072;
+
+	/**
+	 * The number of bytes of requested blocks that may be queued up for a
+	 * peer. Reading from the peer stops once a request would go over it, until
+	 * some of the blocks have been written.
 	 */
-	private static final int BUFFER_MAXIMUM = 1024;
+	private static final int MAX_QUEUED_UPLOAD = 2 * MAX_REQUEST_LENGTH;
 
 	/**
-	 * The <code>ByteBuffer</code> that is used to read data from the peer.
+	 * The number of block requests that are kept outstanding with a peer that
+	 * is not choking this client.
 	 */
-	private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_MAXIMUM);
+	static final int MAX_PENDING_REQUESTS = 5;
 
 	/**
-	 * The <code>ByteBuffer</code> that is for sending data to the peer.
+	 * The number of milliseconds after which a keep-alive is sent if nothing
+	 * else has been sent to the peer.
 	 */
-	private final ByteBuffer sendBuffer = ByteBuffer.allocate(BUFFER_MAXIMUM);
+	private static final long KEEP_ALIVE_INTERVAL = 120000;
+
+	/**
+	 * The number of milliseconds after which the connection is closed if
+	 * nothing has been received from the peer.
+	 */
+	private static final long IDLE_TIMEOUT = 240000;
+
+	/**
+	 * The number of milliseconds that the connection and the handshake may
+	 * take.
+	 */
+	private static final long HANDSHAKE_TIMEOUT = 30000;
+
+	private static final int CONNECTING = 0;
+
+	private static final int HANDSHAKING = 1;
+
+	private static final int EXCHANGING = 2;
+
+	private static final int CLOSED = 3;
 
 	private final ConnectionPool pool;
 
 	private final TorrentManager manager;
 
+	private final PeerEngine engine;
+
 	private final long[] downloads = new long[20];
 
 	private final long[] uploads = new long[20];
 
 	private final byte[] handshake;
 
-	private final byte[] have = { 0x00, 0x00, 0x00, 0x05, 0x04, 0x00, 0x00,
-			0x00, 0x00 };
+	/**
+	 * The messages that are waiting to be written to the peer, as
+	 * <code>ByteBuffer</code>s.
+	 */
+	private final LinkedList writeQueue = new LinkedList();
+
+	/**
+	 * The requests that have been sent to the peer and have not been answered
+	 * yet, as arrays of the piece, the index and the length of the block.
+	 */
+	private final LinkedList pendingRequests = new LinkedList();
+
+	/**
+	 * The numbers of the pieces that have been completed and still need a
+	 * corresponding have message to be sent to the peer, as
+	 * <code>Integer</code>s.
+	 */
+	private final LinkedList haveMessages = new LinkedList();
 
-	private final byte[] request = { 0x00, 0x00, 0x00, 0x0d, 0x06, 0x00, 0x00,
-			0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x20, 0x00 };
+	/**
+	 * The {@link Upload}s whose blocks are being read by the disk thread.
+	 */
+	private final LinkedList pendingUploads = new LinkedList();
 
-	private final byte[] blockInfo = { 0x00, 0x00, 0x00, 0x09, 0x07, 0x00,
-			0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00 };
+	/**
+	 * The {@link Upload}s whose blocks have been read and still need to be
+	 * sent. This is filled by the disk thread.
+	 */
+	private final LinkedList readUploads = new LinkedList();
 
-	private final boolean[] haveMessages;
+	/**
+	 * The <code>ByteBuffer</code> that is used to read data from the peer. It
+	 * is grown when a message does not fit into it.
+	 */
+	private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
 
 	private SocketChannel channel;
 
-	private InetSocketAddress address;
+	private SelectionKey key;
 
 	/**
-	 * An array of <code>boolean</code>s that keeps track of what pieces this
-	 * peer has.
+	 * The pieces that this peer has.
 	 */
-	private boolean[] peerPieces;
+	private final PieceSet peerPieces;
+
+	/**
+	 * The maximum length of a message that is accepted from the peer.
+	 */
+	private final int maxMessageLength;
 
 	/**
 	 * The name and version of the BitTorrent client that this peer is currently
 	 * using or <code>"Unknown"</code> if it is not known.
 	 */
-	private String clientName;
+	private String clientName = "Unknown"; //$NON-NLS-1$
 
 	/**
 	 * The peer's IP address.
 	 */
-	private String ip;
+	private final String ip;
+
+	/**
+	 * The port that this peer is listening on.
+	 */
+	private final int port;
 
 	/**
 	 * The amount of bytes that has been downloaded from this peer.
@@ -127,10 +211,11 @@ class PeerConnection extends Thread {
 
 	private long lastUploaded = 0;
 
-	/**
-	 * The port that this peer is listening on.
-	 */
-	private int port;
+	private final long created = System.currentTimeMillis();
+
+	private long lastRead = created;
+
+	private long lastWrite = created;
 
 	/**
 	 * A counter for {@link #downloads} and {@link #uploads} to store the amount
@@ -138,6 +223,19 @@ class PeerConnection extends Thread {
 	 */
 	private int queuePosition = 0;
 
+	/**
+	 * The length that {@link #buffer} needs to hold the next message.
+	 */
+	private int required = 0;
+
+	/**
+	 * The number of bytes of the blocks that have been requested by the peer
+	 * and that have not been written or dropped yet.
+	 */
+	private int queuedUpload = 0;
+
+	private int state = CONNECTING;
+
 	/**
 	 * Whether the client is currently choking this peer. This value is
 	 * <code>true</code> in the beginning.
@@ -167,22 +265,33 @@ class PeerConnection extends Thread {
 	 */
 	private boolean peerIsSeed = false;
 
-	private boolean initialized = true;
+	/**
+	 * Indicates that the pieces of the peer or its choking state have changed
+	 * so that the blocks to request need to be looked at again.
+	 */
+	private boolean requestsChanged = false;
 
 	/**
-	 * Indicates whether a choke message should be sent to the peer.
+	 * Whether the reading or writing is waiting for the speed limits.
 	 */
-	private boolean sendChoke = false;
+	private boolean readThrottled = false;
+
+	private boolean writeThrottled = false;
 
 	/**
-	 * Indicates whether an unchoke message should be sent to the peer.
+	 * Whether the processing of the peer's messages is waiting for the queued
+	 * blocks to go below {@link #MAX_QUEUED_UPLOAD}.
 	 */
-	private boolean sendUnchoke = false;
+	private boolean uploadBacklogged = false;
 
-	PeerConnection(ConnectionPool pool, TorrentManager manager)
+	PeerConnection(ConnectionPool pool, TorrentManager manager,
+			PeerEngine engine, String ip, int port)
 			throws UnsupportedEncodingException {
 		this.pool = pool;
 		this.manager = manager;
+		this.engine = engine;
+		this.ip = ip;
+		this.port = port;
 		TorrentFile torrent = manager.getTorrentFile();
 		StringBuffer buffer = new StringBuffer(PROTOCOL_STRING);
 		synchronized (buffer) {
@@ -190,411 +299,223 @@ class PeerConnection extends Thread {
 			buffer.append(manager.getPeerID());
 		}
 		handshake = buffer.toString().getBytes("ISO-8859-1"); //$NON-NLS-1$
-		peerPieces = new boolean[torrent.getNumPieces()];
-		haveMessages = new boolean[peerPieces.length];
-		Arrays.fill(peerPieces, false);
-		Arrays.fill(haveMessages, false);
+		peerPieces = new PieceSet(torrent.getNumPieces());
+		int bitfieldLength = (peerPieces.size() + 7) / 8;
+		maxMessageLength = Math.max(MAX_REQUEST_LENGTH + 9, bitfieldLength + 1);
 	}
 
-	void setAddress(String ip, int port) {
-		address = new InetSocketAddress(ip, port);
-		this.ip = ip;
-		this.port = port;
+	/**
+	 * Opens a connection to the peer. The handshake is sent once the
+	 * connection has been established.
+	 *
+	 * @throws IOException
+	 *             If the connection could not be started
+	 */
+	void connect() throws IOException {
+		channel = SocketChannel.open();
+		key = engine.register(channel, SelectionKey.OP_CONNECT, this);
+		if (channel.connect(new InetSocketAddress(ip, port))) {
+			finishConnect();
+		}
 	}
 
-	void setChannel(SocketChannel channel) {
+	/**
+	 * Takes over a channel that has been accepted by the
+	 * {@link org.eclipse.ecf.protocol.bittorrent.TorrentServer}, which has
+	 * already read the peer's handshake.
+	 *
+	 * @param channel
+	 *            the accepted channel
+	 * @throws IOException
+	 *             If the channel could not be registered
+	 */
+	void accept(SocketChannel channel) throws IOException {
 		this.channel = channel;
-		Socket socket = channel.socket();
-		this.ip = socket.getLocalAddress().getHostAddress();
-		this.port = socket.getLocalPort();
+		key = engine.register(channel, 0, this);
+		TorrentConfiguration.debug("Established incoming connection from " + ip //$NON-NLS-1$
+				+ ":" + port); //$NON-NLS-1$
+		state = EXCHANGING;
+		sendHandshake();
+		sendBitfield();
+	}
+
+	void finishConnect() throws IOException {
+		if (state != CONNECTING || !channel.finishConnect()) {
+			return;
+		}
+		TorrentConfiguration.debug("Established outgoing connection with " + ip //$NON-NLS-1$
+				+ ":" + port); //$NON-NLS-1$
+		state = HANDSHAKING;
+		sendHandshake();
 	}
 
 	/**
-	 * Connect to the peer and exchange handshakes as necessary. A new
-	 * connection may be created depending on whether an incoming or outgoing
-	 * connection is being established.
+	 * Reads what the peer has sent and processes all complete messages.
+	 *
+	 * @throws IOException
+	 *             If an I/O error occurs while reading from the channel
 	 */
-	private void connect() {
-		try {
-			if (channel == null) {
-				call();
-			} else {
-				answer();
-			}
-		} catch (IOException e) {
-			String message = e.getMessage();
-			TorrentConfiguration.debug("The connection with " + ip + ":" + port //$NON-NLS-1$ //$NON-NLS-2$
-					+ " has been closed" //$NON-NLS-1$
-					+ (message == null ? "." : ": " + message)); //$NON-NLS-1$ //$NON-NLS-2$
-		} catch (RuntimeException e) {
+	void read() throws IOException {
+		long limit = manager.getDownloadRequestSpeed();
+		if (limit == 0) {
+			readThrottled = true;
+			engine.throttle(this);
+			updateInterestOps();
+			return;
+		}
+		if (limit != -1 && limit < buffer.remaining()) {
+			buffer.limit(buffer.position() + (int) limit);
+		}
+		int read = channel.read(buffer);
+		buffer.limit(buffer.capacity());
+		if (read == -1) {
+			TorrentConfiguration.debug("End of stream has been reached with " + ip + ":" + port); //$NON-NLS-1$ //$NON-NLS-2$
 			close();
-			throw e;
+			return;
+		} else if (read > 0) {
+			lastRead = System.currentTimeMillis();
+			manager.updateDownloadRequestSpeed(read);
 		}
-		close();
+		processBuffer();
 	}
 
-	private void call() throws IOException {
-		try {
-			channel = SocketChannel.open(address);
-			address = null;
-		} catch (SocketException e) {
-			TorrentConfiguration.debug("Unable to connect to " + ip + ":" //$NON-NLS-1$ //$NON-NLS-2$
-					+ port + " - " + e.getMessage()); //$NON-NLS-1$
+	/**
+	 * Processes the complete messages that have been read into
+	 * {@link #buffer}.
+	 */
+	private void processBuffer() {
+		buffer.flip();
+		processMessages();
+		if (channel == null) {
 			return;
 		}
-		TorrentConfiguration.debug("Established outgoing connection with " + ip //$NON-NLS-1$
-				+ ":" + port); //$NON-NLS-1$
+		buffer.compact();
+		if (required > buffer.capacity()) {
+			ByteBuffer larger = ByteBuffer.allocate(required);
+			buffer.flip();
+			larger.put(buffer);
+			buffer = larger;
+		}
 
-		sendHandshake();
-		int read = 0;
-		int ret = 0;
-		// a return handshake is 68 bytes long, read until at least that many
-		// bytes has been retrieved
-		while (read < 68) {
-			if (channel == null) {
-				return;
-			}
-			ret = channel.read(buffer);
-			if (ret == -1) {
-				TorrentConfiguration.debug("End of stream has been reached with " + ip + ":" + port); //$NON-NLS-1$ //$NON-NLS-2$
-				return;
-			}
-			read += ret;
+		if (requestsChanged) {
+			requestsChanged = false;
+			sendRequests();
 		}
-		TorrentConfiguration.debug("Received [BT_HANDSHAKE] message from " + ip //$NON-NLS-1$
-				+ ":" + port); //$NON-NLS-1$
-		byte[] client = new byte[20];
-		System.arraycopy(buffer.array(), 48, client, 0, 20);
-		processClientName(new String(client));
-
-		// check to see if data besides the return handshake was sent
-		if (read != 68) {
-			// keep reading until four additional bytes are read
-			while (read < 72) {
-				if (channel == null) {
+		updateInterestOps();
+	}
+
+	/**
+	 * Processes the complete messages within {@link #buffer}, which has been
+	 * flipped for reading.
+	 */
+	private void processMessages() {
+		required = 0;
+		while (channel != null) {
+			if (state == HANDSHAKING) {
+				if (buffer.remaining() < HANDSHAKE_LENGTH) {
+					required = HANDSHAKE_LENGTH;
 					return;
 				}
-				ret = channel.read(buffer);
-				if (ret == -1) {
-					TorrentConfiguration.debug("End of stream has been reached with " + ip + ":" + port); //$NON-NLS-1$ //$NON-NLS-2$
+				byte[] array = new byte[HANDSHAKE_LENGTH];
+				buffer.get(array);
+				if (!processHandshake(array)) {
+					close();
 					return;
 				}
-				read += ret;
-			}
-			if (buffer.get(71) != 0) {
-				while (read < 73) {
-					if (channel == null) {
-						return;
-					}
-					ret = channel.read(buffer);
-					if (ret == -1) {
-						TorrentConfiguration.debug("End of stream has been reached with " + ip + ":" + port); //$NON-NLS-1$ //$NON-NLS-2$
-						return;
-					}
-					read += ret;
-				}
-				// check to see if part of what was read is a bitfield
-				if (buffer.get(72) == 5) {
-					int length = 68 + 4 + buffer.get(71);
-					// keep reading until the entire bitfield has been read in
-					while (read < length) {
-						if (channel == null) {
-							return;
-						}
-						ret = channel.read(buffer);
-						if (ret == -1) {
-							TorrentConfiguration.debug("End of stream has been reached with " + ip + ":" + port); //$NON-NLS-1$ //$NON-NLS-2$
-							return;
-						}
-						read += ret;
-					}
-					buffer.flip();
-					byte[] array = new byte[read];
-					buffer.get(array, 0, read);
-					processBitfield(array, 73, 72 + array[71]);
-					if (read == length) {
-						sendBitfield();
-					}
-				} else if (buffer.get(71) == 1) {
-					byte[] bytes = null;
-					buffer.get(bytes, 0, read);
-					byte[] array = new byte[5];
-					System.arraycopy(bytes, 68, array, 0, 5);
-					if (!processMessage(array)) {
-						return;
-					}
-				}
-			} else if (buffer.get(78) == 0 && buffer.get(79) == 0
-					&& buffer.get(80) == 0) {
-				TorrentConfiguration
-						.debug("Received [BT_KEEPALIVE] message from " + ip //$NON-NLS-1$
-								+ ":" + port); //$NON-NLS-1$
-			} else {
-				TorrentConfiguration
-						.debug("Received an unidentifiable message from " + ip //$NON-NLS-1$
-								+ ":" + port); //$NON-NLS-1$
-				return;
+				continue;
 			}
-		} else {
-			sendBitfield();
-		}
-		buffer.clear();
-		// enter the main loop
-		query();
-	}
-
-	private void answer() throws IOException {
-		TorrentConfiguration.debug("Established incoming connection from " + ip //$NON-NLS-1$
-				+ ":" + port); //$NON-NLS-1$
-		sendHandshake();
-		sendBitfield();
-		query();
-	}
 
-	private void query() throws IOException {
-		TorrentConfiguration.debug("Entering the main loop with " + ip + ":" //$NON-NLS-1$ //$NON-NLS-2$
-				+ port);
-		byte[] array = null;
-		int read = 0;
-		int ret = 0;
-		while (channel != null && channel.isConnected()) {
-			buffer.clear();
-			sendQueuedMessages();
-			if (read != 0) {
-				byte[] bufferArray = buffer.array();
-				byte[] bytes = new byte[bufferArray.length];
-				System.arraycopy(bufferArray, read, bytes, 0,
-						bufferArray.length - read);
-				buffer.put(bytes);
-				buffer.position(read);
+			if (buffer.remaining() < 4) {
+				return;
 			}
-			int request = sendRequest(manager.request(peerPieces));
-			int length = request == -1 ? 4 : request;
-			resetBuffer();
-			while (read < 4) {
-				if (channel == null) {
-					return;
-				}
-				ret = channel.read(buffer);
-				if (ret == -1) {
-					TorrentConfiguration.debug("End of stream has been reached with " + ip + ":" + port); //$NON-NLS-1$ //$NON-NLS-2$
-					return;
-				}
-				manager.updateDownloadRequestSpeed(ret);
-				limitBuffer(manager.getDownloadRequestSpeed());
-				read += ret;
+			int length = buffer.getInt(buffer.position());
+			if (length < 0 || length > maxMessageLength) {
+				TorrentConfiguration.debug("A message of " + length //$NON-NLS-1$
+						+ " bytes has been encountered. Closing connection with " //$NON-NLS-1$
+						+ ip + ":" + port); //$NON-NLS-1$
+				close();
+				return;
+			} else if (buffer.remaining() < length + 4) {
+				required = length + 4;
+				return;
 			}
-			buffer.limit(BUFFER_MAXIMUM);
-			buffer.rewind();
 
-			if (array == null) {
-				array = new byte[read];
-				buffer.get(array, 0, read);
-			} else {
-				byte[] bytes = new byte[array.length + read];
-				System.arraycopy(array, 0, bytes, 0, array.length);
-				buffer.get(bytes, array.length, read);
-				array = bytes;
+			if (length == 13 && isUploadBacklogged()) {
+				// leave the request in the buffer until some of the queued
+				// blocks have been written
+				uploadBacklogged = true;
+				return;
 			}
 
-			if (array[0] == 0 && array[1] == 0 && array[2] == 0
-					&& array[3] == 0) {
+			buffer.getInt();
+			if (length == 0) {
 				TorrentConfiguration.debug("Received [BT_KEEPALIVE] from " + ip //$NON-NLS-1$
 						+ ":" + port); //$NON-NLS-1$
-				array = truncate(array, 4);
-				read -= 4;
+				continue;
 			}
-
-			while (array != null && array.length > 4) {
-				if (0 <= array[4] && array[4] <= 3) {
-					if (!processMessage(array)) {
-						return;
-					}
-					array = truncate(array, 5);
-					read -= 5;
-				} else if (array[3] == 5 && array[4] == 4) {
-					if (array.length < 9) {
-						buffer.clear();
-						while (read < 9) {
-							if (channel == null) {
-								return;
-							}
-							ret = channel.read(buffer);
-							if (ret == -1) {
-								TorrentConfiguration.debug("End of stream has been reached with " + ip + ":" //$NON-NLS-1$ //$NON-NLS-2$
-										+ port);
-								return;
-							}
-							read += ret;
-						}
-						byte[] bytes = new byte[read];
-						System.arraycopy(array, 0, bytes, 0, array.length);
-						buffer.flip();
-						buffer.get(bytes, array.length, read - array.length);
-						array = bytes;
-					}
-					processHaveMessage(array);
-					array = truncate(array, 9);
-					read -= 9;
-				} else if (array[4] == 5) {
-					length = 4 + array[3];
-					while (read < length) {
-						if (channel == null) {
-							return;
-						}
-						ret = channel.read(buffer);
-						if (ret == -1) {
-							TorrentConfiguration.debug("End of stream has been reached with " + ip + ":" + port); //$NON-NLS-1$ //$NON-NLS-2$
-							return;
-						}
-						read += ret;
-					}
-
-					if (array.length < read) {
-						byte[] bytes = new byte[read];
-						System.arraycopy(array, 0, bytes, 0, array.length);
-						buffer.flip();
-						buffer.get(bytes, array.length, read - array.length);
-						array = bytes;
-					}
-
-					processBitfield(array, 5, length);
-					array = truncate(array, length);
-					read -= length;
-				} else if (array[3] == 13 && array[4] == 6) {
-					if (array.length < 17) {
-						buffer.clear();
-						while (read < 17) {
-							if (channel == null) {
-								return;
-							}
-							ret = channel.read(buffer);
-							if (ret == -1) {
-								TorrentConfiguration.debug("End of stream has been reached with " + ip + ":" //$NON-NLS-1$ //$NON-NLS-2$
-										+ port);
-								return;
-							}
-							read += ret;
-						}
-						byte[] bytes = new byte[read];
-						System.arraycopy(array, 0, bytes, 0, array.length);
-						buffer.flip();
-						buffer.get(bytes, array.length, read - array.length);
-						array = bytes;
-					}
-					if (!processRequest(array)) {
-						// an improper request was sent
-						close();
-						return;
-					}
-					array = truncate(array, 17);
-					read -= 17;
-				} else if (array[4] == 7) {
-					byte[] bufferArray = buffer.array();
-					length = Decode.decodeFourByteNumber(array, 0) + 4;
-					int offset = array.length;
-					if (offset < length) {
-						byte[] bytes = new byte[length];
-						System.arraycopy(array, 0, bytes, 0, offset);
-						array = bytes;
-					}
-
-					resetBuffer();
-					buffer.clear();
-					int start = read;
-					while (read < length) {
-						if (channel == null) {
-							return;
-						}
-						ret = channel.read(buffer);
-						if (ret == -1) {
-							TorrentConfiguration.debug("End of stream has been reached with " + ip + ":" + port); //$NON-NLS-1$ //$NON-NLS-2$
-							return;
-						}
-
-						// expand the array's length if necessary
-						if (offset + ret > array.length) {
-							byte[] bytes = new byte[offset + ret];
-							System.arraycopy(array, 0, bytes, 0, array.length);
-							array = bytes;
-						}
-
-						System.arraycopy(bufferArray, 0, array, offset, ret);
-						manager.updateDownloadRequestSpeed(ret);
-						buffer.rewind();
-						limitBuffer(manager.getDownloadRequestSpeed());
-						offset += ret;
-						read += ret;
-					}
-					buffer.limit(BUFFER_MAXIMUM);
-
-					if (array.length < read) {
-						byte[] bytes = new byte[read];
-						System.arraycopy(array, 0, bytes, 0, array.length);
-						buffer.position(start);
-						buffer.get(bytes, array.length, read - array.length);
-						array = bytes;
-					}
-
-					processPiece(array);
-					array = truncate(array, length);
-					read -= length;
-				} else if (array[4] == 8) {
-					// TODO: implement the processing of BT_CANCEL messages
-					array = truncate(array, 17);
-					read -= 17;
-				} else if (array[4] == 9) {
-					// TODO: implement the processing of BT_PORT messages
-					array = truncate(array, 9);
-					read -= 9;
-				} else {
-					TorrentConfiguration.debug("An ID of " + array[4] //$NON-NLS-1$
-							+ " has been encountered. Closing connection with " //$NON-NLS-1$
-							+ ip + ":" + port); //$NON-NLS-1$
-					return;
-				}
+			int end = buffer.position() + length;
+			if (!processMessage(buffer.get(), length - 1)) {
+				close();
+				return;
+			}
+			if (channel != null) {
+				buffer.position(end);
 			}
 		}
 	}
 
-	private byte[] truncate(byte[] array, int length) {
-		if (array.length == length) {
-			return null;
-		} else {
-			byte[] bytes = new byte[array.length - length];
-			System.arraycopy(array, length, bytes, 0, bytes.length);
-			return bytes;
-		}
+	/**
+	 * Checks whether the message at the current position of {@link #buffer}
+	 * is a request that would take the queued blocks over
+	 * {@link #MAX_QUEUED_UPLOAD}.
+	 */
+	private boolean isUploadBacklogged() {
+		int position = buffer.position();
+		return buffer.get(position + 4) == 6 && !isChoking && queuedUpload > 0
+				&& queuedUpload + buffer.getInt(position + 13) > MAX_QUEUED_UPLOAD;
 	}
 
-	private void resetBuffer() {
-		long maximum = manager.getDownloadRequestSpeed();
-		if (maximum == -1) {
-			return;
+	/**
+	 * Sends the blocks that the disk thread has read and processes the
+	 * messages that had been left in the buffer while too many blocks were
+	 * queued up. This is called by the engine's thread.
+	 */
+	void processQueued() {
+		Upload[] read;
+		synchronized (readUploads) {
+			read = (Upload[]) readUploads.toArray(new Upload[readUploads
+					.size()]);
+			readUploads.clear();
+		}
+		for (int i = 0; i < read.length && channel != null; i++) {
+			sendUpload(read[i]);
+		}
+		if (channel != null && state == EXCHANGING && !uploadBacklogged) {
+			processBuffer();
 		}
-		buffer.limit(0);
-		limitBuffer(maximum);
 	}
 
-	private void limitBuffer(long maximum) {
-		if (maximum != 0) {
-			int currentLimit = buffer.limit();
-			if (maximum + currentLimit > BUFFER_MAXIMUM) {
-				buffer.limit(BUFFER_MAXIMUM);
-			} else {
-				buffer.limit(currentLimit + (int) maximum);
+	private boolean processHandshake(byte[] array) {
+		for (int i = 0; i < 20; i++) {
+			if (array[i] != handshake[i]) {
+				TorrentConfiguration.debug("Received an unidentifiable handshake from " + ip //$NON-NLS-1$
+						+ ":" + port); //$NON-NLS-1$
+				return false;
 			}
-		} else {
-			try {
-				buffer.limit(0);
-				// sleep for a short while here since if it's zero, chances are
-				// that the next rotation will return a zero also, causing an
-				// unnecessarily long loop
-				Thread.sleep(100);
-			} catch (InterruptedException e) {
-				// ignored
+		}
+		for (int i = 28; i < 48; i++) {
+			if (array[i] != handshake[i]) {
+				TorrentConfiguration.debug("Received a handshake for another torrent from " + ip //$NON-NLS-1$
+						+ ":" + port); //$NON-NLS-1$
+				return false;
 			}
 		}
+		TorrentConfiguration.debug("Received [BT_HANDSHAKE] message from " + ip //$NON-NLS-1$
+				+ ":" + port); //$NON-NLS-1$
+		processClientName(new String(array, 48, 20));
+		state = EXCHANGING;
+		sendBitfield();
+		return true;
 	}
 
 	private void processClientName(String peerID) {
@@ -691,110 +612,152 @@ class PeerConnection extends Thread {
 		}
 	}
 
-	private boolean processMessage(byte[] array) throws IOException {
-		switch (array[4]) {
+	/**
+	 * Processes a message whose payload is at the current position of
+	 * {@link #buffer}.
+	 *
+	 * @param id
+	 *            the message's id
+	 * @param length
+	 *            the length of the payload
+	 * @return <code>true</code> if the message was valid, <code>false</code>
+	 *         if the connection should be closed
+	 */
+	private boolean processMessage(byte id, int length) {
+		switch (id) {
 		case 0:
 			TorrentConfiguration.debug("Received [BT_CHOKE] message from " + ip //$NON-NLS-1$
 					+ ":" + port); //$NON-NLS-1$
 			peerIsChoking = true;
-			break;
+			// the peer discards all of the requests that it has not answered
+			cancelPendingRequests();
+			requestsChanged = true;
+			return true;
 		case 1:
 			TorrentConfiguration.debug("Received [BT_UNCHOKE] message from " //$NON-NLS-1$
 					+ ip + ":" + port); //$NON-NLS-1$
 			peerIsChoking = false;
-			break;
+			requestsChanged = true;
+			return true;
 		case 2:
 			TorrentConfiguration.debug("Received [BT_INTERESTED] message from " //$NON-NLS-1$
 					+ ip + ":" + port); //$NON-NLS-1$
-			if (peerIsInterested) {
-				break;
-			}
-			peerIsInterested = true;
-			if (pool.checkUnchoke()) {
-				sendUnchoke();
+			if (!peerIsInterested) {
+				peerIsInterested = true;
+				if (isChoking && pool.checkUnchoke()) {
+					sendUnchoke();
+				}
 			}
-			break;
+			return true;
 		case 3:
 			TorrentConfiguration
 					.debug("Received [BT_NOT_INTERESTED] message from " + ip //$NON-NLS-1$
 							+ ":" + port); //$NON-NLS-1$
-			if (!peerIsInterested) {
-				break;
+			if (peerIsInterested) {
+				peerIsInterested = false;
+				if (!isChoking) {
+					sendChoke();
+					pool.unchokedPeerCleared();
+				}
 			}
-			peerIsInterested = false;
-			if (!isChoking) {
-				pool.unchokedPeerCleared();
+			return true;
+		case 4:
+			return length == 4 && processHaveMessage(buffer.getInt());
+		case 5:
+			return length == (peerPieces.size() + 7) / 8
+					&& processBitfield(length);
+		case 6:
+			return length == 12
+					&& processRequest(buffer.getInt(), buffer.getInt(), buffer
+							.getInt());
+		case 7:
+			return length >= 8
+					&& processPiece(buffer.getInt(), buffer.getInt(), length - 8);
+		case 8:
+			if (length == 12) {
+				processCancel(buffer.getInt(), buffer.getInt());
 			}
-			sendChoke();
-			break;
+			return true;
 		default:
-			return false;
+			// BT_PORT messages and extensions are not supported, skip them
+			TorrentConfiguration.debug("Ignoring a message with an ID of " + id //$NON-NLS-1$
+					+ " from " + ip + ":" + port); //$NON-NLS-1$ //$NON-NLS-2$
+			return true;
 		}
-		return true;
 	}
 
-	private void processBitfield(byte[] array, int offset, int end) {
-		boolean[] hasPiece = new boolean[(end - offset) * 8];
-		int count = 0;
-		// iterate over the retrieved bytes and keep track of the pieces that
-		// this peer has
-		for (int i = offset; i < end; i++) {
-			int bit = Decode.decodeSignedByte(array[i]);
-			hasPiece[count++] = (bit & 1) != 0;
-			hasPiece[count++] = (bit & 2) != 0;
-			hasPiece[count++] = (bit & 4) != 0;
-			hasPiece[count++] = (bit & 8) != 0;
-			hasPiece[count++] = (bit & 16) != 0;
-			hasPiece[count++] = (bit & 32) != 0;
-			hasPiece[count++] = (bit & 64) != 0;
-			hasPiece[count++] = (bit & 128) != 0;
-		}
-		System.arraycopy(hasPiece, 0, peerPieces, 0, peerPieces.length);
+	private boolean processBitfield(int length) {
+		manager.removePieceAvailability(peerPieces);
+		peerPieces.clear();
+		int offset = buffer.position();
+		for (int i = 0; i < peerPieces.size(); i++) {
+			// the high bit of the first byte is the first piece
+			if ((buffer.get(offset + (i >> 3)) & (0x80 >>> (i & 7))) != 0) {
+				peerPieces.set(i);
+			}
+		}
 		TorrentConfiguration.debug("Received [BT_BITFIELD] message from " + ip //$NON-NLS-1$
 				+ ":" + port); //$NON-NLS-1$
 		manager.addPieceAvailability(peerPieces);
-
-		for (int i = 0; i < peerPieces.length; i++) {
-			if (!peerPieces[i]) {
-				return;
-			}
-		}
-		peerIsSeed = true;
+		peerIsSeed = peerPieces.isFull();
+		requestsChanged = true;
+		return true;
 	}
 
-	private void processHaveMessage(byte[] array) {
-		int piece = Decode.decodeFourByteNumber(array, 5);
-		if (!peerPieces[piece]) {
-			peerPieces[piece] = true;
-			manager.updatePieceAvailability(piece);
+	private boolean processHaveMessage(int piece) {
+		if (piece < 0 || piece >= peerPieces.size()) {
+			return false;
 		}
 		TorrentConfiguration.debug("Received [BT_HAVE piece #" + piece //$NON-NLS-1$
 				+ "] message from " + ip + ":" + port); //$NON-NLS-1$ //$NON-NLS-2$
-
-		for (int i = 0; i < peerPieces.length; i++) {
-			if (!peerPieces[i]) {
-				return;
-			}
+		if (peerPieces.set(piece)) {
+			manager.updatePieceAvailability(piece);
+			peerIsSeed = peerPieces.isFull();
+			requestsChanged = true;
 		}
-		peerIsSeed = true;
+		return true;
 	}
 
-	private void processPiece(byte[] array) throws IOException {
-		int piece = Decode.decodeFourByteNumber(array, 5);
-		int index = Decode.decodeFourByteNumber(array, 9);
-		int length = Decode.decodeFourByteNumber(array, 0) - 9;
-
-		manager.write(piece, index, array, 13, length);
+	private boolean processPiece(final int piece, final int index, int length) {
+		if (piece < 0 || piece >= peerPieces.size()) {
+			return false;
+		}
+		for (Iterator i = pendingRequests.iterator(); i.hasNext();) {
+			int[] request = (int[]) i.next();
+			if (request[0] == piece && request[1] == index) {
+				i.remove();
+				break;
+			}
+		}
+		// decided before the write, which may complete the download and so
+		// end the end-game
+		boolean endGame = manager.isEndGame();
+		final byte[] block = new byte[length];
+		buffer.get(block);
+		manager.queueDiskTask(new Runnable() {
+			public void run() {
+				try {
+					manager.write(piece, index, block, 0, block.length);
+				} catch (IOException e) {
+					TorrentConfiguration.debug("The block " + piece + ": " //$NON-NLS-1$ //$NON-NLS-2$
+							+ index + " from " + ip + ":" + port //$NON-NLS-1$ //$NON-NLS-2$
+							+ " could not be written - " + e.getMessage()); //$NON-NLS-1$
+				}
+			}
+		});
+		if (endGame) {
+			// the block may also have been requested from other peers
+			pool.cancelRequest(piece, index, this);
+		}
 		downloaded += length;
+		requestsChanged = true;
 		TorrentConfiguration.debug("Received [BT_PIECE data for #" + piece //$NON-NLS-1$
 				+ ": " + index + "->" + (length + index - 1) //$NON-NLS-1$ //$NON-NLS-2$
 				+ "] message from " + ip + ":" + port); //$NON-NLS-1$ //$NON-NLS-2$
+		return true;
 	}
 
-	private boolean processRequest(byte[] array) throws IOException {
-		int piece = Decode.decodeFourByteNumber(array, 5);
-		int index = Decode.decodeFourByteNumber(array, 9);
-		int length = Decode.decodeFourByteNumber(array, 13);
+	private boolean processRequest(int piece, int index, int length) {
 		if (isChoking) {
 			TorrentConfiguration.debug("Ignoring [BT_REQUEST piece #" + piece //$NON-NLS-1$
 					+ ": " + index + "->" + (index + length - 1) //$NON-NLS-1$ //$NON-NLS-2$
@@ -806,83 +769,225 @@ class PeerConnection extends Thread {
 				+ ": " + index + "->" + (index + length - 1) //$NON-NLS-1$ //$NON-NLS-2$
 				+ "] message from " + ip + ":" + port); //$NON-NLS-1$ //$NON-NLS-2$
 
-		if (length > 131072) {
+		if (length > MAX_REQUEST_LENGTH) {
 			TorrentConfiguration.debug("The requesting of " + length //$NON-NLS-1$
 					+ " bytes violates the standard maximum amount of 131072, the connection to " + ip + ":" + port //$NON-NLS-1$ //$NON-NLS-2$
 					+ " will be closed."); //$NON-NLS-1$
 			return false;
+		} else if (piece < 0 || piece >= peerPieces.size() || index < 0
+				|| length < 0) {
+			return false;
 		}
 
-		byte[] block = manager.getPieceData(piece, index, length);
-		if (block == null) {
-			return false;
+		final Upload upload = new Upload(piece, index, length);
+		pendingUploads.add(upload);
+		queuedUpload += length;
+		manager.queueDiskTask(new Runnable() {
+			public void run() {
+				readUpload(upload);
+			}
+		});
+		return true;
+	}
+
+	/**
+	 * Reads the block of an upload into its piece message and hands it back
+	 * to the engine's thread. This is called by the disk thread.
+	 */
+	private void readUpload(Upload upload) {
+		if (upload.cancelled) {
+			return;
+		}
+		try {
+			byte[] block = manager.getPieceData(upload.piece, upload.index,
+					upload.length);
+			if (block != null) {
+				ByteBuffer message = ByteBuffer.allocate(13 + upload.length);
+				message.putInt(9 + upload.length);
+				message.put((byte) 7);
+				message.putInt(upload.piece);
+				message.putInt(upload.index);
+				message.put(block);
+				message.flip();
+				upload.message = message;
+			}
+		} catch (IllegalArgumentException e) {
+			// the request is invalid, the connection is closed
+		} catch (IOException e) {
+			TorrentConfiguration.debug("The block " + upload.piece + ": " //$NON-NLS-1$ //$NON-NLS-2$
+					+ upload.index + " for " + ip + ":" + port //$NON-NLS-1$ //$NON-NLS-2$
+					+ " could not be read - " + e.getMessage()); //$NON-NLS-1$
 		}
+		synchronized (readUploads) {
+			readUploads.add(upload);
+		}
+		engine.dispatch(this);
+	}
 
-		Encode.putIntegerAsFourBytes(blockInfo, length + 9, 0);
-		Encode.putIntegerAsFourBytes(blockInfo, piece, 5);
-		Encode.putIntegerAsFourBytes(blockInfo, index, 9);
-		sendBuffer.put(blockInfo);
-
-		int blockLength = block.length;
-		int offset = 0;
-		int remaining = sendBuffer.remaining();
-		long write = manager.getUploadRequestSpeed();
-		if (write != 0) {
-			if (write == -1) {
-				// since no limit has been set, simply set the amount to write
-				// as the length of the block
-				write = blockLength;
-			} else {
-				write = write < blockLength ? write : blockLength;
+	/**
+	 * Queues up the piece message of an upload whose block has been read,
+	 * unless the request has been cancelled or the peer choked meanwhile.
+	 */
+	private void sendUpload(Upload upload) {
+		if (!pendingUploads.remove(upload)) {
+			return;
+		} else if (upload.message == null) {
+			close();
+			return;
+		}
+		send(upload.message);
+		uploaded += upload.length;
+		manager.addToUploaded(upload.length);
+		TorrentConfiguration.debug("Sent [BT_PIECE data for #" + upload.piece //$NON-NLS-1$
+				+ ": " + upload.index + "->" //$NON-NLS-1$ //$NON-NLS-2$
+				+ (upload.length + upload.index - 1) + "] message to " + ip //$NON-NLS-1$
+				+ ":" + port); //$NON-NLS-1$
+	}
+
+	/**
+	 * Drops an upload whose block is still being read.
+	 */
+	private void dropUpload(Upload upload) {
+		upload.cancelled = true;
+		uploadDropped(upload.length);
+	}
+
+	/**
+	 * Takes the block of a piece message that has been written or dropped off
+	 * the queued blocks, and resumes the processing of the peer's messages if
+	 * it had been waiting for that.
+	 *
+	 * @param length
+	 *            the length of the block
+	 */
+	private void uploadDropped(int length) {
+		queuedUpload -= length;
+		if (uploadBacklogged) {
+			uploadBacklogged = false;
+			// not processed right away as this may be called while the
+			// messages are being processed
+			engine.dispatch(this);
+			updateInterestOps();
+		}
+	}
+
+	/**
+	 * Removes the queued up piece message that corresponds to a request which
+	 * the peer has cancelled, unless it is already being written.
+	 */
+	private void processCancel(int piece, int index) {
+		TorrentConfiguration.debug("Received [BT_CANCEL piece #" + piece //$NON-NLS-1$
+				+ ": " + index + "] message from " + ip + ":" + port); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		for (Iterator i = pendingUploads.iterator(); i.hasNext();) {
+			Upload upload = (Upload) i.next();
+			if (upload.piece == piece && upload.index == index) {
+				i.remove();
+				dropUpload(upload);
+				return;
 			}
-			write = remaining < write ? remaining : write;
 		}
-		while (offset < blockLength) {
-			if (write == 0) {
-				try {
-					Thread.sleep(500);
-				} catch (InterruptedException e) {
-					// ignored
-				}
-			} else {
-				sendBuffer.put(block, offset, (int) write);
-				sendBuffer.flip();
-				channel.write(sendBuffer);
-				sendBuffer.clear();
-				offset += write;
-				manager.updateUploadRequestSpeed((int) write);
-				uploaded += write;
-				manager.addToUploaded(write);
+		for (Iterator i = writeQueue.iterator(); i.hasNext();) {
+			ByteBuffer message = (ByteBuffer) i.next();
+			if (message.position() == 0 && isPieceMessage(message)
+					&& message.getInt(5) == piece && message.getInt(9) == index) {
+				i.remove();
+				uploadDropped(message.limit() - 13);
+				return;
+			}
+		}
+	}
+
+	private static boolean isPieceMessage(ByteBuffer message) {
+		return message.limit() > 13 && message.get(4) == 7;
+	}
+
+	/**
+	 * Writes as many of the queued up messages as the channel and the speed
+	 * limits allow.
+	 *
+	 * @throws IOException
+	 *             If an I/O error occurs while writing to the channel
+	 */
+	void write() throws IOException {
+		while (!writeQueue.isEmpty()) {
+			long limit = manager.getUploadRequestSpeed();
+			if (limit == 0) {
+				writeThrottled = true;
+				engine.throttle(this);
+				break;
+			}
+			ByteBuffer message = (ByteBuffer) writeQueue.getFirst();
+			int end = message.limit();
+			if (limit != -1 && limit < message.remaining()) {
+				message.limit(message.position() + (int) limit);
+			}
+			int written = channel.write(message);
+			message.limit(end);
+			if (written > 0) {
+				lastWrite = System.currentTimeMillis();
+				manager.updateUploadRequestSpeed(written);
 			}
-			write = manager.getUploadRequestSpeed();
-			if (write != 0) {
-				remaining = blockLength - offset;
-				if (write == -1) {
-					write = remaining;
-				} else {
-					write = write < remaining ? write : remaining;
+			if (message.hasRemaining()) {
+				if (written == 0) {
+					// the socket's buffer is full, wait until it is writable
+					break;
 				}
-				remaining = sendBuffer.remaining();
-				write = remaining < write ? remaining : write;
+				continue;
+			}
+			writeQueue.removeFirst();
+			if (isPieceMessage(message)) {
+				uploadDropped(message.limit() - 13);
 			}
 		}
+		updateInterestOps();
+	}
 
-		TorrentConfiguration.debug("Sent [BT_PIECE data for #" + piece + ": " //$NON-NLS-1$ //$NON-NLS-2$
-				+ index + "->" + (length + index - 1) + "] message to " + ip //$NON-NLS-1$ //$NON-NLS-2$
-				+ ":" + port); //$NON-NLS-1$
-		return true;
+	/**
+	 * Resumes reading and writing after the speed limits had stopped them.
+	 */
+	void resume() {
+		readThrottled = false;
+		writeThrottled = false;
+		updateInterestOps();
+	}
+
+	private void updateInterestOps() {
+		if (key == null || !key.isValid()) {
+			return;
+		}
+		int ops;
+		if (state == CONNECTING) {
+			ops = SelectionKey.OP_CONNECT;
+		} else {
+			ops = readThrottled || uploadBacklogged ? 0 : SelectionKey.OP_READ;
+			if (!writeQueue.isEmpty() && !writeThrottled) {
+				ops |= SelectionKey.OP_WRITE;
+			}
+		}
+		if (key.interestOps() != ops) {
+			key.interestOps(ops);
+		}
+	}
+
+	/**
+	 * Queues up the message to be written once the channel is writable.
+	 */
+	private void send(ByteBuffer message) {
+		writeQueue.add(message);
+		updateInterestOps();
+	}
+
+	private void send(byte[] message) {
+		send(ByteBuffer.wrap((byte[]) message.clone()));
 	}
 
-	private void sendHandshake() throws IOException {
-		sendBuffer.put(handshake);
-		sendBuffer.flip();
-		channel.write(sendBuffer);
-		sendBuffer.clear();
+	private void sendHandshake() {
+		send(handshake);
 		TorrentConfiguration.debug("Sent [BT_HANDSHAKE] message to " + ip + ":" //$NON-NLS-1$ //$NON-NLS-2$
 				+ port);
 	}
 
-	private void sendBitfield() throws IOException {
+	private void sendBitfield() {
 		byte[] bitfield = manager.getBitfield();
 		boolean hasPiece = false;
 		for (int i = 0; i < bitfield.length; i++) {
@@ -897,91 +1002,158 @@ class PeerConnection extends Thread {
 			return;
 		}
 
-		byte[] header = { 0x00, 0x00, 0x00, 0x00, 0x05 };
-		Encode.putIntegerAsFourBytes(header, bitfield.length + 1, 0);
-		sendBuffer.put(header);
-		sendBuffer.put(manager.getBitfield());
-		sendBuffer.flip();
-		channel.write(sendBuffer);
-		sendBuffer.clear();
+		ByteBuffer message = ByteBuffer.allocate(5 + bitfield.length);
+		message.putInt(bitfield.length + 1);
+		message.put((byte) 5);
+		message.put(bitfield);
+		message.flip();
+		send(message);
 		TorrentConfiguration.debug("Sent [BT_BITFIELD] message to " + ip + ":" //$NON-NLS-1$ //$NON-NLS-2$
 				+ port);
 	}
 
-	private int sendRequest(Piece piece) throws IOException {
-		if (piece == null) {
-			sendNotInterested();
-			return -1;
-		} else if (peerIsChoking) {
-			sendInterested();
-			return -1;
+	/**
+	 * Updates whether this client is interested in the peer and keeps up to
+	 * {@link #MAX_PENDING_REQUESTS} requests outstanding while the peer is not
+	 * choking this client.
+	 */
+	private void sendRequests() {
+		if (state != EXCHANGING) {
+			return;
 		}
-
-		int[] information = piece.getRequestInformation();
-		while (information == null) {
-			piece = manager.request(peerPieces);
-			if (piece == null) {
+		if (!manager.isInterested(peerPieces)) {
+			if (pendingRequests.isEmpty()) {
 				sendNotInterested();
-				return -1;
 			}
-			information = piece.getRequestInformation();
+			return;
+		}
+		sendInterested();
+		if (peerIsChoking) {
+			return;
 		}
 
-		Encode.placeRequestInformation(request, information);
-		sendBuffer.put(request);
-		sendBuffer.flip();
-		channel.write(sendBuffer);
-		sendBuffer.clear();
-		TorrentConfiguration.debug("Sent [BT_REQUEST piece #" + information[0] //$NON-NLS-1$
-				+ ": " + information[1] + "->" //$NON-NLS-1$ //$NON-NLS-2$
-				+ (information[1] + information[2] - 1) + "] message to " + ip //$NON-NLS-1$
-				+ ":" + port); //$NON-NLS-1$
+		Piece piece = manager.request(peerPieces);
+
+		// give up after a few pieces that have no blocks left to request
+		int attempts = MAX_PENDING_REQUESTS;
+		while (pendingRequests.size() < MAX_PENDING_REQUESTS && piece != null
+				&& attempts > 0) {
+			int[] information = piece.getRequestInformation();
+			if (information == null || isPending(information)) {
+				attempts--;
+				piece = manager.request(peerPieces);
+				continue;
+			}
 
-		return information[2] + 13;
+			ByteBuffer message = ByteBuffer.allocate(17);
+			message.putInt(13);
+			message.put((byte) 6);
+			message.putInt(information[0]);
+			message.putInt(information[1]);
+			message.putInt(information[2]);
+			message.flip();
+			send(message);
+			pendingRequests.add(information);
+			TorrentConfiguration.debug("Sent [BT_REQUEST piece #" + information[0] //$NON-NLS-1$
+					+ ": " + information[1] + "->" //$NON-NLS-1$ //$NON-NLS-2$
+					+ (information[1] + information[2] - 1) + "] message to " + ip //$NON-NLS-1$
+					+ ":" + port); //$NON-NLS-1$
+		}
+	}
+
+	private boolean isPending(int[] information) {
+		for (Iterator i = pendingRequests.iterator(); i.hasNext();) {
+			int[] request = (int[]) i.next();
+			if (request[0] == information[0] && request[1] == information[1]) {
+				return true;
+			}
+		}
+		return false;
 	}
 
 	/**
-	 * Sends the queued up messages to the connected peer to inform.
+	 * Releases the blocks of the requests that the peer has not answered so
+	 * that they can be requested from other peers.
+	 */
+	private void cancelPendingRequests() {
+		for (Iterator i = pendingRequests.iterator(); i.hasNext();) {
+			int[] request = (int[]) i.next();
+			manager.cancelRequest(request[0], request[1]);
+		}
+		pendingRequests.clear();
+	}
+
+	/**
+	 * Cancels the request for a block if it has been sent to the peer and has
+	 * not been answered yet. This is used in end-game mode once the block has
+	 * been received from another peer.
 	 * 
-	 * @throws IOException
-	 *             If an I/O error occurs while sending the messages to the peer
-	 */
-	private synchronized void sendQueuedMessages() throws IOException {
-		for (int i = 0; i < haveMessages.length; i++) {
-			if (haveMessages[i]) {
-				Encode.putIntegerAsFourBytes(have, i, 5);
-				sendBuffer.put(have);
-				sendBuffer.flip();
-				channel.write(sendBuffer);
-				sendBuffer.clear();
-				TorrentConfiguration.debug("Sent [BT_HAVE PIECE #" + i //$NON-NLS-1$
+	 * @param piece
+	 *            the number of the piece
+	 * @param index
+	 *            the index within the piece that the block starts at
+	 */
+	void cancelRequest(int piece, int index) {
+		for (Iterator i = pendingRequests.iterator(); i.hasNext();) {
+			int[] request = (int[]) i.next();
+			if (request[0] == piece && request[1] == index) {
+				i.remove();
+				ByteBuffer message = ByteBuffer.allocate(17);
+				message.putInt(13);
+				message.put((byte) 8);
+				message.putInt(request[0]);
+				message.putInt(request[1]);
+				message.putInt(request[2]);
+				message.flip();
+				send(message);
+				requestsChanged = true;
+				TorrentConfiguration.debug("Sent [BT_CANCEL piece #" + piece //$NON-NLS-1$
+						+ ": " + index + "->" + (index + request[2] - 1) //$NON-NLS-1$ //$NON-NLS-2$
 						+ "] message to " + ip + ":" + port); //$NON-NLS-1$ //$NON-NLS-2$
-				haveMessages[i] = false;
+				return;
 			}
 		}
+	}
 
-		if (sendChoke) {
-			sendChoke();
-			sendChoke = false;
-		} else if (sendUnchoke) {
-			sendUnchoke();
-			sendUnchoke = false;
+	/**
+	 * Sends the queued up have messages to the connected peer. This is called
+	 * by the engine's thread.
+	 */
+	void sendQueuedMessages() {
+		if (state != EXCHANGING) {
+			return;
+		}
+		Integer[] pieces;
+		synchronized (haveMessages) {
+			pieces = (Integer[]) haveMessages.toArray(new Integer[haveMessages
+					.size()]);
+			haveMessages.clear();
+		}
+		for (int i = 0; i < pieces.length; i++) {
+			int number = pieces[i].intValue();
+			// there is no need to tell a peer about a piece it already has
+			if (!peerPieces.get(number)) {
+				ByteBuffer message = ByteBuffer.allocate(9);
+				message.putInt(5);
+				message.put((byte) 4);
+				message.putInt(number);
+				message.flip();
+				send(message);
+				TorrentConfiguration.debug("Sent [BT_HAVE PIECE #" + number //$NON-NLS-1$
+						+ "] message to " + ip + ":" + port); //$NON-NLS-1$ //$NON-NLS-2$
+			}
 		}
+		// the completed pieces may change what should be requested
+		sendRequests();
 	}
 
 	/**
 	 * Sends a message to the peer that this client is interested in something
 	 * that the peer has to offer.
-	 * 
-	 * @throws IOException
-	 *             If an I/O error occurs while sending the message
 	 */
-	private void sendInterested() throws IOException {
+	private void sendInterested() {
 		if (!isInterested) {
-			sendBuffer.put(INTERESTED);
-			sendBuffer.flip();
-			channel.write(sendBuffer);
-			sendBuffer.clear();
+			send(INTERESTED);
 			isInterested = true;
 			TorrentConfiguration.debug("Sent [BT_INTERESTED] message to " + ip //$NON-NLS-1$
 					+ ":" + port); //$NON-NLS-1$
@@ -991,16 +1163,10 @@ class PeerConnection extends Thread {
 	/**
 	 * Sends a message to the peer that this client is not interested in
 	 * anything that the peer currently has to offer.
-	 * 
-	 * @throws IOException
-	 *             If an I/O error occurs while sending the message
 	 */
-	private void sendNotInterested() throws IOException {
+	private void sendNotInterested() {
 		if (isInterested) {
-			sendBuffer.put(NOT_INTERESTED);
-			sendBuffer.flip();
-			channel.write(sendBuffer);
-			sendBuffer.clear();
+			send(NOT_INTERESTED);
 			isInterested = false;
 			TorrentConfiguration.debug("Sent [BT_NOT_INTERESTED] message to " //$NON-NLS-1$
 					+ ip + ":" + port); //$NON-NLS-1$
@@ -1009,17 +1175,23 @@ class PeerConnection extends Thread {
 
 	/**
 	 * Sends a choke message to the peer which indicates to them that any piece
-	 * requests will be ignored and discarded.
-	 * 
-	 * @throws IOException
-	 *             If an I/O error occurs while writing the message to the peer
+	 * requests will be ignored and discarded. The piece messages that have not
+	 * been started yet are dropped.
 	 */
-	private void sendChoke() throws IOException {
+	private void sendChoke() {
 		if (!isChoking) {
-			sendBuffer.put(CHOKE);
-			sendBuffer.flip();
-			channel.write(sendBuffer);
-			sendBuffer.clear();
+			for (Iterator i = pendingUploads.iterator(); i.hasNext();) {
+				dropUpload((Upload) i.next());
+			}
+			pendingUploads.clear();
+			for (Iterator i = writeQueue.iterator(); i.hasNext();) {
+				ByteBuffer message = (ByteBuffer) i.next();
+				if (message.position() == 0 && isPieceMessage(message)) {
+					i.remove();
+					uploadDropped(message.limit() - 13);
+				}
+			}
+			send(CHOKE);
 			isChoking = true;
 			TorrentConfiguration.debug("Sent [BT_CHOKE] message to " + ip + ":" //$NON-NLS-1$ //$NON-NLS-2$
 					+ port);
@@ -1029,16 +1201,10 @@ class PeerConnection extends Thread {
 	/**
 	 * Sends an unchoke message to the peer to inform them that piece requests
 	 * will now be honoured.
-	 * 
-	 * @throws IOException
-	 *             If an I/O error occurs whilst writing the message to the peer
 	 */
-	private void sendUnchoke() throws IOException {
+	private void sendUnchoke() {
 		if (isChoking) {
-			sendBuffer.put(UNCHOKE);
-			sendBuffer.flip();
-			channel.write(sendBuffer);
-			sendBuffer.clear();
+			send(UNCHOKE);
 			isChoking = false;
 			TorrentConfiguration.debug("Sent [BT_UNCHOKE] message to " + ip //$NON-NLS-1$
 					+ ":" + port); //$NON-NLS-1$
@@ -1046,36 +1212,50 @@ class PeerConnection extends Thread {
 	}
 
 	/**
-	 * Resets instance values so that a new connection that is bridged by this
-	 * thread will not have remnants of information from the last connection.
+	 * Chokes the peer on behalf of the {@link ConnectionPool}, which keeps
+	 * track of the number of unchoked peers.
 	 */
-	private void reset() {
-		queuePosition = 0;
-		downloaded = 0;
-		uploaded = 0;
-		Arrays.fill(downloads, 0);
-		Arrays.fill(uploads, 0);
-
-		isInterested = false;
-		isChoking = true;
-		peerIsInterested = false;
-		peerIsChoking = true;
-		peerIsSeed = false;
-		Arrays.fill(peerPieces, false);
-
-		sendChoke = false;
-		sendUnchoke = false;
-		Arrays.fill(haveMessages, false);
+	void choke() {
+		sendChoke();
+	}
 
-		clientName = "Unknown"; //$NON-NLS-1$
+	/**
+	 * Unchokes the peer on behalf of the {@link ConnectionPool}, which keeps
+	 * track of the number of unchoked peers.
+	 */
+	void unchoke() {
+		sendUnchoke();
 	}
 
-	private void cleanup() {
-		pool.connectionClosed();
-		if (!isChoking) {
-			pool.unchokedPeerCleared();
+	/**
+	 * Called by the engine's thread once per second.
+	 *
+	 * @param now
+	 *            the current time in milliseconds
+	 */
+	void tick(long now) {
+		if (state == CLOSED) {
+			return;
+		} else if (state != EXCHANGING) {
+			if (now - created > HANDSHAKE_TIMEOUT) {
+				TorrentConfiguration.debug("The handshake with " + ip + ":" //$NON-NLS-1$ //$NON-NLS-2$
+						+ port + " has timed out"); //$NON-NLS-1$
+				close();
+			}
+			return;
+		} else if (now - lastRead > IDLE_TIMEOUT && !uploadBacklogged) {
+			TorrentConfiguration.debug("Nothing has been received from " + ip //$NON-NLS-1$
+					+ ":" + port + " for too long"); //$NON-NLS-1$ //$NON-NLS-2$
+			close();
+			return;
+		}
+		if (now - lastWrite > KEEP_ALIVE_INTERVAL && writeQueue.isEmpty()) {
+			lastWrite = now;
+			send(KEEP_ALIVE);
+			TorrentConfiguration.debug("Sent [BT_KEEPALIVE] message to " + ip //$NON-NLS-1$
+					+ ":" + port); //$NON-NLS-1$
 		}
-		initialized = false;
+		queueSpeeds();
 	}
 
 	/**
@@ -1083,22 +1263,48 @@ class PeerConnection extends Thread {
 	 * thrown will closing the connection with the peer will be ignored.
 	 */
 	void close() {
+		if (state == CLOSED) {
+			return;
+		}
+		state = CLOSED;
+		boolean wasUnchoked = !isChoking;
+		isChoking = true;
+		if (key != null) {
+			key.cancel();
+		}
 		if (channel != null) {
-			reset();
 			try {
 				channel.close();
 			} catch (IOException e) {
 				// ignored
 			}
 			channel = null;
-			manager.removePieceAvailability(peerPieces);
 		}
+		writeQueue.clear();
+		for (Iterator i = pendingUploads.iterator(); i.hasNext();) {
+			((Upload) i.next()).cancelled = true;
+		}
+		pendingUploads.clear();
+		queuedUpload = 0;
+		uploadBacklogged = false;
+		cancelPendingRequests();
+		manager.removePieceAvailability(peerPieces);
+		peerPieces.clear();
+		pool.connectionClosed(this, wasUnchoked);
+	}
+
+	PeerEngine getEngine() {
+		return engine;
 	}
 
 	boolean isChoking() {
 		return isChoking;
 	}
 
+	boolean isPeerInterested() {
+		return peerIsInterested;
+	}
+
 	boolean isConnectedTo(String ip, int port) {
 		return port == this.port && ip.equals(this.ip);
 	}
@@ -1108,7 +1314,7 @@ class PeerConnection extends Thread {
 	 * identify whether this connection should be cut after a download has
 	 * completed since there is no need for a seed to be connected to another
 	 * seed.
-	 * 
+	 *
 	 * @return <code>true</code> if the connected peer is a seed,
 	 *         <code>false</code> otherwise
 	 */
@@ -1119,7 +1325,7 @@ class PeerConnection extends Thread {
 	/**
 	 * Queues up the specified piece as needing a corresponding HAVE message to
 	 * be sent to the connected peer.
-	 * 
+	 *
 	 * @param number
 	 *            the number of the piece that has just been completed
 	 * @throws IllegalArgumentException
@@ -1129,18 +1335,12 @@ class PeerConnection extends Thread {
 	void queueHaveMessage(int number) throws IllegalArgumentException {
 		if (number < 0) {
 			throw new IllegalArgumentException("The piece number cannot be negative"); //$NON-NLS-1$
-		} else if (number >= peerPieces.length) {
+		} else if (number >= peerPieces.size()) {
 			throw new IllegalArgumentException("The piece number is greater than the number of pieces"); //$NON-NLS-1$
 		}
-		haveMessages[number] = true;
-	}
-
-	void queueChokeMessage() {
-		sendUnchoke = true;
-	}
-
-	void queueUnchokeMessage() {
-		sendChoke = true;
+		synchronized (haveMessages) {
+			haveMessages.add(Integer.valueOf(number));
+		}
 	}
 
 	long getDownloaded() {
@@ -1182,55 +1382,37 @@ class PeerConnection extends Thread {
 		return clientName;
 	}
 
-	boolean isInitialized() {
-		return initialized;
+	public String toString() {
+		return ip + ":" + port; //$NON-NLS-1$
 	}
 
-	protected void finalize() {
-		close();
-	}
+	/**
+	 * A block that the peer has requested.
+	 */
+	private static class Upload {
 
-	public void run() {
-		ConnectionInfo info = pool.dequeue();
-		if (info == null) {
-			pool.connectionDestroyed(this);
-			return;
-		}
+		final int piece;
 
-		while (true) {
-			try {
-				initialized = true;
-				if (info.isChannel()) {
-					setChannel(info.getChannel());
-				} else {
-					setAddress(info.getIP(), info.getPort());
-				}
-				pool.connectionCreated();
-				connect();
-				cleanup();
+		final int index;
 
-				if (!pool.isConnected()) {
-					return;
-				}
+		final int length;
 
-				try {
-					synchronized (pool) {
-						pool.wait();
-					}
-				} catch (InterruptedException e) {
-					pool.connectionDestroyed(this);
-					return;
-				}
-				info = pool.dequeue();
-				if (info == null) {
-					pool.connectionDestroyed(this);
-					return;
-				}
-			} catch (RuntimeException e) {
-				cleanup();
-				pool.connectionDestroyed(this);
-				throw e;
-			}
+		/**
+		 * Whether the request has been cancelled or dropped, so that the
+		 * block does not need to be read anymore.
+		 */
+		volatile boolean cancelled = false;
+
+		/**
+		 * The piece message with the block, or <code>null</code> if it could
+		 * not be read. This is set by the disk thread.
+		 */
+		ByteBuffer message;
+
+		Upload(int piece, int index, int length) {
+			this.piece = piece;
+			this.index = index;
+			this.length = length;
 		}
 	}
 
@@ -0,0 +1,289 @@
+/****************************************************************************
+ * Copyright (c) 2026 Composent, Inc. and others.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * Contributors:
+ *   Composent, Inc. - initial API and implementation
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *****************************************************************************/
+package org.eclipse.ecf.protocol.bittorrent.internal.net;
+
+import java.io.IOException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.eclipse.ecf.protocol.bittorrent.TorrentConfiguration;
+
+/**
+ * A single thread that multiplexes all of the {@link PeerConnection}s of a
+ * {@link ConnectionPool} with a <code>Selector</code>. The connections do not
+ * block or sleep, they are called when their channel is ready and the engine
+ * runs the timers that are shared by all of them.
+ */
+class PeerEngine extends Thread {
+
+	/**
+	 * The number of milliseconds between the ticks of the timer that updates
+	 * the speeds, sends keep-alives and rotates the optimistic unchokes.
+	 */
+	private static final int TICK = 1000;
+
+	/**
+	 * The number of milliseconds to wait before connections that had been
+	 * throttled because of the speed limits are resumed.
+	 */
+	private static final int THROTTLE_RETRY = 100;
+
+	private final ConnectionPool pool;
+
+	private final Selector selector;
+
+	/**
+	 * The {@link ConnectionInfo}s that have been queued by other threads and
+	 * that still need to be registered with the selector.
+	 */
+	private final LinkedList pending = new LinkedList();
+
+	/**
+	 * The connections that have work queued up by other threads, such as the
+	 * blocks that the disk thread has read for them.
+	 */
+	private final LinkedList dispatched = new LinkedList();
+
+	/**
+	 * The connections that are waiting for the speed limits to allow them to
+	 * read or write again.
+	 */
+	private final List throttled = new ArrayList();
+
+	private long nextTick;
+
+	private long nextThrottleRetry;
+
+	private volatile boolean shutdown = false;
+
+	PeerEngine(ConnectionPool pool, String name) throws IOException {
+		super("Peer Engine - " + name); //$NON-NLS-1$
+		setDaemon(true);
+		this.pool = pool;
+		selector = Selector.open();
+	}
+
+	/**
+	 * Queues up a connection to be created by the engine's thread.
+	 *
+	 * @param info
+	 *            the peer to connect to or the channel that has been accepted
+	 */
+	void queue(ConnectionInfo info) {
+		synchronized (pending) {
+			pending.add(info);
+		}
+		selector.wakeup();
+	}
+
+	/**
+	 * Queues up a connection to have its {@link PeerConnection#processQueued()}
+	 * method called by the engine's thread.
+	 *
+	 * @param connection
+	 *            the connection that has work queued up
+	 */
+	void dispatch(PeerConnection connection) {
+		synchronized (dispatched) {
+			if (!dispatched.contains(connection)) {
+				dispatched.add(connection);
+			}
+		}
+		selector.wakeup();
+	}
+
+	/**
+	 * Wakes up the engine's thread so that it flushes the messages that have
+	 * been queued up by other threads.
+	 */
+	void wakeup() {
+		selector.wakeup();
+	}
+
+	/**
+	 * Stops the engine. All connections are closed by the engine's thread
+	 * before it exits.
+	 */
+	void shutdown() {
+		shutdown = true;
+		selector.wakeup();
+		synchronized (pending) {
+			for (Iterator i = pending.iterator(); i.hasNext();) {
+				ConnectionInfo info = (ConnectionInfo) i.next();
+				if (info.isChannel()) {
+					try {
+						info.getChannel().close();
+					} catch (IOException e) {
+						// ignored
+					}
+				}
+			}
+			pending.clear();
+		}
+	}
+
+	boolean isShutdown() {
+		return shutdown;
+	}
+
+	SelectionKey register(SelectableChannel channel, int ops,
+			PeerConnection connection) throws IOException {
+		channel.configureBlocking(false);
+		return channel.register(selector, ops, connection);
+	}
+
+	/**
+	 * Marks the connection as waiting for the speed limits. The engine will
+	 * resume it within {@link #THROTTLE_RETRY} milliseconds.
+	 */
+	void throttle(PeerConnection connection) {
+		if (!throttled.contains(connection)) {
+			if (throttled.isEmpty()) {
+				nextThrottleRetry = System.currentTimeMillis() + THROTTLE_RETRY;
+			}
+			throttled.add(connection);
+		}
+	}
+
+	private void registerPending() {
+		while (true) {
+			ConnectionInfo info;
+			synchronized (pending) {
+				if (pending.isEmpty()) {
+					return;
+				}
+				info = (ConnectionInfo) pending.removeFirst();
+			}
+			pool.createConnection(info, this);
+		}
+	}
+
+	private void processDispatched() {
+		PeerConnection[] connections;
+		synchronized (dispatched) {
+			if (dispatched.isEmpty()) {
+				return;
+			}
+			connections = (PeerConnection[]) dispatched
+					.toArray(new PeerConnection[dispatched.size()]);
+			dispatched.clear();
+		}
+		for (int i = 0; i < connections.length; i++) {
+			try {
+				connections[i].processQueued();
+			} catch (RuntimeException e) {
+				close(connections[i], e);
+			}
+		}
+	}
+
+	private void close(PeerConnection connection, Exception e) {
+		if (e instanceof IOException) {
+			String message = e.getMessage();
+			TorrentConfiguration.debug("The connection with " //$NON-NLS-1$
+					+ connection + " has been closed" //$NON-NLS-1$
+					+ (message == null ? "." : ": " + message)); //$NON-NLS-1$ //$NON-NLS-2$
+		} else {
+			// a misbehaving peer must not stop the other connections
+			TorrentConfiguration.debug("Closing the connection with " //$NON-NLS-1$
+					+ connection + " - " + e); //$NON-NLS-1$
+		}
+		connection.close();
+	}
+
+	private void resumeThrottled() {
+		PeerConnection[] connections = (PeerConnection[]) throttled
+				.toArray(new PeerConnection[throttled.size()]);
+		throttled.clear();
+		for (int i = 0; i < connections.length; i++) {
+			connections[i].resume();
+		}
+	}
+
+	private long getTimeout(long now) {
+		long next = nextTick;
+		if (!throttled.isEmpty() && nextThrottleRetry < next) {
+			next = nextThrottleRetry;
+		}
+		return Math.max(1, next - now);
+	}
+
+	public void run() {
+		nextTick = System.currentTimeMillis() + TICK;
+		try {
+			while (!shutdown) {
+				registerPending();
+				processDispatched();
+				pool.flush();
+
+				long now = System.currentTimeMillis();
+				if (now >= nextTick) {
+					nextTick = now + TICK;
+					pool.tick(now);
+				}
+				if (!throttled.isEmpty() && now >= nextThrottleRetry) {
+					resumeThrottled();
+				}
+
+				selector.select(getTimeout(now));
+				if (shutdown) {
+					break;
+				}
+
+				for (Iterator i = selector.selectedKeys().iterator(); i
+						.hasNext();) {
+					SelectionKey key = (SelectionKey) i.next();
+					i.remove();
+					PeerConnection connection = (PeerConnection) key
+							.attachment();
+					try {
+						if (key.isValid() && key.isConnectable()) {
+							connection.finishConnect();
+						}
+						if (key.isValid() && key.isReadable()) {
+							connection.read();
+						}
+						if (key.isValid() && key.isWritable()) {
+							connection.write();
+						}
+					} catch (IOException e) {
+						close(connection, e);
+					} catch (RuntimeException e) {
+						close(connection, e);
+					}
+				}
+			}
+		} catch (IOException e) {
+			TorrentConfiguration.debug("The peer engine has failed: " //$NON-NLS-1$
+					+ e.getMessage());
+		} finally {
+			shutdown = true;
+			throttled.clear();
+			synchronized (dispatched) {
+				dispatched.clear();
+			}
+			pool.closeAll(this);
+			try {
+				selector.close();
+			} catch (IOException e) {
+				// ignored
+			}
+		}
+	}
+
+}
@@ -0,0 +1,393 @@
+/****************************************************************************
+ * Copyright (c) 2026 Composent, Inc. and others.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * Contributors:
+ *   Composent, Inc. - initial API and implementation
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *****************************************************************************/
+package org.eclipse.ecf.protocol.bittorrent.internal.net;
+
+import java.util.Arrays;
+import java.util.Vector;
+
+import org.eclipse.ecf.protocol.bittorrent.internal.torrent.Piece;
+
+/**
+ * Chooses the pieces that should be requested from peers. Pieces that have
+ * already been started are finished first, otherwise the rarest piece amongst
+ * the connected peers is started. The pieces of files with a high priority are
+ * always chosen before any other piece. Once every available piece has been
+ * started, the picker is in end-game mode and the blocks that are still
+ * outstanding may be requested from several peers at once.
+ * <p>
+ * The pieces that have not been started are kept in doubly linked lists, one
+ * for each priority and number of peers that have the piece, so a piece is
+ * chosen without looking at every piece of the torrent. A picker is not
+ * thread-safe, it is guarded by the lock of its {@link TorrentManager}.
+ * </p>
+ */
+class PiecePicker {
+
+	/**
+	 * The priority of a piece that should not be downloaded.
+	 */
+	static final int SKIP = -1;
+
+	static final int NORMAL = 0;
+
+	static final int HIGH = 1;
+
+	/**
+	 * The {@link Piece}s of the torrent.
+	 */
+	private final Vector pieces;
+
+	/**
+	 * The number of connected peers that have each piece.
+	 */
+	private final int[] availability;
+
+	private final int[] priorities;
+
+	/**
+	 * The pieces that have been downloaded and have passed the hash check.
+	 */
+	private final PieceSet completed;
+
+	/**
+	 * The pieces that still need to be downloaded.
+	 */
+	private final PieceSet wanted;
+
+	/**
+	 * The pieces that have had blocks requested or written but have not been
+	 * completed.
+	 */
+	private final PieceSet started;
+
+	private final int[] next;
+
+	private final int[] previous;
+
+	/**
+	 * The first and last pieces of the lists, indexed by the priority and then
+	 * by the availability of the pieces that they hold.
+	 */
+	private int[][] heads = new int[2][];
+
+	private int[][] tails = new int[2][];
+
+	/**
+	 * Indicates whether a piece is in one of the lists.
+	 */
+	private final boolean[] linked;
+
+	/**
+	 * The number of pieces that are in the lists.
+	 */
+	private int unstarted = 0;
+
+	/**
+	 * The number of pieces in the lists that no connected peer has.
+	 */
+	private int unavailable = 0;
+
+	PiecePicker(Vector pieces) {
+		this.pieces = pieces;
+		int size = pieces.size();
+		availability = new int[size];
+		priorities = new int[size];
+		completed = new PieceSet(size);
+		wanted = new PieceSet(size);
+		started = new PieceSet(size);
+		next = new int[size];
+		previous = new int[size];
+		linked = new boolean[size];
+		for (int i = 0; i < heads.length; i++) {
+			heads[i] = new int[0];
+			tails[i] = new int[0];
+		}
+		for (int i = 0; i < size; i++) {
+			update(i);
+		}
+	}
+
+	/**
+	 * Sets whether the given piece has been completed. A piece that is no
+	 * longer completed, or one that has failed its hash check, has to be
+	 * started again.
+	 *
+	 * @param piece
+	 *            the number of the piece
+	 * @param isCompleted
+	 *            <code>true</code> if the piece has been completed
+	 */
+	void setCompleted(int piece, boolean isCompleted) {
+		if (isCompleted) {
+			completed.set(piece);
+		} else {
+			completed.clear(piece);
+		}
+		started.clear(piece);
+		update(piece);
+	}
+
+	/**
+	 * Marks a piece as having some of its data written.
+	 *
+	 * @param piece
+	 *            the number of the piece
+	 */
+	void setStarted(int piece) {
+		if (!completed.get(piece) && started.set(piece)) {
+			update(piece);
+		}
+	}
+
+	/**
+	 * Sets the priority of a piece.
+	 *
+	 * @param piece
+	 *            the number of the piece
+	 * @param priority
+	 *            one of {@link #SKIP}, {@link #NORMAL}, or {@link #HIGH}
+	 */
+	void setPriority(int piece, int priority) {
+		if (priorities[piece] != priority) {
+			if (linked[piece]) {
+				unlink(piece);
+			}
+			priorities[piece] = priority;
+			update(piece);
+		}
+	}
+
+	/**
+	 * Notes that a peer has the given piece.
+	 *
+	 * @param piece
+	 *            the number of the piece
+	 */
+	void addAvailability(int piece) {
+		boolean isLinked = linked[piece];
+		if (isLinked) {
+			unlink(piece);
+		}
+		availability[piece]++;
+		if (isLinked) {
+			link(piece);
+		}
+	}
+
+	void addAvailability(PieceSet peerPieces) {
+		for (int i = peerPieces.next(0); i != -1; i = peerPieces.next(i + 1)) {
+			addAvailability(i);
+		}
+	}
+
+	/**
+	 * Notes that a peer that had the given pieces has either disconnected or
+	 * has sent a new bitfield.
+	 *
+	 * @param peerPieces
+	 *            the pieces that the peer had
+	 */
+	void removeAvailability(PieceSet peerPieces) {
+		for (int i = peerPieces.next(0); i != -1; i = peerPieces.next(i + 1)) {
+			if (availability[i] > 0) {
+				boolean isLinked = linked[i];
+				if (isLinked) {
+					unlink(i);
+				}
+				availability[i]--;
+				if (isLinked) {
+					link(i);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks whether a peer has a piece that still needs to be downloaded.
+	 *
+	 * @param peerPieces
+	 *            the pieces that the peer has
+	 * @return <code>true</code> if this client should be interested in the
+	 *         peer
+	 */
+	boolean isInterested(PieceSet peerPieces) {
+		return wanted.intersects(peerPieces);
+	}
+
+	/**
+	 * Returns whether every wanted piece that any connected peer has has been
+	 * started.
+	 *
+	 * @return <code>true</code> if the remaining blocks may be requested from
+	 *         more than one peer
+	 */
+	boolean isEndGame() {
+		return unstarted == unavailable && wanted.count() != 0;
+	}
+
+	/**
+	 * Chooses the piece that should be requested from a peer.
+	 *
+	 * @param peerPieces
+	 *            the pieces that the peer has
+	 * @return the piece to request blocks of, or <code>null</code> if the
+	 *         peer has nothing that should be requested from it
+	 */
+	Piece pick(PieceSet peerPieces) {
+		for (int priority = HIGH; priority >= NORMAL; priority--) {
+			Piece piece = pickStarted(peerPieces, priority);
+			if (piece != null) {
+				return piece;
+			}
+			int number = pickRarest(peerPieces, priority);
+			if (number != -1) {
+				unlink(number);
+				started.set(number);
+				return (Piece) pieces.get(number);
+			}
+		}
+		return isEndGame() ? pickOutstanding(peerPieces) : null;
+	}
+
+	private Piece pickStarted(PieceSet peerPieces, int priority) {
+		for (int i = started.next(0); i != -1; i = started.next(i + 1)) {
+			if (priorities[i] == priority && peerPieces.get(i)) {
+				Piece piece = (Piece) pieces.get(i);
+				if (piece.hasUnrequestedBlocks()) {
+					return piece;
+				}
+			}
+		}
+		return null;
+	}
+
+	private int pickRarest(PieceSet peerPieces, int priority) {
+		int[] first = heads[priority];
+		// a piece that the peer has is available from at least one peer
+		for (int count = 1; count < first.length; count++) {
+			for (int i = first[count]; i != -1; i = next[i]) {
+				if (peerPieces.get(i)) {
+					return i;
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Chooses a started piece that the peer has, starting at a random piece so
+	 * that the peers are not all asked for the same blocks.
+	 */
+	private Piece pickOutstanding(PieceSet peerPieces) {
+		int from = ConnectionPool.RANDOM.nextInt(started.size());
+		for (int i = started.next(from); i != -1; i = started.next(i + 1)) {
+			if (priorities[i] != SKIP && peerPieces.get(i)) {
+				return (Piece) pieces.get(i);
+			}
+		}
+		for (int i = started.next(0); i != -1 && i < from; i = started
+				.next(i + 1)) {
+			if (priorities[i] != SKIP && peerPieces.get(i)) {
+				return (Piece) pieces.get(i);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Adds or removes a piece from the lists and the wanted pieces according
+	 * to its current state.
+	 */
+	private void update(int piece) {
+		boolean isWanted = !completed.get(piece) && priorities[piece] != SKIP;
+		if (isWanted) {
+			wanted.set(piece);
+		} else {
+			wanted.clear(piece);
+		}
+		boolean shouldLink = isWanted && !started.get(piece);
+		if (shouldLink && !linked[piece]) {
+			link(piece);
+		} else if (!shouldLink && linked[piece]) {
+			unlink(piece);
+		}
+	}
+
+	private void link(int piece) {
+		int priority = priorities[piece];
+		int count = availability[piece];
+		if (count >= heads[priority].length) {
+			grow(count + 1);
+		}
+		int[] first = heads[priority];
+		int[] last = tails[priority];
+		// add to either end so that pieces that are just as rare are chosen
+		// in a random order
+		if (first[count] == -1) {
+			previous[piece] = -1;
+			next[piece] = -1;
+			first[count] = piece;
+			last[count] = piece;
+		} else if (ConnectionPool.RANDOM.nextBoolean()) {
+			previous[piece] = -1;
+			next[piece] = first[count];
+			previous[first[count]] = piece;
+			first[count] = piece;
+		} else {
+			next[piece] = -1;
+			previous[piece] = last[count];
+			next[last[count]] = piece;
+			last[count] = piece;
+		}
+		linked[piece] = true;
+		unstarted++;
+		if (count == 0) {
+			unavailable++;
+		}
+	}
+
+	private void unlink(int piece) {
+		int priority = priorities[piece];
+		int count = availability[piece];
+		if (previous[piece] == -1) {
+			heads[priority][count] = next[piece];
+		} else {
+			next[previous[piece]] = next[piece];
+		}
+		if (next[piece] == -1) {
+			tails[priority][count] = previous[piece];
+		} else {
+			previous[next[piece]] = previous[piece];
+		}
+		linked[piece] = false;
+		unstarted--;
+		if (count == 0) {
+			unavailable--;
+		}
+	}
+
+	private void grow(int length) {
+		length = Math.max(length, heads[0].length * 2);
+		for (int i = 0; i < heads.length; i++) {
+			int[] first = new int[length];
+			int[] last = new int[length];
+			Arrays.fill(first, -1);
+			Arrays.fill(last, -1);
+			System.arraycopy(heads[i], 0, first, 0, heads[i].length);
+			System.arraycopy(tails[i], 0, last, 0, tails[i].length);
+			heads[i] = first;
+			tails[i] = last;
+		}
+	}
+
+}
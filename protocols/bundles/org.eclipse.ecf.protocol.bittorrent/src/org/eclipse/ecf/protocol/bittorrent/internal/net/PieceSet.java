@@ -0,0 +1,137 @@
+/****************************************************************************
+ * Copyright (c) 2026 Composent, Inc. and others.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * Contributors:
+ *   Composent, Inc. - initial API and implementation
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *****************************************************************************/
+package org.eclipse.ecf.protocol.bittorrent.internal.net;
+
+import java.util.Arrays;
+
+/**
+ * A set of piece numbers that is stored as a bitset of <code>long</code>s so
+ * that two sets can be compared a word at a time.
+ */
+class PieceSet {
+
+	private final long[] words;
+
+	private final int size;
+
+	/**
+	 * The number of pieces that are in this set.
+	 */
+	private int count = 0;
+
+	/**
+	 * Creates an empty set.
+	 *
+	 * @param size
+	 *            the number of pieces of the torrent
+	 */
+	PieceSet(int size) {
+		this.size = size;
+		words = new long[(size + 63) >> 6];
+	}
+
+	boolean get(int piece) {
+		return (words[piece >> 6] & (1L << piece)) != 0;
+	}
+
+	/**
+	 * Adds a piece to this set.
+	 *
+	 * @param piece
+	 *            the number of the piece
+	 * @return <code>true</code> if the piece was not already in this set
+	 */
+	boolean set(int piece) {
+		long bit = 1L << piece;
+		if ((words[piece >> 6] & bit) != 0) {
+			return false;
+		}
+		words[piece >> 6] |= bit;
+		count++;
+		return true;
+	}
+
+	/**
+	 * Removes a piece from this set.
+	 *
+	 * @param piece
+	 *            the number of the piece
+	 * @return <code>true</code> if the piece was in this set
+	 */
+	boolean clear(int piece) {
+		long bit = 1L << piece;
+		if ((words[piece >> 6] & bit) == 0) {
+			return false;
+		}
+		words[piece >> 6] &= ~bit;
+		count--;
+		return true;
+	}
+
+	void clear() {
+		Arrays.fill(words, 0);
+		count = 0;
+	}
+
+	/**
+	 * Retrieves the next piece in this set.
+	 *
+	 * @param from
+	 *            the number of the piece to start searching from
+	 * @return the number of the first piece that is in this set and not less
+	 *         than <code>from</code>, or <code>-1</code> if there is none
+	 */
+	int next(int from) {
+		if (from >= size) {
+			return -1;
+		}
+		int index = from >> 6;
+		long word = words[index] & (-1L << from);
+		while (word == 0) {
+			if (++index == words.length) {
+				return -1;
+			}
+			word = words[index];
+		}
+		return (index << 6) + Long.numberOfTrailingZeros(word);
+	}
+
+	/**
+	 * Checks whether this set and the given set have a piece in common.
+	 *
+	 * @param set
+	 *            the set to compare with, it must be of the same size
+	 * @return <code>true</code> if a piece is in both sets
+	 */
+	boolean intersects(PieceSet set) {
+		for (int i = 0; i < words.length; i++) {
+			if ((words[i] & set.words[i]) != 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	int count() {
+		return count;
+	}
+
+	int size() {
+		return size;
+	}
+
+	boolean isFull() {
+		return count == size;
+	}
+
+}
@@ -23,13 +23,9 @@ import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URL;
 import java.net.URLEncoder;
-import java.nio.ByteBuffer;
-import java.nio.channels.ClosedByInterruptException;
-import java.nio.channels.FileChannel;
 import java.nio.channels.SocketChannel;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Properties;
 import java.util.Vector;
@@ -45,10 +41,10 @@ import org.eclipse.ecf.protocol.bittorrent.TorrentFile;
 import org.eclipse.ecf.protocol.bittorrent.TorrentServer;
 import org.eclipse.ecf.protocol.bittorrent.internal.encode.BEncodedDictionary;
 import org.eclipse.ecf.protocol.bittorrent.internal.encode.Decode;
-import org.eclipse.ecf.protocol.bittorrent.internal.encode.Encode;
 import org.eclipse.ecf.protocol.bittorrent.internal.torrent.DataFile;
 import org.eclipse.ecf.protocol.bittorrent.internal.torrent.Piece;
 import org.eclipse.ecf.protocol.bittorrent.internal.torrent.PieceState;
+import org.eclipse.ecf.protocol.bittorrent.internal.torrent.PieceVerifier;
 
 /**
  * The <code>TorrentManager</code> class is used to handle all of the
@@ -60,7 +56,6 @@ public class TorrentManager {
 
 	private static final String UP_SPEED_KEY = "up.speed"; //$NON-NLS-1$
 
-	private static MessageDigest shaDigest;
 
 	private static File statePath;
 
@@ -72,6 +67,12 @@ public class TorrentManager {
 	 */
 	private final DataFile[] files;
 
+	/**
+	 * The verifier for the pieces that are completed while exchanging with
+	 * peers. It is only used while holding the lock of this manager.
+	 */
+	private final PieceVerifier verifier;
+
 	private final Vector stateListeners;
 
 	private final Vector progressListeners;
@@ -100,16 +101,10 @@ public class TorrentManager {
 	private final Vector pieces;
 
 	/**
-	 * A collection of {@link Piece}s that has had a portion of its bytes
-	 * completed.
-	 */
-	private final Vector incompletePieces;
-
-	/**
-	 * An integer array that stores the number of peers that possesses a
-	 * specific piece. This is used to determine which piece is a rare piece.
+	 * Chooses the pieces to request from peers based on how rare they are
+	 * amongst the connected peers.
 	 */
-	private final int[] pieceAvailability;
+	private final PiecePicker picker;
 
 	private final byte[] bitfield;
 
@@ -119,12 +114,6 @@ public class TorrentManager {
 	 */
 	private final boolean[] hasPiece;
 
-	private final boolean[] priorityPieces;
-
-	private final boolean[] interestedPieces;
-
-	private final boolean[] uninterestedPieces;
-
 	private final String infoHash;
 
 	/**
@@ -163,6 +152,8 @@ public class TorrentManager {
 
 	private HashCheckThread hashCheckThread;
 
+	private volatile DiskThread diskThread;
+
 	private PieceState[] states;
 
 	/**
@@ -261,22 +252,10 @@ public class TorrentManager {
 	/**
 	 * Indicates whether the user is deciding to not download some files.
 	 */
-	private boolean isSelective = false;
-
-	private boolean isPrioritizing = false;
-
 	private boolean isWaitingToStart = false;
 
 	private boolean isHashChecking = false;
 
-	static {
-		try {
-			shaDigest = MessageDigest.getInstance("SHA-1"); //$NON-NLS-1$
-		} catch (NoSuchAlgorithmException e) {
-			throw new RuntimeException(e);
-		}
-	}
-
 	public static void setStatePath(File path) {
 		statePath = path;
 	}
@@ -334,11 +313,7 @@ public class TorrentManager {
 		bitfield = new byte[numPieces % 8 != 0 ? (numPieces / 8) + 1
 				: (numPieces / 8)];
 		hasPiece = new boolean[numPieces];
-		pieceAvailability = new int[numPieces];
-		priorityPieces = new boolean[numPieces];
-		interestedPieces = new boolean[numPieces];
-		uninterestedPieces = new boolean[numPieces];
-		incompletePieces = new Vector();
+		picker = new PiecePicker(pieces);
 		stateListeners = new Vector();
 		errorListeners = new Vector();
 		pieceListeners = new Vector();
@@ -370,8 +345,8 @@ public class TorrentManager {
 			Piece piece = (Piece) pieces.get(i);
 			piece.setLength(pieceLength);
 		}
-		((Piece) pieces.get(numPieces - 1))
-				.setLength((int) (total % pieceLength));
+		((Piece) pieces.get(numPieces - 1)).setLength((int) (total - (long) (numPieces - 1) * pieceLength));
+		verifier = new PieceVerifier(files, torrent.getPieces());
 
 		checkFile();
 		setPieces();
@@ -532,36 +507,21 @@ public class TorrentManager {
 		properties.store(new FileOutputStream(propertiesFile), null);
 	}
 
+	/**
+	 * Encodes {@link #hasPiece} into {@link #bitfield}. The high bit of the
+	 * first byte corresponds to the first piece.
+	 */
 	private void updateBitfield() {
-		int count = 0;
-		int size = hasPiece.length;
-		// iterate over all the pieces by multiples of 8
-		char[] bits = new char[8];
-		for (int i = 0; i < size; i += 8) {
-			Arrays.fill(bits, '0');
-			// iterate over the 8 (or less) pieces within this segment
-			for (int j = i; j < (i + 8) && j < size; j++) {
-				// if we have this piece, flag it so
-				if (hasPiece[j]) {
-					bits[j - i] = '1';
-				}
+		Arrays.fill(bitfield, (byte) 0);
+		for (int i = 0; i < hasPiece.length; i++) {
+			if (hasPiece[i]) {
+				updateBitfield(i);
 			}
-			// encode the binary string into the bitfield
-			bitfield[count] = Encode.encodeForBitfield(bits);
-			count++;
 		}
 	}
 
 	private void updateBitfield(int piece) {
-		int offset = piece / 8;
-		char[] bits = new char[8];
-		Arrays.fill(bits, '0');
-		for (int i = offset; i < (offset + 8) && i < hasPiece.length; i++) {
-			if (hasPiece[i]) {
-				bits[i - offset] = '1';
-			}
-		}
-		bitfield[offset] = Encode.encodeForBitfield(bits);
+		bitfield[piece >> 3] |= (byte) (0x80 >>> (piece & 7));
 	}
 
 	/**
@@ -578,13 +538,18 @@ public class TorrentManager {
 			isWaitingToStart = true;
 			return;
 		} else if (!torrentState.exists()) {
-			startHashCheck();
+			// set before the check starts so that a quick check still starts
+			// the torrent once it completes
 			isWaitingToStart = true;
+			startHashCheck();
 			return;
 		} else if (running) {
 			return;
 		}
 		isWaitingToStart = false;
+		diskThread = new DiskThread();
+		diskThread.start();
+		connectionPool.open();
 		running = true;
 		speedMonitoringThread = new SpeedMonitoringThread();
 		trackerThread = new TrackerThread();
@@ -620,6 +585,10 @@ public class TorrentManager {
 		speedMonitoringThread = null;
 		running = false;
 		connectionPool.close();
+		// the blocks that have been received are written before the state is
+		// stored
+		diskThread.finish();
+		diskThread = null;
 		queryTracker("stopped"); //$NON-NLS-1$
 		fireStateChangedEvent(ITorrentStateListener.STOPPED);
 		store();
@@ -647,11 +616,9 @@ public class TorrentManager {
 		remaining = total;
 		seeders = -1;
 		peers = -1;
-		Arrays.fill(priorityPieces, false);
-		Arrays.fill(interestedPieces, false);
-		Arrays.fill(uninterestedPieces, false);
 		for (int i = 0; i < pieces.size(); i++) {
 			((Piece) pieces.get(i)).reset();
+			picker.setPriority(i, PiecePicker.NORMAL);
 		}
 	}
 
@@ -804,9 +771,7 @@ public class TorrentManager {
 	 */
 	private boolean hashCheck(int piece) throws IllegalArgumentException,
 			IOException {
-		byte[] data = getPiece(piece);
-		return data == null ? false : torrent.getPieces()[piece]
-				.equals(new String(shaDigest.digest(data), "ISO-8859-1")); //$NON-NLS-1$
+		return verifier.verify(piece);
 	}
 
 	private void saveState() throws IOException {
@@ -841,22 +806,28 @@ public class TorrentManager {
 	 *             state information, performing a hash check, or querying the
 	 *             tracker
 	 */
-	synchronized void write(int number, int index, byte[] data, int offset,
-			int length) throws IOException {
+	void write(int number, int index, byte[] data, int offset, int length)
+			throws IOException {
 		Piece piece = (Piece) pieces.get(number);
-		if (!hasPiece[number] && piece.write(index, data, offset, length)) {
+		synchronized (this) {
+			if (hasPiece[number]) {
+				return;
+			}
+		}
+		// only the disk thread writes, so the lock that the peer engine needs
+		// is not held while the files are written to and the piece is checked
+		if (!piece.write(index, data, offset, length)) {
+			return;
+		}
+		synchronized (this) {
 			remaining -= length;
 			downloaded += length;
-			saveState();
-			fireBlockDownloadedEvent(number, index, length);
-			if (!incompletePieces.contains(piece)) {
-				incompletePieces.add(piece);
-			}
-
-			if (piece.isComplete()) {
-				incompletePieces.remove(piece);
-				checkCompletedPiece(piece, number);
-			}
+			picker.setStarted(number);
+		}
+		saveState();
+		fireBlockDownloadedEvent(number, index, length);
+		if (piece.isComplete()) {
+			checkCompletedPiece(piece, number);
 		}
 	}
 
@@ -865,153 +836,105 @@ public class TorrentManager {
 		if (hashCheck(number)) {
 			TorrentConfiguration
 					.debug("Piece " + number + " passed hash check"); //$NON-NLS-1$ //$NON-NLS-2$
-			hasPiece[number] = true;
-			updateBitfield(number);
-			firePieceCompletedEvent(++completedPieces);
-			connectionPool.queueHaveMessage(number);
-			for (int i = 0; i < hasPiece.length; i++) {
-				if (!hasPiece[i]) {
-					return;
+			int completed;
+			boolean finished = true;
+			synchronized (this) {
+				hasPiece[number] = true;
+				picker.setCompleted(number, true);
+				updateBitfield(number);
+				completed = ++completedPieces;
+				for (int i = 0; i < hasPiece.length; i++) {
+					if (!hasPiece[i]) {
+						finished = false;
+						break;
+					}
+				}
+				if (finished) {
+					isCompleted = true;
 				}
 			}
+			firePieceCompletedEvent(completed);
+			connectionPool.queueHaveMessage(number);
+			if (!finished) {
+				return;
+			}
 
-			isCompleted = true;
 			fireStateChangedEvent(ITorrentStateListener.FINISHED);
 			connectionPool.disconnectSeeds();
-			// let the tracker know that the download has completed
-			queryTracker("completed"); //$NON-NLS-1$
+			// let the tracker know that the download has completed without
+			// blocking the peer engine's thread
+			new Thread("Tracker Thread - " + torrent.getName()) { //$NON-NLS-1$
+				public void run() {
+					try {
+						queryTracker("completed"); //$NON-NLS-1$
+					} catch (IOException e) {
+						TorrentConfiguration.debug("The tracker could not be informed of the completion - " //$NON-NLS-1$
+								+ e.getMessage());
+					}
+				}
+			}.start();
 		} else {
 			TorrentConfiguration.debug("Piece " + number //$NON-NLS-1$
 					+ " has failed the hash check"); //$NON-NLS-1$
-			piece.reset();
 			int pieceLength = piece.getLength();
-			discarded += pieceLength;
-			remaining += (remaining == total) ? 0 : pieceLength;
+			synchronized (this) {
+				piece.reset();
+				picker.setCompleted(number, false);
+				discarded += pieceLength;
+				remaining += (remaining == total) ? 0 : pieceLength;
+			}
 			firePieceDiscardEvent(number, pieceLength);
 		}
 	}
 
-	synchronized Piece request(boolean[] peerPieces) {
-		if (isCompleted) {
-			return null;
-		}
-
-		Piece request = null;
-		if (!isSelective) {
-			request = request(hasPiece, peerPieces);
-		} else if (isPrioritizing) {
-			request = request(priorityPieces, peerPieces);
-			if (request == null) {
-				request = request(interestedPieces, peerPieces);
-			}
-		} else {
-			request = request(interestedPieces, peerPieces);
-		}
-		return request;
+	/**
+	 * Chooses the piece that should be requested from a peer.
+	 * 
+	 * @param peerPieces
+	 *            the pieces that the peer has
+	 * @return the piece to request blocks of, or <code>null</code> if nothing
+	 *         should be requested from the peer at the moment
+	 */
+	synchronized Piece request(PieceSet peerPieces) {
+		return isCompleted ? null : picker.pick(peerPieces);
 	}
 
-	private Piece request(boolean[] compare, boolean[] peerPieces) {
-		boolean isInterested = false;
-		if (compare == hasPiece) {
-			for (int i = 0; i < peerPieces.length; i++) {
-				if (!hasPiece[i] && peerPieces[i]) {
-					isInterested = true;
-					break;
-				}
-			}
-		} else {
-			for (int i = 0; i < peerPieces.length; i++) {
-				if (compare[i] && peerPieces[i]) {
-					isInterested = true;
-					break;
-				}
-			}
-		}
-
-		if (!isInterested) {
-			return null;
-		}
-
-		boolean hasIncompletePiece = false;
-		for (int i = 0; i < incompletePieces.size(); i++) {
-			Piece piece = (Piece) incompletePieces.get(i);
-			if (peerPieces[piece.getNumber()]) {
-				hasIncompletePiece = true;
-				break;
-			}
-		}
-
-		if (hasIncompletePiece) {
-			if (incompletePieces.size() == 0) {
-				return hasPiece == compare ? getRarePiece(peerPieces)
-						: getRarePiece(compare, peerPieces);
-			}
-			Piece piece = (Piece) incompletePieces.get(ConnectionPool.RANDOM
-					.nextInt(incompletePieces.size()));
-			while (!peerPieces[piece.getNumber()]) {
-				if (isCompleted) {
-					return null;
-				} else if (incompletePieces.size() == 0) {
-					return hasPiece == compare ? getRarePiece(peerPieces)
-							: getRarePiece(compare, peerPieces);
-				}
-				piece = (Piece) incompletePieces.get(ConnectionPool.RANDOM
-						.nextInt(incompletePieces.size()));
-			}
-			return piece;
-		} else {
-			return hasPiece == compare ? getRarePiece(peerPieces)
-					: getRarePiece(compare, peerPieces);
-		}
+	/**
+	 * Checks whether a peer has any of the pieces that still need to be
+	 * downloaded.
+	 * 
+	 * @param peerPieces
+	 *            the pieces that the peer has
+	 * @return <code>true</code> if the peer has a wanted piece
+	 */
+	synchronized boolean isInterested(PieceSet peerPieces) {
+		return picker.isInterested(peerPieces);
 	}
 
-	private Piece getRarePiece(boolean[] peerPieces) {
-		int min = pieceAvailability[0];
-		for (int i = 1; i < peerPieces.length; i++) {
-			if (!hasPiece[i] && peerPieces[i] && min > pieceAvailability[i]) {
-				min = pieceAvailability[i];
-			}
-		}
-
-		int size = pieces.size();
-		int pieceNumber = ConnectionPool.RANDOM.nextInt(size);
-		while (hasPiece[pieceNumber] || pieceAvailability[pieceNumber] != min
-				|| !peerPieces[pieceNumber]) {
-			if (isCompleted) {
-				return null;
-			}
-			pieceNumber = ConnectionPool.RANDOM.nextInt(size);
-		}
-		return (Piece) pieces.get(pieceNumber);
+	synchronized boolean isEndGame() {
+		return picker.isEndGame();
 	}
 
-	private Piece getRarePiece(boolean[] compare, boolean[] peerPieces) {
-		int min = pieceAvailability[0];
-		for (int i = 1; i < peerPieces.length; i++) {
-			if (!hasPiece[i] && compare[i] && peerPieces[i]
-					&& min > pieceAvailability[i]) {
-				min = pieceAvailability[i];
-			}
-		}
-
-		int size = pieces.size();
-		int pieceNumber = ConnectionPool.RANDOM.nextInt(size);
-		while (hasPiece[pieceNumber] || pieceAvailability[pieceNumber] != min
-				|| !compare[pieceNumber] || !peerPieces[pieceNumber]) {
-			if (isCompleted) {
-				return null;
-			}
-			pieceNumber = ConnectionPool.RANDOM.nextInt(size);
-		}
-		return (Piece) pieces.get(pieceNumber);
+	/**
+	 * Allows a block that had been requested from a peer to be requested from
+	 * another peer. This is called when the peer chokes this client or when
+	 * the connection is closed before the block has been received.
+	 * 
+	 * @param piece
+	 *            the number of the piece
+	 * @param index
+	 *            the index within the piece that the block starts at
+	 */
+	void cancelRequest(int piece, int index) {
+		((Piece) pieces.get(piece)).cancelRequest(index);
 	}
 
 	String getPeerID() {
 		return peerID;
 	}
 
-	byte[] getBitfield() {
-		return bitfield;
+	synchronized byte[] getBitfield() {
+		return (byte[]) bitfield.clone();
 	}
 
 	/**
@@ -1022,29 +945,30 @@ public class TorrentManager {
 	 * @param piece
 	 *            the number of the piece
 	 */
-	void updatePieceAvailability(int piece) {
-		pieceAvailability[piece]++;
+	synchronized void updatePieceAvailability(int piece) {
+		picker.addAvailability(piece);
 	}
 
-	void addPieceAvailability(boolean[] peerPieces) {
-		if (peerPieces.length != pieceAvailability.length) {
-			throw new IllegalArgumentException("The length of the array is not " + pieceAvailability.length); //$NON-NLS-1$
-		}
-		for (int i = 0; i < pieceAvailability.length; i++) {
-			if (peerPieces[i]) {
-				pieceAvailability[i]++;
-			}
-		}
+	synchronized void addPieceAvailability(PieceSet peerPieces) {
+		picker.addAvailability(peerPieces);
 	}
 
-	void removePieceAvailability(boolean[] peerPieces) {
-		if (peerPieces.length != pieceAvailability.length) {
-			throw new IllegalArgumentException("The length of the array is not " + pieceAvailability.length); //$NON-NLS-1$
-		}
-		for (int i = 0; i < pieceAvailability.length; i++) {
-			if (peerPieces[i]) {
-				pieceAvailability[i]--;
-			}
+	synchronized void removePieceAvailability(PieceSet peerPieces) {
+		picker.removeAvailability(peerPieces);
+	}
+
+	/**
+	 * Queues up a task that reads from or writes to the local files so that
+	 * it is run by the disk thread instead of the peer engine's thread. The
+	 * task is dropped if the torrent is not running.
+	 * 
+	 * @param task
+	 *            the task to run
+	 */
+	void queueDiskTask(Runnable task) {
+		DiskThread thread = diskThread;
+		if (thread != null) {
+			thread.queue(task);
 		}
 	}
 
@@ -1082,39 +1006,23 @@ public class TorrentManager {
 			throw new IllegalArgumentException("The provided array should be of length " + files.length); //$NON-NLS-1$
 		}
 
+		// a piece that is shared by several files takes the highest priority
+		// of those files
+		int[] priorities = new int[pieces.size()];
+		Arrays.fill(priorities, PiecePicker.SKIP);
 		for (int i = 0; i < downloadChoices.length; i++) {
-			int[] pieces = files[i].getPieces();
-			for (int j = 0; j < pieces.length; j++) {
-				if (downloadChoices[i] > 0) {
-					priorityPieces[j] = true;
-				} else if (downloadChoices[i] == 0) {
-					interestedPieces[j] = true;
-				} else {
-					uninterestedPieces[j] = uninterestedPieces[j] || false;
-				}
-			}
-		}
-
-		if (isSelective) {
-			return;
-		}
-
-		for (int i = 0; i < downloadChoices.length; i++) {
-			if (downloadChoices[i] > 0) {
-				isPrioritizing = true;
-				break;
+			int priority = downloadChoices[i] > 0 ? PiecePicker.HIGH
+					: downloadChoices[i] == 0 ? PiecePicker.NORMAL
+							: PiecePicker.SKIP;
+			int[] filePieces = files[i].getPieces();
+			for (int j = 0; j < filePieces.length; j++) {
+				priorities[filePieces[j]] = Math.max(
+						priorities[filePieces[j]], priority);
 			}
 		}
-
-		for (int i = 0; i < downloadChoices.length; i++) {
-			for (int j = i + 1; j < downloadChoices.length; j++) {
-				if (downloadChoices[i] != downloadChoices[j]) {
-					isSelective = true;
-					return;
-				}
-			}
+		for (int i = 0; i < priorities.length; i++) {
+			picker.setPriority(i, priorities[i]);
 		}
-		isSelective = false;
 	}
 
 	public void setMaxDownloadSpeed(long maximum) {
@@ -1489,9 +1397,12 @@ public class TorrentManager {
 			if (written == piece.getLength()) {
 				completedPieces++;
 				hasPiece[i] = true;
-				incompletePieces.remove(piece);
-			} else if (written != 0 && !incompletePieces.contains(piece)) {
-				incompletePieces.add(piece);
+				picker.setCompleted(i, true);
+			} else {
+				picker.setCompleted(i, false);
+				if (written != 0) {
+					picker.setStarted(i);
+				}
 			}
 		}
 		updateBitfield();
@@ -1504,10 +1415,25 @@ public class TorrentManager {
 		isCompleted = true;
 	}
 
+	/**
+	 * Checks all pieces of the torrent. The pieces are split into ranges that
+	 * are hashed in parallel by one {@link HashCheckWorker} per processor.
+	 * This thread only waits for the workers so that interrupting it does not
+	 * close the files' channels in the middle of a read.
+	 */
 	private class HashCheckThread extends Thread {
 
+		private final int rangeSize;
+
+		private int nextPiece = 0;
+
+		private volatile boolean cancelled = false;
+
+		private IOException failure;
+
 		private HashCheckThread() {
 			super("Hash Check Thread - " + torrent.getName()); //$NON-NLS-1$
+			rangeSize = PieceVerifier.getRangeSize(pieceLength);
 		}
 
 		private void cleanup() {
@@ -1515,92 +1441,200 @@ public class TorrentManager {
 			fireStateChangedEvent(ITorrentStateListener.STOPPED);
 		}
 
+		/**
+		 * Retrieves the next range of pieces that should be checked.
+		 * 
+		 * @return the numbers of the first and last piece of the range, or
+		 *         <code>null</code> if there are no more pieces to check
+		 */
+		synchronized int[] nextRange() {
+			if (cancelled || nextPiece == pieces.size()) {
+				return null;
+			}
+			int first = nextPiece;
+			nextPiece = Math.min(pieces.size(), first + rangeSize);
+			return new int[] { first, nextPiece - 1 };
+		}
+
+		synchronized void pieceChecked(int number, boolean passed) {
+			Piece piece = (Piece) pieces.get(number);
+			if (piece.isComplete()) {
+				completedPieces--;
+				hasPiece[number] = false;
+			}
+			remaining += piece.getWritten();
+			if (passed) {
+				piece.setAsCompleted();
+				hasPiece[number] = true;
+				completedPieces++;
+				remaining -= piece.getLength();
+			} else {
+				piece.reset();
+			}
+			synchronized (TorrentManager.this) {
+				picker.setCompleted(number, passed);
+			}
+			fireHashCheckedEvent(number);
+		}
+
+		synchronized void failed(IOException e) {
+			if (failure == null) {
+				failure = e;
+			}
+			cancelled = true;
+		}
+
 		public void run() {
-			try {
-				int read = 0;
-				int count = 0;
-				ByteBuffer buffer = ByteBuffer.allocate(pieceLength);
-				for (int i = 0; i < files.length; i++) {
-					FileChannel channel = files[i].getChannel();
-					while ((read += channel.read(buffer)) == pieceLength) {
-						if (isInterrupted()) {
-							cleanup();
-							return;
-						}
-						Piece piece = (Piece) pieces.get(count);
-						if (piece.isComplete()) {
-							completedPieces--;
-							hasPiece[i] = false;
-						}
-						remaining += piece.getWritten();
-						buffer.rewind();
-						if (torrent.getPieces()[count]
-								.equals(new String(shaDigest.digest(buffer
-										.array()), "ISO-8859-1"))) { //$NON-NLS-1$
-							piece.setAsCompleted();
-							hasPiece[count] = true;
-							completedPieces++;
-							remaining -= piece.getLength();
-						} else {
-							piece.reset();
-						}
-						incompletePieces.remove(piece);
-						fireHashCheckedEvent(count);
-						count++;
-						read = 0;
+			int ranges = (pieces.size() + rangeSize - 1) / rangeSize;
+			HashCheckWorker[] workers = new HashCheckWorker[Math.min(ranges,
+					Runtime.getRuntime().availableProcessors())];
+			for (int i = 0; i < workers.length; i++) {
+				workers[i] = new HashCheckWorker(this, i);
+				workers[i].start();
+			}
+
+			boolean interrupted = false;
+			for (int i = 0; i < workers.length; i++) {
+				while (workers[i].isAlive()) {
+					try {
+						workers[i].join();
+					} catch (InterruptedException e) {
+						// stop handing out pieces and wait for the workers to
+						// finish the ranges that they are checking
+						interrupted = true;
+						cancelled = true;
 					}
 				}
+			}
 
-				if (read > 0) {
-					if (isInterrupted()) {
-						cleanup();
-						return;
-					}
-					Piece piece = (Piece) pieces.get(count);
-					if (piece.isComplete()) {
-						completedPieces--;
-						hasPiece[count] = false;
-					}
-					remaining += piece.getWritten();
-					buffer.rewind();
-					shaDigest.update(buffer.array(), 0, read);
-					if (torrent.getPieces()[count].equals(new String(shaDigest
-							.digest(), "ISO-8859-1"))) { //$NON-NLS-1$
-						hasPiece[count] = true;
-						piece.setAsCompleted();
-						completedPieces++;
-						remaining -= piece.getLength();
-					} else {
-						piece.reset();
-					}
-					incompletePieces.remove(piece);
-					fireHashCheckedEvent(count);
+			try {
+				if (interrupted || isInterrupted()) {
+					cleanup();
+					saveState();
+					return;
+				} else if (failure != null) {
+					cleanup();
+					throw new RuntimeException(failure);
 				}
 
 				updateBitfield();
 				saveState();
-				if (isInterrupted()) {
-					cleanup();
-					return;
+			} catch (IOException e) {
+				cleanup();
+				throw new RuntimeException(e);
+			}
+			if (isInterrupted()) {
+				cleanup();
+				return;
+			}
+			isHashChecking = false;
+			if (isWaitingToStart) {
+				try {
+					TorrentManager.this.start();
+				} catch (IOException e) {
+					throw new RuntimeException(e);
 				}
-				isHashChecking = false;
-				if (isWaitingToStart) {
-					try {
-						TorrentManager.this.start();
-					} catch (IOException e) {
-						throw new RuntimeException(e);
+			} else {
+				fireStateChangedEvent(ITorrentStateListener.STOPPED);
+			}
+		}
+	}
+
+	private class HashCheckWorker extends Thread {
+
+		private final HashCheckThread check;
+
+		private HashCheckWorker(HashCheckThread check, int number) {
+			super("Hash Check Worker " + number + " - " + torrent.getName()); //$NON-NLS-1$ //$NON-NLS-2$
+			setDaemon(true);
+			this.check = check;
+		}
+
+		public void run() {
+			PieceVerifier verifier = new PieceVerifier(files, torrent
+					.getPieces());
+			boolean[] passed = new boolean[check.rangeSize];
+			try {
+				int[] range = check.nextRange();
+				while (range != null) {
+					verifier.verify(range[0], range[1], passed);
+					for (int i = range[0]; i <= range[1]; i++) {
+						check.pieceChecked(i, passed[i - range[0]]);
 					}
+					range = check.nextRange();
 				}
-			} catch (ClosedByInterruptException e) {
-				cleanup();
+			} catch (IOException e) {
+				check.failed(e);
+			}
+		}
+	}
+
+	/**
+	 * Runs the reads and writes of the blocks that are exchanged with peers
+	 * and the hash checks of the pieces that they complete, one at a time and
+	 * in the order they have been queued up.
+	 */
+	private class DiskThread extends Thread {
+
+		private final LinkedList tasks = new LinkedList();
+
+		private boolean finished = false;
+
+		private DiskThread() {
+			super("Disk Thread - " + torrent.getName()); //$NON-NLS-1$
+			setDaemon(true);
+		}
+
+		synchronized void queue(Runnable task) {
+			if (!finished) {
+				tasks.add(task);
+				notify();
+			}
+		}
+
+		/**
+		 * Runs the tasks that have already been queued up and waits for the
+		 * thread to exit.
+		 */
+		void finish() {
+			synchronized (this) {
+				finished = true;
+				notify();
+			}
+			boolean interrupted = false;
+			while (isAlive()) {
 				try {
-					saveState();
-				} catch (IOException ex) {
-					throw new RuntimeException(ex);
+					join();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		public void run() {
+			while (true) {
+				Runnable task;
+				synchronized (this) {
+					while (tasks.isEmpty()) {
+						if (finished) {
+							return;
+						}
+						try {
+							wait();
+						} catch (InterruptedException e) {
+							return;
+						}
+					}
+					task = (Runnable) tasks.removeFirst();
+				}
+				try {
+					task.run();
+				} catch (RuntimeException e) {
+					TorrentConfiguration.debug("A disk task has failed - " + e); //$NON-NLS-1$
 				}
-			} catch (IOException e) {
-				cleanup();
-				throw new RuntimeException(e);
 			}
 		}
 	}
@@ -15,11 +15,15 @@ package org.eclipse.ecf.protocol.bittorrent.internal.torrent;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 
 /**
  * A <code>DataFile</code> is a representation of a file that will be
- * downloaded by a torrent.
+ * downloaded by a torrent. All reads and writes are done at absolute positions
+ * of the file's channel so that pieces may be read and written by several
+ * threads at the same time.
  */
 public class DataFile {
 
@@ -28,6 +32,11 @@ public class DataFile {
 	 */
 	private RandomAccessFile file;
 
+	/**
+	 * The channel of {@link #file}.
+	 */
+	private final FileChannel channel;
+
 	/**
 	 * An array of integers that indicates the pieces of a torrent file that
 	 * this file represents.
@@ -35,9 +44,10 @@ public class DataFile {
 	private int[] pieces;
 
 	/**
-	 * The number of bytes that occupy a given piece
+	 * The positions within this file at which each of the pieces in
+	 * {@link #pieces} start.
 	 */
-	private int[] pieceLengths;
+	private long[] positions;
 
 	/**
 	 * The size of the file.
@@ -67,6 +77,7 @@ public class DataFile {
 			file.write(0);
 		}
 		this.length = length;
+		channel = file.getChannel();
 	}
 
 	/**
@@ -93,17 +104,17 @@ public class DataFile {
 
 		this.pieces = pieces;
 		int numPieces = pieces.length;
-		pieceLengths = new int[numPieces];
-		pieceLengths[0] = 0;
+		positions = new long[numPieces];
+		positions[0] = 0;
 		// if there is only one piece, the length has been set and there is no
 		// need to set anymore additional values
 		if (numPieces == 1) {
 			return;
 		}
 
-		pieceLengths[1] = initialLength;
+		positions[1] = initialLength;
 		for (int i = 2; i < numPieces; i++) {
-			pieceLengths[i] = pieceLengths[i - 1] + length;
+			positions[i] = positions[i - 1] + length;
 		}
 	}
 
@@ -143,29 +154,31 @@ public class DataFile {
 			throw new IllegalArgumentException();
 		}
 
-		int seek = pieceLengths[index] + offset;
-		if (seek >= this.length) {
+		long position = positions[index] + offset;
+		if (position >= this.length) {
 			throw new IllegalArgumentException("The seeking position cannot be greater than this file's length"); //$NON-NLS-1$
 		}
 
-		synchronized (file) {
-			// move to the specified position and write to the file
-			file.seek(seek);
-			// check to see if there's more data to available to write than how
-			// large this file actually holds
-			if (seek + data[1] > this.length) {
-				// since there is an excessive amount of data, just take the
-				// difference
-				int write = (int) (this.length - seek);
-				file.write(block, data[0], write);
-				data[0] += write;
-				data[1] -= write;
-				data[2] = write;
-				return data;
-			} else {
-				file.write(block, data[0], data[1]);
-				return null;
-			}
+		// check to see if there's more data to available to write than how
+		// large this file actually holds
+		if (position + data[1] > this.length) {
+			// since there is an excessive amount of data, just take the
+			// difference
+			int write = (int) (this.length - position);
+			write(ByteBuffer.wrap(block, data[0], write), position);
+			data[0] += write;
+			data[1] -= write;
+			data[2] = write;
+			return data;
+		} else {
+			write(ByteBuffer.wrap(block, data[0], data[1]), position);
+			return null;
+		}
+	}
+
+	private void write(ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
 		}
 	}
 
@@ -190,25 +203,75 @@ public class DataFile {
 			return null;
 		}
 
-		int dataLength = -1;
-		// if this is the last piece, retrieve the length by decrementing the
-		// length of this file and the starting length of the last piece
-		if (pieceLengths.length - 1 == index) {
-			dataLength = (int) (length - pieceLengths[index]);
-		} else {
-			// get the length by decrementing the length of the piece after it
-			// with the current piece
-			dataLength = pieceLengths[index + 1] - pieceLengths[index];
-		}
 		// create a new byte array to store the data so that it can be returned
-		byte[] data = new byte[dataLength];
-		synchronized (file) {
-			file.seek(pieceLengths[index]);
-			file.read(data, 0, dataLength);
+		byte[] data = new byte[getLength(index)];
+		ByteBuffer buffer = ByteBuffer.wrap(data);
+		long position = positions[index];
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position);
+			if (read == -1) {
+				break;
+			}
+			position += read;
 		}
 		return data;
 	}
 
+	/**
+	 * Maps a region of this file into memory for reading.
+	 * 
+	 * @param position
+	 *            the position within this file at which the region starts
+	 * @param size
+	 *            the size of the region in bytes
+	 * @return a read-only buffer of the region's contents
+	 * @throws IOException
+	 *             If an I/O error occurs while mapping the region
+	 */
+	public MappedByteBuffer map(long position, long size) throws IOException {
+		return channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+	}
+
+	/**
+	 * Retrieves the position within this file at which the data of the given
+	 * piece starts.
+	 * 
+	 * @param piece
+	 *            the number of the interested piece
+	 * @return the starting position of the piece's data, or <code>-1</code>
+	 *         if this file does not contain the specified piece
+	 */
+	public long getPosition(int piece) {
+		int index = indexOf(piece);
+		return index == -1 ? -1 : positions[index];
+	}
+
+	/**
+	 * Retrieves the number of bytes of the given piece that are stored within
+	 * this file.
+	 * 
+	 * @param piece
+	 *            the number of the interested piece
+	 * @return the amount of the piece's data that this file holds, or
+	 *         <code>0</code> if this file does not contain the specified
+	 *         piece
+	 */
+	public int getPieceLength(int piece) {
+		int index = indexOf(piece);
+		return index == -1 ? 0 : getLength(index);
+	}
+
+	private int getLength(int index) {
+		// if this is the last piece, retrieve the length by decrementing the
+		// length of this file and the starting position of the last piece
+		if (positions.length - 1 == index) {
+			return (int) (length - positions[index]);
+		}
+		// get the length by decrementing the position of the piece after it
+		// with the current piece
+		return (int) (positions[index + 1] - positions[index]);
+	}
+
 	/**
 	 * Retrieves the length of this file.
 	 * 
@@ -242,15 +305,8 @@ public class DataFile {
 	 *         or <code>-1</code> if it could not be found
 	 */
 	private int indexOf(int piece) {
-		if (!containsPiece(piece)) {
-			return -1;
-		}
-		for (int i = 0; i < pieces.length; i++) {
-			if (pieces[i] == piece) {
-				return i;
-			}
-		}
-		return -1;
+		// the pieces of a file are always consecutive
+		return containsPiece(piece) ? piece - pieces[0] : -1;
 	}
 
 	/**
@@ -260,7 +316,7 @@ public class DataFile {
 	 * @return this file's <code>FileChannel</code>
 	 */
 	public FileChannel getChannel() {
-		return file.getChannel();
+		return channel;
 	}
 
 	/**
@@ -144,7 +144,7 @@ public class Piece {
 	 * piece. This changes the state of this piece such that it is as if no data
 	 * has been written and no blocks are currently being requested.
 	 */
-	public void reset() {
+	public synchronized void reset() {
 		Arrays.fill(requested, false);
 		Arrays.fill(completed, false);
 		Arrays.fill(writtenBlocks, 0);
@@ -188,7 +188,8 @@ public class Piece {
 
 	/**
 	 * Writes the bytes received from peers onto the corresponding files on the
-	 * local file system.
+	 * local file system. The files are written without holding this piece's
+	 * lock, so only one thread may write at a time.
 	 * 
 	 * @param pieceIndex
 	 *            the index within this piece that the block of data received
@@ -210,8 +211,10 @@ public class Piece {
 	public boolean write(int pieceIndex, byte[] block, int offset, int length)
 			throws IOException {
 		int blockIndex = pieceIndex / BLOCK_REQUEST_SIZE;
-		if (completed[blockIndex]) {
-			return false;
+		synchronized (this) {
+			if (completed[blockIndex]) {
+				return false;
+			}
 		}
 
 		state.addDownloadedBlock(pieceIndex, length);
@@ -230,9 +233,11 @@ public class Piece {
 				pieceIndex += ret[2];
 			}
 
-			writtenBlocks[blockIndex] += length;
-			if (writtenBlocks[blockIndex] == limit) {
-				completed[blockIndex] = true;
+			synchronized (this) {
+				writtenBlocks[blockIndex] += length;
+				if (writtenBlocks[blockIndex] == limit) {
+					completed[blockIndex] = true;
+				}
 			}
 		} else {
 			ret = new int[] { offset, length, 0 };
@@ -245,10 +250,12 @@ public class Piece {
 				pieceIndex += ret[2];
 			}
 
-			writtenBlocks[blockIndex] += length;
-			// if the entire block has been written, note this fact
-			if (writtenBlocks[blockIndex] == BLOCK_REQUEST_SIZE) {
-				completed[blockIndex] = true;
+			synchronized (this) {
+				writtenBlocks[blockIndex] += length;
+				// if the entire block has been written, note this fact
+				if (writtenBlocks[blockIndex] == BLOCK_REQUEST_SIZE) {
+					completed[blockIndex] = true;
+				}
 			}
 		}
 		return true;
@@ -369,6 +376,37 @@ public class Piece {
 		}
 	}
 
+	/**
+	 * Returns whether this piece has blocks that have neither been completed
+	 * nor requested from a peer.
+	 * 
+	 * @return <code>true</code> if there is a block left to request,
+	 *         <code>false</code> otherwise
+	 */
+	public synchronized boolean hasUnrequestedBlocks() {
+		for (int i = 0; i < blocks; i++) {
+			if (!completed[i] && !requested[i]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Marks the block that starts at the given index as not being requested
+	 * anymore so that it can be requested from another peer. This has no
+	 * effect if the block has already been completed.
+	 * 
+	 * @param pieceIndex
+	 *            the index within this piece that the block starts at
+	 */
+	public synchronized void cancelRequest(int pieceIndex) {
+		int block = pieceIndex / BLOCK_REQUEST_SIZE;
+		if (block < blocks && !completed[block]) {
+			requested[block] = false;
+		}
+	}
+
 	/**
 	 * Retrieves this piece's number as specified by the torrent metadata file.
 	 * 
@@ -400,31 +438,19 @@ public class Piece {
 			return null;
 		}
 
-		boolean allRequested = true;
+		// look for a block that has not been requested yet, starting from a
+		// random block so that peers do not all ask for the same one, and
+		// fall back to a block that is still being downloaded
+		int start = (int) (Math.random() * blocks);
+		int random = -1;
 		for (int i = 0; i < blocks; i++) {
-			if (!completed[i] && !requested[i]) {
-				allRequested = false;
+			int block = (start + i) % blocks;
+			if (!completed[block] && !requested[block]) {
+				random = block;
+				requested[block] = true;
 				break;
-			}
-		}
-
-		int random = -1;
-		if (!allRequested) {
-			random = (int) (Math.random() * blocks);
-			while (requested[random]) {
-				if (isComplete()) {
-					return null;
-				}
-				random = (int) (Math.random() * blocks);
-			}
-			requested[random] = true;
-		} else {
-			random = (int) (Math.random() * blocks);
-			while (completed[random]) {
-				if (isComplete()) {
-					return null;
-				}
-				random = (int) (Math.random() * blocks);
+			} else if (!completed[block] && random == -1) {
+				random = block;
 			}
 		}
 
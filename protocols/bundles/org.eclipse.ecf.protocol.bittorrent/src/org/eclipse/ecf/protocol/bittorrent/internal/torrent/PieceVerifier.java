@@ -0,0 +1,195 @@
+/****************************************************************************
+ * Copyright (c) 2026 Composent, Inc. and others.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * Contributors:
+ *   Composent, Inc. - initial API and implementation
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *****************************************************************************/
+package org.eclipse.ecf.protocol.bittorrent.internal.torrent;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A <code>PieceVerifier</code> checks the data of pieces against the SHA-1
+ * hashes of a torrent's metainfo. Each verifier has its own digest, so a
+ * verifier must only be used by one thread at a time, but several verifiers
+ * may check the pieces of the same {@link DataFile}s at the same time.
+ */
+public class PieceVerifier {
+
+	/**
+	 * The maximum number of bytes of a file that is mapped into memory at once
+	 * when a range of pieces is being checked.
+	 */
+	private static final int MAP_SIZE = 16 * 1024 * 1024;
+
+	private final DataFile[] files;
+
+	/**
+	 * The SHA-1 hashes of the pieces as stored in the torrent's metainfo.
+	 */
+	private final String[] hashes;
+
+	private final MessageDigest digest;
+
+	/**
+	 * Creates a new verifier for the pieces of the given files.
+	 *
+	 * @param files
+	 *            the files of the torrent in the order specified by its
+	 *            metainfo
+	 * @param hashes
+	 *            the SHA-1 hashes of the torrent's pieces
+	 */
+	public PieceVerifier(DataFile[] files, String[] hashes) {
+		this.files = files;
+		this.hashes = hashes;
+		try {
+			digest = MessageDigest.getInstance("SHA-1"); //$NON-NLS-1$
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Retrieves the number of consecutive pieces that should be checked with a
+	 * single call to {@link #verify(int, int, boolean[])}.
+	 *
+	 * @param pieceLength
+	 *            the length of the torrent's pieces
+	 * @return the number of pieces to check at once
+	 */
+	public static int getRangeSize(int pieceLength) {
+		return Math.max(1, MAP_SIZE / pieceLength);
+	}
+
+	/**
+	 * Checks whether the data that has been written for the given piece
+	 * matches its hash.
+	 *
+	 * @param piece
+	 *            the number of the piece to check
+	 * @return <code>true</code> if the piece's data is intact,
+	 *         <code>false</code> otherwise
+	 * @throws IOException
+	 *             If an I/O error occurs while reading the piece's data
+	 */
+	public boolean verify(int piece) throws IOException {
+		for (int i = 0; i < files.length; i++) {
+			byte[] data = files[i].getData(piece);
+			if (data != null) {
+				digest.update(data);
+			}
+		}
+		return matches(piece);
+	}
+
+	/**
+	 * Checks a range of consecutive pieces. The parts of the files that hold
+	 * the range are mapped into memory so that the data is hashed without
+	 * being copied.
+	 *
+	 * @param first
+	 *            the number of the first piece to check
+	 * @param last
+	 *            the number of the last piece to check
+	 * @param passed
+	 *            an array that will be set with whether each piece of the
+	 *            range has passed the check, the first piece's result being
+	 *            stored at index <code>0</code>
+	 * @throws IOException
+	 *             If an I/O error occurs while mapping the files
+	 */
+	public void verify(int first, int last, boolean[] passed)
+			throws IOException {
+		ByteBuffer[] regions = new ByteBuffer[files.length];
+		long[] starts = new long[files.length];
+		try {
+			for (int i = 0; i < files.length; i++) {
+				// map the part of the file that holds the range just once
+				int[] pieces = files[i].getPieces();
+				int low = Math.max(first, pieces[0]);
+				int high = Math.min(last, pieces[pieces.length - 1]);
+				if (low <= high) {
+					starts[i] = files[i].getPosition(low);
+					regions[i] = files[i].map(starts[i], files[i]
+							.getPosition(high)
+							+ files[i].getPieceLength(high) - starts[i]);
+				}
+			}
+
+			for (int piece = first; piece <= last; piece++) {
+				for (int i = 0; i < files.length; i++) {
+					long position = files[i].getPosition(piece);
+					if (regions[i] != null && position != -1) {
+						ByteBuffer data = regions[i].duplicate();
+						data.position((int) (position - starts[i]));
+						data.limit(data.position()
+								+ files[i].getPieceLength(piece));
+						digest.update(data);
+					}
+				}
+				passed[piece - first] = matches(piece);
+			}
+		} finally {
+			for (int i = 0; i < regions.length; i++) {
+				if (regions[i] != null) {
+					unmap(regions[i]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Releases the mapping of a buffer right away instead of when the buffer
+	 * is garbage collected, as a check maps the whole torrent range by range.
+	 * There is no API for this, so it is done by reflection where the runtime
+	 * allows it and left to the garbage collector otherwise. The buffer and
+	 * its duplicates must not be used anymore.
+	 *
+	 * @param buffer
+	 *            the mapped buffer
+	 */
+	private static void unmap(ByteBuffer buffer) {
+		try {
+			// Java 9 and later
+			Class unsafeClass = Class.forName("sun.misc.Unsafe"); //$NON-NLS-1$
+			Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", //$NON-NLS-1$
+					new Class[] { ByteBuffer.class });
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe"); //$NON-NLS-1$
+			theUnsafe.setAccessible(true);
+			invokeCleaner.invoke(theUnsafe.get(null), new Object[] { buffer });
+			return;
+		} catch (Exception e) {
+			// try the cleaner of older runtimes
+		}
+		try {
+			Method cleanerMethod = buffer.getClass().getMethod("cleaner", //$NON-NLS-1$
+					new Class[0]);
+			cleanerMethod.setAccessible(true);
+			Object cleaner = cleanerMethod.invoke(buffer, new Object[0]);
+			if (cleaner != null) {
+				cleaner.getClass().getMethod("clean", new Class[0]).invoke( //$NON-NLS-1$
+						cleaner, new Object[0]);
+			}
+		} catch (Exception e) {
+			// left to the garbage collector
+		}
+	}
+
+	private boolean matches(int piece) throws UnsupportedEncodingException {
+		return hashes[piece].equals(new String(digest.digest(), "ISO-8859-1")); //$NON-NLS-1$
+	}
+
+}
@@ -14,12 +14,17 @@ package org.eclipse.ecf.provider.datashare.nio;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.net.ServerSocket;
 import java.net.SocketAddress;
 import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
@@ -28,8 +33,8 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
-import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.core.runtime.ISafeRunnable;
@@ -80,6 +85,50 @@ import org.eclipse.ecf.datashare.events.IChannelMessageEvent;
  */
 public abstract class NIOChannel implements IChannel {
 
+	/**
+	 * The initial size of the read buffer of a connection. The buffer grows to
+	 * hold the largest message received on the connection.
+	 */
+	private static final int INITIAL_BUFFER_SIZE = 8192;
+
+	/**
+	 * The default length in bytes of the largest message that is accepted from
+	 * a remote peer.
+	 * 
+	 * @see #getMaxMessageLength()
+	 */
+	private static final int DEFAULT_MAX_MESSAGE_LENGTH = 16 * 1024 * 1024;
+
+	/**
+	 * The bytes that <code>ObjectOutputStream</code> writes before the length
+	 * and the content of a serialized <code>byte[]</code>, i.e. before the data
+	 * of each message.
+	 */
+	private static final byte[] MESSAGE_PREFIX;
+
+	/**
+	 * The length of the header of a message, the prefix and the length of the
+	 * data.
+	 */
+	private static final int MESSAGE_HEADER_LENGTH;
+
+	static {
+		byte[] empty;
+		try {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			ObjectOutputStream oos = new ObjectOutputStream(baos);
+			oos.writeObject(new byte[0]);
+			oos.flush();
+			empty = baos.toByteArray();
+		} catch (IOException e) {
+			// cannot happen with a ByteArrayOutputStream
+			empty = new byte[4];
+		}
+		MESSAGE_HEADER_LENGTH = empty.length;
+		MESSAGE_PREFIX = new byte[empty.length - 4];
+		System.arraycopy(empty, 0, MESSAGE_PREFIX, 0, MESSAGE_PREFIX.length);
+	}
+
 	private NIODatashareContainer datashareContainer;
 
 	/**
@@ -107,6 +156,12 @@ public abstract class NIOChannel implements IChannel {
 	 */
 	private final int localPort;
 
+	/**
+	 * The selector that the processing thread waits on for incoming
+	 * connections and for connections that can be read from or written to.
+	 */
+	private Selector selector;
+
 	/**
 	 * A map of <code>ID</code>s to their corresponding
 	 * <code>SocketChannel</code>s.
@@ -114,15 +169,24 @@ public abstract class NIOChannel implements IChannel {
 	private Map connectedSockets;
 
 	/**
-	 * A list of sockets that is waiting to handshake with remote peers.
+	 * A map of <code>ID</code>s to their corresponding
+	 * <code>Connection</code>s. Only used by the processing thread.
+	 */
+	private Map connections;
+
+	/**
+	 * Connections that have been handshaken by the datashare container and
+	 * are waiting to be registered with the selector.
 	 */
-	private List pendingSockets;
+	private LinkedList pendingConnections;
 
 	/**
 	 * A queue of messages that needs to be sent to remote clients.
 	 */
 	private LinkedList messages;
 
+	private volatile boolean disposed;
+
 	/**
 	 * This channel's listener. May be <code>null</code>.
 	 */
@@ -186,8 +250,18 @@ public abstract class NIOChannel implements IChannel {
 
 		localPort = serverSocketChannel.socket().getLocalPort();
 
+		try {
+			selector = Selector.open();
+			serverSocketChannel.register(selector, SelectionKey.OP_ACCEPT);
+		} catch (IOException e) {
+			Util.closeChannel(serverSocketChannel);
+			throw new ECFException(new Status(IStatus.ERROR, Util.PLUGIN_ID,
+					"Could not create selector", e)); //$NON-NLS-1$
+		}
+
 		connectedSockets = new HashMap();
-		pendingSockets = new ArrayList();
+		connections = new HashMap();
+		pendingConnections = new LinkedList();
 		messages = new LinkedList();
 
 		processingThread = new Thread(new ProcessingRunnable(), getClass()
@@ -280,127 +354,239 @@ public abstract class NIOChannel implements IChannel {
 	}
 
 	/**
-	 * Sends any pending messages we may have queued up.
+	 * Retrieves the length in bytes of the largest message that this channel
+	 * accepts from a remote peer. A connection that announces a larger
+	 * message is closed instead of growing its read buffer to hold it.
+	 * 
+	 * @return the maximum length of a received message, including its header
 	 */
-	private void sendPendingMessages() {
-		Collection deadSockets = null;
-		Collection processedMessages = null;
-
-		for (Iterator it = messages.iterator(); it.hasNext();) {
-			ChannelMessage message = (ChannelMessage) it.next();
-			ID id = message.getId();
-			SocketChannel channel = (SocketChannel) connectedSockets.get(id);
-			// check if we have a socket for the target of this message
-			if (channel != null) {
-				byte[] data = message.getData();
+	protected int getMaxMessageLength() {
+		return DEFAULT_MAX_MESSAGE_LENGTH;
+	}
 
-				try {
-					// flush the data directly with regular IO, this method
-					// saves us the extra work of having to constantly flip and
-					// clear a ByteBuffer and in a way ensures the message is
-					// sent in one piece instead of chunks
-					channel.configureBlocking(true);
-					channel.socket().getOutputStream().write(data);
-					channel.socket().getOutputStream().flush();
-					// turn off blocking
-					channel.configureBlocking(false);
-				} catch (IOException e) {
-					log(new Status(IStatus.ERROR, Util.PLUGIN_ID,
-							"Error occurred while sending message", e)); //$NON-NLS-1$
-					if (deadSockets == null) {
-						deadSockets = new HashSet();
+	/**
+	 * Moves the messages for connected peers from the queue of pending messages
+	 * to the write queues of their connections, and starts writing them.
+	 */
+	private void queuePendingMessages() {
+		Set writable = null;
+		synchronized (messages) {
+			for (Iterator it = messages.iterator(); it.hasNext();) {
+				ChannelMessage message = (ChannelMessage) it.next();
+				Connection connection = (Connection) connections.get(message
+						.getId());
+				// check if we have a socket for the target of this message
+				if (connection != null) {
+					connection.writeQueue.add(ByteBuffer.wrap(message
+							.getData()));
+					it.remove();
+					if (writable == null) {
+						writable = new HashSet();
 					}
-					deadSockets.add(id);
-				}
-
-				if (processedMessages == null) {
-					processedMessages = new LinkedList();
+					writable.add(connection);
 				}
-				// store the processed message
-				processedMessages.add(message);
 			}
 		}
 
-		// remove all messages that have been processed
-		if (processedMessages != null) {
-			messages.removeAll(processedMessages);
+		if (writable != null) {
+			for (Iterator it = writable.iterator(); it.hasNext();) {
+				write((Connection) it.next());
+			}
 		}
+	}
 
-		if (deadSockets != null) {
-			for (Iterator it = deadSockets.iterator(); it.hasNext();) {
-				ID id = (ID) it.next();
-				SocketChannel channel = (SocketChannel) connectedSockets
-						.remove(id);
-				Util.closeChannel(channel);
+	/**
+	 * Registers the connections that have been handshaken by the datashare
+	 * container with the selector.
+	 */
+	private void registerPendingConnections() {
+		synchronized (pendingConnections) {
+			while (!pendingConnections.isEmpty()) {
+				Connection connection = (Connection) pendingConnections
+						.removeFirst();
+				try {
+					connection.key = connection.socketChannel.register(
+							selector, SelectionKey.OP_READ, connection);
+					connections.put(connection.peerId, connection);
+				} catch (ClosedChannelException e) {
+					close(connection);
+				}
 			}
 		}
 	}
 
 	/**
-	 * Reads in any incoming messages from remote clients.
+	 * Accepts an incoming connection. The connection is handshaken when the
+	 * remote peer has sent its id.
 	 * 
-	 * @param buffer
-	 *            the buffer to use for reading the socket
 	 * @throws IOException
-	 *             if an error occurs while reading from the socket
+	 *             if an error occurred while accepting the connection
 	 */
-	private void processIncomingMessages(ByteBuffer buffer) throws IOException {
-		Collection deadSockets = null;
+	private void accept() throws IOException {
+		SocketChannel socketChannel = serverSocketChannel.accept();
+		if (socketChannel != null) {
+			socketChannel.configureBlocking(false);
+			Connection connection = new Connection(socketChannel, null);
+			connection.key = socketChannel.register(selector,
+					SelectionKey.OP_READ, connection);
+		}
+	}
 
-		for (Iterator it = connectedSockets.entrySet().iterator(); it.hasNext();) {
-			Map.Entry entry = (Map.Entry) it.next();
-			SocketChannel socketChannel = (SocketChannel) entry.getValue();
+	/**
+	 * Reads the available data of the connection and processes the messages
+	 * that have been received completely.
+	 * 
+	 * @param connection
+	 *            the connection to read from
+	 * @throws ClassNotFoundException
+	 *             if deserialization failed during the handshake
+	 * @throws IOException
+	 *             if an error occurred while reading from the connection, or
+	 *             if the remote peer sent a message that is too large or that
+	 *             is not a serialized <code>byte[]</code>
+	 */
+	private void read(Connection connection) throws ClassNotFoundException,
+			IOException {
+		int max = getMaxMessageLength();
+		ByteBuffer buffer = connection.readBuffer;
+		if (!buffer.hasRemaining()) {
+			// only an incomplete handshake can fill a buffer that would hold
+			// the largest message
+			if (buffer.capacity() >= max) {
+				throw new IOException("Handshake exceeds " + max + " bytes"); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+			buffer = connection.grow((int) Math.min(
+					(long) buffer.capacity() * 2, max));
+		}
+		if (connection.socketChannel.read(buffer) == -1) {
+			// the remote peer has closed the connection
+			close(connection);
+			return;
+		}
 
-			try {
-				if (!processIncomingMessages(socketChannel, buffer)) {
-					if (deadSockets == null) {
-						deadSockets = new HashSet();
+		buffer.flip();
+		int required = 0;
+		try {
+			if (connection.peerId == null && !handshake(connection, buffer)) {
+				return;
+			}
+
+			while (buffer.hasRemaining()) {
+				int length = getMessageLength(buffer);
+				if (length > max) {
+					throw new IOException("Message of " + length //$NON-NLS-1$
+							+ " bytes exceeds " + max + " bytes"); //$NON-NLS-1$ //$NON-NLS-2$
+				} else if (length == -2) {
+					// without a frame the end of the message cannot be found
+					throw new IOException("Received data that is not a message"); //$NON-NLS-1$
+				} else if (length == -1 || buffer.remaining() < length) {
+					// wait for the rest of the message
+					required = length;
+					break;
+				} else {
+					byte[] data = new byte[length - MESSAGE_HEADER_LENGTH];
+					buffer.position(buffer.position() + MESSAGE_HEADER_LENGTH);
+					buffer.get(data);
+					IChannelListener listener = getListener();
+					if (listener != null) {
+						fireChannelEvent(listener, createMessageEvent(
+								connection.peerId, data));
 					}
-					deadSockets.add(entry.getKey());
 				}
-			} catch (IOException e) {
-				log(new Status(IStatus.ERROR, Util.PLUGIN_ID,
-						"Error occurred while sending message", e)); //$NON-NLS-1$
-				if (deadSockets == null) {
-					deadSockets = new HashSet();
-				}
-				deadSockets.add(entry.getKey());
+			}
+		} finally {
+			if (connection.readBuffer == buffer) {
+				buffer.compact();
 			}
 		}
 
-		if (deadSockets != null) {
-			for (Iterator it = deadSockets.iterator(); it.hasNext();) {
-				ID id = (ID) it.next();
-				SocketChannel channel = (SocketChannel) connectedSockets
-						.remove(id);
-				Util.closeChannel(channel);
-			}
+		if (required > buffer.capacity()) {
+			connection.grow(required);
 		}
 	}
 
 	/**
-	 * Processes any incoming messages from the specified channel by reading it
-	 * into the specified buffer and returns whether the channel has reached
-	 * end-of-stream.
+	 * Returns the length of the message at the position of the buffer.
 	 * 
-	 * @param socketChannel
-	 *            the channel to read messages from
 	 * @param buffer
-	 *            the buffer to use to read the messages into
-	 * @return <code>true</code> if the channel is still active,
-	 *         <code>false</code> has reached end-of-stream
-	 * @throws IOException
-	 *             if an error occurred while trying to read from the channel
+	 *            the buffer with the received data
+	 * @return the length of the message including its header, -1 if the
+	 *         header has not been received completely, or -2 if the data is
+	 *         not a serialized <code>byte[]</code>
 	 */
-	private boolean processIncomingMessages(SocketChannel socketChannel,
-			ByteBuffer buffer) throws IOException {
-		ChannelData channelData = Util.read(socketChannel, buffer);
-		byte[] message = channelData.getData();
+	private static int getMessageLength(ByteBuffer buffer) {
+		int position = buffer.position();
+		int available = Math.min(buffer.remaining(), MESSAGE_PREFIX.length);
+		for (int i = 0; i < available; i++) {
+			if (buffer.get(position + i) != MESSAGE_PREFIX[i]) {
+				return -2;
+			}
+		}
+		if (buffer.remaining() < MESSAGE_HEADER_LENGTH) {
+			return -1;
+		}
+		int length = buffer.getInt(position + MESSAGE_PREFIX.length);
+		if (length < 0 || length > Integer.MAX_VALUE - MESSAGE_HEADER_LENGTH) {
+			return -2;
+		}
+		return MESSAGE_HEADER_LENGTH + length;
+	}
 
-		if (message != null) {
-			processIncomingMessage(socketChannel, message);
+	/**
+	 * Writes as much of the queued data of the connection as the socket
+	 * accepts without blocking, and waits for the connection to become
+	 * writable if there is more.
+	 * 
+	 * @param connection
+	 *            the connection to write to
+	 */
+	private void write(Connection connection) {
+		try {
+			LinkedList writeQueue = connection.writeQueue;
+			while (!writeQueue.isEmpty()) {
+				ByteBuffer buffer = (ByteBuffer) writeQueue.getFirst();
+				connection.socketChannel.write(buffer);
+				if (buffer.hasRemaining()) {
+					break;
+				}
+				writeQueue.removeFirst();
+			}
+			int ops = writeQueue.isEmpty() ? SelectionKey.OP_READ
+					: SelectionKey.OP_READ | SelectionKey.OP_WRITE;
+			if (connection.key.interestOps() != ops) {
+				connection.key.interestOps(ops);
+			}
+		} catch (IOException e) {
+			log(new Status(IStatus.ERROR, Util.PLUGIN_ID,
+					"Error occurred while sending message", e)); //$NON-NLS-1$
+			close(connection);
+		} catch (CancelledKeyException e) {
+			close(connection);
+		}
+	}
+
+	/**
+	 * Closes the connection and forgets about it.
+	 * 
+	 * @param connection
+	 *            the connection to close
+	 */
+	private void close(Connection connection) {
+		if (connection.key != null) {
+			connection.key.cancel();
+		}
+		Util.closeChannel(connection.socketChannel);
+		connection.writeQueue.clear();
+		if (connection.peerId != null) {
+			if (connections.get(connection.peerId) == connection) {
+				connections.remove(connection.peerId);
+			}
+			synchronized (connectedSockets) {
+				if (connectedSockets.get(connection.peerId) == connection.socketChannel) {
+					connectedSockets.remove(connection.peerId);
+				}
+			}
 		}
-		return channelData.isOpen();
 	}
 
 	/**
@@ -412,13 +598,26 @@ public abstract class NIOChannel implements IChannel {
 	 *            the message that was received
 	 */
 	void processIncomingMessage(SocketChannel socketChannel, byte[] message) {
+		processIncomingMessage(getId(socketChannel), message);
+	}
+
+	/**
+	 * Processes the message that has been received from the specified peer.
+	 * 
+	 * @param fromId
+	 *            the peer that the message was from, may be <code>null</code>
+	 *            if the peer could not be identified
+	 * @param message
+	 *            the message that was received
+	 */
+	private void processIncomingMessage(ID fromId, byte[] message) {
 		// we read something, need to notify
 		IChannelListener listener = getListener();
-		if (listener != null) {
+		if (listener != null && fromId != null) {
 			// we have a listener, convert our data and then notify
 			byte[][] messages = convert(message);
 			if (messages != null) {
-				fireMessageEvents(listener, socketChannel, messages);
+				fireMessageEvents(listener, fromId, messages);
 			}
 		}
 	}
@@ -469,18 +668,15 @@ public abstract class NIOChannel implements IChannel {
 	 * 
 	 * @param listener
 	 *            the listener to notify
-	 * @param socketChannel
-	 *            the socket that the message was read from
+	 * @param fromId
+	 *            the peer that the message was from
 	 * @param messages
 	 *            the messages that have been received
 	 */
-	private void fireMessageEvents(IChannelListener listener,
-			SocketChannel socketChannel, byte[][] messages) {
+	private void fireMessageEvents(IChannelListener listener, ID fromId,
+			byte[][] messages) {
 		for (int i = 0; i < messages.length; i++) {
-			IChannelEvent event = createMessageEvent(socketChannel, messages[i]);
-			if (event != null) {
-				fireChannelEvent(listener, event);
-			}
+			fireChannelEvent(listener, createMessageEvent(fromId, messages[i]));
 		}
 	}
 
@@ -511,49 +707,60 @@ public abstract class NIOChannel implements IChannel {
 	}
 
 	/**
-	 * Creates and returns a message event corresponding to the specified
-	 * channel and the data that was read.
+	 * Returns the id of the peer that is connected with the specified socket.
 	 * 
 	 * @param channel
-	 *            the socket channel that the message was from
+	 *            the socket channel
+	 * @return the id of the peer, may be <code>null</code> if the channel
+	 *         could not be identified
+	 */
+	private ID getId(SocketChannel channel) {
+		synchronized (connectedSockets) {
+			// search for the id of the corresponding channel
+			for (Iterator it = connectedSockets.entrySet().iterator(); it
+					.hasNext();) {
+				Map.Entry entry = (Map.Entry) it.next();
+				if (channel == entry.getValue()) {
+					return (ID) entry.getKey();
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Creates and returns a message event corresponding to the specified peer
+	 * and the data that was read.
+	 * 
+	 * @param fromId
+	 *            the peer that the message was from
 	 * @param data
 	 *            the message from the remote peer
-	 * @return a message event describing the received message, may be
-	 *         <code>null</code> if the channel could not be identified
-	 */
-	private IChannelEvent createMessageEvent(SocketChannel channel,
-			final byte[] data) {
-		// search for the id of the corresponding channel
-		for (Iterator it = connectedSockets.entrySet().iterator(); it.hasNext();) {
-			Map.Entry entry = (Map.Entry) it.next();
-			if (channel == entry.getValue()) {
-				final ID fromId = (ID) entry.getKey();
-
-				return new IChannelMessageEvent() {
-					public byte[] getData() {
-						return data;
-					}
+	 * @return a message event describing the received message
+	 */
+	private IChannelEvent createMessageEvent(final ID fromId, final byte[] data) {
+		return new IChannelMessageEvent() {
+			public byte[] getData() {
+				return data;
+			}
 
-					public ID getFromContainerID() {
-						return fromId;
-					}
+			public ID getFromContainerID() {
+				return fromId;
+			}
 
-					public ID getChannelID() {
-						return id;
-					}
+			public ID getChannelID() {
+				return id;
+			}
 
-					public String toString() {
-						StringBuffer buffer = new StringBuffer();
-						buffer.append("IChannelMessageEvent["); //$NON-NLS-1$
-						buffer.append("container=").append(fromId); //$NON-NLS-1$
-						buffer.append(",channel=").append(id); //$NON-NLS-1$
-						buffer.append(",data=").append(data).append(']'); //$NON-NLS-1$
-						return buffer.toString();
-					}
-				};
+			public String toString() {
+				StringBuffer buffer = new StringBuffer();
+				buffer.append("IChannelMessageEvent["); //$NON-NLS-1$
+				buffer.append("container=").append(fromId); //$NON-NLS-1$
+				buffer.append(",channel=").append(id); //$NON-NLS-1$
+				buffer.append(",data=").append(data).append(']'); //$NON-NLS-1$
+				return buffer.toString();
 			}
-		}
-		return null;
+		};
 	}
 
 	/**
@@ -566,103 +773,67 @@ public abstract class NIOChannel implements IChannel {
 	 *            the socket channel to be stored
 	 */
 	void put(ID id, SocketChannel socketChannel) {
-		connectedSockets.put(id, socketChannel);
+		synchronized (connectedSockets) {
+			connectedSockets.put(id, socketChannel);
+		}
+		synchronized (pendingConnections) {
+			pendingConnections.add(new Connection(socketChannel, id));
+		}
+		selector.wakeup();
 	}
 
 	/**
-	 * Accept the socket as a potential client and attempt to handshake with it.
+	 * Performs a handshake with a remote peer via the provided connection and
+	 * returns <code>true</code> if it has been completed. The remote peer
+	 * sends its id, and this channel replies with its id and the id of its
+	 * owner container.
 	 * 
-	 * @param socketChannel
-	 *            the socket to establish a connection with
-	 * @throws ClassNotFoundException
-	 *             if the class of an object being deserialized could not be
-	 *             found
-	 * @throws IOException
-	 *             if a networking error occurs with the socket while
-	 *             reading/sending messages
-	 */
-	// private boolean accept2(SocketChannel socketChannel, ByteBuffer buffer)
-	// throws ClassNotFoundException, IOException {
-	// int read = socketChannel.read(buffer);
-	// buffer.flip();
-	// byte[] bytes = new byte[read];
-	// buffer.get(bytes);
-	// buffer.clear();
-	//
-	// ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(
-	// bytes));
-	// Object object = ois.readObject();
-	//
-	// if (object instanceof ID) {
-	// bytes = serialize(id);
-	// socketChannel.socket().getOutputStream().write(bytes);
-	//
-	// bytes = serialize(containerId);
-	// socketChannel.socket().getOutputStream().write(bytes);
-	// socketChannel.socket().getOutputStream().flush();
-	//
-	// socketChannel.configureBlocking(false);
-	// put((ID) object, socketChannel);
-	// }
-	// return true;
-	// }
-
-	/**
-	 * Performs a handshake with a remote peer via the provided socket channel
-	 * and returns whether <code>true</code> if no further attempts are
-	 * required. Note that <code>true</code> does not indicate that the
-	 * handshake has been successful.
-	 * <p>
-	 * For example, if the remote peer has closed this channel then
-	 * <code>true</code> would be returned as no further attempts should be
-	 * attempted.
-	 * </p>
-	 * 
-	 * @param socketChannel
-	 *            the channel to use to handshake with the remote peer
+	 * @param connection
+	 *            the connection to handshake with the remote peer
 	 * @param buffer
-	 *            the buffer to use for reading and writing data from the
-	 *            channel
-	 * @return <code>true</code> if no further handshake attempts are required,
-	 *         <code>false</code> otherwise
+	 *            the data received from the connection so far
+	 * @return <code>true</code> if the handshake has been completed,
+	 *         <code>false</code> if more data is required or the connection
+	 *         has been closed
 	 * @throws ClassNotFoundException
 	 *             if deserialization failed during the handshake
 	 * @throws IOException
 	 *             if an IO error occurred while performing the handshake
 	 */
-	private boolean handshake(SocketChannel socketChannel, ByteBuffer buffer)
+	private boolean handshake(Connection connection, ByteBuffer buffer)
 			throws ClassNotFoundException, IOException {
-		ChannelData data = Util.read(socketChannel, buffer);
-		if (!data.isOpen()) {
-			// this channel is dead, close it
-			Util.closeChannel(socketChannel);
-			return true;
+		ByteArrayInputStream bais = new ByteArrayInputStream(buffer.array(),
+				buffer.arrayOffset() + buffer.position(), buffer.remaining());
+		Object object;
+		try {
+			object = new ObjectInputStream(bais).readObject();
+		} catch (EOFException e) {
+			// the id has not been received completely
+			return false;
 		}
+		buffer.position(buffer.limit() - bais.available());
 
-		byte[] bytes = data.getData();
-		if (bytes == null) {
+		if (!(object instanceof ID)) {
+			close(connection);
 			return false;
 		}
 
-		ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(
-				bytes));
-		Object object = ois.readObject();
-
-		if (object instanceof ID) {
-			socketChannel.configureBlocking(true);
-			byte[] one = Util.serialize(id);
-			byte[] two = Util.serialize(containerId);
-			bytes = new byte[one.length + two.length];
-			System.arraycopy(one, 0, bytes, 0, one.length);
-			System.arraycopy(two, 0, bytes, one.length, two.length);
+		byte[] one = Util.serialize(id);
+		byte[] two = Util.serialize(containerId);
+		byte[] bytes = new byte[one.length + two.length];
+		System.arraycopy(one, 0, bytes, 0, one.length);
+		System.arraycopy(two, 0, bytes, one.length, two.length);
 
-			socketChannel.socket().getOutputStream().write(bytes);
-			socketChannel.socket().getOutputStream().flush();
-
-			socketChannel.configureBlocking(false);
-			put((ID) object, socketChannel);
+		connection.peerId = (ID) object;
+		connection.writeQueue.add(ByteBuffer.wrap(bytes));
+		connections.put(connection.peerId, connection);
+		synchronized (connectedSockets) {
+			connectedSockets.put(connection.peerId, connection.socketChannel);
 		}
-		return true;
+		write(connection);
+		// send the messages that have been waiting for this peer
+		queuePendingMessages();
+		return connection.socketChannel.isOpen();
 	}
 
 	/**
@@ -725,7 +896,11 @@ public abstract class NIOChannel implements IChannel {
 		Assert.isNotNull(message, "Message cannot be null"); //$NON-NLS-1$
 
 		// check if we already have a socket for this receiver
-		if (!connectedSockets.containsKey(receiver)) {
+		boolean connected;
+		synchronized (connectedSockets) {
+			connected = connectedSockets.containsKey(receiver);
+		}
+		if (!connected) {
 			// send a request to the receiver for establishing a socket
 			// connection
 			sendRequest(receiver);
@@ -735,6 +910,8 @@ public abstract class NIOChannel implements IChannel {
 			// enqueue the message for processing
 			messages.add(new ChannelMessage(receiver, message));
 		}
+		// let the processing thread send it
+		selector.wakeup();
 	}
 
 	/**
@@ -743,7 +920,8 @@ public abstract class NIOChannel implements IChannel {
 	 * method returns.
 	 */
 	public void dispose() {
-		processingThread.interrupt();
+		disposed = true;
+		selector.wakeup();
 
 		try {
 			// turn off the server to prevent and deny incoming connections
@@ -791,56 +969,121 @@ public abstract class NIOChannel implements IChannel {
 		return id;
 	}
 
+	/**
+	 * A socket connection with a remote peer, with the data that has been
+	 * received but not processed yet and the data that is waiting to be sent.
+	 * Only used by the processing thread once registered.
+	 */
+	private final class Connection {
+
+		final SocketChannel socketChannel;
+
+		/**
+		 * The remote peer, <code>null</code> until the handshake has been
+		 * completed.
+		 */
+		ID peerId;
+
+		SelectionKey key;
+
+		/**
+		 * The received data, in write mode between reads.
+		 */
+		ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+
+		/**
+		 * ByteBuffers waiting to be sent, in order.
+		 */
+		final LinkedList writeQueue = new LinkedList();
+
+		Connection(SocketChannel socketChannel, ID peerId) {
+			this.socketChannel = socketChannel;
+			this.peerId = peerId;
+		}
+
+		/**
+		 * Replaces the read buffer with a larger one containing the same
+		 * data.
+		 */
+		ByteBuffer grow(int capacity) {
+			ByteBuffer buffer = ByteBuffer.allocate(capacity);
+			readBuffer.flip();
+			buffer.put(readBuffer);
+			readBuffer = buffer;
+			return buffer;
+		}
+	}
+
 	private final class ProcessingRunnable implements Runnable {
 
 		public void run() {
-			ByteBuffer buffer = ByteBuffer.allocate(1024);
-			while (true) {
-				try {
-					Thread.sleep(50);
-
-					if (Thread.currentThread().isInterrupted()) {
+			try {
+				while (!disposed) {
+					selector.select();
+					if (disposed) {
 						return;
 					}
 
-					// perform handshaking for any pending sockets
-					for (int i = 0; i < pendingSockets.size(); i++) {
-						SocketChannel channel = (SocketChannel) pendingSockets
-								.get(i);
-						if (handshake(channel, buffer)) {
-							// remove if handled
-							pendingSockets.remove(i);
-							i--;
-						}
-					}
-
-					processIncomingMessages(buffer);
+					registerPendingConnections();
+					queuePendingMessages();
 
-					// check if we have pending messages to send
-					synchronized (messages) {
-						if (!messages.isEmpty()) {
-							sendPendingMessages();
-						}
+					for (Iterator it = selector.selectedKeys().iterator(); it
+							.hasNext();) {
+						SelectionKey key = (SelectionKey) it.next();
+						it.remove();
+						process(key);
 					}
+				}
+			} catch (IOException e) {
+				log(new Status(IStatus.ERROR, Util.PLUGIN_ID,
+						"An IO error occurred", e)); //$NON-NLS-1$
+			} finally {
+				// close the connections that are still handshaking
+				for (Iterator it = selector.keys().iterator(); it.hasNext();) {
+					SelectionKey key = (SelectionKey) it.next();
+					Util.closeChannel(key.channel());
+				}
+				try {
+					selector.close();
+				} catch (IOException e) {
+					// ignored
+				}
+			}
+		}
 
-					SocketChannel socketChannel = serverSocketChannel.accept();
-					if (socketChannel != null) {
-						socketChannel.configureBlocking(false);
-						pendingSockets.add(socketChannel);
-					}
-				} catch (InterruptedException e) {
-					Thread.interrupted();
+		private void process(SelectionKey key) {
+			Connection connection = (Connection) key.attachment();
+			try {
+				if (!key.isValid()) {
 					return;
-				} catch (ClassNotFoundException e) {
-					log(new Status(IStatus.ERROR, Util.PLUGIN_ID,
-							"Could not deserialize", e)); //$NON-NLS-1$
-				} catch (IOException e) {
-					log(new Status(IStatus.ERROR, Util.PLUGIN_ID,
-							"An IO error occurred", e)); //$NON-NLS-1$
-				} catch (RuntimeException e) {
-					log(new Status(IStatus.ERROR, Util.PLUGIN_ID,
-							"A runtime error occurred", e)); //$NON-NLS-1$
 				}
+				if (key.isAcceptable()) {
+					accept();
+					return;
+				}
+				if (key.isReadable()) {
+					read(connection);
+				}
+				if (key.isValid() && key.isWritable()) {
+					write(connection);
+				}
+			} catch (CancelledKeyException e) {
+				if (connection != null) {
+					close(connection);
+				}
+			} catch (ClassNotFoundException e) {
+				log(new Status(IStatus.ERROR, Util.PLUGIN_ID,
+						"Could not deserialize", e)); //$NON-NLS-1$
+				close(connection);
+			} catch (IOException e) {
+				log(new Status(IStatus.ERROR, Util.PLUGIN_ID,
+						"An IO error occurred", e)); //$NON-NLS-1$
+				if (connection != null) {
+					close(connection);
+				}
+			} catch (RuntimeException e) {
+				log(new Status(IStatus.ERROR, Util.PLUGIN_ID,
+						"A runtime error occurred", e)); //$NON-NLS-1$
 			}
 		}
 	}
@@ -14,6 +14,8 @@ package org.eclipse.ecf.provider.discovery;
 
 import java.net.URI;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.ecf.core.ContainerConnectException;
 import org.eclipse.ecf.core.IContainer;
@@ -119,6 +121,43 @@ public class CompositeDiscoveryContainer extends AbstractDiscoveryContainerAdapt
 
 	protected static final String METHODS_TRACING = Activator.PLUGIN_ID + "/debug/methods/tracing"; //$NON-NLS-1$
 
+	/**
+	 * System property to call the discovery locators one after another
+	 * (<code>false</code>) instead of in parallel (<code>true</code>, the
+	 * default). Calls one after another always wait for every locator, so
+	 * they also disable the deadlines given by {@link #TIMEOUT_PROP} and the
+	 * <code>timeout</code> parameters.
+	 * 
+	 * @since 3.1
+	 */
+	public static final String PARALLEL_PROP = "org.eclipse.ecf.provider.discovery.parallel"; //$NON-NLS-1$
+
+	/**
+	 * System property with the deadline in milliseconds for the parallel
+	 * calls to the discovery locators. The results of the locators that did not
+	 * return by then are left out. The default 0 waits for all locators.
+	 * 
+	 * @since 3.1
+	 */
+	public static final String TIMEOUT_PROP = "org.eclipse.ecf.provider.discovery.timeout"; //$NON-NLS-1$
+
+	/**
+	 * @since 3.1
+	 */
+	public static final boolean PARALLEL = Boolean.valueOf(System.getProperty(PARALLEL_PROP, "true")).booleanValue(); //$NON-NLS-1$
+
+	/**
+	 * @since 3.1
+	 */
+	public static final long DEFAULT_TIMEOUT = Long.getLong(TIMEOUT_PROP, 0).longValue();
+
+	/**
+	 * A call to one discovery locator.
+	 */
+	private interface LocatorCall {
+		Object call(IDiscoveryLocator locator);
+	}
+
 	protected final CompositeContainerServiceListener ccsl = new CompositeContainerServiceListener();
 	protected final CompositeContainerServiceTypeListener ccstl = new CompositeContainerServiceTypeListener();
 
@@ -133,6 +172,11 @@ public class CompositeDiscoveryContainer extends AbstractDiscoveryContainerAdapt
 
 	private ID targetID;
 
+	// IDiscoveryLocator -> LocatorLatencyHistogram
+	private final Map latencyHistograms = new HashMap();
+
+	private ExecutorService executor;
+
 	/**
 	 * @param containers
 	 */
@@ -191,15 +235,7 @@ public class CompositeDiscoveryContainer extends AbstractDiscoveryContainerAdapt
 		synchronized (registeredServices) {
 			registeredServices.clear();
 		}
-		synchronized (allServiceListeners) {
-			allServiceListeners.clear();
-		}
-		synchronized (serviceListeners) {
-			serviceListeners.clear();
-		}
-		synchronized (serviceTypeListeners) {
-			serviceTypeListeners.clear();
-		}
+		clearListeners();
 		fireContainerEvent(new ContainerDisconnectedEvent(this.getID(), getConnectedID()));
 	}
 
@@ -267,6 +303,12 @@ public class CompositeDiscoveryContainer extends AbstractDiscoveryContainerAdapt
 			containers.clear();
 		}
 		targetID = null;
+		synchronized (this) {
+			if (executor != null) {
+				executor.shutdown();
+				executor = null;
+			}
+		}
 		super.dispose();
 	}
 
@@ -289,15 +331,34 @@ public class CompositeDiscoveryContainer extends AbstractDiscoveryContainerAdapt
 	 * @see org.eclipse.ecf.discovery.IDiscoveryContainerAdapter#getServiceInfo(org.eclipse.ecf.discovery.identity.IServiceID)
 	 */
 	public IServiceInfo getServiceInfo(final IServiceID aService) {
+		return getServiceInfo(aService, DEFAULT_TIMEOUT);
+	}
+
+	/**
+	 * Get the service info from the first discovery locator that knows the
+	 * service.
+	 * 
+	 * @param aService
+	 *            the service. Must not be <code>null</code>.
+	 * @param timeout
+	 *            the deadline in milliseconds for the parallel calls to the
+	 *            locators, or 0 to wait for all locators
+	 * @return IServiceInfo the service info, or <code>null</code> if no
+	 *         locator returned it in time
+	 * @since 3.1
+	 */
+	public IServiceInfo getServiceInfo(final IServiceID aService, long timeout) {
 		Assert.isNotNull(aService);
-		synchronized (containers) {
-			for (final Iterator itr = containers.iterator(); itr.hasNext();) {
-				final IDiscoveryLocator idca = (IDiscoveryLocator) itr.next();
+		final List results = fanOut("getServiceInfo", new LocatorCall() { //$NON-NLS-1$
+			public Object call(IDiscoveryLocator idca) {
 				final IServiceID isi = getServiceIDForDiscoveryContainer(aService, idca);
-				final IServiceInfo service = idca.getServiceInfo(isi);
-				if (service != null) {
-					return service;
-				}
+				return idca.getServiceInfo(isi);
+			}
+		}, timeout, true, null);
+		for (final Iterator itr = results.iterator(); itr.hasNext();) {
+			final IServiceInfo service = (IServiceInfo) itr.next();
+			if (service != null) {
+				return service;
 			}
 		}
 		return null;
@@ -314,19 +375,34 @@ public class CompositeDiscoveryContainer extends AbstractDiscoveryContainerAdapt
 	 * @see org.eclipse.ecf.discovery.IDiscoveryContainerAdapter#getServices()
 	 */
 	public IServiceInfo[] getServices() {
-		final Set set = new HashSet();
-		synchronized (containers) {
-			for (final Iterator itr = containers.iterator(); itr.hasNext();) {
-				final IDiscoveryLocator idca = (IDiscoveryLocator) itr.next();
+		return getServices(DEFAULT_TIMEOUT, null);
+	}
+
+	/**
+	 * Get the services of all discovery locators.
+	 * 
+	 * @param timeout
+	 *            the deadline in milliseconds for the parallel calls to the
+	 *            locators, or 0 to wait for all locators
+	 * @param callback
+	 *            receives the services of each locator as soon as it returns.
+	 *            May be <code>null</code>.
+	 * @return IServiceInfo[] the merged services of the locators that
+	 *         returned in time
+	 * @since 3.1
+	 */
+	public IServiceInfo[] getServices(long timeout, IServiceInfoCallback callback) {
+		final Set set = merge(fanOut("getServices", new LocatorCall() { //$NON-NLS-1$
+			public Object call(IDiscoveryLocator idca) {
 				final ID containerId = ((IContainer) idca).getID();
 				final IServiceInfo[] services = idca.getServices();
 				for (int i = 0; i < services.length; i++) {
 					IServiceInfo iServiceInfo = services[i];
 					services[i] = new CompositeServiceInfoWrapper(iServiceInfo, containerId);
 				}
-				set.addAll(Arrays.asList(services));
+				return services;
 			}
-		}
+		}, timeout, false, callback));
 		return (IServiceInfo[]) set.toArray(new IServiceInfo[set.size()]);
 	}
 
@@ -334,16 +410,32 @@ public class CompositeDiscoveryContainer extends AbstractDiscoveryContainerAdapt
 	 * @see org.eclipse.ecf.discovery.IDiscoveryContainerAdapter#getServices(org.eclipse.ecf.discovery.identity.IServiceTypeID)
 	 */
 	public IServiceInfo[] getServices(final IServiceTypeID type) {
+		return getServices(type, DEFAULT_TIMEOUT, null);
+	}
+
+	/**
+	 * Get the services of the given type of all discovery locators.
+	 * 
+	 * @param type
+	 *            the service type. Must not be <code>null</code>.
+	 * @param timeout
+	 *            the deadline in milliseconds for the parallel calls to the
+	 *            locators, or 0 to wait for all locators
+	 * @param callback
+	 *            receives the services of each locator as soon as it returns.
+	 *            May be <code>null</code>.
+	 * @return IServiceInfo[] the merged services of the locators that
+	 *         returned in time
+	 * @since 3.1
+	 */
+	public IServiceInfo[] getServices(final IServiceTypeID type, long timeout, IServiceInfoCallback callback) {
 		Assert.isNotNull(type);
-		final Set set = new HashSet();
-		synchronized (containers) {
-			for (final Iterator itr = containers.iterator(); itr.hasNext();) {
-				final IDiscoveryLocator idca = (IDiscoveryLocator) itr.next();
+		final Set set = merge(fanOut("getServices", new LocatorCall() { //$NON-NLS-1$
+			public Object call(IDiscoveryLocator idca) {
 				final IServiceTypeID isti = getServiceTypeIDForDiscoveryContainer(type, idca);
-				final IServiceInfo[] services = idca.getServices(isti);
-				set.addAll(Arrays.asList(services));
+				return idca.getServices(isti);
 			}
-		}
+		}, timeout, false, callback));
 		return (IServiceInfo[]) set.toArray(new IServiceInfo[set.size()]);
 	}
 
@@ -359,15 +451,162 @@ public class CompositeDiscoveryContainer extends AbstractDiscoveryContainerAdapt
 	 * @see org.eclipse.ecf.discovery.IDiscoveryContainerAdapter#getServiceTypes()
 	 */
 	public IServiceTypeID[] getServiceTypes() {
+		final Set set = merge(fanOut("getServiceTypes", new LocatorCall() { //$NON-NLS-1$
+			public Object call(IDiscoveryLocator idca) {
+				return idca.getServiceTypes();
+			}
+		}, DEFAULT_TIMEOUT, false, null));
+		return (IServiceTypeID[]) set.toArray(new IServiceTypeID[set.size()]);
+	}
+
+	private static Set merge(List results) {
 		final Set set = new HashSet();
+		for (final Iterator itr = results.iterator(); itr.hasNext();) {
+			set.addAll(Arrays.asList((Object[]) itr.next()));
+		}
+		return set;
+	}
+
+	/**
+	 * Call all discovery locators, in parallel unless {@link #PARALLEL} is
+	 * <code>false</code>. A single locator is called on the calling thread
+	 * unless there is a deadline, which is only kept by the parallel calls.
+	 * The containers monitor is only held to copy the locators, so that a slow
+	 * locator does not block other callers.
+	 * 
+	 * @return List of the non-failed results of the locators that returned in
+	 *         time, in the order they returned
+	 */
+	private List fanOut(final String method, final LocatorCall call, long timeout, boolean untilFound, IServiceInfoCallback callback) {
+		final List locators;
 		synchronized (containers) {
-			for (final Iterator itr = containers.iterator(); itr.hasNext();) {
+			locators = new ArrayList(containers);
+		}
+		final List results = new ArrayList(locators.size());
+		if (locators.isEmpty() || !PARALLEL || (locators.size() == 1 && timeout <= 0)) {
+			for (final Iterator itr = locators.iterator(); itr.hasNext();) {
 				final IDiscoveryLocator idca = (IDiscoveryLocator) itr.next();
-				final IServiceTypeID[] services = idca.getServiceTypes();
-				set.addAll(Arrays.asList(services));
+				final Object result = timedCall(idca, call);
+				results.add(result);
+				if (callback != null) {
+					callback.servicesFound(idca, (IServiceInfo[]) result);
+				}
+				if (untilFound && result != null) {
+					break;
+				}
 			}
+			return results;
+		}
+		final CompletionService completionService = new ExecutorCompletionService(getExecutor());
+		// Future -> IDiscoveryLocator
+		final Map pending = new HashMap();
+		for (final Iterator itr = locators.iterator(); itr.hasNext();) {
+			final IDiscoveryLocator idca = (IDiscoveryLocator) itr.next();
+			pending.put(completionService.submit(new Callable() {
+				public Object call() throws Exception {
+					return timedCall(idca, call);
+				}
+			}), idca);
+		}
+		final long deadline = (timeout > 0) ? System.nanoTime() + timeout * 1000000 : 0;
+		boolean timedOut = false;
+		try {
+			while (!pending.isEmpty()) {
+				final Future future;
+				if (deadline == 0) {
+					future = completionService.take();
+				} else {
+					final long remaining = deadline - System.nanoTime();
+					future = (remaining > 0) ? completionService.poll(remaining, TimeUnit.NANOSECONDS) : null;
+					if (future == null) {
+						timedOut = true;
+						break;
+					}
+				}
+				final IDiscoveryLocator idca = (IDiscoveryLocator) pending.remove(future);
+				final Object result;
+				try {
+					result = future.get();
+				} catch (final ExecutionException e) {
+					Trace.catching(Activator.PLUGIN_ID, METHODS_CATCHING, this.getClass(), method, e.getCause());
+					continue;
+				}
+				results.add(result);
+				if (callback != null) {
+					callback.servicesFound(idca, (IServiceInfo[]) result);
+				}
+				if (untilFound && result != null) {
+					break;
+				}
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		for (final Iterator itr = pending.entrySet().iterator(); itr.hasNext();) {
+			final Map.Entry entry = (Map.Entry) itr.next();
+			final Future future = (Future) entry.getKey();
+			if (timedOut && !future.isDone()) {
+				final IDiscoveryLocator idca = (IDiscoveryLocator) entry.getValue();
+				getLatencyHistogram(idca).recordTimeout();
+				Trace.trace(Activator.PLUGIN_ID, METHODS_TRACING, this.getClass(), method, "locator " + idca //$NON-NLS-1$
+						+ " did not return within " + timeout + "ms"); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+			// a locator already called keeps running, its latency is still recorded
+			future.cancel(false);
 		}
-		return (IServiceTypeID[]) set.toArray(new IServiceTypeID[set.size()]);
+		return results;
+	}
+
+	Object timedCall(IDiscoveryLocator idca, LocatorCall call) {
+		final LocatorLatencyHistogram histogram = getLatencyHistogram(idca);
+		final long start = System.nanoTime();
+		try {
+			final Object result = call.call(idca);
+			histogram.record(System.nanoTime() - start);
+			return result;
+		} catch (final RuntimeException e) {
+			histogram.recordFailure();
+			throw e;
+		}
+	}
+
+	private LocatorLatencyHistogram getLatencyHistogram(IDiscoveryLocator idca) {
+		synchronized (latencyHistograms) {
+			LocatorLatencyHistogram histogram = (LocatorLatencyHistogram) latencyHistograms.get(idca);
+			if (histogram == null) {
+				final ID id = (idca instanceof IContainer) ? ((IContainer) idca).getID() : null;
+				histogram = new LocatorLatencyHistogram(String.valueOf(id != null ? (Object) id : idca));
+				latencyHistograms.put(idca, histogram);
+			}
+			return histogram;
+		}
+	}
+
+	/**
+	 * @return the latencies of the calls to each of the discovery locators
+	 * @since 3.1
+	 */
+	public LocatorLatencyHistogram[] getLatencyHistograms() {
+		synchronized (latencyHistograms) {
+			return (LocatorLatencyHistogram[]) latencyHistograms.values().toArray(new LocatorLatencyHistogram[latencyHistograms.size()]);
+		}
+	}
+
+	private synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			// not bounded, so that locators that do not return by the deadline
+			// do not hold up the calls to the other locators
+			executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS, new SynchronousQueue(), new ThreadFactory() {
+				private final AtomicInteger count = new AtomicInteger();
+
+				public Thread newThread(Runnable r) {
+					final Thread t = new Thread(r, "ECF Composite Discovery-" + count.incrementAndGet()); //$NON-NLS-1$
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return executor;
 	}
 
 	/* (non-Javadoc)
@@ -489,6 +728,9 @@ public class CompositeDiscoveryContainer extends AbstractDiscoveryContainerAdapt
 		final IDiscoveryLocator idca = (IDiscoveryLocator) object;
 		idca.removeServiceListener(ccsl);
 		idca.removeServiceTypeListener(ccstl);
+		synchronized (latencyHistograms) {
+			latencyHistograms.remove(idca);
+		}
 		synchronized (containers) {
 			Trace.trace(Activator.PLUGIN_ID, METHODS_TRACING, this.getClass(), "removeContainer(Object)", "removeContainer " //$NON-NLS-1$ //$NON-NLS-2$
 					+ object.toString());
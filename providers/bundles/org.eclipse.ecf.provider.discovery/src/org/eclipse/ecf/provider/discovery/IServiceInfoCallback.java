@@ -0,0 +1,37 @@
+/****************************************************************************
+ * Copyright (c) 2026 Composent, Inc. and others.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * Contributors:
+ *   Composent, Inc. - initial API and implementation
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *****************************************************************************/
+package org.eclipse.ecf.provider.discovery;
+
+import org.eclipse.ecf.discovery.IDiscoveryLocator;
+import org.eclipse.ecf.discovery.IServiceInfo;
+
+/**
+ * Receives the services found by each discovery locator of a
+ * {@link CompositeDiscoveryContainer} as soon as the locator returns them,
+ * before the results of all locators are merged.
+ *
+ * @since 3.1
+ */
+public interface IServiceInfoCallback {
+
+	/**
+	 * Called once for each locator that returned before the deadline, on the
+	 * thread that called the {@link CompositeDiscoveryContainer}.
+	 *
+	 * @param locator
+	 *            the locator that found the services
+	 * @param services
+	 *            the services found by the locator. Not <code>null</code>.
+	 */
+	public void servicesFound(IDiscoveryLocator locator, IServiceInfo[] services);
+}
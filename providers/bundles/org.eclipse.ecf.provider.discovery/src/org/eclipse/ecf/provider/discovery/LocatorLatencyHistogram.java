@@ -0,0 +1,143 @@
+/****************************************************************************
+ * Copyright (c) 2026 Composent, Inc. and others.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * Contributors:
+ *   Composent, Inc. - initial API and implementation
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *****************************************************************************/
+package org.eclipse.ecf.provider.discovery;
+
+/**
+ * Latencies of the calls of a {@link CompositeDiscoveryContainer} to one of
+ * its discovery locators, so that slow locators can be identified.
+ * <p>
+ * Bucket <code>i</code> counts the calls that took less than
+ * <code>2^i</code> milliseconds (and at least <code>2^(i-1)</code>), the last
+ * bucket all calls that took longer. Calls that were still running at the
+ * deadline of a fan-out are counted as timeouts, and their latency is recorded
+ * when they complete.
+ *
+ * @since 3.1
+ */
+public class LocatorLatencyHistogram {
+
+	public static final int BUCKETS = 18;
+
+	private final String locator;
+	private final long[] counts = new long[BUCKETS];
+	private long count;
+	private long totalNanos;
+	private long maxNanos;
+	private long timeouts;
+	private long failures;
+
+	public LocatorLatencyHistogram(String locator) {
+		this.locator = locator;
+	}
+
+	synchronized void record(long nanos) {
+		final long millis = nanos / 1000000;
+		int bucket = 0;
+		while (bucket < BUCKETS - 1 && millis >= (1L << bucket)) {
+			bucket++;
+		}
+		counts[bucket]++;
+		count++;
+		totalNanos += nanos;
+		if (nanos > maxNanos) {
+			maxNanos = nanos;
+		}
+	}
+
+	synchronized void recordTimeout() {
+		timeouts++;
+	}
+
+	synchronized void recordFailure() {
+		failures++;
+	}
+
+	/**
+	 * @return the locator the latencies are recorded for
+	 */
+	public String getLocator() {
+		return locator;
+	}
+
+	/**
+	 * @param bucket
+	 *            the bucket
+	 * @return the upper bound of the given bucket in milliseconds, or
+	 *         {@link Long#MAX_VALUE} for the last bucket
+	 */
+	public static long getBucketUpperBound(int bucket) {
+		return (bucket >= BUCKETS - 1) ? Long.MAX_VALUE : (1L << bucket);
+	}
+
+	/**
+	 * @return copy of the number of calls per bucket
+	 */
+	public synchronized long[] getCounts() {
+		final long[] result = new long[BUCKETS];
+		System.arraycopy(counts, 0, result, 0, BUCKETS);
+		return result;
+	}
+
+	/**
+	 * @return the number of completed calls
+	 */
+	public synchronized long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return the mean latency of the completed calls in milliseconds
+	 */
+	public synchronized double getMeanMillis() {
+		return (count == 0) ? 0 : totalNanos / (count * 1000000.0);
+	}
+
+	/**
+	 * @return the maximum latency of the completed calls in milliseconds
+	 */
+	public synchronized long getMaxMillis() {
+		return maxNanos / 1000000;
+	}
+
+	/**
+	 * @return the number of calls that had not completed at the deadline
+	 */
+	public synchronized long getTimeoutCount() {
+		return timeouts;
+	}
+
+	/**
+	 * @return the number of calls that failed with an exception
+	 */
+	public synchronized long getFailureCount() {
+		return failures;
+	}
+
+	public synchronized String toString() {
+		final StringBuffer buf = new StringBuffer("LocatorLatencyHistogram["); //$NON-NLS-1$
+		buf.append("locator=").append(locator); //$NON-NLS-1$
+		buf.append(";count=").append(count); //$NON-NLS-1$
+		buf.append(";meanMillis=").append(getMeanMillis()); //$NON-NLS-1$
+		buf.append(";maxMillis=").append(getMaxMillis()); //$NON-NLS-1$
+		buf.append(";timeouts=").append(timeouts); //$NON-NLS-1$
+		buf.append(";failures=").append(failures); //$NON-NLS-1$
+		buf.append(";buckets="); //$NON-NLS-1$
+		for (int i = 0; i < BUCKETS; i++) {
+			if (counts[i] > 0) {
+				buf.append('<').append(i == BUCKETS - 1 ? "inf" : String.valueOf(getBucketUpperBound(i))).append("ms:").append(counts[i]).append(' '); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+		}
+		buf.append("]"); //$NON-NLS-1$
+		return buf.toString();
+	}
+}
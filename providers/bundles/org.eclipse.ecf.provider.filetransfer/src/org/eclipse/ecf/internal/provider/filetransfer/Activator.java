@@ -45,6 +45,7 @@ import org.eclipse.ecf.filetransfer.service.ISendFileTransfer;
 import org.eclipse.ecf.filetransfer.service.ISendFileTransferFactory;
 import org.eclipse.ecf.provider.filetransfer.IFileTransferProtocolToFactoryMapper;
 import org.eclipse.ecf.provider.filetransfer.retrieve.MultiProtocolRetrieveAdapter;
+import org.eclipse.ecf.provider.filetransfer.util.WatchdogInputStream;
 import org.eclipse.osgi.util.NLS;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleActivator;
@@ -334,6 +335,7 @@ public class Activator implements BundleActivator, IFileTransferProtocolToFactor
 			this.protocolMapperRegistration.unregister();
 			this.protocolMapperRegistration = null;
 		}
+		WatchdogInputStream.shutdown();
 
 		synchronized (this) {
 			this.context = null;
@@ -61,7 +61,7 @@ import org.eclipse.ecf.internal.provider.filetransfer.Messages;
 import org.eclipse.ecf.provider.filetransfer.identity.FileTransferNamespace;
 import org.eclipse.ecf.provider.filetransfer.util.PollingInputStream;
 import org.eclipse.ecf.provider.filetransfer.util.ProxySetupHelper;
-import org.eclipse.ecf.provider.filetransfer.util.TimeoutInputStream;
+import org.eclipse.ecf.provider.filetransfer.util.WatchdogInputStream;
 import org.eclipse.osgi.util.NLS;
 
 public abstract class AbstractRetrieveFileTransfer implements IIncomingFileTransfer, IRetrieveFileTransfer, IFileTransferPausable {
@@ -262,8 +262,33 @@ public abstract class AbstractRetrieveFileTransfer implements IIncomingFileTrans
 		return result;
 	}
 
+	/**
+	 * Returns whether the reads of the input streams that are given to
+	 * {@link #setInputStream(InputStream)} fail on their own with an
+	 * InterruptedIOException after {@link #getSocketReadTimeout()}, as those
+	 * of a socket with a read timeout do. Stalled streams that do not are
+	 * aborted by a watchdog instead.
+	 * 
+	 * @return <code>true</code> if the streams time out on their own,
+	 *         <code>false</code> otherwise
+	 * @since 3.3
+	 */
+	protected boolean hasNativeReadTimeout() {
+		return false;
+	}
+
+	/**
+	 * Returns how long a read may block before the transfer would have given
+	 * up on it: the read timeout for each of the retry attempts.
+	 */
+	private long getStallTimeout() {
+		long readTimeout = getSocketReadTimeout();
+		int retryAttempts = getRetryAttempts();
+		return (readTimeout > 0 && retryAttempts > 0) ? readTimeout * retryAttempts : 0;
+	}
+
 	protected void setInputStream(InputStream ins) {
-		remoteFileContents = new TimeoutInputStream(ins, TIMEOUT_INPUTSTREAM_BUFFER_SIZE, getSocketReadTimeout(), getSocketCloseTimeout());
+		remoteFileContents = new WatchdogInputStream(ins, hasNativeReadTimeout() ? 0 : getStallTimeout(), getSocketCloseTimeout());
 	}
 
 	protected void setOutputStream(OutputStream outs) {
@@ -490,6 +515,11 @@ public abstract class AbstractRetrieveFileTransfer implements IIncomingFileTrans
 			if (job != null)
 				job.cancel();
 		}
+		// a read that is blocked would only notice the cancellation once it
+		// returns
+		InputStream ins = remoteFileContents;
+		if (ins instanceof WatchdogInputStream)
+			((WatchdogInputStream) ins).abort();
 	}
 
 	/*
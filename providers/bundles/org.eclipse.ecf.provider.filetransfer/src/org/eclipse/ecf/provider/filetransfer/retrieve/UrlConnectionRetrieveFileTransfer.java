@@ -97,6 +97,9 @@ public class UrlConnectionRetrieveFileTransfer extends AbstractRetrieveFileTrans
 	protected void connect() throws IOException {
 		setupTimeouts();
 		urlConnection = getRemoteFileURL().openConnection();
+		// the JRE only reads its default read timeout property once, so set it
+		// on every connection
+		urlConnection.setReadTimeout(getSocketReadTimeout());
 		// set cache to off if using jar protocol
 		// this is for addressing bug
 		// https://bugs.eclipse.org/bugs/show_bug.cgi?id=235933
@@ -458,6 +461,16 @@ public class UrlConnectionRetrieveFileTransfer extends AbstractRetrieveFileTrans
 		return result;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.eclipse.ecf.provider.filetransfer.retrieve.AbstractRetrieveFileTransfer#hasNativeReadTimeout()
+	 */
+	protected boolean hasNativeReadTimeout() {
+		// the read timeout is set on the connection in connect()
+		return true;
+	}
+
 	private void setupTimeouts() {
 		String existingTimeout = System.getProperty(JRE_CONNECT_TIMEOUT_PROPERTY);
 		if (existingTimeout == null) {
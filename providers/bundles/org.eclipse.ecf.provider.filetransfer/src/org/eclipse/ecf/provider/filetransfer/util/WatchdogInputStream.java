@@ -0,0 +1,345 @@
+/****************************************************************************
+ * Copyright (c) 2026 Composent, Inc. and others.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * Contributors:
+ *   Composent, Inc. - initial API and implementation
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *****************************************************************************/
+package org.eclipse.ecf.provider.filetransfer.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Wraps an input stream to bound how long a read() or close() may block
+ * without dedicating a thread to each stream. Reads are passed straight
+ * through to the underlying stream on the calling thread.
+ * <p>
+ * A read that makes no progress for the stall timeout is aborted by a
+ * watchdog thread that is shared by all instances: the underlying stream is
+ * closed and the blocked read, as well as any later one, throws an
+ * InterruptedIOException. Streams whose reads already time out on their own,
+ * such as those of a socket with a read timeout, should be given a stall
+ * timeout of 0.
+ * </p>
+ * <p>
+ * Closes that may take a while are run on a shared pool so that close() can
+ * give up after the close timeout and let the underlying stream finish
+ * closing in the background.
+ * </p>
+ *
+ * @since 3.3
+ */
+public class WatchdogInputStream extends FilterInputStream {
+
+	private static ScheduledThreadPoolExecutor watchdog;
+
+	private static ThreadPoolExecutor closer;
+
+	private final long stallTimeout; // in millis, or 0
+	private final long closeTimeout; // in millis, 0 or -1
+
+	private ScheduledFuture<?> check; // the stall check, if scheduled
+	private boolean closed = false; // if true, close has been started
+	private Future<Object> closing; // the close running in the background
+
+	private volatile long readStart = 0; // when the current read started, or 0
+	private volatile boolean aborted = false;
+
+	/**
+	 * Creates a watchdog wrapper for an input stream.
+	 *
+	 * @param in
+	 *            the underlying input stream
+	 * @param stallTimeout
+	 *            the number of milliseconds that a read() or skip() may block
+	 *            before the stream is aborted; 0 blocks indefinitely
+	 * @param closeTimeout
+	 *            the number of milliseconds to block for a close() before
+	 *            throwing an InterruptedIOException; 0 blocks indefinitely, -1
+	 *            closes the stream in the background
+	 */
+	public WatchdogInputStream(InputStream in, long stallTimeout, long closeTimeout) {
+		super(in);
+		this.stallTimeout = stallTimeout;
+		this.closeTimeout = closeTimeout;
+		if (stallTimeout > 0) {
+			// checking four times per timeout notices a stall at most a quarter
+			// of the timeout late
+			long period = Math.max(1, stallTimeout / 4);
+			check = getWatchdog().scheduleWithFixedDelay(new Runnable() {
+				public void run() {
+					checkStalled();
+				}
+			}, period, period, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private static synchronized ScheduledThreadPoolExecutor getWatchdog() {
+		if (watchdog == null) {
+			watchdog = new ScheduledThreadPoolExecutor(1, createThreadFactory("WatchdogInputStream")); //$NON-NLS-1$
+			watchdog.setRemoveOnCancelPolicy(true);
+		}
+		return watchdog;
+	}
+
+	private static synchronized ThreadPoolExecutor getCloser() {
+		if (closer == null) {
+			// threads are only needed while streams are being closed
+			closer = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), createThreadFactory("WatchdogInputStream closer")); //$NON-NLS-1$
+		}
+		return closer;
+	}
+
+	private static ThreadFactory createThreadFactory(final String name) {
+		return new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, name);
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+	/**
+	 * Stops the threads that are shared by all instances. This is called when
+	 * the bundle is stopped.
+	 */
+	public static synchronized void shutdown() {
+		if (watchdog != null) {
+			watchdog.shutdownNow();
+			watchdog = null;
+		}
+		if (closer != null) {
+			closer.shutdown();
+			closer = null;
+		}
+	}
+
+	void checkStalled() {
+		long start = readStart;
+		if (start != 0 && System.currentTimeMillis() - start >= stallTimeout) {
+			abort();
+		}
+	}
+
+	/**
+	 * Aborts this stream. The underlying stream is closed in the background,
+	 * which makes a read that is blocked on it return, and all further reads
+	 * throw an InterruptedIOException. This may be called from any thread.
+	 */
+	public void abort() {
+		synchronized (this) {
+			if (aborted)
+				return;
+			aborted = true;
+		}
+		// never blocks, the close is run in the background
+		startClose();
+	}
+
+	/**
+	 * Closes the underlying stream. It may be important to wait for a stream
+	 * to actually be closed because it holds an implicit lock on a system
+	 * resource (such as a file) while it is open. Closing a stream may take
+	 * time if the underlying stream is still servicing a previous request.
+	 *
+	 * @throws InterruptedIOException
+	 *             if the timeout expired
+	 * @throws IOException
+	 *             if an i/o error occurs
+	 */
+	public void close() throws IOException {
+		Future<Object> f;
+		synchronized (this) {
+			if (!closed && closeTimeout == 0 && !aborted) {
+				// nothing to time out, close on this thread
+				closed = true;
+				cancelCheck();
+				f = null;
+			} else {
+				f = startClose();
+				if (f == null || closeTimeout == -1)
+					return;
+			}
+		}
+		if (f == null) {
+			in.close();
+			return;
+		}
+		try {
+			if (closeTimeout == 0) {
+				// the stream has been aborted and is closing in the background
+				f.get();
+			} else {
+				f.get(closeTimeout, TimeUnit.MILLISECONDS);
+			}
+		} catch (TimeoutException e) {
+			throw new InterruptedIOException();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt(); // we weren't expecting to be
+			// interrupted
+			throw new InterruptedIOException();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Starts closing the underlying stream in the background if that has not
+	 * been done yet.
+	 *
+	 * @return the close that is running in the background, or
+	 *         <code>null</code> if the stream is being closed by the thread
+	 *         that called close()
+	 */
+	private synchronized Future<Object> startClose() {
+		cancelCheck();
+		if (!closed) {
+			closed = true;
+			closing = getCloser().submit(new Callable<Object>() {
+				public Object call() throws IOException {
+					in.close();
+					return null;
+				}
+			});
+		}
+		return closing;
+	}
+
+	private void cancelCheck() {
+		if (check != null) {
+			check.cancel(false);
+			check = null;
+		}
+	}
+
+	/**
+	 * Returns the number of bytes that can be read without blocking.
+	 *
+	 * @throws IOException
+	 *             if an i/o error occurs
+	 */
+	public int available() throws IOException {
+		if (aborted)
+			return 0;
+		return in.available();
+	}
+
+	/**
+	 * Reads a byte from the stream.
+	 *
+	 * @throws InterruptedIOException
+	 *             if the stream has been aborted
+	 * @throws IOException
+	 *             if an i/o error occurs
+	 */
+	public int read() throws IOException {
+		beginRead();
+		try {
+			int result = in.read();
+			endRead();
+			return result;
+		} catch (IOException e) {
+			throw checkAborted(e);
+		} finally {
+			readStart = 0;
+		}
+	}
+
+	/**
+	 * Reads multiple bytes from the stream.
+	 *
+	 * @throws InterruptedIOException
+	 *             if the stream has been aborted
+	 * @throws IOException
+	 *             if an i/o error occurs
+	 */
+	public int read(byte[] buffer, int off, int len) throws IOException {
+		beginRead();
+		try {
+			int result = in.read(buffer, off, len);
+			endRead();
+			return result;
+		} catch (IOException e) {
+			throw checkAborted(e);
+		} finally {
+			readStart = 0;
+		}
+	}
+
+	/**
+	 * Skips multiple bytes in the stream.
+	 *
+	 * @throws InterruptedIOException
+	 *             if the stream has been aborted
+	 * @throws IOException
+	 *             if an i/o error occurs
+	 */
+	public long skip(long count) throws IOException {
+		beginRead();
+		try {
+			long result = in.skip(count);
+			endRead();
+			return result;
+		} catch (IOException e) {
+			throw checkAborted(e);
+		} finally {
+			readStart = 0;
+		}
+	}
+
+	/**
+	 * Mark is not supported by the wrapper even if the underlying stream does,
+	 * returns false.
+	 */
+	public boolean markSupported() {
+		return false;
+	}
+
+	private void beginRead() throws InterruptedIOException {
+		if (aborted)
+			throw new InterruptedIOException();
+		readStart = System.currentTimeMillis();
+	}
+
+	/**
+	 * Makes sure that a read that returned because the stream has been aborted
+	 * is not mistaken for the end of the stream.
+	 */
+	private void endRead() throws InterruptedIOException {
+		if (aborted)
+			throw new InterruptedIOException();
+	}
+
+	/**
+	 * Reports a failed read of an aborted stream as a timeout.
+	 */
+	private IOException checkAborted(IOException e) {
+		if (aborted && !(e instanceof InterruptedIOException)) {
+			InterruptedIOException timeout = new InterruptedIOException();
+			timeout.initCause(e);
+			return timeout;
+		}
+		return e;
+	}
+}
@@ -12,6 +12,7 @@
 package org.eclipse.ecf.internal.provider.remoteservice;
 
 import java.util.*;
+import java.util.concurrent.*;
 import org.eclipse.core.runtime.*;
 import org.eclipse.ecf.core.identity.Namespace;
 import org.eclipse.ecf.core.util.*;
@@ -47,6 +48,13 @@ public class Activator implements BundleActivator {
 
 	private List rscAdapterFactories;
 
+	// Static, as getDefault() creates a new instance once the bundle has stopped
+	private static final Object requestTimeoutLock = new Object();
+
+	private static ScheduledExecutorService requestTimeoutScheduler;
+
+	private static boolean requestTimeoutStopped;
+
 	private static IAdapterManager getAdapterManager(BundleContext ctx) {
 		AdapterManagerTracker t = new AdapterManagerTracker(ctx);
 		t.open();
@@ -57,6 +65,9 @@ public class Activator implements BundleActivator {
 
 	public void start(final BundleContext ctxt) throws Exception {
 		this.context = ctxt;
+		synchronized (requestTimeoutLock) {
+			requestTimeoutStopped = false;
+		}
 		BundleStarter.startDependents(this.context, new String[] {"org.eclipse.ecf.provider", "org.eclipse.ecf.sharedobject"}, Bundle.RESOLVED | Bundle.STARTING); //$NON-NLS-1$ //$NON-NLS-2$
 		SafeRunner.run(new ExtensionRegistryRunnable(this.context) {
 			protected void runWithoutRegistry() throws Exception {
@@ -82,6 +93,13 @@ public class Activator implements BundleActivator {
 	}
 
 	public void stop(BundleContext ctxt) throws Exception {
+		synchronized (requestTimeoutLock) {
+			requestTimeoutStopped = true;
+			if (requestTimeoutScheduler != null) {
+				requestTimeoutScheduler.shutdownNow();
+				requestTimeoutScheduler = null;
+			}
+		}
 		if (logServiceTracker != null) {
 			logServiceTracker.close();
 			logServiceTracker = null;
@@ -115,6 +133,31 @@ public class Activator implements BundleActivator {
 		return plugin;
 	}
 
+	/**
+	 * @return ScheduledExecutorService the single scheduler used to expire remote call
+	 *         requests that have not received a response within their timeout, or
+	 *         <code>null</code> if the bundle has been stopped
+	 */
+	public static ScheduledExecutorService getRequestTimeoutScheduler() {
+		synchronized (requestTimeoutLock) {
+			if (requestTimeoutStopped)
+				return null;
+			if (requestTimeoutScheduler == null) {
+				final ScheduledThreadPoolExecutor s = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						final Thread t = new Thread(r, "ECF Remote Service Request Timeout"); //$NON-NLS-1$
+						t.setDaemon(true);
+						return t;
+					}
+				});
+				// Cancelled expiry tasks (requests that received a response) are removed immediately
+				s.setRemoveOnCancelPolicy(true);
+				requestTimeoutScheduler = s;
+			}
+			return requestTimeoutScheduler;
+		}
+	}
+
 	/**
 	 * @param filter
 	 * @return Fileter created via context
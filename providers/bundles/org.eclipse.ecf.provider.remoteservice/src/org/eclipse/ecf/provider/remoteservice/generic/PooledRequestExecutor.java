@@ -0,0 +1,369 @@
+/****************************************************************************
+ * Copyright (c) 2026 Composent, Inc. and others.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * Contributors:
+ *    Composent, Inc. - initial API and implementation
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *****************************************************************************/
+package org.eclipse.ecf.provider.remoteservice.generic;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.eclipse.core.runtime.Assert;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.equinox.concurrent.future.*;
+
+/**
+ * Executor for remote service requests that runs requests on a bounded pool of
+ * threads with a bounded queue.  When both the pool and the queue are full, a request
+ * is either rejected with a {@link RejectedExecutionException} or run on the calling
+ * thread, depending on the rejection policy.  Requests may also be limited by key
+ * (e.g. per remote service registration) to a maximum number of concurrent executions,
+ * with excess requests held back until an earlier one for the same key completes.  Held
+ * requests count against the queue size.  Held requests that are dropped because the
+ * executor is shut down are reported to runnables implementing {@link IRejectable}.
+ *
+ * @since 4.7
+ */
+public class PooledRequestExecutor extends AbstractExecutor {
+
+	/**
+	 * Rejection policy that rejects requests when the pool and queue are full.
+	 */
+	public static final String REJECT_ERROR = "error"; //$NON-NLS-1$
+	/**
+	 * Rejection policy that runs requests on the calling thread when the pool and queue are full.
+	 */
+	public static final String REJECT_CALLER_RUNS = "callerRuns"; //$NON-NLS-1$
+
+	public static final String MAX_THREADS_PROP = "org.eclipse.ecf.provider.remoteservice.executor.maxThreads"; //$NON-NLS-1$
+	public static final String QUEUE_SIZE_PROP = "org.eclipse.ecf.provider.remoteservice.executor.queueSize"; //$NON-NLS-1$
+	public static final String REJECTION_POLICY_PROP = "org.eclipse.ecf.provider.remoteservice.executor.rejectionPolicy"; //$NON-NLS-1$
+
+	public static final int DEFAULT_MAX_THREADS = Integer.parseInt(System.getProperty(MAX_THREADS_PROP, String.valueOf(Math.max(4, 2 * Runtime.getRuntime().availableProcessors()))));
+	public static final int DEFAULT_QUEUE_SIZE = Integer.parseInt(System.getProperty(QUEUE_SIZE_PROP, "1000")); //$NON-NLS-1$
+	public static final String DEFAULT_REJECTION_POLICY = System.getProperty(REJECTION_POLICY_PROP, REJECT_ERROR);
+
+	/**
+	 * Remote service registration property (named &quot;ecf.rsvc.maxConcurrentCalls&quot;)
+	 * giving the maximum number of calls to the service that are run concurrently.
+	 * The value may be an Integer or a String.  If absent or not positive, calls
+	 * are not limited other than by the size of the pool.
+	 */
+	public static final String MAX_CONCURRENT_CALLS_PROP = "ecf.rsvc.maxConcurrentCalls"; //$NON-NLS-1$
+
+	public static final String METRIC_POOL_SIZE = "poolSize"; //$NON-NLS-1$
+	public static final String METRIC_ACTIVE_COUNT = "activeCount"; //$NON-NLS-1$
+	public static final String METRIC_QUEUE_SIZE = "queueSize"; //$NON-NLS-1$
+	public static final String METRIC_HELD_COUNT = "heldCount"; //$NON-NLS-1$
+	public static final String METRIC_COMPLETED_COUNT = "completedCount"; //$NON-NLS-1$
+	public static final String METRIC_REJECTED_COUNT = "rejectedCount"; //$NON-NLS-1$
+	public static final String METRIC_CALLER_RUNS_COUNT = "callerRunsCount"; //$NON-NLS-1$
+
+	/**
+	 * Runnable that is told when it has been accepted by {@link #execute(IProgressRunnable, IProgressMonitor, Object, int)}
+	 * but is dropped without being run.
+	 */
+	public interface IRejectable {
+		/**
+		 * Called instead of running the runnable.
+		 *
+		 * @param e the reason the runnable is not run
+		 */
+		void rejected(RejectedExecutionException e);
+	}
+
+	/**
+	 * An accepted runnable and its future.
+	 */
+	class Task implements Runnable {
+		final IProgressRunnable runnable;
+		final AbstractFuture future;
+
+		Task(IProgressRunnable runnable, AbstractFuture future) {
+			this.runnable = runnable;
+			this.future = future;
+		}
+
+		public void run() {
+			if (!future.isCanceled())
+				safeRun(future, runnable);
+		}
+
+		void drop(RejectedExecutionException e) {
+			rejectedCount.incrementAndGet();
+			future.cancel();
+			if (runnable instanceof IRejectable)
+				((IRejectable) runnable).rejected(e);
+		}
+	}
+
+	/**
+	 * Limits the number of concurrently running tasks for a single key.
+	 */
+	static class KeyLimit {
+		final int limit;
+		int running;
+		final LinkedList<Task> held = new LinkedList<Task>();
+
+		KeyLimit(int limit) {
+			this.limit = limit;
+		}
+	}
+
+	private final String name;
+	private final boolean callerRuns;
+	private final int queueSize;
+	private final ThreadPoolExecutor pool;
+	private final Map<Object, KeyLimit> keyLimits = new HashMap<Object, KeyLimit>();
+	private int heldCount;
+	private final AtomicLong rejectedCount = new AtomicLong();
+	private final AtomicLong callerRunsCount = new AtomicLong();
+
+	public PooledRequestExecutor(String name) {
+		this(name, DEFAULT_MAX_THREADS, DEFAULT_QUEUE_SIZE, DEFAULT_REJECTION_POLICY);
+	}
+
+	public PooledRequestExecutor(final String name, int maxThreads, int queueSize, String rejectionPolicy) {
+		Assert.isNotNull(name);
+		if (maxThreads <= 0)
+			throw new IllegalArgumentException("maxThreads must be > 0"); //$NON-NLS-1$
+		this.name = name;
+		this.queueSize = Math.max(0, queueSize);
+		this.callerRuns = REJECT_CALLER_RUNS.equals(rejectionPolicy);
+		final BlockingQueue<Runnable> queue = (this.queueSize == 0) ? new SynchronousQueue<Runnable>() : new ArrayBlockingQueue<Runnable>(this.queueSize);
+		this.pool = new ThreadPoolExecutor(maxThreads, maxThreads, 60L, TimeUnit.SECONDS, queue, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			public Thread newThread(Runnable r) {
+				final Thread t = new Thread(r, name + "-" + count.incrementAndGet()); //$NON-NLS-1$
+				t.setDaemon(true);
+				return t;
+			}
+		}, new ThreadPoolExecutor.AbortPolicy());
+		this.pool.allowCoreThreadTimeOut(true);
+	}
+
+	protected AbstractFuture createFuture(IProgressMonitor progressMonitor) {
+		return new SingleOperationFuture(progressMonitor);
+	}
+
+	protected void safeRun(ISafeProgressRunner runner, IProgressRunnable progressRunnable) {
+		runner.runWithProgress(progressRunnable);
+	}
+
+	public IFuture execute(IProgressRunnable runnable, IProgressMonitor monitor) {
+		return execute(runnable, monitor, null, 0);
+	}
+
+	/**
+	 * Execute the given runnable, limiting the number of runnables executed concurrently
+	 * for the given key.
+	 *
+	 * @param runnable the runnable to execute.  Must not be <code>null</code>.
+	 * @param monitor the progress monitor.  May be <code>null</code>.
+	 * @param key the key to limit concurrency for.  If <code>null</code>, concurrency is not limited by key.
+	 * @param limit the maximum number of runnables to execute concurrently for key.  If not positive,
+	 * concurrency is not limited by key.
+	 * @return IFuture the future for the result of the runnable
+	 * @throws RejectedExecutionException if the runnable cannot be queued and the rejection policy
+	 * is {@link #REJECT_ERROR}, or if this executor has been shut down
+	 */
+	public IFuture execute(final IProgressRunnable runnable, IProgressMonitor monitor, Object key, int limit) throws RejectedExecutionException {
+		Assert.isNotNull(runnable);
+		final AbstractFuture sof = createFuture(monitor);
+		final Task task = new Task(runnable, sof);
+		if (key == null || limit <= 0)
+			submit(task);
+		else
+			submitLimited(task, key, limit);
+		return sof;
+	}
+
+	private void submit(Runnable task) throws RejectedExecutionException {
+		try {
+			pool.execute(task);
+		} catch (final RejectedExecutionException e) {
+			if (!callerRuns || pool.isShutdown()) {
+				rejectedCount.incrementAndGet();
+				throw e;
+			}
+			callerRunsCount.incrementAndGet();
+			task.run();
+		}
+	}
+
+	private void submitLimited(final Task task, final Object key, int limit) throws RejectedExecutionException {
+		final KeyLimit keyLimit;
+		synchronized (keyLimits) {
+			if (pool.isShutdown()) {
+				rejectedCount.incrementAndGet();
+				throw new RejectedExecutionException("Request executor shut down"); //$NON-NLS-1$
+			}
+			KeyLimit kl = keyLimits.get(key);
+			// A changed limit takes effect once the running and held tasks for key are done
+			if (kl == null) {
+				kl = new KeyLimit(limit);
+				keyLimits.put(key, kl);
+			}
+			keyLimit = kl;
+			if (keyLimit.running >= keyLimit.limit) {
+				// Held tasks count against the queue size.  They are rejected with
+				// the caller runs policy too, as running them here would exceed the limit
+				if (heldCount + pool.getQueue().size() >= queueSize) {
+					rejectedCount.incrementAndGet();
+					throw new RejectedExecutionException("Request queue full for " + key); //$NON-NLS-1$
+				}
+				keyLimit.held.add(task);
+				heldCount++;
+				return;
+			}
+			keyLimit.running++;
+		}
+		try {
+			submit(createLimitedTask(task, key, keyLimit));
+		} catch (final RejectedExecutionException e) {
+			synchronized (keyLimits) {
+				keyLimit.running--;
+				releaseKeyLimit(key, keyLimit);
+			}
+			throw e;
+		}
+	}
+
+	private Runnable createLimitedTask(final Runnable task, final Object key, final KeyLimit keyLimit) {
+		return new Runnable() {
+			public void run() {
+				try {
+					task.run();
+				} finally {
+					completed(key, keyLimit);
+				}
+			}
+		};
+	}
+
+	void completed(Object key, KeyLimit keyLimit) {
+		final Task next;
+		synchronized (keyLimits) {
+			next = keyLimit.held.poll();
+			if (next == null) {
+				keyLimit.running--;
+				releaseKeyLimit(key, keyLimit);
+				return;
+			}
+			heldCount--;
+		}
+		// The running count is handed over to the next held task
+		final Runnable limited = createLimitedTask(next, key, keyLimit);
+		try {
+			pool.execute(limited);
+		} catch (final RejectedExecutionException e) {
+			if (pool.isShutdown()) {
+				next.drop(e);
+				// Hand the running count over to the task after it
+				completed(key, keyLimit);
+				return;
+			}
+			// Pool and queue full, so run it here rather than dropping an accepted request
+			callerRunsCount.incrementAndGet();
+			limited.run();
+		}
+	}
+
+	private void releaseKeyLimit(Object key, KeyLimit keyLimit) {
+		if (keyLimit.running == 0 && keyLimit.held.isEmpty() && keyLimits.get(key) == keyLimit)
+			keyLimits.remove(key);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getQueueSize() {
+		synchronized (keyLimits) {
+			return pool.getQueue().size() + heldCount;
+		}
+	}
+
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+
+	/**
+	 * @return Map the current metrics for this executor.  Keys are the METRIC_* constants.
+	 */
+	public Map<String, Object> getMetrics() {
+		final Map<String, Object> result = new HashMap<String, Object>();
+		result.put(METRIC_POOL_SIZE, Integer.valueOf(pool.getPoolSize()));
+		result.put(METRIC_ACTIVE_COUNT, Integer.valueOf(pool.getActiveCount()));
+		synchronized (keyLimits) {
+			result.put(METRIC_QUEUE_SIZE, Integer.valueOf(pool.getQueue().size() + heldCount));
+			result.put(METRIC_HELD_COUNT, Integer.valueOf(heldCount));
+		}
+		result.put(METRIC_COMPLETED_COUNT, Long.valueOf(pool.getCompletedTaskCount()));
+		result.put(METRIC_REJECTED_COUNT, Long.valueOf(rejectedCount.get()));
+		result.put(METRIC_CALLER_RUNS_COUNT, Long.valueOf(callerRunsCount.get()));
+		return result;
+	}
+
+	/**
+	 * Shut down this executor.  Queued requests are still run, but new requests are rejected.
+	 * Requests held back by their key's limit are dropped.
+	 */
+	public void shutdown() {
+		final List<Task> dropped = new ArrayList<Task>();
+		synchronized (keyLimits) {
+			pool.shutdown();
+			for (final KeyLimit keyLimit : keyLimits.values()) {
+				dropped.addAll(keyLimit.held);
+				heldCount -= keyLimit.held.size();
+				keyLimit.held.clear();
+			}
+		}
+		final RejectedExecutionException e = new RejectedExecutionException("Request executor shut down"); //$NON-NLS-1$
+		for (final Task task : dropped)
+			task.drop(e);
+	}
+
+	public boolean isShutdown() {
+		return pool.isShutdown();
+	}
+
+	/**
+	 * Get the maximum number of concurrent calls for the given registration from its
+	 * {@link #MAX_CONCURRENT_CALLS_PROP} property.
+	 *
+	 * @param registration the registration.  Must not be <code>null</code>.
+	 * @return int the limit, or 0 if calls are not limited
+	 */
+	public static int getMaxConcurrentCalls(RemoteServiceRegistrationImpl registration) {
+		final Object value = registration.getProperty(MAX_CONCURRENT_CALLS_PROP);
+		if (value instanceof Number)
+			return ((Number) value).intValue();
+		if (value instanceof String) {
+			try {
+				return Integer.parseInt(((String) value).trim());
+			} catch (final NumberFormatException e) {
+				// fall through
+			}
+		}
+		return 0;
+	}
+
+	public String toString() {
+		final StringBuffer sb = new StringBuffer("PooledRequestExecutor["); //$NON-NLS-1$
+		sb.append("name=").append(name).append(";"); //$NON-NLS-1$ //$NON-NLS-2$
+		sb.append("maxThreads=").append(pool.getMaximumPoolSize()).append(";"); //$NON-NLS-1$ //$NON-NLS-2$
+		sb.append("queueSize=").append(queueSize).append(";"); //$NON-NLS-1$ //$NON-NLS-2$
+		sb.append("callerRuns=").append(callerRuns).append("]"); //$NON-NLS-1$ //$NON-NLS-2$
+		return sb.toString();
+	}
+}
@@ -16,6 +16,16 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.security.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 import org.eclipse.core.runtime.*;
 import org.eclipse.ecf.core.ContainerConnectException;
 import org.eclipse.ecf.core.events.*;
@@ -26,7 +36,6 @@ import org.eclipse.ecf.core.sharedobject.*;
 import org.eclipse.ecf.core.sharedobject.events.ISharedObjectActivatedEvent;
 import org.eclipse.ecf.core.status.SerializableStatus;
 import org.eclipse.ecf.core.util.*;
-import org.eclipse.ecf.core.util.reflection.ClassUtil;
 import org.eclipse.ecf.internal.provider.remoteservice.Activator;
 import org.eclipse.ecf.internal.provider.remoteservice.IRemoteServiceProviderDebugOptions;
 import org.eclipse.ecf.remoteservice.*;
@@ -81,10 +90,32 @@ public class RegistrySharedObject extends BaseSharedObject implements IRemoteSer
 	protected int addRegistrationRequestTimeout = ADD_REGISTRATION_REQUEST_TIMEOUT;
 	/**
 	 * List of invocation requests...instances of Request
+	 * @deprecated no longer used.  Outstanding requests are kept in a map keyed by request id,
+	 * and accessed via {@link #addRequest(Request)}, {@link #getRequest(long)} and {@link #removeRequest(Request)}
 	 */
 	@SuppressWarnings("unchecked")
 	protected List requests = Collections.synchronizedList(new ArrayList());
 
+	/**
+	 * Outstanding invocation requests.  key: Long (request id), value: PendingRequest
+	 */
+	private final ConcurrentMap<Long, PendingRequest> pendingRequests = new ConcurrentHashMap<Long, PendingRequest>();
+
+	static final class PendingRequest {
+		final Request request;
+		volatile ScheduledFuture<?> expiry;
+
+		PendingRequest(Request request) {
+			this.request = request;
+		}
+
+		void cancelExpiry() {
+			final ScheduledFuture<?> f = expiry;
+			if (f != null)
+				f.cancel(false);
+		}
+	}
+
 	/**
 	 * Connect context to be used for connect.
 	 * @since 3.0
@@ -130,9 +161,10 @@ public class RegistrySharedObject extends BaseSharedObject implements IRemoteSer
 	private Hashtable pendingUpdateContainers = new Hashtable();
 	private List registryUpdateRequests = new ArrayList();
 
-	// system property allowing the executorType to be configured.  Currently types are:  jobs, threads, immediate.
+	// system property allowing the executorType to be configured.  Currently types are:  jobs, threads, immediate, pool.
 	private static final String DEFAULT_EXECUTOR_TYPE = System.getProperty("org.eclipse.ecf.provider.remoteservice.executorType", "jobs"); //$NON-NLS-1$ //$NON-NLS-2$
 
+	private final Object requestExecutorLock = new Object();
 	private IExecutor requestExecutor;
 
 	private Object remoteServiceCallPolicyLock = new Object();
@@ -489,8 +521,16 @@ public class RegistrySharedObject extends BaseSharedObject implements IRemoteSer
 		synchronized (addRegistrationRequests) {
 			addRegistrationRequests.clear();
 		}
-		synchronized (requests) {
-			requests.clear();
+		for (final Iterator<PendingRequest> i = pendingRequests.values().iterator(); i.hasNext();) {
+			final PendingRequest pending = i.next();
+			pending.cancelExpiry();
+			i.remove();
+			pending.request.getResponseFuture().completeExceptionally(new IOException("Remote service registry disposed")); //$NON-NLS-1$
+		}
+		synchronized (requestExecutorLock) {
+			if (requestExecutor instanceof PooledRequestExecutor)
+				((PooledRequestExecutor) requestExecutor).shutdown();
+			requestExecutor = null;
 		}
 		synchronized (pendingUpdateContainers) {
 			pendingUpdateContainers.clear();
@@ -939,30 +979,24 @@ public class RegistrySharedObject extends BaseSharedObject implements IRemoteSer
 	}
 
 	protected Object callSynch(RemoteServiceRegistrationImpl registration, IRemoteCall call) throws ECFException {
-		boolean doneWaiting = false;
 		Response response = null;
 		try {
 			// First send request
 			final Request request = sendCallRequest(registration, call);
-			long requestId = request.getRequestId();
-			// Then get the specified timeout and calculate when we should
-			// timeout in real time
-			final long timeout = call.getTimeout() + System.currentTimeMillis();
-			// Now loop until timeout time has elapsed
-			while ((timeout - System.currentTimeMillis()) > 0 && !doneWaiting) {
-				synchronized (request) {
-					if (request.isDone()) {
-						doneWaiting = true;
-						response = request.getResponse();
-						if (response == null)
-							throw new ECFException("Invalid response for requestId=" + requestId); //$NON-NLS-1$
-					} else {
-						request.wait(RESPONSE_WAIT_INTERVAL);
-					}
-				}
+			// Then wait for the response until the call timeout
+			try {
+				response = request.getResponseFuture().get(call.getTimeout(), TimeUnit.MILLISECONDS);
+			} catch (final java.util.concurrent.TimeoutException e) {
+				removeRequest(request);
+				throw (ServiceException) createCallException(call, e);
+			} catch (final ExecutionException e) {
+				final Throwable cause = createCallException(call, e.getCause());
+				if (cause instanceof ECFException)
+					throw (ECFException) cause;
+				throw (RuntimeException) cause;
 			}
-			if (!doneWaiting)
-				throw new ServiceException("Request timed out after " + Long.toString(call.getTimeout()) + "ms", ServiceException.REMOTE, new TimeoutException(call.getTimeout())); //$NON-NLS-1$ //$NON-NLS-2$
+			if (response == null)
+				throw new ECFException("Invalid response for requestId=" + request.getRequestId()); //$NON-NLS-1$
 		} catch (final IOException e) {
 			log(CALL_REQUEST_ERROR_CODE, CALL_REQUEST_ERROR_MESSAGE, e);
 			throw new ECFException("Error sending request", e); //$NON-NLS-1$
@@ -977,6 +1011,79 @@ public class RegistrySharedObject extends BaseSharedObject implements IRemoteSer
 		return response.getResponse();
 	}
 
+	/**
+	 * Call the given remote service without blocking for the response.  The returned future
+	 * is completed with the result when the response is received, or completed exceptionally with
+	 * the exception thrown by the remote service, a java.util.concurrent.TimeoutException if no response
+	 * is received within the call timeout, or an IOException if the request cannot be sent.  No thread
+	 * is used while waiting for the response.
+	 * <p>
+	 * The future is completed on the given executor rather than on the thread that receives the
+	 * response, so that the actions depending on it may make further synchronous calls.  If the
+	 * executor rejects the completion, the future is completed exceptionally with the
+	 * RejectedExecutionException.
+	 *
+	 * @param registration the registration of the remote service to call
+	 * @param call the call
+	 * @param executor the executor to complete the returned future on
+	 * @return CompletableFuture the future result of the call
+	 * @since 4.7
+	 */
+	protected CompletableFuture<Object> callAsynch(RemoteServiceRegistrationImpl registration, final IRemoteCall call, final Executor executor) {
+		final CompletableFuture<Object> result = new CompletableFuture<Object>();
+		final Request request;
+		try {
+			request = sendCallRequest(registration, call);
+		} catch (final IOException e) {
+			log(CALL_REQUEST_ERROR_CODE, CALL_REQUEST_ERROR_MESSAGE, e);
+			result.completeExceptionally(e);
+			return result;
+		}
+		request.getResponseFuture().whenComplete(new BiConsumer<Response, Throwable>() {
+			public void accept(final Response response, final Throwable t) {
+				try {
+					executor.execute(new Runnable() {
+						public void run() {
+							if (t != null)
+								result.completeExceptionally((t instanceof TimeoutException) ? new java.util.concurrent.TimeoutException("Timeout calling remote service method=" + call.getMethod() + " timeout=" + call.getTimeout()) : t); //$NON-NLS-1$ //$NON-NLS-2$
+							else if (response.hadException())
+								result.completeExceptionally(response.getException());
+							else
+								result.complete(response.getResponse());
+						}
+					});
+				} catch (final RejectedExecutionException e) {
+					result.completeExceptionally(e);
+				}
+			}
+		});
+		// If the caller cancels, the response is no longer of interest
+		result.whenComplete(new BiConsumer<Object, Throwable>() {
+			public void accept(Object r, Throwable t) {
+				if (result.isCancelled())
+					removeRequest(request);
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Create the exception that {@link #callSynch(RemoteServiceRegistrationImpl, IRemoteCall)} throws
+	 * for a call failing with the given exception.
+	 *
+	 * @param call the call
+	 * @param t the exception the call failed with, as completed by {@link #callAsynch(RemoteServiceRegistrationImpl, IRemoteCall, Executor)}
+	 * @return Throwable a {@link ServiceException} for timeouts, otherwise an {@link ECFException}
+	 * @since 4.7
+	 */
+	protected Throwable createCallException(IRemoteCall call, Throwable t) {
+		if (t instanceof java.util.concurrent.TimeoutException || t instanceof TimeoutException)
+			return new ServiceException("Request timed out after " + Long.toString(call.getTimeout()) + "ms", ServiceException.REMOTE, new TimeoutException(call.getTimeout())); //$NON-NLS-1$ //$NON-NLS-2$
+		if (t instanceof ECFException)
+			return t;
+		return new ECFException("Exception in remote call", t); //$NON-NLS-1$
+	}
+
 	protected void fireCallStartEvent(IRemoteCallListener listener, final long requestId, final IRemoteServiceReference reference, final IRemoteCall call) {
 		if (listener != null) {
 			listener.handleEvent(new IRemoteCallStartEvent() {
@@ -1106,8 +1213,6 @@ public class RegistrySharedObject extends BaseSharedObject implements IRemoteSer
 
 	private static final int REQUEST_NOT_FOUND_ERROR_CODE = 211;
 
-	private static final long RESPONSE_WAIT_INTERVAL = 500;
-
 	private static final String ADD_REGISTRATION = "handleAddRegistration"; //$NON-NLS-1$
 
 	private static final String ADD_REGISTRATIONS = "handleAddRegistrations"; //$NON-NLS-1$
@@ -1564,10 +1669,27 @@ public class RegistrySharedObject extends BaseSharedObject implements IRemoteSer
 	}
 
 	private IExecutor getRequestExecutor(Request request) {
-		if (requestExecutor == null) {
-			requestExecutor = createRequestExecutor(request);
+		synchronized (requestExecutorLock) {
+			if (requestExecutor == null) {
+				requestExecutor = createRequestExecutor(request);
+			}
+			return requestExecutor;
+		}
+	}
+
+	/**
+	 * Get the current metrics of the request executor, if it is a {@link PooledRequestExecutor}.
+	 * 
+	 * @return Map the metrics of the request executor (see PooledRequestExecutor.METRIC_*). Empty
+	 * if no request executor has been created or it does not provide metrics.
+	 * @since 4.7
+	 */
+	public Map<String, Object> getRequestExecutorMetrics() {
+		synchronized (requestExecutorLock) {
+			if (requestExecutor instanceof PooledRequestExecutor)
+				return ((PooledRequestExecutor) requestExecutor).getMetrics();
 		}
-		return requestExecutor;
+		return Collections.emptyMap();
 	}
 
 	/**
@@ -1591,6 +1713,8 @@ public class RegistrySharedObject extends BaseSharedObject implements IRemoteSer
 					return "Remote Request Handler - " + request.getCall().getMethod() + ":" + request.getRequestId(); //$NON-NLS-1$ //$NON-NLS-2$
 				}
 			};
+		} else if (DEFAULT_EXECUTOR_TYPE.equals("pool")) { //$NON-NLS-1$
+			executor = new PooledRequestExecutor("Remote Request Handler"); //$NON-NLS-1$
 		}
 		return executor;
 	}
@@ -1603,7 +1727,7 @@ public class RegistrySharedObject extends BaseSharedObject implements IRemoteSer
 		Object[] args = (callArgs == null) ? SharedObjectMsg.nullArgs : callArgs;
 		Object service = reg.getService();
 		// Find appropriate method on service
-		final Method method = ClassUtil.getMethod(service.getClass(), call.getMethod(), SharedObjectMsg.getTypesForParameters(args));
+		final Method method = reg.getServiceMethod(call.getMethod(), args);
 		// Actually invoke method on service object
 		Object result = method.invoke(service, args);
 		if (result != null) {
@@ -1625,7 +1749,9 @@ public class RegistrySharedObject extends BaseSharedObject implements IRemoteSer
 	 */
 	@SuppressWarnings("unchecked")
 	protected void executeRequest(IExecutor executor, final Request request, final ID responseTarget, final RemoteServiceRegistrationImpl localRegistration, final boolean respond) {
-		IProgressRunnable runnable = new IProgressRunnable() {
+		// Rejected requests get an error response, also when the pooled executor
+		// drops a held request at shutdown
+		class RequestRunnable implements IProgressRunnable, PooledRequestExecutor.IRejectable {
 			public Object run(IProgressMonitor monitor) throws Exception {
 				final RemoteCallImpl call = request.getCall();
 				Response response = null;
@@ -1657,9 +1783,24 @@ public class RegistrySharedObject extends BaseSharedObject implements IRemoteSer
 					sendCallResponse(responseTarget, response);
 				return null;
 			}
-		};
+
+			public void rejected(RejectedExecutionException e) {
+				if (respond)
+					sendErrorResponse(responseTarget, request.getRequestId(), "executeRequest", e); //$NON-NLS-1$
+				else
+					logRemoteCallException("Request rejected by request executor.  Remote request=" + request, e); //$NON-NLS-1$
+			}
+		}
+		final RequestRunnable runnable = new RequestRunnable();
 		// Now actually execute the runnable asynchronously using the executor
-		executor.execute(runnable, new NullProgressMonitor());
+		if (executor instanceof PooledRequestExecutor) {
+			try {
+				((PooledRequestExecutor) executor).execute(runnable, new NullProgressMonitor(), localRegistration.getID(), PooledRequestExecutor.getMaxConcurrentCalls(localRegistration));
+			} catch (RejectedExecutionException e) {
+				runnable.rejected(e);
+			}
+		} else
+			executor.execute(runnable, new NullProgressMonitor());
 	}
 
 	private void sendErrorResponse(ID responseTarget, long requestId, String message, Throwable e) {
@@ -1799,17 +1940,22 @@ public class RegistrySharedObject extends BaseSharedObject implements IRemoteSer
 			log(REQUEST_NOT_FOUND_ERROR_CODE, REQUEST_NOT_FOUND_ERROR_MESSAGE, new NullPointerException());
 			return;
 		}
-		removeRequest(request);
+		// Not removed if the request expired after it was found
+		if (!removeRequest(request))
+			return;
+		completeRequest(request, response);
+	}
+
+	private void completeRequest(Request request, Response response) {
 		final IRemoteCallListener listener = request.getListener();
-		if (listener != null) {
+		if (listener != null)
 			fireCallCompleteEvent(listener, request.getRequestId(), response.getResponse(), response.hadException(), response.getException());
-			return;
-		}
-		synchronized (request) {
-			request.setResponse(response);
-			request.setDone(true);
-			request.notify();
-		}
+		else
+			synchronized (request) {
+				request.setResponse(response);
+				request.setDone(true);
+			}
+		request.getResponseFuture().complete(response);
 	}
 
 	/**
@@ -1830,17 +1976,10 @@ public class RegistrySharedObject extends BaseSharedObject implements IRemoteSer
 			log(REQUEST_NOT_FOUND_ERROR_CODE, REQUEST_NOT_FOUND_ERROR_MESSAGE, new NullPointerException());
 			return;
 		}
-		removeRequest(request);
-		final IRemoteCallListener listener = request.getListener();
-		if (listener != null) {
-			fireCallCompleteEvent(listener, request.getRequestId(), response.getResponse(), response.hadException(), response.getException());
+		// Not removed if the request expired after it was found
+		if (!removeRequest(request))
 			return;
-		}
-		synchronized (request) {
-			request.setResponse(response);
-			request.setDone(true);
-			request.notify();
-		}
+		completeRequest(request, response);
 	}
 
 	protected Request sendFireRequest(RemoteServiceRegistrationImpl remoteRegistration, IRemoteCall call) throws ECFException {
@@ -2067,15 +2206,32 @@ public class RegistrySharedObject extends BaseSharedObject implements IRemoteSer
 	}
 
 	/**
+	 * Add an outstanding request.  If the request's call has a timeout, the request
+	 * is expired after the timeout if no response has been received.
+	 *
 	 * @param request the request to add
 	 * @return true if added, false if not added
 	 * @since 3.2
 	 */
-	@SuppressWarnings("unchecked")
-	protected boolean addRequest(Request request) {
-		synchronized (requests) {
-			return requests.add(request);
+	protected boolean addRequest(final Request request) {
+		final PendingRequest pending = new PendingRequest(request);
+		if (pendingRequests.putIfAbsent(Long.valueOf(request.getRequestId()), pending) != null)
+			return false;
+		final long timeout = request.getCall().getTimeout();
+		// Once the bundle has stopped, requests are no longer expired
+		final ScheduledExecutorService scheduler = (timeout > 0) ? Activator.getRequestTimeoutScheduler() : null;
+		if (scheduler != null) {
+			try {
+				pending.expiry = scheduler.schedule(new Runnable() {
+					public void run() {
+						expireRequest(request);
+					}
+				}, timeout, TimeUnit.MILLISECONDS);
+			} catch (RejectedExecutionException e) {
+				// The bundle is stopping
+			}
 		}
+		return true;
 	}
 
 	/**
@@ -2084,16 +2240,8 @@ public class RegistrySharedObject extends BaseSharedObject implements IRemoteSer
 	 * @since 3.2
 	 */
 	protected Request getRequest(long requestId) {
-		synchronized (requests) {
-			for (final Iterator i = requests.iterator(); i.hasNext();) {
-				final Request req = (Request) i.next();
-				final long reqId = req.getRequestId();
-				if (reqId == requestId) {
-					return req;
-				}
-			}
-		}
-		return null;
+		final PendingRequest pending = pendingRequests.get(Long.valueOf(requestId));
+		return (pending == null) ? null : pending.request;
 	}
 
 	/**
@@ -2102,9 +2250,30 @@ public class RegistrySharedObject extends BaseSharedObject implements IRemoteSer
 	 * @since 3.2
 	 */
 	protected boolean removeRequest(Request request) {
-		synchronized (requests) {
-			return requests.remove(request);
-		}
+		final Long requestId = Long.valueOf(request.getRequestId());
+		final PendingRequest pending = pendingRequests.get(requestId);
+		if (pending == null || pending.request != request || !pendingRequests.remove(requestId, pending))
+			return false;
+		pending.cancelExpiry();
+		return true;
+	}
+
+	/**
+	 * Called when no response to the given request has been received within the
+	 * request's call timeout.  If the request is still outstanding, it is removed and
+	 * its listener and response future are completed with a {@link TimeoutException}.
+	 *
+	 * @param request the request that timed out
+	 * @since 4.7
+	 */
+	protected void expireRequest(Request request) {
+		if (!removeRequest(request))
+			return;
+		final TimeoutException e = new TimeoutException(request.getCall().getTimeout());
+		final IRemoteCallListener listener = request.getListener();
+		if (listener != null)
+			fireCallCompleteEvent(listener, request.getRequestId(), null, true, e);
+		request.getResponseFuture().completeExceptionally(e);
 	}
 
 	protected void logException(int code, String message, Throwable e) {
@@ -11,12 +11,13 @@
  *****************************************************************************/
 package org.eclipse.ecf.provider.remoteservice.generic;
 
-import java.util.concurrent.Callable;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.ecf.core.util.ECFException;
 import org.eclipse.ecf.remoteservice.*;
-import org.eclipse.ecf.remoteservice.events.IRemoteCallCompleteEvent;
-import org.eclipse.ecf.remoteservice.events.IRemoteCallEvent;
+import org.eclipse.equinox.concurrent.future.*;
 
 public class RemoteServiceImpl extends AbstractRemoteService {
 
@@ -47,28 +48,63 @@ public class RemoteServiceImpl extends AbstractRemoteService {
 	 * @see org.eclipse.ecf.remoteservice.IRemoteService#callAsync(org.eclipse.ecf.remoteservice.IRemoteCall, org.eclipse.ecf.remoteservice.IRemoteCallListener)
 	 */
 	public void callAsync(final IRemoteCall call, final IRemoteCallListener listener) {
-		callAsyncWithTimeout(call, new Callable<IRemoteCallCompleteEvent>() {
-			public IRemoteCallCompleteEvent call() throws Exception {
-				final AtomicReference<IRemoteCallCompleteEvent> ar = new AtomicReference<IRemoteCallCompleteEvent>();
-				sharedObject.sendCallRequestWithListener(registration, call, new IRemoteCallListener() {
-					public void handleEvent(IRemoteCallEvent event) {
-						if (event instanceof IRemoteCallCompleteEvent)
-							synchronized (ar) {
-								ar.set((IRemoteCallCompleteEvent) event);
-								ar.notify();
-							}
+		sharedObject.callAsynch(registration, call, getFutureExecutorService(call)).whenComplete(new BiConsumer<Object, Throwable>() {
+			public void accept(Object result, Throwable t) {
+				listener.handleEvent(createRCCE(result, t));
+			}
+		});
+	}
+
+	/**
+	 * @since 4.7
+	 * @see org.eclipse.ecf.remoteservice.IRemoteService#callAsync(org.eclipse.ecf.remoteservice.IRemoteCall)
+	 */
+	public IFuture callAsync(final IRemoteCall call) {
+		final SingleOperationFuture future = new SingleOperationFuture(null);
+		sharedObject.callAsynch(registration, call, getFutureExecutorService(call)).whenComplete(new BiConsumer<Object, Throwable>() {
+			public void accept(final Object result, final Throwable t) {
+				future.runWithProgress(new IProgressRunnable() {
+					public Object run(IProgressMonitor monitor) throws Exception {
+						if (t != null)
+							throw asException(call, t);
+						return result;
 					}
 				});
-				synchronized (ar) {
-					while (true) {
-						IRemoteCallCompleteEvent result = ar.get();
-						if (result != null)
-							return result;
-						ar.wait(call.getTimeout());
-					}
-				}
 			}
-		}, listener);
+		});
+		return future;
+	}
+
+	/**
+	 * @since 4.7
+	 */
+	protected Future callFutureAsync(final IRemoteCall call) {
+		final CompletableFuture<Object> result = new CompletableFuture<Object>();
+		final CompletableFuture<Object> future = sharedObject.callAsynch(registration, call, getFutureExecutorService(call));
+		future.whenComplete(new BiConsumer<Object, Throwable>() {
+			public void accept(Object r, Throwable t) {
+				if (t != null)
+					result.completeExceptionally(asException(call, t));
+				else
+					result.complete(r);
+			}
+		});
+		result.whenComplete(new BiConsumer<Object, Throwable>() {
+			public void accept(Object r, Throwable t) {
+				if (result.isCancelled())
+					future.cancel(false);
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Convert the exception of a failed asynchronous call to the exception callSync throws,
+	 * so that futures fail as callSync does.
+	 */
+	Exception asException(IRemoteCall call, Throwable t) {
+		final Throwable e = sharedObject.createCallException(call, t);
+		return (e instanceof Exception) ? (Exception) e : new ECFException(e);
 	}
 
 	/**
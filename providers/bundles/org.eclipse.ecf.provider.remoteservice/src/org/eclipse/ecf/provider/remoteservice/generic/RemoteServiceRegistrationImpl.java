@@ -14,13 +14,11 @@ package org.eclipse.ecf.provider.remoteservice.generic;
 import java.io.Serializable;
 import java.lang.reflect.Array;
 import java.lang.reflect.Method;
-import java.security.AccessController;
-import java.security.PrivilegedExceptionAction;
 import java.util.*;
 import org.eclipse.ecf.core.identity.ID;
 import org.eclipse.ecf.core.sharedobject.SharedObjectMsg;
-import org.eclipse.ecf.core.util.reflection.ClassUtil;
 import org.eclipse.ecf.remoteservice.*;
+import org.eclipse.ecf.remoteservice.util.MethodDispatchCache;
 
 /**
  * @since 3.0
@@ -56,6 +54,8 @@ public class RemoteServiceRegistrationImpl implements IRemoteServiceRegistration
 
 	protected transient RegistrySharedObject sharedObject = null;
 
+	private transient MethodDispatchCache methodCache;
+
 	/**
 	 * @since 3.0
 	 */
@@ -133,6 +133,12 @@ public class RemoteServiceRegistrationImpl implements IRemoteServiceRegistration
 		if (sharedObject != null) {
 			sharedObject.sendUnregister(this);
 		}
+		synchronized (this) {
+			if (methodCache != null) {
+				methodCache.clear();
+				methodCache = null;
+			}
+		}
 		this.classLoader = null;
 	}
 
@@ -416,20 +422,33 @@ public class RemoteServiceRegistrationImpl implements IRemoteServiceRegistration
 		return rsID.getContainerRelativeID();
 	}
 
-	@SuppressWarnings("unchecked")
 	public Object callService(RemoteCallImpl call) throws Exception {
 		Object[] args = (call.getParameters() == null) ? SharedObjectMsg.nullArgs : call.getParameters();
-		final Method method = ClassUtil.getMethod(service.getClass(), call.getMethod(), SharedObjectMsg.getTypesForParameters(args));
-		AccessController.doPrivileged(new PrivilegedExceptionAction() {
-			public Object run() throws Exception {
-				if (!method.isAccessible())
-					method.setAccessible(true);
-				return null;
-			}
-		});
+		final Method method = getServiceMethod(call.getMethod(), args);
 		return method.invoke(service, args);
 	}
 
+	/**
+	 * Get the accessible service method to invoke for the given method name and arguments.
+	 * Methods are resolved once per method name and argument type signature and cached until
+	 * this registration is unregistered.
+	 * 
+	 * @param methodName the name of the method to call
+	 * @param args the arguments of the call.  Must not be <code>null</code>.
+	 * @return Method the method to invoke
+	 * @throws NoSuchMethodException if no service method matches
+	 * @since 4.7
+	 */
+	public Method getServiceMethod(String methodName, Object[] args) throws NoSuchMethodException {
+		MethodDispatchCache cache;
+		synchronized (this) {
+			if (methodCache == null || methodCache.getServiceClass() != service.getClass())
+				methodCache = new MethodDispatchCache(service.getClass());
+			cache = methodCache;
+		}
+		return cache.getMethod(methodName, SharedObjectMsg.getTypesForParameters(args));
+	}
+
 	public String toString() {
 		StringBuffer buf = new StringBuffer("RemoteServiceRegistrationImpl["); //$NON-NLS-1$
 		buf.append("remoteServiceID=").append(getID()).append(";"); //$NON-NLS-1$ //$NON-NLS-2$
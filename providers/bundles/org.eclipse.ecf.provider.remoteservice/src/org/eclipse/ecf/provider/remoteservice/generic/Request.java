@@ -12,6 +12,7 @@
 package org.eclipse.ecf.provider.remoteservice.generic;
 
 import java.io.Serializable;
+import java.util.concurrent.CompletableFuture;
 import org.eclipse.ecf.core.identity.ID;
 import org.eclipse.ecf.remoteservice.IRemoteCallListener;
 
@@ -35,6 +36,8 @@ public class Request implements Serializable {
 
 	transient IRemoteCallListener listener = null;
 
+	private transient CompletableFuture<Response> responseFuture;
+
 	private synchronized static long getNextRequestId() {
 		long result = nextRequestId;
 		nextRequestId = (nextRequestId == Long.MAX_VALUE) ? 0L : nextRequestId + 1;
@@ -89,6 +92,17 @@ public class Request implements Serializable {
 		return listener;
 	}
 
+	/**
+	 * @return CompletableFuture completed with the response to this request, or completed
+	 * exceptionally if no response is received
+	 * @since 4.7
+	 */
+	public synchronized CompletableFuture<Response> getResponseFuture() {
+		if (responseFuture == null)
+			responseFuture = new CompletableFuture<Response>();
+		return responseFuture;
+	}
+
 	public String toString() {
 		final StringBuffer buf = new StringBuffer("Request["); //$NON-NLS-1$
 		buf.append("requestId=").append(requestId).append(";cont=").append( //$NON-NLS-1$ //$NON-NLS-2$
@@ -8,10 +8,13 @@ import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Random;
 
 import org.eclipse.ecf.core.util.OSGIObjectInputStream;
 import org.eclipse.ecf.core.util.OSGIObjectOutputStream;
+import org.eclipse.ecf.core.util.SerializationPlan;
 import org.eclipse.ecf.internal.tests.core.Activator;
 import org.osgi.dto.DTO;
 import org.osgi.framework.Bundle;
@@ -142,9 +145,73 @@ public class OSGIObjectStreamTest extends TestCase {
 		assertEquals(s, (String) serializeDeserialize(s));
 	}
 
+	public void testPrimitiveArrays() throws Exception {
+		Random r = new Random(0);
+		byte[] bytes = new byte[1024 * 1024];
+		r.nextBytes(bytes);
+		assertTrue(Arrays.equals(bytes, (byte[]) serializeDeserialize(bytes, false)));
+		int[] ints = new int[10001];
+		for (int i = 0; i < ints.length; i++)
+			ints[i] = r.nextInt();
+		assertTrue(Arrays.equals(ints, (int[]) serializeDeserialize(ints, false)));
+		long[] longs = new long[3333];
+		for (int i = 0; i < longs.length; i++)
+			longs[i] = r.nextLong();
+		assertTrue(Arrays.equals(longs, (long[]) serializeDeserialize(longs, false)));
+		double[] doubles = new double[] { 1.0, -0.5, Double.NaN, Double.MAX_VALUE };
+		assertTrue(Arrays.equals(doubles, (double[]) serializeDeserialize(doubles, false)));
+		float[] floats = new float[] { 1.0f, -0.5f, Float.NaN };
+		assertTrue(Arrays.equals(floats, (float[]) serializeDeserialize(floats, false)));
+		char[] chars = "h\u00e9llo \u20ac".toCharArray();
+		assertTrue(Arrays.equals(chars, (char[]) serializeDeserialize(chars, false)));
+		short[] shorts = new short[] { 1, -1, Short.MAX_VALUE };
+		assertTrue(Arrays.equals(shorts, (short[]) serializeDeserialize(shorts, false)));
+		boolean[] booleans = new boolean[] { true, false, true };
+		assertTrue(Arrays.equals(booleans, (boolean[]) serializeDeserialize(booleans, false)));
+		assertTrue(Arrays.equals(new int[0], (int[]) serializeDeserialize(new int[0], false)));
+	}
+
+	public void testLegacyEncodingIsDefault() throws Exception {
+		int[] ints = new int[] { 1, 2, 3 };
+		ByteArrayOutputStream legacy = new ByteArrayOutputStream();
+		OSGIObjectOutputStream oos = new OSGIObjectOutputStream(legacy);
+		oos.setLegacyEncoding(true);
+		oos.writeObject(ints);
+		oos.writeObject(s);
+		oos.close();
+
+		// older peers can read what is written unless told otherwise
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		oos = new OSGIObjectOutputStream(bos);
+		oos.writeObject(ints);
+		oos.writeObject(s);
+		oos.close();
+		assertTrue(Arrays.equals(legacy.toByteArray(), bos.toByteArray()));
+
+		OSGIObjectInputStream ois = new OSGIObjectInputStream(b, new ByteArrayInputStream(bos.toByteArray()));
+		assertTrue(Arrays.equals(ints, (int[]) ois.readObject()));
+		assertEquals(s, ois.readObject());
+		ois.close();
+	}
+
+	public void testLargeString() throws Exception {
+		StringBuffer buf = new StringBuffer();
+		for (int i = 0; i < 100000; i++)
+			buf.append((char) ('a' + i % 26)).append((i % 1000 == 0) ? "\u20ac" : "");
+		String large = buf.toString();
+		assertEquals(large, serializeDeserialize(large, false));
+		// too long for the legacy encoding, which falls back to the new one
+		assertEquals(large, serializeDeserialize(large, true));
+	}
+
 	private Object serializeDeserialize(Object o) throws IOException, ClassNotFoundException {
+		return serializeDeserialize(o, OSGIObjectOutputStream.DEFAULT_LEGACY_ENCODING);
+	}
+
+	private Object serializeDeserialize(Object o, boolean legacyEncoding) throws IOException, ClassNotFoundException {
 		ByteArrayOutputStream bos = new ByteArrayOutputStream();
 		OSGIObjectOutputStream oos = new OSGIObjectOutputStream(bos);
+		oos.setLegacyEncoding(legacyEncoding);
 		oos.writeObject(o);
 		oos.close();
 
@@ -175,4 +242,16 @@ public class OSGIObjectStreamTest extends TestCase {
 		assertEquals(except.getClass(), deserializedExcept.getClass());
 		assertTrue(((Exception) deserializedExcept).getMessage().equals(messageString));
 	}
+
+	public void testSerializationPlan() throws Exception {
+		SerializationPlan plan = SerializationPlan.get(MySerializable.class);
+		assertSame(plan, SerializationPlan.get(MySerializable.class));
+		SerializationPlan.Level[] levels = plan.getLevels();
+		assertEquals(1, levels.length);
+		// static serialVersionUID is not serialized but can be looked up
+		assertEquals(new HashSet<String>(Arrays.asList("first", "second", "bytes")), new HashSet<String>(Arrays.asList(levels[0].getFieldNames())));
+		assertNotNull(levels[0].getDeclaredField("serialVersionUID"));
+		assertEquals(ser.getFirst(), levels[0].getDeclaredField("first").get(ser));
+		assertNull(plan.getNativeClassName());
+	}
 }
@@ -0,0 +1,175 @@
+/****************************************************************************
+ * Copyright (c) 2026 Composent, Inc. and others.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * Contributors:
+ *   Composent, Inc. - initial API and implementation
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *****************************************************************************/
+package org.eclipse.ecf.tests.discovery;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.ecf.internal.discovery.DiscoveryExecutor;
+import org.eclipse.equinox.concurrent.future.IFuture;
+import org.eclipse.equinox.concurrent.future.IProgressRunnable;
+
+/**
+ * Runs the tasks of a key one at a time and in order, also when they have to
+ * wait for a thread of a full pool, and counts the tasks that are rejected.
+ */
+public class DiscoveryExecutorTest extends TestCase {
+
+	private static final long TIMEOUT = 10000;
+
+	private static final String KEY = "container"; //$NON-NLS-1$
+
+	/**
+	 * Keeps the only thread of the pool busy until it is opened.
+	 */
+	static class Gate implements IProgressRunnable {
+		private boolean open;
+
+		public synchronized Object run(IProgressMonitor monitor) throws Exception {
+			final long timeout = System.currentTimeMillis() + TIMEOUT;
+			while (!open && System.currentTimeMillis() < timeout)
+				wait(TIMEOUT);
+			return null;
+		}
+
+		synchronized void open() {
+			open = true;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Records the order the tasks are run in.
+	 */
+	class Task implements IProgressRunnable {
+		final String name;
+
+		Task(String name) {
+			this.name = name;
+		}
+
+		public Object run(IProgressMonitor monitor) throws Exception {
+			synchronized (order) {
+				order.add(name);
+			}
+			return name;
+		}
+	}
+
+	private final List order = new ArrayList();
+
+	private final Gate gate = new Gate();
+
+	private DiscoveryExecutor executor;
+
+	private IFuture queued;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		// one thread, busy with the gate, and one queued task, so that the
+		// pool and its queue are full
+		executor = new DiscoveryExecutor("test", 1, 1); //$NON-NLS-1$
+		executor.execute(gate, null);
+		queued = executor.execute(new Task("queued"), null); //$NON-NLS-1$
+		assertEquals(1, executor.getQueuedCount());
+	}
+
+	protected void tearDown() throws Exception {
+		gate.open();
+		executor.shutdown();
+		super.tearDown();
+	}
+
+	private List getOrder() {
+		synchronized (order) {
+			return new ArrayList(order);
+		}
+	}
+
+	public void testSerialTasksWaitForFullPool() throws Exception {
+		final IFuture first = executor.execute(new Task("first"), null, KEY); //$NON-NLS-1$
+		final IFuture second = executor.execute(new Task("second"), null, KEY); //$NON-NLS-1$
+		// the first waits for a thread, the second for the first
+		assertEquals(3, executor.getQueuedCount());
+		assertFalse(first.isDone());
+		assertFalse(second.isDone());
+
+		gate.open();
+		assertEquals("first", first.get(TIMEOUT)); //$NON-NLS-1$
+		assertEquals("second", second.get(TIMEOUT)); //$NON-NLS-1$
+		queued.get(TIMEOUT);
+		// the thread that finished the gate ran the waiting tasks first
+		assertEquals(Arrays.asList(new String[] {"first", "second", "queued"}), getOrder()); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		assertEquals(0, executor.getQueuedCount());
+		assertEquals(0, executor.getRejectedCount());
+	}
+
+	public void testSerialTasksOfOtherKeys() throws Exception {
+		final IFuture first = executor.execute(new Task("first"), null, KEY); //$NON-NLS-1$
+		final IFuture other = executor.execute(new Task("other"), null, "other container"); //$NON-NLS-1$ //$NON-NLS-2$
+		final IFuture second = executor.execute(new Task("second"), null, KEY); //$NON-NLS-1$
+		assertEquals(4, executor.getQueuedCount());
+
+		gate.open();
+		second.get(TIMEOUT);
+		other.get(TIMEOUT);
+		first.get(TIMEOUT);
+		queued.get(TIMEOUT);
+		final List result = getOrder();
+		assertEquals(4, result.size());
+		assertTrue(result.indexOf("first") < result.indexOf("second")); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals(0, executor.getQueuedCount());
+		assertEquals(0, executor.getRejectedCount());
+	}
+
+	public void testTaskWithoutKeyIsRejected() throws Exception {
+		final IFuture rejected = executor.execute(new Task("rejected"), null); //$NON-NLS-1$
+		assertTrue(rejected.isDone());
+		assertFalse(rejected.getStatus().isOK());
+		assertNotNull(rejected.getStatus().getException());
+		assertEquals(1, executor.getRejectedCount());
+		assertEquals(1, executor.getQueuedCount());
+
+		gate.open();
+		queued.get(TIMEOUT);
+		assertFalse(getOrder().contains("rejected")); //$NON-NLS-1$
+		assertEquals(1, executor.getRejectedCount());
+	}
+
+	public void testTasksAreRejectedAfterShutdown() throws Exception {
+		final IFuture waiting = executor.execute(new Task("waiting"), null, KEY); //$NON-NLS-1$
+		final IFuture held = executor.execute(new Task("held"), null, KEY); //$NON-NLS-1$
+		executor.shutdown();
+		final IFuture rejected = executor.execute(new Task("rejected"), null); //$NON-NLS-1$
+		final IFuture rejectedWithKey = executor.execute(new Task("rejected with key"), null, "other container"); //$NON-NLS-1$ //$NON-NLS-2$
+		assertFalse(rejected.getStatus().isOK());
+		assertFalse(rejectedWithKey.getStatus().isOK());
+		assertEquals(2, executor.getRejectedCount());
+
+		// the task already waiting for a thread still runs, but the one held
+		// for it cannot be submitted any more
+		gate.open();
+		assertEquals("waiting", waiting.get(TIMEOUT)); //$NON-NLS-1$
+		queued.get(TIMEOUT);
+		final long timeout = System.currentTimeMillis() + TIMEOUT;
+		while (!held.isDone() && System.currentTimeMillis() < timeout)
+			Thread.sleep(10);
+		assertFalse(held.getStatus().isOK());
+		assertEquals(3, executor.getRejectedCount());
+		assertEquals(Arrays.asList(new String[] {"waiting", "queued"}), getOrder()); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+}
@@ -0,0 +1,173 @@
+/****************************************************************************
+ * Copyright (c) 2026 Composent, Inc. and others.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * Contributors:
+ *   Composent, Inc. - initial API and implementation
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *****************************************************************************/
+package org.eclipse.ecf.tests.discovery;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.eclipse.ecf.discovery.identity.IServiceTypeID;
+import org.eclipse.ecf.discovery.identity.ServiceTypeID;
+import org.eclipse.ecf.internal.discovery.ServiceTypeListenerIndex;
+import org.eclipse.ecf.tests.discovery.identity.TestNamespace;
+
+/**
+ * Finds the listeners of a discovered service type in the exact and wildcard
+ * buckets of a {@link ServiceTypeListenerIndex}.
+ */
+public class ServiceTypeListenerIndexTest extends TestCase {
+
+	private static final String ANY = "*"; //$NON-NLS-1$
+
+	private static final IServiceTypeID HTTP = createType("http", "tcp", "local", "iana"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+	private static final IServiceTypeID HTTP_UDP = createType("http", "udp", "local", "iana"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+	private static final IServiceTypeID FTP = createType("ftp", "tcp", "local", "iana"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+	private static final IServiceTypeID HTTP_SITE = createType("http", "tcp", "site", "iana"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+	private static final IServiceTypeID HTTP_ECF = createType("http", "tcp", "local", "ecf"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+	private static final IServiceTypeID ECF_HTTP = new TestServiceTypeID(new String[] {"ecf", "http"}, "tcp", "local", "iana"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+
+	private final Map serviceListeners = new HashMap();
+
+	private static class TestServiceTypeID extends ServiceTypeID {
+		private static final long serialVersionUID = 1L;
+
+		TestServiceTypeID(String[] services, String protocol, String scope, String namingAuthority) {
+			super(new TestNamespace(), services, new String[] {scope}, new String[] {protocol}, namingAuthority);
+		}
+	}
+
+	private static IServiceTypeID createType(String service, String protocol, String scope, String namingAuthority) {
+		return new TestServiceTypeID(new String[] {service}, protocol, scope, namingAuthority);
+	}
+
+	private void addListener(IServiceTypeID type, Object listener) {
+		Collection c = (Collection) serviceListeners.get(type);
+		if (c == null) {
+			c = new ArrayList();
+			serviceListeners.put(type, c);
+		}
+		c.add(listener);
+	}
+
+	private static void assertListeners(ServiceTypeListenerIndex index, IServiceTypeID type, Object[] expected) {
+		final List actual = Arrays.asList(index.getListeners(type));
+		assertEquals(type.getName() + " " + actual, expected.length, actual.size()); //$NON-NLS-1$
+		assertEquals(type.getName() + " " + actual, new HashSet(Arrays.asList(expected)), new HashSet(actual)); //$NON-NLS-1$
+	}
+
+	public void testEmpty() throws Exception {
+		assertEquals(0, ServiceTypeListenerIndex.EMPTY.getListeners(HTTP).length);
+		serviceListeners.put(HTTP, new ArrayList());
+		serviceListeners.put(FTP, null);
+		assertEquals(0, new ServiceTypeListenerIndex(serviceListeners).getListeners(HTTP).length);
+	}
+
+	public void testExactType() throws Exception {
+		addListener(HTTP, "l1"); //$NON-NLS-1$
+		addListener(HTTP, "l2"); //$NON-NLS-1$
+		final ServiceTypeListenerIndex index = new ServiceTypeListenerIndex(serviceListeners);
+		assertListeners(index, HTTP, new Object[] {"l1", "l2"}); //$NON-NLS-1$ //$NON-NLS-2$
+		assertListeners(index, HTTP_UDP, new Object[0]);
+		assertListeners(index, HTTP_SITE, new Object[0]);
+		assertListeners(index, HTTP_ECF, new Object[0]);
+		assertListeners(index, ECF_HTTP, new Object[0]);
+	}
+
+	public void testServicesBucket() throws Exception {
+		// wildcard protocol, so the type is kept in the bucket of its services
+		addListener(createType("http", ANY, "local", "iana"), "l1"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		final ServiceTypeListenerIndex index = new ServiceTypeListenerIndex(serviceListeners);
+		assertListeners(index, HTTP, new Object[] {"l1"}); //$NON-NLS-1$
+		assertListeners(index, HTTP_UDP, new Object[] {"l1"}); //$NON-NLS-1$
+		assertListeners(index, FTP, new Object[0]);
+		assertListeners(index, HTTP_SITE, new Object[0]);
+		assertListeners(index, HTTP_ECF, new Object[0]);
+		// the services must be equal, not only start with the same service
+		assertListeners(index, ECF_HTTP, new Object[0]);
+	}
+
+	public void testProtocolsBucket() throws Exception {
+		addListener(createType(ANY, "tcp", "local", "iana"), "l1"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		final ServiceTypeListenerIndex index = new ServiceTypeListenerIndex(serviceListeners);
+		assertListeners(index, HTTP, new Object[] {"l1"}); //$NON-NLS-1$
+		assertListeners(index, FTP, new Object[] {"l1"}); //$NON-NLS-1$
+		assertListeners(index, ECF_HTTP, new Object[] {"l1"}); //$NON-NLS-1$
+		assertListeners(index, HTTP_UDP, new Object[0]);
+		assertListeners(index, HTTP_SITE, new Object[0]);
+		assertListeners(index, HTTP_ECF, new Object[0]);
+	}
+
+	public void testScopesBucket() throws Exception {
+		addListener(createType(ANY, ANY, "site", "iana"), "l1"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		final ServiceTypeListenerIndex index = new ServiceTypeListenerIndex(serviceListeners);
+		assertListeners(index, HTTP_SITE, new Object[] {"l1"}); //$NON-NLS-1$
+		assertListeners(index, HTTP, new Object[0]);
+		assertListeners(index, HTTP_UDP, new Object[0]);
+	}
+
+	public void testNamingAuthorityBucket() throws Exception {
+		addListener(createType(ANY, ANY, ANY, "ecf"), "l1"); //$NON-NLS-1$ //$NON-NLS-2$
+		final ServiceTypeListenerIndex index = new ServiceTypeListenerIndex(serviceListeners);
+		assertListeners(index, HTTP_ECF, new Object[] {"l1"}); //$NON-NLS-1$
+		assertListeners(index, HTTP, new Object[0]);
+		assertListeners(index, ECF_HTTP, new Object[0]);
+	}
+
+	public void testMatchAll() throws Exception {
+		addListener(createType(ANY, ANY, ANY, ANY), "l1"); //$NON-NLS-1$
+		final ServiceTypeListenerIndex index = new ServiceTypeListenerIndex(serviceListeners);
+		assertListeners(index, HTTP, new Object[] {"l1"}); //$NON-NLS-1$
+		assertListeners(index, FTP, new Object[] {"l1"}); //$NON-NLS-1$
+		assertListeners(index, HTTP_SITE, new Object[] {"l1"}); //$NON-NLS-1$
+		assertListeners(index, HTTP_ECF, new Object[] {"l1"}); //$NON-NLS-1$
+	}
+
+	public void testListenersOfSeveralBuckets() throws Exception {
+		addListener(HTTP, "exact"); //$NON-NLS-1$
+		addListener(createType("http", ANY, "local", "iana"), "services"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		addListener(createType(ANY, "tcp", "local", "iana"), "protocols"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		addListener(createType(ANY, ANY, ANY, ANY), "all"); //$NON-NLS-1$
+		// registered for several matching types, but notified once
+		addListener(HTTP, "shared"); //$NON-NLS-1$
+		addListener(createType(ANY, "tcp", "local", "iana"), "shared"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		addListener(createType(ANY, ANY, ANY, ANY), "shared"); //$NON-NLS-1$
+		final ServiceTypeListenerIndex index = new ServiceTypeListenerIndex(serviceListeners);
+		assertListeners(index, HTTP, new Object[] {"exact", "services", "protocols", "all", "shared"}); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+		assertListeners(index, HTTP_UDP, new Object[] {"services", "all", "shared"}); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		assertListeners(index, FTP, new Object[] {"protocols", "all", "shared"}); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		assertListeners(index, HTTP_ECF, new Object[] {"all", "shared"}); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	public void testDiscoveredTypeWithWildcard() throws Exception {
+		addListener(HTTP, "l1"); //$NON-NLS-1$
+		addListener(createType("ftp", ANY, "local", "iana"), "l2"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		addListener(HTTP_UDP, "l3"); //$NON-NLS-1$
+		final ServiceTypeListenerIndex index = new ServiceTypeListenerIndex(serviceListeners);
+		assertListeners(index, createType(ANY, "tcp", "local", "iana"), new Object[] {"l1", "l2"}); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+		assertListeners(index, createType("http", ANY, "local", "iana"), new Object[] {"l1", "l3"}); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+	}
+
+	public void testSnapshot() throws Exception {
+		addListener(createType(ANY, "tcp", "local", "iana"), "l1"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		final ServiceTypeListenerIndex index = new ServiceTypeListenerIndex(serviceListeners);
+		addListener(createType(ANY, "tcp", "local", "iana"), "l2"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		addListener(HTTP, "l3"); //$NON-NLS-1$
+		assertListeners(index, HTTP, new Object[] {"l1"}); //$NON-NLS-1$
+	}
+}
@@ -0,0 +1,223 @@
+/****************************************************************************
+ * Copyright (c) 2026 Composent, Inc. and others.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * Contributors:
+ *   Composent, Inc. - initial API and implementation
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *****************************************************************************/
+
+package org.eclipse.ecf.tests.filetransfer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.eclipse.ecf.provider.filetransfer.util.WatchdogInputStream;
+
+public class WatchdogInputStreamTest extends TestCase {
+
+	private static final long TIMEOUT = 10000;
+
+	/**
+	 * A stream whose reads block until it is closed and then report the end of
+	 * the stream, like a socket that is closed by another thread. Its close()
+	 * may be held up until it is released.
+	 */
+	static class BlockingInputStream extends InputStream {
+
+		final CountDownLatch readStarted = new CountDownLatch(1);
+
+		final CountDownLatch closed = new CountDownLatch(1);
+
+		final CountDownLatch closeStarted = new CountDownLatch(1);
+
+		final CountDownLatch releaseClose;
+
+		BlockingInputStream(boolean blockClose) {
+			releaseClose = new CountDownLatch(blockClose ? 1 : 0);
+		}
+
+		public int read() throws IOException {
+			readStarted.countDown();
+			try {
+				closed.await();
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException();
+			}
+			return -1;
+		}
+
+		public void close() throws IOException {
+			closeStarted.countDown();
+			try {
+				releaseClose.await();
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException();
+			}
+			closed.countDown();
+		}
+	}
+
+	/**
+	 * Runs close() on another thread and records how it ended.
+	 */
+	static class Closer extends Thread {
+
+		private final InputStream in;
+
+		volatile Throwable failure;
+
+		volatile boolean done = false;
+
+		Closer(InputStream in) {
+			super("WatchdogInputStreamTest closer");
+			this.in = in;
+		}
+
+		public void run() {
+			try {
+				in.close();
+				done = true;
+			} catch (Throwable t) {
+				failure = t;
+			}
+		}
+	}
+
+	public void testStalledReadIsAborted() throws Exception {
+		BlockingInputStream in = new BlockingInputStream(false);
+		WatchdogInputStream watchdog = new WatchdogInputStream(in, 100, 0);
+		try {
+			watchdog.read();
+			fail("A stalled read returned");
+		} catch (InterruptedIOException e) {
+			// expected
+		}
+		assertTrue(in.closed.await(TIMEOUT, TimeUnit.MILLISECONDS));
+		try {
+			watchdog.read(new byte[1], 0, 1);
+			fail("An aborted stream can be read");
+		} catch (InterruptedIOException e) {
+			// expected
+		}
+		watchdog.close();
+	}
+
+	public void testReadsThatMakeProgressAreNotAborted() throws Exception {
+		InputStream in = new InputStream() {
+			private int remaining = 5;
+
+			public int read() throws IOException {
+				try {
+					Thread.sleep(60);
+				} catch (InterruptedException e) {
+					throw new InterruptedIOException();
+				}
+				return remaining-- > 0 ? 0 : -1;
+			}
+		};
+		WatchdogInputStream watchdog = new WatchdogInputStream(in, 200, 0);
+		// the stream takes longer than the stall timeout as a whole
+		for (int i = 0; i < 5; i++) {
+			assertEquals(0, watchdog.read());
+		}
+		assertEquals(-1, watchdog.read());
+		watchdog.close();
+	}
+
+	public void testAbortDuringReadIsNotEndOfStream() throws Exception {
+		BlockingInputStream in = new BlockingInputStream(false);
+		final WatchdogInputStream watchdog = new WatchdogInputStream(in, 0, 0);
+		final BlockingInputStream blocked = in;
+		Thread aborter = new Thread() {
+			public void run() {
+				try {
+					blocked.readStarted.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				// makes the blocked read return -1
+				watchdog.abort();
+			}
+		};
+		aborter.start();
+		try {
+			int result = watchdog.read();
+			fail("An aborted read returned " + result);
+		} catch (InterruptedIOException e) {
+			// expected
+		}
+		aborter.join(TIMEOUT);
+	}
+
+	public void testCloseTimeoutZeroWaitsForClose() throws Exception {
+		BlockingInputStream in = new BlockingInputStream(true);
+		WatchdogInputStream watchdog = new WatchdogInputStream(in, 0, 0);
+		Closer closer = new Closer(watchdog);
+		closer.start();
+		assertTrue(in.closeStarted.await(TIMEOUT, TimeUnit.MILLISECONDS));
+		closer.join(200);
+		assertTrue("close() did not wait", closer.isAlive());
+		in.releaseClose.countDown();
+		closer.join(TIMEOUT);
+		assertNull(closer.failure);
+		assertTrue(closer.done);
+	}
+
+	public void testCloseTimeoutZeroWaitsForCloseOfAbortedStream() throws Exception {
+		BlockingInputStream in = new BlockingInputStream(true);
+		WatchdogInputStream watchdog = new WatchdogInputStream(in, 0, 0);
+		watchdog.abort();
+		assertTrue(in.closeStarted.await(TIMEOUT, TimeUnit.MILLISECONDS));
+		Closer closer = new Closer(watchdog);
+		closer.start();
+		closer.join(200);
+		assertTrue("close() did not wait", closer.isAlive());
+		in.releaseClose.countDown();
+		closer.join(TIMEOUT);
+		assertNull(closer.failure);
+		assertTrue(closer.done);
+	}
+
+	public void testCloseInBackground() throws Exception {
+		BlockingInputStream in = new BlockingInputStream(true);
+		WatchdogInputStream watchdog = new WatchdogInputStream(in, 0, -1);
+		// returns although the underlying stream has not finished closing
+		watchdog.close();
+		assertTrue(in.closeStarted.await(TIMEOUT, TimeUnit.MILLISECONDS));
+		assertEquals(1, in.closed.getCount());
+		in.releaseClose.countDown();
+		assertTrue(in.closed.await(TIMEOUT, TimeUnit.MILLISECONDS));
+	}
+
+	public void testCloseTimeout() throws Exception {
+		BlockingInputStream in = new BlockingInputStream(true);
+		WatchdogInputStream watchdog = new WatchdogInputStream(in, 0, 100);
+		try {
+			watchdog.close();
+			fail("close() did not time out");
+		} catch (InterruptedIOException e) {
+			// expected
+		}
+		// the underlying stream keeps closing in the background
+		in.releaseClose.countDown();
+		assertTrue(in.closed.await(TIMEOUT, TimeUnit.MILLISECONDS));
+	}
+
+	public void testCloseWithinTimeout() throws Exception {
+		BlockingInputStream in = new BlockingInputStream(false);
+		WatchdogInputStream watchdog = new WatchdogInputStream(in, 0, TIMEOUT);
+		watchdog.close();
+		assertEquals(0, in.closed.getCount());
+	}
+
+}
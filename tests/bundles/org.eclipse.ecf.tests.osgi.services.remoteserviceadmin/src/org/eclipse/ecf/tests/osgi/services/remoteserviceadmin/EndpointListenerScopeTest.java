@@ -0,0 +1,74 @@
+/****************************************************************************
+ * Copyright (c) 2026 Composent, Inc. and others.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * Contributors:
+ *   Composent, Inc. - initial API and implementation
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *****************************************************************************/
+package org.eclipse.ecf.tests.osgi.services.remoteserviceadmin;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.eclipse.ecf.internal.osgi.services.remoteserviceadmin.EndpointListenerScope;
+
+public class EndpointListenerScopeTest extends TestCase {
+
+	private static final String CLASS = "(objectClass=org.example.Foo)";
+	private static final String UUID = "(endpoint.framework.uuid=1234-5678)";
+
+	private void assertTerms(String filter, String... expected) {
+		List<String[]> terms = EndpointListenerScope.getRequiredEqualityTerms(filter);
+		assertEquals(filter, expected.length / 2, terms.size());
+		for (int i = 0; i < terms.size(); i++) {
+			assertEquals(filter, expected[2 * i], terms.get(i)[0]);
+			assertEquals(filter, expected[2 * i + 1], terms.get(i)[1]);
+		}
+	}
+
+	public void testSingleTerm() throws Exception {
+		assertTerms(CLASS, "objectClass", "org.example.Foo");
+		assertTerms("  " + UUID + " ", "endpoint.framework.uuid", "1234-5678");
+		assertTerms("(objectClass =org.example.Foo)", "objectClass", "org.example.Foo");
+	}
+
+	public void testTopLevelAnd() throws Exception {
+		assertTerms("(&" + CLASS + UUID + ")", "objectClass", "org.example.Foo", "endpoint.framework.uuid",
+				"1234-5678");
+		assertTerms("(&" + CLASS + "(service.ranking>=1))", "objectClass", "org.example.Foo");
+	}
+
+	public void testOtherOperators() throws Exception {
+		assertTerms("(objectClass~=org.example.Foo)");
+		assertTerms("(service.ranking>=1)");
+		assertTerms("(service.ranking<=1)");
+		assertTerms("(objectClass=*)");
+		assertTerms("(objectClass=org.example.*)");
+	}
+
+	public void testEscapes() throws Exception {
+		assertTerms("(name=a\\)b)");
+		// the escaped parenthesis does not end the first operand
+		assertTerms("(&(name=a\\)b)" + CLASS + ")", "objectClass", "org.example.Foo");
+	}
+
+	public void testTermsBelowTopLevel() throws Exception {
+		assertTerms("(|" + CLASS + UUID + ")");
+		assertTerms("(!" + CLASS + ")");
+		assertTerms("(&(|" + CLASS + "(objectClass=org.example.Bar))" + UUID + ")", "endpoint.framework.uuid",
+				"1234-5678");
+		assertTerms("(&(&" + CLASS + ")" + UUID + ")", "endpoint.framework.uuid", "1234-5678");
+	}
+
+	public void testMalformed() throws Exception {
+		assertTerms("(&" + CLASS + "))");
+		assertTerms("objectClass=org.example.Foo");
+		assertTerms("");
+	}
+}
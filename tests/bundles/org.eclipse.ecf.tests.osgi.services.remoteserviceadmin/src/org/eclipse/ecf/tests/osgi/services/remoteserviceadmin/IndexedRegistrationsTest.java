@@ -0,0 +1,94 @@
+/****************************************************************************
+ * Copyright (c) 2026 Composent, Inc. and others.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * Contributors:
+ *   Composent, Inc. - initial API and implementation
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *****************************************************************************/
+package org.eclipse.ecf.tests.osgi.services.remoteserviceadmin;
+
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.eclipse.ecf.internal.osgi.services.remoteserviceadmin.IndexedRegistrations;
+
+public class IndexedRegistrationsTest extends TestCase {
+
+	private IndexedRegistrations<String> registrations;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		registrations = new IndexedRegistrations<String>();
+		registrations.add("reg1", "ref1", Long.valueOf(1));
+		registrations.add("reg2", "ref1", Long.valueOf(2));
+		registrations.add("reg3", "ref2", null);
+	}
+
+	protected void tearDown() throws Exception {
+		registrations = null;
+		super.tearDown();
+	}
+
+	public void testGet() throws Exception {
+		assertEquals(3, registrations.size());
+		List<String> l = registrations.get("ref1");
+		assertEquals(2, l.size());
+		assertEquals("reg1", l.get(0));
+		assertEquals("reg2", l.get(1));
+		assertEquals(1, registrations.get(Long.valueOf(2)).size());
+		assertEquals("reg3", registrations.get("ref2").get(0));
+		assertTrue(registrations.get("unknown").isEmpty());
+		assertTrue(registrations.get(null).isEmpty());
+	}
+
+	public void testGetReturnsCopy() throws Exception {
+		List<String> l = registrations.get("ref1");
+		registrations.remove("reg1");
+		assertEquals(2, l.size());
+		assertEquals(1, registrations.get("ref1").size());
+	}
+
+	public void testAddDuplicate() throws Exception {
+		assertFalse(registrations.add("reg1", "ref3"));
+		assertEquals(3, registrations.size());
+		assertTrue(registrations.get("ref3").isEmpty());
+		assertTrue(registrations.add("reg4"));
+		assertTrue(registrations.contains("reg4"));
+		assertEquals(4, registrations.size());
+	}
+
+	public void testRemove() throws Exception {
+		assertTrue(registrations.remove("reg1"));
+		assertFalse(registrations.remove("reg1"));
+		assertFalse(registrations.contains("reg1"));
+		assertEquals(2, registrations.size());
+		assertEquals("reg2", registrations.get("ref1").get(0));
+		assertTrue(registrations.get(Long.valueOf(1)).isEmpty());
+	}
+
+	public void testIteratorRemove() throws Exception {
+		for (Iterator<String> i = registrations.iterator(); i.hasNext();) {
+			if (!"reg3".equals(i.next()))
+				i.remove();
+		}
+		assertEquals(1, registrations.size());
+		assertTrue(registrations.get("ref1").isEmpty());
+		assertTrue(registrations.get(Long.valueOf(2)).isEmpty());
+		assertEquals(1, registrations.get("ref2").size());
+	}
+
+	public void testClear() throws Exception {
+		registrations.clear();
+		assertTrue(registrations.isEmpty());
+		assertTrue(registrations.get("ref1").isEmpty());
+		assertTrue(registrations.add("reg1", "ref1"));
+		assertEquals(1, registrations.get("ref1").size());
+	}
+}
@@ -0,0 +1,211 @@
+/****************************************************************************
+ * Copyright (c) 2026 Composent, Inc. and others.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * Contributors:
+ *   Composent, Inc. - initial API and implementation
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *****************************************************************************/
+package org.eclipse.ecf.tests.osgi.services.remoteserviceadmin;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.eclipse.ecf.core.ContainerFactory;
+import org.eclipse.ecf.core.IContainer;
+import org.eclipse.ecf.osgi.services.remoteserviceadmin.RemoteServiceAdmin;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.ServiceRegistration;
+import org.osgi.service.remoteserviceadmin.EndpointDescription;
+import org.osgi.service.remoteserviceadmin.ExportRegistration;
+import org.osgi.service.remoteserviceadmin.ImportRegistration;
+import org.osgi.service.remoteserviceadmin.RemoteConstants;
+import org.osgi.util.tracker.ServiceTracker;
+
+/**
+ * Checks that every endpoint or service of a batch gets a result of its own,
+ * and that the ones that cannot be imported or exported do not fail the
+ * others.
+ */
+public class RemoteServiceAdminBatchTest extends TestCase {
+
+	private ServiceTracker remoteServiceAdminTracker;
+	private RemoteServiceAdmin remoteServiceAdmin;
+	private ServiceRegistration registration;
+	private List<IContainer> servers = new ArrayList<IContainer>();
+	private List<ServiceRegistration> serviceRegistrations = new ArrayList<ServiceRegistration>();
+	private List<ExportRegistration> exportRegistrations = new ArrayList<ExportRegistration>();
+	private List<ImportRegistration> importRegistrations = new ArrayList<ImportRegistration>();
+
+	private static final String SERVER_CONTAINER_TYPE = "ecf.generic.server";
+	private static final String SERVER_IDENTITY1 = "ecftcp://localhost:3288/server";
+	private static final String SERVER_IDENTITY2 = "ecftcp://localhost:3289/server";
+	private static final int SERVICE_COUNT = 3;
+
+	protected BundleContext getContext() {
+		return FrameworkUtil.getBundle(getClass()).getBundleContext();
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		remoteServiceAdminTracker = new ServiceTracker(getContext(),
+				org.osgi.service.remoteserviceadmin.RemoteServiceAdmin.class.getName(), null);
+		remoteServiceAdminTracker.open();
+		remoteServiceAdmin = (RemoteServiceAdmin) remoteServiceAdminTracker.waitForService(10000);
+		assertNotNull(remoteServiceAdmin);
+	}
+
+	protected void tearDown() throws Exception {
+		for (ImportRegistration reg : importRegistrations)
+			reg.close();
+		importRegistrations.clear();
+		for (ExportRegistration reg : exportRegistrations)
+			reg.close();
+		exportRegistrations.clear();
+		for (ServiceRegistration reg : serviceRegistrations)
+			reg.unregister();
+		serviceRegistrations.clear();
+		for (IContainer server : servers)
+			server.dispose();
+		servers.clear();
+		if (registration != null) {
+			registration.unregister();
+			registration = null;
+		}
+		remoteServiceAdmin = null;
+		remoteServiceAdminTracker.close();
+		super.tearDown();
+	}
+
+	private EndpointDescription createInvalidEndpointDescription(String id) {
+		Map<String, Object> props = new HashMap<String, Object>();
+		props.put(org.osgi.framework.Constants.OBJECTCLASS, new String[] { TestServiceInterface1.class.getName() });
+		props.put(RemoteConstants.ENDPOINT_ID, id);
+		props.put(RemoteConstants.SERVICE_IMPORTED_CONFIGS, "ecf.generic.server");
+		props.put(org.eclipse.ecf.osgi.services.remoteserviceadmin.RemoteConstants.ENDPOINT_ID, id);
+		// not a Long, so this is not a valid ECF endpoint description
+		props.put(org.eclipse.ecf.osgi.services.remoteserviceadmin.RemoteConstants.ENDPOINT_TIMESTAMP, "invalid");
+		return new EndpointDescription(props);
+	}
+
+	public void testImportNoEndpoints() throws Exception {
+		assertTrue(remoteServiceAdmin.importServices(new ArrayList<EndpointDescription>()).isEmpty());
+	}
+
+	public void testImportInvalidEndpoints() throws Exception {
+		List<EndpointDescription> eds = new ArrayList<EndpointDescription>();
+		for (int i = 0; i < 3; i++)
+			eds.add(createInvalidEndpointDescription("ecftcp://localhost:" + (3290 + i) + "/server"));
+		Map<EndpointDescription, ImportRegistration> results = remoteServiceAdmin.importServices(eds);
+		assertEquals(eds.size(), results.size());
+		Iterator<EndpointDescription> i = results.keySet().iterator();
+		for (EndpointDescription ed : eds) {
+			assertSame(ed, i.next());
+			assertNull(results.get(ed));
+		}
+		assertTrue(remoteServiceAdmin.getImportedEndpoints().isEmpty());
+	}
+
+	private List<EndpointDescription> exportServices(String serverIdentity, int count) throws Exception {
+		IContainer server = ContainerFactory.getDefault().createContainer(SERVER_CONTAINER_TYPE, serverIdentity);
+		servers.add(server);
+		Map<ServiceReference<?>, Map<String, ?>> services = new LinkedHashMap<ServiceReference<?>, Map<String, ?>>();
+		for (int i = 0; i < count; i++) {
+			ServiceRegistration reg = getContext().registerService(TestServiceInterface1.class.getName(), new TestService1(), null);
+			serviceRegistrations.add(reg);
+			Map<String, Object> props = new HashMap<String, Object>();
+			props.put(RemoteConstants.SERVICE_EXPORTED_INTERFACES, "*");
+			props.put(RemoteConstants.SERVICE_EXPORTED_CONFIGS, SERVER_CONTAINER_TYPE);
+			props.put(org.eclipse.ecf.osgi.services.remoteserviceadmin.RemoteConstants.SERVICE_EXPORTED_CONTAINER_ID, server.getID());
+			services.put(reg.getReference(), props);
+		}
+		Map<ServiceReference<?>, Collection<ExportRegistration>> results = remoteServiceAdmin.exportServices(services);
+		assertEquals(count, results.size());
+		List<EndpointDescription> eds = new ArrayList<EndpointDescription>();
+		for (ServiceReference<?> ref : services.keySet()) {
+			Collection<ExportRegistration> regs = results.get(ref);
+			assertNotNull(regs);
+			assertEquals(1, regs.size());
+			ExportRegistration reg = regs.iterator().next();
+			exportRegistrations.add(reg);
+			assertNull(reg.getException());
+			eds.add(reg.getExportReference().getExportedEndpoint());
+		}
+		return eds;
+	}
+
+	public void testImportEndpointsOfTwoServers() throws Exception {
+		// The endpoints of each server are imported through one consumer
+		// container selection, and each endpoint gets its own registration
+		List<EndpointDescription> eds = exportServices(SERVER_IDENTITY1, SERVICE_COUNT);
+		eds.addAll(exportServices(SERVER_IDENTITY2, SERVICE_COUNT));
+		Map<EndpointDescription, ImportRegistration> results = remoteServiceAdmin.importServices(eds);
+		assertEquals(eds.size(), results.size());
+		Iterator<EndpointDescription> i = results.keySet().iterator();
+		for (EndpointDescription ed : eds) {
+			assertSame(ed, i.next());
+			ImportRegistration reg = results.get(ed);
+			assertNotNull(reg);
+			importRegistrations.add(reg);
+			assertNull(reg.getException());
+			assertEquals(ed.getId(), reg.getImportReference().getImportedEndpoint().getId());
+			ServiceReference<?> ref = reg.getImportReference().getImportedService();
+			assertNotNull(ref);
+			TestServiceInterface1 proxy = (TestServiceInterface1) getContext().getService(ref);
+			assertNotNull(proxy);
+			assertEquals(TestServiceInterface1.TEST_SERVICE_STRING1, proxy.doStuff1());
+			getContext().ungetService(ref);
+		}
+		assertEquals(eds.size(), remoteServiceAdmin.getImportedEndpoints().size());
+	}
+
+	public void testImportValidAndInvalidEndpoints() throws Exception {
+		List<EndpointDescription> valid = exportServices(SERVER_IDENTITY1, SERVICE_COUNT);
+		List<EndpointDescription> eds = new ArrayList<EndpointDescription>();
+		for (int i = 0; i < valid.size(); i++) {
+			eds.add(valid.get(i));
+			eds.add(createInvalidEndpointDescription("ecftcp://localhost:" + (3290 + i) + "/server"));
+		}
+		Map<EndpointDescription, ImportRegistration> results = remoteServiceAdmin.importServices(eds);
+		assertEquals(eds.size(), results.size());
+		for (EndpointDescription ed : eds) {
+			ImportRegistration reg = results.get(ed);
+			if (valid.contains(ed)) {
+				assertNotNull(reg);
+				importRegistrations.add(reg);
+				assertNull(reg.getException());
+				assertNotNull(reg.getImportReference().getImportedService());
+			} else
+				assertNull(reg);
+		}
+		assertEquals(valid.size(), remoteServiceAdmin.getImportedEndpoints().size());
+	}
+
+	public void testExportNoServices() throws Exception {
+		assertTrue(remoteServiceAdmin.exportServices(new HashMap<ServiceReference<?>, Map<String, ?>>()).isEmpty());
+	}
+
+	public void testExportWithoutExportedInterfaces() throws Exception {
+		registration = getContext().registerService(TestServiceInterface1.class.getName(), new TestService1(), null);
+		Map<ServiceReference<?>, Map<String, ?>> services = new LinkedHashMap<ServiceReference<?>, Map<String, ?>>();
+		services.put(registration.getReference(), null);
+		Map<ServiceReference<?>, Collection<ExportRegistration>> results = remoteServiceAdmin.exportServices(services);
+		assertEquals(1, results.size());
+		Collection<ExportRegistration> regs = results.get(registration.getReference());
+		assertNotNull(regs);
+		assertTrue(regs.isEmpty());
+	}
+}
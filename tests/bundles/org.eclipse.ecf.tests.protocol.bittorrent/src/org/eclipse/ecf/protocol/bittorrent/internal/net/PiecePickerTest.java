@@ -0,0 +1,217 @@
+/****************************************************************************
+ * Copyright (c) 2026 Composent, Inc. and others.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * Contributors:
+ *   Composent, Inc. - initial API and implementation
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *****************************************************************************/
+package org.eclipse.ecf.protocol.bittorrent.internal.net;
+
+import java.util.Vector;
+
+import junit.framework.TestCase;
+
+import org.eclipse.ecf.protocol.bittorrent.internal.torrent.Piece;
+import org.eclipse.ecf.protocol.bittorrent.internal.torrent.PieceState;
+
+/**
+ * Checks the order in which {@link PiecePicker} chooses pieces as their
+ * availability, priority and state change.
+ */
+public class PiecePickerTest extends TestCase {
+
+	/**
+	 * The length of a piece, which is a single block.
+	 */
+	private static final int PIECE_LENGTH = 16384;
+
+	private PiecePicker picker;
+
+	private int size;
+
+	private void createPicker(int pieces) {
+		size = pieces;
+		PieceState[] states = PieceState.createStates(pieces);
+		Vector vector = new Vector(pieces);
+		for (int i = 0; i < pieces; i++) {
+			Piece piece = new Piece(states[i], i);
+			piece.setLength(PIECE_LENGTH);
+			vector.add(piece);
+		}
+		picker = new PiecePicker(vector);
+	}
+
+	private PieceSet createSet(int[] pieces) {
+		PieceSet set = new PieceSet(size);
+		for (int i = 0; i < pieces.length; i++) {
+			set.set(pieces[i]);
+		}
+		return set;
+	}
+
+	private PieceSet createFullSet() {
+		PieceSet set = new PieceSet(size);
+		for (int i = 0; i < size; i++) {
+			set.set(i);
+		}
+		return set;
+	}
+
+	/**
+	 * Picks a piece for a peer and requests its only block, as a connection
+	 * would, so that it is not picked again as a started piece.
+	 *
+	 * @return the number of the picked piece, or <code>-1</code> if there is
+	 *         none
+	 */
+	private int pick(PieceSet peerPieces) {
+		Piece piece = picker.pick(peerPieces);
+		if (piece == null) {
+			return -1;
+		}
+		piece.getRequestInformation();
+		return piece.getNumber();
+	}
+
+	public void testRarestFirst() {
+		createPicker(5);
+		picker.addAvailability(createFullSet());
+		picker.addAvailability(createSet(new int[] {1, 2, 3}));
+		picker.addAvailability(createSet(new int[] {2, 3}));
+		picker.addAvailability(createSet(new int[] {3}));
+
+		PieceSet peer = createFullSet();
+		// pieces 0 and 4 are just as rare and are picked in a random order
+		int first = pick(peer);
+		int second = pick(peer);
+		assertTrue(first == 0 || first == 4);
+		assertEquals(4 - first, second);
+		assertEquals(1, pick(peer));
+		assertEquals(2, pick(peer));
+		assertFalse(picker.isEndGame());
+		assertEquals(3, pick(peer));
+		assertTrue(picker.isEndGame());
+	}
+
+	public void testRelinkWhenAvailabilityChanges() {
+		createPicker(3);
+		picker.addAvailability(createFullSet());
+		// more peers now have the first two pieces
+		picker.addAvailability(0);
+		picker.addAvailability(1);
+
+		PieceSet peer = createFullSet();
+		assertEquals(2, pick(peer));
+
+		// a peer that had the second piece has left
+		picker.removeAvailability(createSet(new int[] {1}));
+		assertEquals(1, pick(peer));
+		assertEquals(0, pick(peer));
+	}
+
+	public void testUnavailablePiecesAreNotPicked() {
+		createPicker(2);
+		PieceSet peer = createSet(new int[] {0});
+		picker.addAvailability(peer);
+		assertEquals(0, pick(peer));
+		// the second piece is wanted but no connected peer has it
+		assertTrue(picker.isEndGame());
+	}
+
+	public void testSetPriorityWhileLinked() {
+		createPicker(3);
+		PieceSet peer = createFullSet();
+		picker.addAvailability(peer);
+
+		picker.setPriority(1, PiecePicker.SKIP);
+		assertFalse(picker.isInterested(createSet(new int[] {1})));
+		picker.setPriority(2, PiecePicker.HIGH);
+		assertEquals(2, pick(peer));
+		assertEquals(0, pick(peer));
+		// the skipped piece does not keep the picker out of end-game mode,
+		// nor is it requested in it
+		assertTrue(picker.isEndGame());
+		assertEquals(-1, pick(createSet(new int[] {1})));
+
+		picker.setPriority(1, PiecePicker.NORMAL);
+		assertTrue(picker.isInterested(createSet(new int[] {1})));
+		assertFalse(picker.isEndGame());
+		assertEquals(1, pick(peer));
+	}
+
+	public void testHighPriorityBeforeRarer() {
+		createPicker(3);
+		picker.addAvailability(createFullSet());
+		picker.addAvailability(createSet(new int[] {0, 1}));
+		picker.setPriority(0, PiecePicker.HIGH);
+
+		PieceSet peer = createFullSet();
+		assertEquals(0, pick(peer));
+		assertEquals(2, pick(peer));
+		assertEquals(1, pick(peer));
+	}
+
+	public void testEndGame() {
+		createPicker(3);
+		PieceSet peer = createSet(new int[] {0, 1});
+		picker.addAvailability(peer);
+		picker.addAvailability(1);
+
+		assertEquals(0, pick(peer));
+		assertFalse(picker.isEndGame());
+		assertEquals(1, pick(peer));
+		assertTrue(picker.isEndGame());
+
+		// the blocks that are still outstanding may be requested again
+		int outstanding = pick(peer);
+		assertTrue(outstanding == 0 || outstanding == 1);
+		assertEquals(-1, pick(createSet(new int[] {2})));
+
+		// a peer with the missing piece ends the end game
+		picker.addAvailability(createSet(new int[] {2}));
+		assertFalse(picker.isEndGame());
+		assertEquals(2, pick(createFullSet()));
+	}
+
+	public void testFailedHashCheck() {
+		createPicker(2);
+		PieceSet peer = createFullSet();
+		picker.addAvailability(peer);
+		picker.addAvailability(0);
+
+		assertEquals(1, pick(peer));
+		assertEquals(0, pick(peer));
+		picker.setCompleted(0, true);
+		assertTrue(picker.isEndGame());
+
+		// the piece failed its hash check and has to be downloaded again
+		picker.setCompleted(1, false);
+		assertFalse(picker.isEndGame());
+		assertTrue(picker.isInterested(createSet(new int[] {1})));
+		assertFalse(picker.isInterested(createSet(new int[] {0})));
+		assertEquals(1, pick(peer));
+
+		picker.setCompleted(1, true);
+		assertFalse(picker.isInterested(peer));
+		assertFalse(picker.isEndGame());
+		assertEquals(-1, pick(peer));
+	}
+
+	public void testCompletedPiecesAreNotPicked() {
+		createPicker(3);
+		picker.setCompleted(1, true);
+		PieceSet peer = createFullSet();
+		picker.addAvailability(peer);
+
+		int first = pick(peer);
+		int second = pick(peer);
+		assertEquals(2, first + second);
+		assertTrue(first != 1 && second != 1);
+	}
+
+}
@@ -0,0 +1,91 @@
+/****************************************************************************
+ * Copyright (c) 2026 Composent, Inc. and others.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * Contributors:
+ *   Composent, Inc. - initial API and implementation
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *****************************************************************************/
+package org.eclipse.ecf.protocol.bittorrent.internal.net;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks {@link PieceSet}, in particular around the boundaries of the
+ * <code>long</code>s that it is stored in.
+ */
+public class PieceSetTest extends TestCase {
+
+	private PieceSet create(int size, int[] pieces) {
+		PieceSet set = new PieceSet(size);
+		for (int i = 0; i < pieces.length; i++) {
+			set.set(pieces[i]);
+		}
+		return set;
+	}
+
+	public void testSetAndClear() {
+		PieceSet set = new PieceSet(3);
+		assertTrue(set.set(1));
+		assertFalse(set.set(1));
+		assertTrue(set.get(1));
+		assertFalse(set.get(0));
+		assertEquals(1, set.count());
+
+		set.set(0);
+		set.set(2);
+		assertTrue(set.isFull());
+		assertTrue(set.clear(2));
+		assertFalse(set.clear(2));
+		assertFalse(set.isFull());
+		assertEquals(2, set.count());
+
+		set.clear();
+		assertEquals(0, set.count());
+		assertEquals(-1, set.next(0));
+	}
+
+	public void testNextAcrossWords() {
+		PieceSet set = create(200, new int[] {5, 63, 64, 130, 199});
+		assertEquals(5, set.next(0));
+		assertEquals(63, set.next(6));
+		assertEquals(63, set.next(63));
+		assertEquals(64, set.next(64));
+		// the rest of the second word is empty
+		assertEquals(130, set.next(65));
+		assertEquals(199, set.next(131));
+		assertEquals(199, set.next(199));
+		assertEquals(-1, set.next(200));
+	}
+
+	public void testNextAtTheEnd() {
+		// the last word is full, so there is no bit past the end to stop at
+		PieceSet set = create(128, new int[] {127});
+		assertEquals(127, set.next(64));
+		assertEquals(-1, set.next(128));
+
+		set = create(128, new int[] {3});
+		assertEquals(-1, set.next(4));
+		assertEquals(-1, set.next(64));
+	}
+
+	public void testIntersectsAcrossWords() {
+		PieceSet first = create(200, new int[] {63, 190});
+		PieceSet second = create(200, new int[] {64, 191});
+		assertFalse(first.intersects(second));
+		assertFalse(second.intersects(first));
+
+		second.set(190);
+		assertTrue(first.intersects(second));
+		second.clear(190);
+		second.set(63);
+		assertTrue(second.intersects(first));
+
+		assertFalse(first.intersects(new PieceSet(200)));
+	}
+
+}
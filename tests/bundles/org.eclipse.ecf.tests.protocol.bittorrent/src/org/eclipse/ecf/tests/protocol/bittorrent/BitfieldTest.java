@@ -0,0 +1,208 @@
+/****************************************************************************
+ * Copyright (c) 2026 Composent, Inc. and others.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * Contributors:
+ *   Composent, Inc. - initial API and implementation
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *****************************************************************************/
+package org.eclipse.ecf.tests.protocol.bittorrent;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.MessageDigest;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.eclipse.ecf.protocol.bittorrent.ITorrentStateListener;
+import org.eclipse.ecf.protocol.bittorrent.Torrent;
+import org.eclipse.ecf.protocol.bittorrent.TorrentConfiguration;
+import org.eclipse.ecf.protocol.bittorrent.TorrentFactory;
+import org.eclipse.ecf.protocol.bittorrent.TorrentFile;
+import org.eclipse.ecf.protocol.bittorrent.TorrentServer;
+
+/**
+ * Checks that bitfields are sent and read with the high bit of the first byte
+ * being the first piece, as the BitTorrent specification requires.
+ */
+public class BitfieldTest extends TestCase {
+
+	private static final int PIECE_LENGTH = 16384;
+
+	private static final int PIECES = 10;
+
+	/**
+	 * The piece that is corrupted on disk, so the torrent does not have it.
+	 */
+	private static final int MISSING = 3;
+
+	private static final long TIMEOUT = 60000;
+
+	private File directory;
+
+	private ServerSocket tracker;
+
+	private Torrent torrent;
+
+	private Socket socket;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		directory = File.createTempFile("bitfieldtest", ""); //$NON-NLS-1$ //$NON-NLS-2$
+		directory.delete();
+		directory.mkdirs();
+		// the configuration path can only be set once so it is shared by all tests
+		TorrentConfiguration.setConfigurationPath(new File(System.getProperty("java.io.tmpdir"), "org.eclipse.ecf.tests.protocol.bittorrent")); //$NON-NLS-1$ //$NON-NLS-2$
+
+		byte[] data = new byte[PIECES * PIECE_LENGTH];
+		new Random(3).nextBytes(data);
+		MessageDigest sha = MessageDigest.getInstance("SHA-1"); //$NON-NLS-1$
+		StringBuffer pieces = new StringBuffer();
+		for (int offset = 0; offset < data.length; offset += PIECE_LENGTH) {
+			sha.update(data, offset, PIECE_LENGTH);
+			pieces.append(new String(sha.digest(), "ISO-8859-1")); //$NON-NLS-1$
+		}
+		data[MISSING * PIECE_LENGTH + 10]++;
+
+		File file = new File(directory, "data.bin"); //$NON-NLS-1$
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(data);
+		out.close();
+
+		tracker = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1")); //$NON-NLS-1$
+		startTracker();
+
+		String announce = "http://127.0.0.1:" + tracker.getLocalPort() + "/announce"; //$NON-NLS-1$ //$NON-NLS-2$
+		String metainfo = "d8:announce" + announce.length() + ":" + announce //$NON-NLS-1$ //$NON-NLS-2$
+				+ "4:infod6:lengthi" + data.length + "e4:name8:data.bin" //$NON-NLS-1$ //$NON-NLS-2$
+				+ "12:piece lengthi" + PIECE_LENGTH + "e6:pieces" //$NON-NLS-1$ //$NON-NLS-2$
+				+ pieces.length() + ":" + pieces + "ee"; //$NON-NLS-1$ //$NON-NLS-2$
+		File torrentFile = new File(directory, "data.torrent"); //$NON-NLS-1$
+		out = new FileOutputStream(torrentFile);
+		out.write(metainfo.getBytes("ISO-8859-1")); //$NON-NLS-1$
+		out.close();
+
+		TorrentFile metainfoFile = new TorrentFile(torrentFile);
+		metainfoFile.setTargetFile(file);
+		torrent = TorrentFactory.createTorrent(metainfoFile);
+		long end = System.currentTimeMillis() + TIMEOUT;
+		while (torrent.getState() != ITorrentStateListener.STOPPED) {
+			assertTrue("The hash check has not completed", System.currentTimeMillis() < end); //$NON-NLS-1$
+			Thread.sleep(50);
+		}
+		assertEquals(PIECE_LENGTH, torrent.getRemaining());
+		torrent.start();
+		while (torrent.getState() != ITorrentStateListener.EXCHANGING) {
+			assertTrue("The torrent has not started", System.currentTimeMillis() < end); //$NON-NLS-1$
+			Thread.sleep(50);
+		}
+	}
+
+	protected void tearDown() throws Exception {
+		if (socket != null) {
+			socket.close();
+		}
+		torrent.remove();
+		tracker.close();
+		File[] files = directory.listFiles();
+		for (int i = 0; i < files.length; i++) {
+			files[i].delete();
+		}
+		directory.delete();
+		super.tearDown();
+	}
+
+	/**
+	 * Answers every announce with an empty list of peers.
+	 */
+	private void startTracker() {
+		Thread thread = new Thread("Tracker") { //$NON-NLS-1$
+			public void run() {
+				while (true) {
+					try {
+						Socket accepted = tracker.accept();
+						BufferedReader reader = new BufferedReader(new InputStreamReader(accepted.getInputStream(), "ISO-8859-1")); //$NON-NLS-1$
+						String line = reader.readLine();
+						while (line != null && line.length() > 0) {
+							line = reader.readLine();
+						}
+						OutputStream out = accepted.getOutputStream();
+						out.write("HTTP/1.0 200 OK\r\n\r\nd8:intervali1800e5:peers0:e".getBytes("ISO-8859-1")); //$NON-NLS-1$ //$NON-NLS-2$
+						out.close();
+						accepted.close();
+					} catch (IOException e) {
+						return;
+					}
+				}
+			}
+		};
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Reads messages from the torrent until one with the given ID arrives.
+	 *
+	 * @return the payload of the message
+	 */
+	private byte[] readMessage(DataInputStream in, int expected) throws IOException {
+		while (true) {
+			int length = in.readInt();
+			if (length == 0) {
+				continue;
+			}
+			byte id = in.readByte();
+			byte[] payload = new byte[length - 1];
+			in.readFully(payload);
+			if (id == expected) {
+				return payload;
+			}
+		}
+	}
+
+	public void testBitfieldIsMostSignificantBitFirst() throws Exception {
+		String infoHash = torrent.getTorrentFile().getInfoHash();
+		socket = new Socket("127.0.0.1", TorrentServer.getPort()); //$NON-NLS-1$
+		socket.setSoTimeout((int) TIMEOUT);
+		DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+		DataInputStream in = new DataInputStream(socket.getInputStream());
+
+		out.write(19);
+		out.write("BitTorrent protocol".getBytes("ISO-8859-1")); //$NON-NLS-1$ //$NON-NLS-2$
+		out.write(new byte[8]);
+		out.write(infoHash.getBytes("ISO-8859-1")); //$NON-NLS-1$
+		out.write("-TS0001-000000000001".getBytes("ISO-8859-1")); //$NON-NLS-1$ //$NON-NLS-2$
+		out.flush();
+
+		byte[] handshake = new byte[68];
+		in.readFully(handshake);
+		assertEquals(infoHash, new String(handshake, 28, 20, "ISO-8859-1")); //$NON-NLS-1$
+
+		// all pieces but the fourth, and the spare bits of the last byte clear
+		byte[] bitfield = readMessage(in, 5);
+		assertEquals(2, bitfield.length);
+		assertEquals((byte) 0xEF, bitfield[0]);
+		assertEquals((byte) 0xC0, bitfield[1]);
+
+		// offer only the missing piece, which read least significant bit first
+		// would be the fifth piece that the torrent already has
+		out.write(new byte[] {0, 0, 0, 3, 5, (byte) (0x80 >>> MISSING), 0});
+		out.flush();
+		readMessage(in, 2);
+	}
+
+}
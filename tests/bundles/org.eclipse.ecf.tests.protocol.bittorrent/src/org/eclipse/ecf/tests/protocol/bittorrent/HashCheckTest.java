@@ -0,0 +1,160 @@
+/****************************************************************************
+ * Copyright (c) 2026 Composent, Inc. and others.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * Contributors:
+ *   Composent, Inc. - initial API and implementation
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *****************************************************************************/
+package org.eclipse.ecf.tests.protocol.bittorrent;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.security.MessageDigest;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.eclipse.ecf.protocol.bittorrent.ITorrentStateListener;
+import org.eclipse.ecf.protocol.bittorrent.Torrent;
+import org.eclipse.ecf.protocol.bittorrent.TorrentConfiguration;
+import org.eclipse.ecf.protocol.bittorrent.TorrentFactory;
+import org.eclipse.ecf.protocol.bittorrent.TorrentFile;
+
+/**
+ * Checks the verification of existing data when a torrent is created.
+ */
+public class HashCheckTest extends TestCase {
+
+	private static final int PIECE_LENGTH = 16384;
+
+	private static final long TIMEOUT = 60000;
+
+	private File directory;
+
+	private Torrent torrent;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		directory = File.createTempFile("hashchecktest", ""); //$NON-NLS-1$ //$NON-NLS-2$
+		directory.delete();
+		directory.mkdirs();
+		// the configuration path can only be set once so it is shared by all tests
+		TorrentConfiguration.setConfigurationPath(new File(System.getProperty("java.io.tmpdir"), "org.eclipse.ecf.tests.protocol.bittorrent")); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	protected void tearDown() throws Exception {
+		if (torrent != null) {
+			torrent.remove();
+		}
+		delete(directory);
+		super.tearDown();
+	}
+
+	private void delete(File file) {
+		File[] files = file.listFiles();
+		for (int i = 0; files != null && i < files.length; i++) {
+			delete(files[i]);
+		}
+		file.delete();
+	}
+
+	private String createPieces(byte[] data) throws Exception {
+		MessageDigest sha = MessageDigest.getInstance("SHA-1"); //$NON-NLS-1$
+		StringBuffer pieces = new StringBuffer();
+		for (int offset = 0; offset < data.length; offset += PIECE_LENGTH) {
+			sha.update(data, offset, Math.min(PIECE_LENGTH, data.length - offset));
+			pieces.append(new String(sha.digest(), "ISO-8859-1")); //$NON-NLS-1$
+		}
+		return pieces.length() + ":" + pieces; //$NON-NLS-1$
+	}
+
+	private void write(File file, byte[] data, int offset, int length) throws Exception {
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(data, offset, length);
+		out.close();
+	}
+
+	private Torrent create(String info, File target) throws Exception {
+		File file = new File(directory, "test.torrent"); //$NON-NLS-1$
+		// the torrent is never started so the tracker is not contacted
+		byte[] metainfo = ("d8:announce27:http://127.0.0.1:1/announce4:info" + info + "e").getBytes("ISO-8859-1"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		write(file, metainfo, 0, metainfo.length);
+		TorrentFile torrentFile = new TorrentFile(file);
+		torrentFile.setTargetFile(target);
+		Torrent created = TorrentFactory.createTorrent(torrentFile);
+		long end = System.currentTimeMillis() + TIMEOUT;
+		while (created.getState() != ITorrentStateListener.STOPPED) {
+			assertTrue("The hash check has not completed", System.currentTimeMillis() < end); //$NON-NLS-1$
+			Thread.sleep(50);
+		}
+		return created;
+	}
+
+	public void testSingleFile() throws Exception {
+		// the data ends exactly at a piece boundary
+		byte[] data = new byte[PIECE_LENGTH * 300];
+		new Random(7).nextBytes(data);
+		File target = new File(directory, "data.bin"); //$NON-NLS-1$
+		write(target, data, 0, data.length);
+
+		torrent = create("d6:lengthi" + data.length + "e4:name8:data.bin12:piece lengthi" //$NON-NLS-1$ //$NON-NLS-2$
+				+ PIECE_LENGTH + "e6:pieces" + createPieces(data) + "e", target); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals(0, torrent.getRemaining());
+	}
+
+	public void testSeveralRanges() throws Exception {
+		// a range maps 16 MB, so this is checked in three ranges that are
+		// handed out to the workers
+		int count = 2 * (16 * 1024 * 1024 / PIECE_LENGTH) + 500;
+		byte[] data = new byte[PIECE_LENGTH * count - 1000];
+		new Random(13).nextBytes(data);
+		String pieces = createPieces(data);
+
+		// corrupt a piece of the second range and the last piece
+		data[1500 * PIECE_LENGTH]++;
+		data[data.length - 1]++;
+
+		File target = new File(directory, "data.bin"); //$NON-NLS-1$
+		write(target, data, 0, data.length);
+
+		torrent = create("d6:lengthi" + data.length + "e4:name8:data.bin12:piece lengthi" //$NON-NLS-1$ //$NON-NLS-2$
+				+ PIECE_LENGTH + "e6:pieces" + pieces + "e", target); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals(PIECE_LENGTH + PIECE_LENGTH - 1000, torrent.getRemaining());
+	}
+
+	public void testPiecesSpanningFiles() throws Exception {
+		int[] lengths = {50000, 70001, 3, 40000};
+		int total = 0;
+		for (int i = 0; i < lengths.length; i++) {
+			total += lengths[i];
+		}
+		byte[] data = new byte[total];
+		new Random(11).nextBytes(data);
+		String pieces = createPieces(data);
+
+		// corrupt the fourth piece, which lies within the second file
+		data[3 * PIECE_LENGTH + 10]++;
+
+		File target = new File(directory, "folder"); //$NON-NLS-1$
+		target.mkdirs();
+		StringBuffer files = new StringBuffer("l"); //$NON-NLS-1$
+		int offset = 0;
+		for (int i = 0; i < lengths.length; i++) {
+			String name = i + ".bin"; //$NON-NLS-1$
+			write(new File(target, name), data, offset, lengths[i]);
+			offset += lengths[i];
+			files.append("d6:lengthi").append(lengths[i]).append("e4:pathl").append(name.length()).append(':').append(name).append("ee"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		}
+		files.append('e');
+
+		torrent = create("d5:files" + files + "4:name6:folder12:piece lengthi" //$NON-NLS-1$ //$NON-NLS-2$
+				+ PIECE_LENGTH + "e6:pieces" + pieces + "e", target); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals(PIECE_LENGTH, torrent.getRemaining());
+	}
+
+}
@@ -0,0 +1,288 @@
+/****************************************************************************
+ * Copyright (c) 2026 Composent, Inc. and others.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * Contributors:
+ *   Composent, Inc. - initial API and implementation
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *****************************************************************************/
+package org.eclipse.ecf.tests.protocol.bittorrent;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.eclipse.ecf.protocol.bittorrent.ITorrentStateListener;
+import org.eclipse.ecf.protocol.bittorrent.Torrent;
+import org.eclipse.ecf.protocol.bittorrent.TorrentConfiguration;
+import org.eclipse.ecf.protocol.bittorrent.TorrentFactory;
+import org.eclipse.ecf.protocol.bittorrent.TorrentFile;
+import org.eclipse.ecf.protocol.bittorrent.TorrentServer;
+
+/**
+ * Seeds a torrent to simulated peers that all connect over the loopback
+ * interface at the same time.
+ */
+public class SeedingTest extends TestCase {
+
+	private static final int PEERS = 50;
+
+	private static final int PIECE_LENGTH = 32768;
+
+	private static final int BLOCK_LENGTH = 16384;
+
+	private static final int LENGTH = 20 * PIECE_LENGTH - 1000;
+
+	private static final long TIMEOUT = 60000;
+
+	private File directory;
+
+	private byte[] data;
+
+	private ServerSocket tracker;
+
+	private Torrent torrent;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		directory = File.createTempFile("seedingtest", ""); //$NON-NLS-1$ //$NON-NLS-2$
+		directory.delete();
+		directory.mkdirs();
+		// the configuration path can only be set once so it is shared by all tests
+		TorrentConfiguration.setConfigurationPath(new File(System.getProperty("java.io.tmpdir"), "org.eclipse.ecf.tests.protocol.bittorrent")); //$NON-NLS-1$ //$NON-NLS-2$
+
+		data = new byte[LENGTH];
+		new Random(42).nextBytes(data);
+		File file = new File(directory, "data.bin"); //$NON-NLS-1$
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(data);
+		out.close();
+
+		tracker = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1")); //$NON-NLS-1$
+		startTracker();
+
+		File torrentFile = new File(directory, "data.torrent"); //$NON-NLS-1$
+		out = new FileOutputStream(torrentFile);
+		out.write(createMetainfo("http://127.0.0.1:" + tracker.getLocalPort() //$NON-NLS-1$
+				+ "/announce")); //$NON-NLS-1$
+		out.close();
+
+		TorrentFile metainfo = new TorrentFile(torrentFile);
+		metainfo.setTargetFile(file);
+		torrent = TorrentFactory.createTorrent(metainfo);
+		torrent.start();
+		long end = System.currentTimeMillis() + TIMEOUT;
+		while (torrent.getState() != ITorrentStateListener.EXCHANGING) {
+			assertTrue("The torrent has not started", System.currentTimeMillis() < end); //$NON-NLS-1$
+			Thread.sleep(50);
+		}
+	}
+
+	protected void tearDown() throws Exception {
+		torrent.remove();
+		tracker.close();
+		File[] files = directory.listFiles();
+		for (int i = 0; i < files.length; i++) {
+			files[i].delete();
+		}
+		directory.delete();
+		super.tearDown();
+	}
+
+	private byte[] createMetainfo(String announce) throws Exception {
+		MessageDigest sha = MessageDigest.getInstance("SHA-1"); //$NON-NLS-1$
+		StringBuffer pieces = new StringBuffer();
+		for (int offset = 0; offset < LENGTH; offset += PIECE_LENGTH) {
+			sha.update(data, offset, Math.min(PIECE_LENGTH, LENGTH - offset));
+			pieces.append(new String(sha.digest(), "ISO-8859-1")); //$NON-NLS-1$
+		}
+		String metainfo = "d8:announce" + announce.length() + ":" + announce //$NON-NLS-1$ //$NON-NLS-2$
+				+ "4:infod6:lengthi" + LENGTH + "e4:name8:data.bin" //$NON-NLS-1$ //$NON-NLS-2$
+				+ "12:piece lengthi" + PIECE_LENGTH + "e6:pieces" //$NON-NLS-1$ //$NON-NLS-2$
+				+ pieces.length() + ":" + pieces + "ee"; //$NON-NLS-1$ //$NON-NLS-2$
+		return metainfo.getBytes("ISO-8859-1"); //$NON-NLS-1$
+	}
+
+	/**
+	 * Answers every announce with an empty list of peers.
+	 */
+	private void startTracker() {
+		Thread thread = new Thread("Tracker") { //$NON-NLS-1$
+			public void run() {
+				while (true) {
+					try {
+						Socket socket = tracker.accept();
+						BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "ISO-8859-1")); //$NON-NLS-1$
+						String line = reader.readLine();
+						while (line != null && line.length() > 0) {
+							line = reader.readLine();
+						}
+						OutputStream out = socket.getOutputStream();
+						out.write("HTTP/1.0 200 OK\r\n\r\nd8:intervali1800e5:peers0:e".getBytes("ISO-8859-1")); //$NON-NLS-1$ //$NON-NLS-2$
+						out.close();
+						socket.close();
+					} catch (IOException e) {
+						return;
+					}
+				}
+			}
+		};
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public void testSeedToManyPeers() throws Exception {
+		String infoHash = torrent.getTorrentFile().getInfoHash();
+		SimulatedPeer[] peers = new SimulatedPeer[PEERS];
+		for (int i = 0; i < PEERS; i++) {
+			peers[i] = new SimulatedPeer(i, infoHash);
+			peers[i].start();
+		}
+		for (int i = 0; i < PEERS; i++) {
+			peers[i].join(TIMEOUT);
+		}
+
+		for (int i = 0; i < PEERS; i++) {
+			assertNull("Peer " + i + " failed: " + peers[i].failure, peers[i].failure); //$NON-NLS-1$ //$NON-NLS-2$
+			assertTrue("Peer " + i + " has not completed", peers[i].completed); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		assertEquals((long) PEERS * LENGTH, torrent.getUploaded());
+
+		// all peers are served by a single thread
+		Thread[] threads = new Thread[Thread.activeCount() * 2];
+		int count = Thread.enumerate(threads);
+		int engines = 0;
+		for (int i = 0; i < count; i++) {
+			if (threads[i].getName().startsWith("Peer Engine")) { //$NON-NLS-1$
+				engines++;
+			}
+		}
+		assertEquals(1, engines);
+	}
+
+	/**
+	 * A peer that downloads the whole torrent with blocking I/O and verifies
+	 * the received data.
+	 */
+	private class SimulatedPeer extends Thread {
+
+		private final int number;
+
+		private final String infoHash;
+
+		private final byte[] received = new byte[LENGTH];
+
+		private final boolean[] blocks = new boolean[(LENGTH + BLOCK_LENGTH - 1)
+				/ BLOCK_LENGTH];
+
+		volatile boolean completed = false;
+
+		volatile Throwable failure;
+
+		SimulatedPeer(int number, String infoHash) {
+			super("Simulated Peer " + number); //$NON-NLS-1$
+			this.number = number;
+			this.infoHash = infoHash;
+		}
+
+		public void run() {
+			Socket socket = null;
+			try {
+				socket = new Socket("127.0.0.1", TorrentServer.getPort()); //$NON-NLS-1$
+				socket.setSoTimeout((int) TIMEOUT);
+				DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+				DataInputStream in = new DataInputStream(socket.getInputStream());
+
+				out.write(19);
+				out.write("BitTorrent protocol".getBytes("ISO-8859-1")); //$NON-NLS-1$ //$NON-NLS-2$
+				out.write(new byte[8]);
+				out.write(infoHash.getBytes("ISO-8859-1")); //$NON-NLS-1$
+				String peerID = "-TS0001-" + (1000000000000L + number); //$NON-NLS-1$
+				out.write(peerID.substring(0, 20).getBytes("ISO-8859-1")); //$NON-NLS-1$
+				out.flush();
+
+				byte[] handshake = new byte[68];
+				in.readFully(handshake);
+				assertEquals(infoHash, new String(handshake, 28, 20, "ISO-8859-1")); //$NON-NLS-1$
+
+				int remaining = blocks.length;
+				while (remaining > 0) {
+					int length = in.readInt();
+					if (length == 0) {
+						continue;
+					}
+					byte id = in.readByte();
+					byte[] payload = new byte[length - 1];
+					in.readFully(payload);
+					switch (id) {
+					case 1:
+						// unchoked, request all blocks that are still missing
+						for (int i = 0; i < blocks.length; i++) {
+							if (!blocks[i]) {
+								out.writeInt(13);
+								out.write(6);
+								int offset = i * BLOCK_LENGTH;
+								out.writeInt(offset / PIECE_LENGTH);
+								out.writeInt(offset % PIECE_LENGTH);
+								out.writeInt(Math.min(BLOCK_LENGTH, LENGTH - offset));
+							}
+						}
+						out.flush();
+						break;
+					case 5:
+						// a seed has all pieces, the high bit being the first
+						assertEquals((byte) 0x80, (byte) (payload[0] & 0x80));
+						out.write(new byte[] {0, 0, 0, 1, 2});
+						out.flush();
+						break;
+					case 7:
+						int piece = (payload[0] & 0xff) << 24 | (payload[1] & 0xff) << 16 | (payload[2] & 0xff) << 8 | (payload[3] & 0xff);
+						int index = (payload[4] & 0xff) << 24 | (payload[5] & 0xff) << 16 | (payload[6] & 0xff) << 8 | (payload[7] & 0xff);
+						int offset = piece * PIECE_LENGTH + index;
+						System.arraycopy(payload, 8, received, offset, payload.length - 8);
+						if (!blocks[offset / BLOCK_LENGTH]) {
+							blocks[offset / BLOCK_LENGTH] = true;
+							remaining--;
+						}
+						break;
+					default:
+						break;
+					}
+				}
+				assertTrue(Arrays.equals(data, received));
+				// no longer interested, which frees the unchoke slot
+				out.write(new byte[] {0, 0, 0, 1, 3});
+				out.flush();
+				completed = true;
+			} catch (Throwable t) {
+				failure = t;
+			} finally {
+				if (socket != null) {
+					try {
+						socket.close();
+					} catch (IOException e) {
+						// ignored
+					}
+				}
+			}
+		}
+	}
+
+}
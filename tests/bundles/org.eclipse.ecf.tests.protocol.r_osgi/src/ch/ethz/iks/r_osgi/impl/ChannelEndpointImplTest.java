@@ -0,0 +1,133 @@
+/****************************************************************************
+ * Copyright (c) 2026 Composent, Inc. and others.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * Contributors:
+ *    Composent, Inc. - initial API and implementation
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *****************************************************************************/
+package ch.ethz.iks.r_osgi.impl;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import ch.ethz.iks.r_osgi.AsyncRemoteCallCallback;
+import ch.ethz.iks.r_osgi.URI;
+import ch.ethz.iks.r_osgi.messages.RemoteCallMessage;
+import ch.ethz.iks.r_osgi.messages.RemoteCallResultMessage;
+import ch.ethz.iks.r_osgi.messages.RemoteOSGiMessage;
+import ch.ethz.iks.r_osgi.messages.StreamRequestMessage;
+import ch.ethz.iks.r_osgi.messages.StreamResultMessage;
+
+/**
+ * Checks how a channel endpoint hands the messages it receives to the callers
+ * waiting for them.
+ */
+public class ChannelEndpointImplTest extends TestCase {
+
+	private static final long TIMEOUT = 10000;
+
+	private static final int CALLERS = 16;
+
+	private static final int CALLS_PER_CALLER = 200;
+
+	private TestNetworkChannel channel;
+
+	private ChannelEndpointImpl endpoint;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		channel = new TestNetworkChannel(URI.create("r-osgi://localhost:9999"), //$NON-NLS-1$
+				new TestNetworkChannel.Peer() {
+					public RemoteOSGiMessage reply(final RemoteOSGiMessage msg) {
+						if (msg instanceof RemoteCallMessage) {
+							// answer with the first argument, if there is one
+							final Object[] args = ((RemoteCallMessage) msg).getArgs();
+							final RemoteCallResultMessage result = new RemoteCallResultMessage();
+							result.setResult(args.length > 0 ? args[0] : "result"); //$NON-NLS-1$
+							return result;
+						} else if (msg instanceof StreamRequestMessage) {
+							final StreamResultMessage result = new StreamResultMessage();
+							result.setResult((short) 42);
+							return result;
+						}
+						return null;
+					}
+				});
+		endpoint = new ChannelEndpointImpl(channel);
+	}
+
+	protected void tearDown() throws Exception {
+		endpoint.dispose();
+		super.tearDown();
+	}
+
+	public void testAsyncCallbackMakesNestedCall() throws Exception {
+		final CountDownLatch done = new CountDownLatch(1);
+		final Object[] results = new Object[2];
+		endpoint.asyncRemoteCall("service", "call()", new Object[0], //$NON-NLS-1$ //$NON-NLS-2$
+				new AsyncRemoteCallCallback() {
+					public void remoteCallResult(final boolean success,
+							final Object result) {
+						results[0] = result;
+						try {
+							// the reply is received by the thread that
+							// received the result of the asynchronous call
+							results[1] = Integer.valueOf(endpoint
+									.readStream((short) 1));
+						} catch (final Throwable t) {
+							results[1] = t;
+						}
+						done.countDown();
+					}
+				});
+		assertTrue(done.await(TIMEOUT, TimeUnit.MILLISECONDS));
+		assertEquals("result", results[0]); //$NON-NLS-1$
+		assertEquals(Integer.valueOf(42), results[1]);
+	}
+
+	public void testSynchronousCall() throws Exception {
+		assertEquals(42, endpoint.readStream((short) 1));
+	}
+
+	public void testConcurrentCallersGetTheirOwnResults() throws Exception {
+		final List failures = new CopyOnWriteArrayList();
+		final Thread[] callers = new Thread[CALLERS];
+		for (int i = 0; i < callers.length; i++) {
+			final int caller = i;
+			callers[i] = new Thread("caller " + i) { //$NON-NLS-1$
+				public void run() {
+					for (int j = 0; j < CALLS_PER_CALLER; j++) {
+						final String arg = caller + "/" + j; //$NON-NLS-1$
+						try {
+							final Object result = endpoint.invokeMethod(
+									"r-osgi://localhost:9999#1", //$NON-NLS-1$
+									"call(Ljava/lang/String;)Ljava/lang/String;", //$NON-NLS-1$
+									new Object[] { arg });
+							if (!arg.equals(result)) {
+								failures.add(arg + " returned " + result); //$NON-NLS-1$
+							}
+						} catch (final Throwable t) {
+							failures.add(arg + " failed: " + t); //$NON-NLS-1$
+						}
+					}
+				}
+			};
+			callers[i].start();
+		}
+		for (int i = 0; i < callers.length; i++) {
+			callers[i].join(TIMEOUT);
+			assertFalse(callers[i].isAlive());
+		}
+		assertEquals("[]", failures.toString()); //$NON-NLS-1$
+		assertEquals(CALLERS * CALLS_PER_CALLER, channel.sent.size());
+	}
+}
@@ -0,0 +1,113 @@
+/****************************************************************************
+ * Copyright (c) 2026 Composent, Inc. and others.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * Contributors:
+ *    Composent, Inc. - initial API and implementation
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *****************************************************************************/
+package ch.ethz.iks.r_osgi.impl;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+/**
+ * Runs requests of several endpoints on the shared worker pool.
+ */
+public class EndpointWorkQueueTest extends TestCase {
+
+	private static final long TIMEOUT = 10000;
+
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	private EndpointWorkQueue slow;
+
+	private EndpointWorkQueue other;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		slow = new EndpointWorkQueue("slow", //$NON-NLS-1$
+				2 * EndpointWorkQueue.MAX_WORKER_THREADS);
+		other = new EndpointWorkQueue("other", //$NON-NLS-1$
+				EndpointWorkQueue.MAX_WORKER_THREADS);
+	}
+
+	protected void tearDown() throws Exception {
+		release.countDown();
+		slow.close();
+		other.close();
+		super.tearDown();
+	}
+
+	/**
+	 * a request that waits for the release, like a call of a slow service.
+	 */
+	private Runnable createBlockedRequest(final CountDownLatch started) {
+		return new Runnable() {
+			public void run() {
+				started.countDown();
+				try {
+					release.await();
+				} catch (final InterruptedException ie) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+	}
+
+	public void testBlockedRequestsDoNotStallOtherEndpoints() throws Exception {
+		// more blocked requests than the pool has threads
+		final int count = 2 * EndpointWorkQueue.MAX_WORKER_THREADS;
+		final CountDownLatch started = new CountDownLatch(count);
+		for (int i = 0; i < count; i++) {
+			assertTrue(slow.execute(createBlockedRequest(started), null));
+		}
+		assertTrue(started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+		assertEquals(count, slow.getActiveCount());
+
+		final CountDownLatch served = new CountDownLatch(1);
+		assertTrue(other.execute(new Runnable() {
+			public void run() {
+				served.countDown();
+			}
+		}, null));
+		assertTrue(served.await(TIMEOUT, TimeUnit.MILLISECONDS));
+	}
+
+	public void testOrderedRequestsRunInOrder() throws Exception {
+		final Object key = new Object();
+		final int count = 100;
+		final List order = new CopyOnWriteArrayList();
+		final CountDownLatch done = new CountDownLatch(count);
+		for (int i = 0; i < count; i++) {
+			final Integer n = Integer.valueOf(i);
+			assertTrue(other.execute(new Runnable() {
+				public void run() {
+					order.add(n);
+					done.countDown();
+				}
+			}, key));
+		}
+		assertTrue(done.await(TIMEOUT, TimeUnit.MILLISECONDS));
+		for (int i = 0; i < count; i++) {
+			assertEquals(Integer.valueOf(i), order.get(i));
+		}
+	}
+
+	public void testClosedQueueRejectsRequests() throws Exception {
+		other.close();
+		assertFalse(other.execute(new Runnable() {
+			public void run() {
+			}
+		}, null));
+		assertEquals(0, other.size());
+	}
+}
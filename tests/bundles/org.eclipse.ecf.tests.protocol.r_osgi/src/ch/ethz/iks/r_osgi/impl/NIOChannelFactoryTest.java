@@ -0,0 +1,361 @@
+/****************************************************************************
+ * Copyright (c) 2026 Composent, Inc. and others.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * Contributors:
+ *    Composent, Inc. - initial API and implementation
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *****************************************************************************/
+package ch.ethz.iks.r_osgi.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.net.Socket;
+import java.util.Dictionary;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.eclipse.ecf.core.util.OSGIObjectOutputStream;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.ServiceRegistration;
+
+import ch.ethz.iks.r_osgi.Remoting;
+import ch.ethz.iks.r_osgi.URI;
+import ch.ethz.iks.r_osgi.channels.ChannelEndpoint;
+import ch.ethz.iks.r_osgi.channels.NetworkChannel;
+import ch.ethz.iks.r_osgi.messages.RemoteCallMessage;
+import ch.ethz.iks.r_osgi.messages.RemoteCallResultMessage;
+import ch.ethz.iks.r_osgi.messages.RemoteOSGiMessage;
+import ch.ethz.iks.r_osgi.messages.StreamRequestMessage;
+import ch.ethz.iks.r_osgi.messages.StreamResultMessage;
+import ch.ethz.iks.util.SmartObjectOutputStream;
+
+/**
+ * Sends calls, nested callbacks and stream requests over an
+ * <code>r-osgi+nio</code> connection. The accepting side handles requests on
+ * the shared worker pool like a channel endpoint, the connecting side stands
+ * for a peer in another framework and handles them on threads of its own.
+ */
+public class NIOChannelFactoryTest extends TestCase {
+
+	private static final long TIMEOUT = 10000;
+
+	private static final String ECHO = "echo"; //$NON-NLS-1$
+
+	private static final String CALLBACK = "callback"; //$NON-NLS-1$
+
+	private static final String READ = "read"; //$NON-NLS-1$
+
+	/**
+	 * a channel endpoint that hands replies to the waiting caller and runs
+	 * requests with {@link NIOChannelFactoryTest#handle}.
+	 */
+	class TestEndpoint implements ChannelEndpoint {
+
+		private final AtomicInteger nextXID = new AtomicInteger(1);
+
+		private final Map callbacks = new ConcurrentHashMap();
+
+		/**
+		 * runs the requests on the shared worker pool, or on a thread per
+		 * request if <code>null</code>.
+		 */
+		private final EndpointWorkQueue workQueue;
+
+		volatile NetworkChannel channel;
+
+		volatile boolean closed;
+
+		TestEndpoint(final EndpointWorkQueue workQueue) {
+			this.workQueue = workQueue;
+		}
+
+		RemoteOSGiMessage call(final RemoteOSGiMessage msg) throws IOException,
+				InterruptedException {
+			final RemoteOSGiMessage[] result = new RemoteOSGiMessage[1];
+			final Integer xid = Integer.valueOf(nextXID.getAndIncrement());
+			msg.setXID(xid.intValue());
+			callbacks.put(xid, result);
+			channel.sendMessage(msg);
+			synchronized (result) {
+				final long end = System.currentTimeMillis() + TIMEOUT;
+				while (result[0] == null && System.currentTimeMillis() < end) {
+					result.wait(TIMEOUT);
+				}
+			}
+			assertNotNull("No reply to " + msg, result[0]); //$NON-NLS-1$
+			return result[0];
+		}
+
+		public void receivedMessage(final RemoteOSGiMessage msg) {
+			if (msg == null) {
+				closed = true;
+				return;
+			}
+			// both sides number their requests from 1
+			final boolean isReply = msg.getFuncID() == RemoteOSGiMessage.REMOTE_CALL_RESULT
+					|| msg.getFuncID() == RemoteOSGiMessage.STREAM_RESULT;
+			final RemoteOSGiMessage[] result = isReply ? (RemoteOSGiMessage[]) callbacks
+					.remove(Integer.valueOf(msg.getXID())) : null;
+			if (result != null) {
+				synchronized (result) {
+					result[0] = msg;
+					result.notifyAll();
+				}
+				return;
+			}
+			final Runnable r = new Runnable() {
+				public void run() {
+					try {
+						final RemoteOSGiMessage reply = handle(TestEndpoint.this,
+								msg);
+						reply.setXID(msg.getXID());
+						channel.sendMessage(reply);
+					} catch (final Throwable t) {
+						failure = t;
+					}
+				}
+			};
+			if (workQueue != null) {
+				workQueue.execute(r, null);
+			} else {
+				new Thread(r).start();
+			}
+		}
+
+		public Object invokeMethod(final String service,
+				final String methodSignature, final Object[] args) {
+			throw new UnsupportedOperationException();
+		}
+
+		public Dictionary getProperties(final String service) {
+			return null;
+		}
+
+		public Dictionary getPresentationProperties(final String service) {
+			return null;
+		}
+
+		public void trackRegistration(final String service,
+				final ServiceRegistration reg) {
+		}
+
+		public void untrackRegistration(final String service) {
+		}
+
+		public URI getRemoteAddress() {
+			return channel.getRemoteAddress();
+		}
+
+		public void dispose() {
+		}
+	}
+
+	private NIOChannelFactory factory;
+
+	private TestEndpoint client;
+
+	private volatile TestEndpoint server;
+
+	private volatile Throwable failure;
+
+	/**
+	 * holds up the replies of the client to nested requests until this many
+	 * have been received.
+	 */
+	private volatile CountDownLatch nestedRequests = new CountDownLatch(0);
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		final Bundle bundle = FrameworkUtil.getBundle(NIOChannelFactory.class);
+		if (bundle.getState() != Bundle.ACTIVE) {
+			bundle.start();
+		}
+		factory = new NIOChannelFactory();
+		factory.activate(new Remoting() {
+			public ChannelEndpoint getEndpoint(final String uri) {
+				return null;
+			}
+
+			public void createEndpoint(final NetworkChannel channel) {
+				final TestEndpoint endpoint = new TestEndpoint(
+						new EndpointWorkQueue(String.valueOf(channel
+								.getRemoteAddress()),
+								EndpointWorkQueue.MAX_WORKER_THREADS));
+				endpoint.channel = channel;
+				channel.bind(endpoint);
+				server = endpoint;
+			}
+		});
+		client = new TestEndpoint(null);
+		client.channel = factory.getConnection(client, URI
+				.create(NIOChannelFactory.PROTOCOL + "://localhost:" //$NON-NLS-1$
+						+ factory.getListeningPort(NIOChannelFactory.PROTOCOL)));
+		final long end = System.currentTimeMillis() + TIMEOUT;
+		while (server == null && System.currentTimeMillis() < end) {
+			Thread.sleep(20);
+		}
+		assertNotNull(server);
+	}
+
+	protected void tearDown() throws Exception {
+		if (client != null && client.channel != null) {
+			client.channel.close();
+		}
+		factory.deactivate(null);
+		assertNull(failure);
+		super.tearDown();
+	}
+
+	/**
+	 * answer a request: echo calls return their argument, callback calls make
+	 * a nested echo call back to the caller, read calls read a byte of a
+	 * stream of the caller, and stream reads return the byte 42.
+	 */
+	RemoteOSGiMessage handle(final TestEndpoint endpoint,
+			final RemoteOSGiMessage msg) throws Exception {
+		if (endpoint == client) {
+			final CountDownLatch nested = nestedRequests;
+			nested.countDown();
+			assertTrue(nested.await(TIMEOUT, TimeUnit.MILLISECONDS));
+		}
+		if (msg.getFuncID() == RemoteOSGiMessage.STREAM_REQUEST) {
+			final StreamResultMessage result = new StreamResultMessage();
+			result.setResult((short) 42);
+			return result;
+		}
+		final RemoteCallMessage call = (RemoteCallMessage) msg;
+		final Object arg = call.getArgs()[0];
+		final RemoteCallResultMessage result = new RemoteCallResultMessage();
+		if (ECHO.equals(call.getMethodSignature())) {
+			result.setResult(arg);
+		} else if (CALLBACK.equals(call.getMethodSignature())) {
+			result.setResult(((RemoteCallResultMessage) endpoint
+					.call(createCall(ECHO, arg))).getResult());
+		} else if (READ.equals(call.getMethodSignature())) {
+			final StreamRequestMessage read = new StreamRequestMessage();
+			read.setStreamID((short) ((Integer) arg).intValue());
+			read.setOp(StreamRequestMessage.READ);
+			result.setResult(Integer.valueOf(((StreamResultMessage) endpoint
+					.call(read)).getResult()));
+		}
+		return result;
+	}
+
+	private static RemoteCallMessage createCall(final String method,
+			final Object arg) {
+		final RemoteCallMessage call = new RemoteCallMessage();
+		call.setServiceID("test"); //$NON-NLS-1$
+		call.setMethodSignature(method);
+		call.setArgs(new Object[] { arg });
+		return call;
+	}
+
+	/**
+	 * make as many concurrent calls as the shared worker pool has threads, so
+	 * that all of them wait in request handlers while the replies to their
+	 * nested requests come in.
+	 */
+	private void callWithAllWorkersBusy(final String method) throws Exception {
+		final int count = EndpointWorkQueue.MAX_WORKER_THREADS;
+		nestedRequests = new CountDownLatch(count);
+		final Object[] results = new Object[count];
+		final Thread[] callers = new Thread[count];
+		for (int i = 0; i < count; i++) {
+			final int n = i;
+			callers[i] = new Thread() {
+				public void run() {
+					try {
+						results[n] = ((RemoteCallResultMessage) client
+								.call(createCall(method, Integer.valueOf(n))))
+								.getResult();
+					} catch (final Throwable t) {
+						failure = t;
+					}
+				}
+			};
+			callers[i].start();
+		}
+		for (int i = 0; i < count; i++) {
+			callers[i].join(2 * TIMEOUT);
+		}
+		assertNull(failure);
+		for (int i = 0; i < count; i++) {
+			assertEquals(method.equals(READ) ? Integer.valueOf(42) : Integer
+					.valueOf(i), results[i]);
+		}
+	}
+
+	public void testCall() throws Exception {
+		final RemoteCallResultMessage result = (RemoteCallResultMessage) client
+				.call(createCall(ECHO, "hello")); //$NON-NLS-1$
+		assertFalse(result.causedException());
+		assertEquals("hello", result.getResult()); //$NON-NLS-1$
+	}
+
+	public void testNestedCallbackWithAllWorkersBusy() throws Exception {
+		callWithAllWorkersBusy(CALLBACK);
+	}
+
+	public void testStreamReadWithAllWorkersBusy() throws Exception {
+		callWithAllWorkersBusy(READ);
+	}
+
+	public void testCloseIsReported() throws Exception {
+		client.channel.close();
+		final long end = System.currentTimeMillis() + TIMEOUT;
+		while (!server.closed && System.currentTimeMillis() < end) {
+			Thread.sleep(20);
+		}
+		assertTrue(server.closed);
+	}
+
+	public void testUndecodableFrameClosesChannel() throws Exception {
+		final TestEndpoint connected = server;
+		final Socket socket = new Socket("localhost", factory //$NON-NLS-1$
+				.getListeningPort(NIOChannelFactory.PROTOCOL));
+		try {
+			final long end = System.currentTimeMillis() + TIMEOUT;
+			while (server == connected && System.currentTimeMillis() < end) {
+				Thread.sleep(20);
+			}
+			final TestEndpoint endpoint = server;
+			assertNotSame(connected, endpoint);
+			// a message with an unknown function id
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			final ObjectOutputStream out = TCPChannelFactory.SERIALIZATION_DEFAULT
+					.equals(TCPChannelFactory.OSGI_SERIALIZATION) ? (ObjectOutputStream) new OSGIObjectOutputStream(
+					bytes, true)
+					: new SmartObjectOutputStream(bytes);
+			out.writeByte(1);
+			out.writeByte(99);
+			out.writeInt(1);
+			out.close();
+			final DataOutputStream frame = new DataOutputStream(socket
+					.getOutputStream());
+			frame.writeInt(bytes.size());
+			frame.write(bytes.toByteArray());
+			frame.flush();
+			while (!endpoint.closed && System.currentTimeMillis() < end) {
+				Thread.sleep(20);
+			}
+			assertTrue(endpoint.closed);
+			socket.setSoTimeout((int) TIMEOUT);
+			assertEquals(-1, socket.getInputStream().read());
+		} finally {
+			socket.close();
+		}
+	}
+}
@@ -0,0 +1,189 @@
+/****************************************************************************
+ * Copyright (c) 2026 Composent, Inc. and others.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * Contributors:
+ *    Composent, Inc. - initial API and implementation
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *****************************************************************************/
+package ch.ethz.iks.r_osgi.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+
+import junit.framework.TestCase;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import ch.ethz.iks.r_osgi.URI;
+import ch.ethz.iks.r_osgi.messages.DeliverServiceMessage;
+
+/**
+ * Computes the keys of cached proxy bundles and reuses the bundles for
+ * services of other peers or of a restarted peer.
+ */
+public class ProxyBundleCacheTest extends TestCase {
+
+	private static final URI SERVICE = URI.create("r-osgi://10.0.0.1:9278#12"); //$NON-NLS-1$
+
+	/**
+	 * the same service after the peer was restarted.
+	 */
+	private static final URI RESTARTED_SERVICE = URI
+			.create("r-osgi://10.0.0.2:9279#57"); //$NON-NLS-1$
+
+	private File dir;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		dir = File.createTempFile("proxies", null); //$NON-NLS-1$
+		dir.delete();
+	}
+
+	protected void tearDown() throws Exception {
+		final File[] files = dir.listFiles();
+		for (int i = 0; files != null && i < files.length; i++) {
+			files[i].delete();
+		}
+		dir.delete();
+		super.tearDown();
+	}
+
+	private static byte[] readAll(final InputStream in) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final byte[] chunk = new byte[8192];
+		int len;
+		while ((len = in.read(chunk)) > -1) {
+			out.write(chunk, 0, len);
+		}
+		return out.toByteArray();
+	}
+
+	private DeliverServiceMessage createMessage() throws IOException {
+		final String name = Runnable.class.getName().replace('.', '/')
+				+ ".class"; //$NON-NLS-1$
+		final InputStream in = ClassLoader.getSystemResourceAsStream(name);
+		final Map injections = new HashMap();
+		try {
+			injections.put(name, readAll(in));
+		} finally {
+			in.close();
+		}
+		final DeliverServiceMessage deliv = new DeliverServiceMessage();
+		deliv.setInterfaceNames(new String[] { Runnable.class.getName() });
+		deliv.setInjections(injections);
+		deliv.setImports(""); //$NON-NLS-1$
+		deliv.setExports(""); //$NON-NLS-1$
+		return deliv;
+	}
+
+	/**
+	 * get the symbolic name and the string constants of the proxy classes.
+	 */
+	private static Set getNameAndConstants(final InputStream bundle)
+			throws IOException {
+		final Set result = new HashSet();
+		final JarInputStream in = new JarInputStream(bundle);
+		result.add(in.getManifest().getMainAttributes().getValue(
+				"Bundle-SymbolicName")); //$NON-NLS-1$
+		JarEntry entry;
+		while ((entry = in.getNextJarEntry()) != null) {
+			if (!entry.getName().startsWith("proxy/")) { //$NON-NLS-1$
+				continue;
+			}
+			new ClassReader(readAll(in)).accept(new ClassVisitor(
+					Opcodes.ASM5) {
+				public MethodVisitor visitMethod(final int access,
+						final String name, final String desc,
+						final String signature, final String[] exceptions) {
+					return new MethodVisitor(Opcodes.ASM5) {
+						public void visitLdcInsn(final Object cst) {
+							result.add(cst);
+						}
+					};
+				}
+			}, 0);
+		}
+		return result;
+	}
+
+	public void testKeyOfEqualMessages() throws Exception {
+		final String key = ProxyBundleCache.getKey(createMessage());
+		assertEquals(64, key.length());
+		assertEquals(key, ProxyBundleCache.getKey(createMessage()));
+	}
+
+	public void testKeyDependsOnMessage() throws Exception {
+		final String key = ProxyBundleCache.getKey(createMessage());
+
+		DeliverServiceMessage deliv = createMessage();
+		deliv.setImports("org.example"); //$NON-NLS-1$
+		assertFalse(key.equals(ProxyBundleCache.getKey(deliv)));
+
+		deliv = createMessage();
+		deliv.setExports("org.example"); //$NON-NLS-1$
+		assertFalse(key.equals(ProxyBundleCache.getKey(deliv)));
+
+		deliv = createMessage();
+		deliv.getInjections().put("org/example/Type.class", new byte[0]); //$NON-NLS-1$
+		assertFalse(key.equals(ProxyBundleCache.getKey(deliv)));
+
+		deliv = createMessage();
+		final byte[] interfaceClass = deliv.getInterfaceClass();
+		interfaceClass[interfaceClass.length - 1]++;
+		assertFalse(key.equals(ProxyBundleCache.getKey(deliv)));
+	}
+
+	public void testKeyFieldsAreSeparated() throws Exception {
+		final DeliverServiceMessage imports = createMessage();
+		imports.setImports("org.example"); //$NON-NLS-1$
+		final DeliverServiceMessage exports = createMessage();
+		exports.setExports("org.example"); //$NON-NLS-1$
+		assertFalse(ProxyBundleCache.getKey(imports).equals(
+				ProxyBundleCache.getKey(exports)));
+
+		final DeliverServiceMessage nullExports = createMessage();
+		nullExports.setExports(null);
+		assertFalse(ProxyBundleCache.getKey(createMessage()).equals(
+				ProxyBundleCache.getKey(nullExports)));
+	}
+
+	public void testHitAfterPeerRestart() throws Exception {
+		ProxyBundleCache cache = new ProxyBundleCache(dir, 1024 * 1024);
+		Set constants = getNameAndConstants(cache.getProxyBundle(SERVICE,
+				createMessage()));
+		assertTrue(constants.contains(ProxyGenerator.getSymbolicName(SERVICE)));
+		assertTrue(constants.contains(SERVICE.toString()));
+		assertFalse(constants.contains(ProxyBundleCache.PLACEHOLDER.toString()));
+		assertEquals(Long.valueOf(1), cache.getStatistics().get(
+				"regenerations")); //$NON-NLS-1$
+
+		// R-OSGi is restarted as well
+		cache = new ProxyBundleCache(dir, 1024 * 1024);
+		constants = getNameAndConstants(cache.getProxyBundle(
+				RESTARTED_SERVICE, createMessage()));
+		assertEquals(Long.valueOf(1), cache.getStatistics().get("hits")); //$NON-NLS-1$
+		assertEquals(Long.valueOf(0), cache.getStatistics().get(
+				"regenerations")); //$NON-NLS-1$
+		assertEquals(getNameAndConstants(new ProxyGenerator()
+				.generateProxyBundle(RESTARTED_SERVICE, createMessage())),
+				constants);
+		assertFalse(constants.contains(SERVICE.toString()));
+		assertFalse(constants.contains(ProxyBundleCache.PLACEHOLDER.toString()));
+	}
+}
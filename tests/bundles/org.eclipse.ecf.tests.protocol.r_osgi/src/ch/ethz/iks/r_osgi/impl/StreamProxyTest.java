@@ -0,0 +1,270 @@
+/****************************************************************************
+ * Copyright (c) 2026 Composent, Inc. and others.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * Contributors:
+ *    Composent, Inc. - initial API and implementation
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *****************************************************************************/
+package ch.ethz.iks.r_osgi.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import ch.ethz.iks.r_osgi.URI;
+import ch.ethz.iks.r_osgi.messages.RemoteOSGiMessage;
+import ch.ethz.iks.r_osgi.messages.StreamRequestMessage;
+import ch.ethz.iks.r_osgi.messages.StreamResultMessage;
+import ch.ethz.iks.r_osgi.streams.InputStreamProxy;
+import ch.ethz.iks.r_osgi.streams.OutputStreamProxy;
+
+/**
+ * Reads and writes remote streams through windowed stream proxies.
+ */
+public class StreamProxyTest extends TestCase {
+
+	private static final long TIMEOUT = 10000;
+
+	private static final int WINDOW = 4096;
+
+	private static final int CHUNK_SIZE = 1024;
+
+	private static final short STREAM_ID = 1;
+
+	private final byte[] data = new byte[10 * CHUNK_SIZE + 17];
+
+	/**
+	 * the remote input stream.
+	 */
+	private InputStream source;
+
+	/**
+	 * the remote output stream.
+	 */
+	private final ByteArrayOutputStream sink = new ByteArrayOutputStream();
+
+	/**
+	 * the number of stream requests answered, the others are held.
+	 */
+	private volatile int answerLimit = Integer.MAX_VALUE;
+
+	private final AtomicInteger requests = new AtomicInteger();
+
+	private final List held = new CopyOnWriteArrayList();
+
+	private TestNetworkChannel channel;
+
+	private ChannelEndpointImpl endpoint;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) (i * 31);
+		}
+		source = new ByteArrayInputStream(data);
+		channel = new TestNetworkChannel(URI.create("r-osgi://localhost:9999"), //$NON-NLS-1$
+				new TestNetworkChannel.Peer() {
+					public RemoteOSGiMessage reply(final RemoteOSGiMessage msg)
+							throws IOException {
+						if (!(msg instanceof StreamRequestMessage)) {
+							return null;
+						}
+						if (requests.incrementAndGet() > answerLimit) {
+							held.add(msg);
+							return null;
+						}
+						return serve((StreamRequestMessage) msg);
+					}
+				});
+		endpoint = new ChannelEndpointImpl(channel);
+	}
+
+	protected void tearDown() throws Exception {
+		endpoint.dispose();
+		super.tearDown();
+	}
+
+	/**
+	 * handle a stream request like the peer holding the stream.
+	 */
+	StreamResultMessage serve(final StreamRequestMessage req)
+			throws IOException {
+		final StreamResultMessage m = new StreamResultMessage();
+		switch (req.getOp()) {
+		case StreamRequestMessage.READ_ARRAY: {
+			final byte[] b = new byte[req.getLenOrVal()];
+			final int len = source.read(b, 0, b.length);
+			m.setResult(StreamResultMessage.RESULT_ARRAY);
+			m.setLen(len);
+			if (len > 0) {
+				m.setData(b);
+			}
+			return m;
+		}
+		case StreamRequestMessage.WRITE_ARRAY:
+			sink.write(req.getData());
+			m.setResult(StreamResultMessage.RESULT_WRITE_OK);
+			return m;
+		default:
+			throw new IOException("Unexpected stream request " + req); //$NON-NLS-1$
+		}
+	}
+
+	private InputStreamProxy createInputStreamProxy() {
+		return new InputStreamProxy(STREAM_ID, endpoint, WINDOW, CHUNK_SIZE);
+	}
+
+	private OutputStreamProxy createOutputStreamProxy() {
+		return new OutputStreamProxy(STREAM_ID, endpoint, WINDOW, CHUNK_SIZE);
+	}
+
+	/**
+	 * wait until the results of all requests have arrived or were cancelled.
+	 */
+	private void assertNoCallbacks() throws InterruptedException {
+		final long timeout = System.currentTimeMillis() + TIMEOUT;
+		while (!endpoint.callbacks.isEmpty()
+				&& System.currentTimeMillis() < timeout) {
+			Thread.sleep(10);
+		}
+		assertTrue(endpoint.callbacks.isEmpty());
+	}
+
+	public void testWindowedRead() throws Exception {
+		final InputStream in = createInputStreamProxy();
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assertEquals(data[0] & 0xFF, in.read());
+		out.write(data[0]);
+		final byte[] b = new byte[700];
+		int n;
+		while ((n = in.read(b, 0, b.length)) != -1) {
+			out.write(b, 0, n);
+		}
+		assertTrue(Arrays.equals(data, out.toByteArray()));
+		assertEquals(-1, in.read());
+		in.close();
+		assertNoCallbacks();
+	}
+
+	public void testWindowedWrite() throws Exception {
+		final OutputStream out = createOutputStreamProxy();
+		out.write(data[0]);
+		int off = 1;
+		while (off < data.length) {
+			final int n = Math.min(700, data.length - off);
+			out.write(data, off, n);
+			off += n;
+		}
+		out.close();
+		assertTrue(Arrays.equals(data, sink.toByteArray()));
+		assertNoCallbacks();
+		try {
+			out.write(0);
+			fail();
+		} catch (final IOException expected) {
+		}
+	}
+
+	public void testEarlyClose() throws Exception {
+		answerLimit = 1;
+		final InputStream in = createInputStreamProxy();
+		assertEquals(data[0] & 0xFF, in.read());
+		assertEquals(WINDOW / CHUNK_SIZE - 1, held.size());
+		assertEquals(held.size(), endpoint.callbacks.size());
+		in.close();
+		assertTrue(endpoint.callbacks.isEmpty());
+		assertEquals(-1, in.read());
+		// results arriving after the close are dropped
+		for (int i = 0; i < held.size(); i++) {
+			final StreamRequestMessage req = (StreamRequestMessage) held.get(i);
+			final StreamResultMessage result = serve(req);
+			result.setXID(req.getXID());
+			channel.deliver(result);
+		}
+		assertNoCallbacks();
+	}
+
+	public void testDroppedProxy() throws Exception {
+		answerLimit = 1;
+		InputStream in = createInputStreamProxy();
+		assertEquals(data[0] & 0xFF, in.read());
+		assertFalse(endpoint.callbacks.isEmpty());
+		in = null;
+		final long timeout = System.currentTimeMillis() + TIMEOUT;
+		while (!endpoint.callbacks.isEmpty()
+				&& System.currentTimeMillis() < timeout) {
+			System.gc();
+			System.runFinalization();
+			Thread.sleep(10);
+		}
+		assertTrue(endpoint.callbacks.isEmpty());
+	}
+
+	public void testChannelDropsWithReadsInFlight() throws Exception {
+		answerLimit = 1;
+		final InputStream in = createInputStreamProxy();
+		assertEquals(data[0] & 0xFF, in.read());
+		endpoint.dispose();
+		assertTrue(endpoint.callbacks.isEmpty());
+		// the chunk already received can still be read
+		final byte[] b = new byte[CHUNK_SIZE];
+		assertEquals(CHUNK_SIZE - 1, in.read(b, 0, b.length));
+		try {
+			in.read(b, 0, b.length);
+			fail();
+		} catch (final IOException expected) {
+		}
+		try {
+			in.read();
+			fail();
+		} catch (final IOException expected) {
+		}
+	}
+
+	public void testChannelDropsWithWritesInFlight() throws Exception {
+		answerLimit = 0;
+		final OutputStream out = createOutputStreamProxy();
+		final Throwable[] failure = new Throwable[1];
+		final Thread writer = new Thread("writer") { //$NON-NLS-1$
+			public void run() {
+				try {
+					// more than a window, waits for acknowledgements
+					out.write(data, 0, data.length);
+					out.flush();
+				} catch (final Throwable t) {
+					failure[0] = t;
+				}
+			}
+		};
+		writer.start();
+		final long timeout = System.currentTimeMillis() + TIMEOUT;
+		while (held.size() < WINDOW / CHUNK_SIZE
+				&& System.currentTimeMillis() < timeout) {
+			Thread.sleep(10);
+		}
+		assertEquals(WINDOW / CHUNK_SIZE, held.size());
+		endpoint.dispose();
+		writer.join(TIMEOUT);
+		assertFalse(writer.isAlive());
+		assertTrue(failure[0] instanceof IOException);
+		assertTrue(endpoint.callbacks.isEmpty());
+		try {
+			out.close();
+			fail();
+		} catch (final IOException expected) {
+		}
+	}
+}
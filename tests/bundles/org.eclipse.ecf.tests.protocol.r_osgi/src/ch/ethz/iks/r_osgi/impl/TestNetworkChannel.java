@@ -0,0 +1,129 @@
+/****************************************************************************
+ * Copyright (c) 2026 Composent, Inc. and others.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * Contributors:
+ *    Composent, Inc. - initial API and implementation
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *****************************************************************************/
+package ch.ethz.iks.r_osgi.impl;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+import ch.ethz.iks.r_osgi.URI;
+import ch.ethz.iks.r_osgi.channels.ChannelEndpoint;
+import ch.ethz.iks.r_osgi.channels.NetworkChannel;
+import ch.ethz.iks.r_osgi.messages.RemoteOSGiMessage;
+
+/**
+ * A network channel to a simulated peer. The messages sent through it are
+ * answered by a {@link Peer}, and the answers are handed to the endpoint on a
+ * single receiver thread, like the reader of a real channel.
+ */
+class TestNetworkChannel implements NetworkChannel {
+
+	/**
+	 * the simulated peer.
+	 */
+	interface Peer {
+
+		/**
+		 * @return the reply to the message, or <code>null</code> if there is
+		 *         none or it is delivered later with
+		 *         {@link TestNetworkChannel#deliver(RemoteOSGiMessage)}.
+		 */
+		RemoteOSGiMessage reply(RemoteOSGiMessage msg) throws Exception;
+	}
+
+	final List sent = new CopyOnWriteArrayList();
+
+	private final URI remoteAddress;
+
+	private final Peer peer;
+
+	private final ExecutorService receiver = Executors
+			.newSingleThreadExecutor(new ThreadFactory() {
+				public Thread newThread(final Runnable r) {
+					final Thread t = new Thread(r, "TestNetworkChannel receiver"); //$NON-NLS-1$
+					t.setDaemon(true);
+					return t;
+				}
+			});
+
+	private volatile ChannelEndpoint endpoint;
+
+	private volatile boolean closed;
+
+	TestNetworkChannel(final URI remoteAddress, final Peer peer) {
+		this.remoteAddress = remoteAddress;
+		this.peer = peer;
+	}
+
+	public String getProtocol() {
+		return remoteAddress.getScheme();
+	}
+
+	public URI getRemoteAddress() {
+		return remoteAddress;
+	}
+
+	public URI getLocalAddress() {
+		return URI.create(getProtocol() + "://localhost:1"); //$NON-NLS-1$
+	}
+
+	public void bind(final ChannelEndpoint e) {
+		endpoint = e;
+	}
+
+	public void close() throws IOException {
+		closed = true;
+		receiver.shutdown();
+	}
+
+	boolean isClosed() {
+		return closed;
+	}
+
+	public void sendMessage(final RemoteOSGiMessage message)
+			throws IOException {
+		if (closed) {
+			throw new IOException("Channel is closed"); //$NON-NLS-1$
+		}
+		sent.add(message);
+		final RemoteOSGiMessage reply;
+		try {
+			reply = peer.reply(message);
+		} catch (final Exception e) {
+			throw new IOException(e.toString());
+		}
+		if (reply != null) {
+			reply.setXID(message.getXID());
+			deliver(reply);
+		}
+	}
+
+	/**
+	 * hand a message to the endpoint on the receiver thread.
+	 */
+	void deliver(final RemoteOSGiMessage msg) {
+		try {
+			receiver.execute(new Runnable() {
+				public void run() {
+					endpoint.receivedMessage(msg);
+				}
+			});
+		} catch (final RejectedExecutionException ree) {
+			// closed
+		}
+	}
+}
@@ -12,7 +12,15 @@
  *****************************************************************************/
 package org.eclipse.ecf.tests.provider.datashare.nio;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
 
 import junit.framework.TestCase;
 
@@ -62,6 +70,33 @@ public class NIODatashareTest extends TestCase {
 		}
 	}
 
+	private static byte[] createData(int length) {
+		byte[] data = new byte[length];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) (i % 128);
+		}
+		return data;
+	}
+
+	/**
+	 * Serializes an object the way a channel writes the id of its container
+	 * and each message.
+	 */
+	private static byte[] serialize(Object object) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(baos);
+		oos.writeObject(object);
+		oos.flush();
+		return baos.toByteArray();
+	}
+
+	private static byte[] concat(byte[] one, byte[] two) {
+		byte[] bytes = new byte[one.length + two.length];
+		System.arraycopy(one, 0, bytes, 0, one.length);
+		System.arraycopy(two, 0, bytes, one.length, two.length);
+		return bytes;
+	}
+
 	private static ConcreteNIOChannel createChannel(
 			IChannelContainerAdapter channelContainer) throws ECFException {
 		return createChannel(channelContainer, null);
@@ -111,6 +146,41 @@ public class NIODatashareTest extends TestCase {
 		}
 	}
 
+	/**
+	 * Creates a channel that collects the data of the messages it receives and
+	 * notifies the test once it has received the specified number of them.
+	 */
+	private ConcreteNIOChannel createCollectingChannel(
+			IChannelContainerAdapter channelContainer, final List received,
+			final int count) throws ECFException {
+		return createChannel(channelContainer, new IChannelListener() {
+			public void handleChannelEvent(IChannelEvent event) {
+				if (event instanceof IChannelMessageEvent) {
+					synchronized (waitObject) {
+						received.add(((IChannelMessageEvent) event).getData());
+						if (received.size() == count) {
+							waitObject.notify();
+						}
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Connects a plain socket to the channel and handshakes with it as the
+	 * container of channel B would, so that the test controls how the data
+	 * that follows is split up.
+	 */
+	private Socket connect(ConcreteNIOChannel channel) throws IOException {
+		Socket socket = new Socket(LOCALHOST, channel.getPort());
+		socket.setSoTimeout(10000);
+		socket.setTcpNoDelay(true);
+		socket.getOutputStream().write(serialize(containerB.getConnectedID()));
+		socket.getOutputStream().flush();
+		return socket;
+	}
+
 	private void send(IChannel channel, ID receiver, byte[] data) {
 		try {
 			channel.sendMessage(receiver, data);
@@ -285,4 +355,149 @@ public class NIODatashareTest extends TestCase {
 		assertEquals(expected1, actual[0]);
 		assertEquals(expected2, actual[1]);
 	}
+
+	public void testOneWaySendLargerThanReadBuffer() throws Exception {
+		List received = new ArrayList();
+
+		channelA = createChannel(channelContainerA);
+
+		int targetPort = channelA.getPort();
+
+		channelB = createCollectingChannel(channelContainerB, received, 1);
+
+		// several times the size of the initial read buffer
+		byte[] expected = createData(100000);
+
+		synchronized (waitObject) {
+			channelA.sendMessage(containerB.getConnectedID(), expected);
+
+			channelContainerB.enqueue(new InetSocketAddress(LOCALHOST,
+					targetPort));
+
+			waitForCompletion(10000);
+		}
+
+		assertEquals(1, received.size());
+		assertEquals(expected, (byte[]) received.get(0));
+	}
+
+	public void testMessageSplitAcrossReads() throws Exception {
+		List received = new ArrayList();
+
+		channelA = createCollectingChannel(channelContainerA, received, 1);
+
+		byte[] expected = createData(20000);
+		byte[] frame = serialize(expected);
+
+		Socket socket = connect(channelA);
+		try {
+			OutputStream out = socket.getOutputStream();
+			synchronized (waitObject) {
+				// the header is split as well as the data
+				int[] splits = { 3, 30, 10000 };
+				int position = 0;
+				for (int i = 0; i < splits.length; i++) {
+					out.write(frame, position, splits[i] - position);
+					out.flush();
+					position = splits[i];
+					Thread.sleep(200);
+					assertEquals(0, received.size());
+				}
+				out.write(frame, position, frame.length - position);
+				out.flush();
+
+				waitForCompletion(10000);
+			}
+		} finally {
+			socket.close();
+		}
+
+		assertEquals(1, received.size());
+		assertEquals(expected, (byte[]) received.get(0));
+	}
+
+	public void testSeveralMessagesInOneRead() throws Exception {
+		List received = new ArrayList();
+
+		channelA = createCollectingChannel(channelContainerA, received, 3);
+
+		byte[][] expected = { { 1, 2, 3 }, createData(1000), { 4 } };
+		byte[] frames = new byte[0];
+		for (int i = 0; i < expected.length; i++) {
+			frames = concat(frames, serialize(expected[i]));
+		}
+
+		Socket socket = connect(channelA);
+		try {
+			synchronized (waitObject) {
+				socket.getOutputStream().write(frames);
+				socket.getOutputStream().flush();
+
+				waitForCompletion(10000);
+			}
+		} finally {
+			socket.close();
+		}
+
+		assertEquals(expected.length, received.size());
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], (byte[]) received.get(i));
+		}
+	}
+
+	public void testMessageTooLargeClosesConnection() throws Exception {
+		List received = new ArrayList();
+
+		channelA = createCollectingChannel(channelContainerA, received, 1);
+
+		// the header of a message that is larger than the channel accepts
+		byte[] header = serialize(new byte[0]);
+		int length = Integer.MAX_VALUE / 2;
+		for (int i = 0; i < 4; i++) {
+			header[header.length - 1 - i] = (byte) (length >>> (8 * i));
+		}
+
+		Socket socket = connect(channelA);
+		try {
+			socket.getOutputStream().write(header);
+			socket.getOutputStream().flush();
+
+			// the channel answers the handshake and then closes the connection
+			InputStream in = socket.getInputStream();
+			byte[] buffer = new byte[1024];
+			while (in.read(buffer) != -1) {
+				// skip the ids of the channel and its container
+			}
+		} finally {
+			socket.close();
+		}
+
+		assertEquals(0, received.size());
+	}
+
+	public void testDataWithoutFrameClosesConnection() throws Exception {
+		List received = new ArrayList();
+
+		channelA = createCollectingChannel(channelContainerA, received, 1);
+
+		Socket socket = connect(channelA);
+		// fail rather than hang if the connection stays open
+		socket.setSoTimeout(10000);
+		try {
+			// not a serialized byte[]
+			socket.getOutputStream().write(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+			socket.getOutputStream().flush();
+
+			// the channel answers the handshake and then closes the connection
+			InputStream in = socket.getInputStream();
+			byte[] buffer = new byte[1024];
+			while (in.read(buffer) != -1) {
+				// skip the ids of the channel and its container
+			}
+		} finally {
+			socket.close();
+		}
+
+		assertEquals(0, received.size());
+	}
 }
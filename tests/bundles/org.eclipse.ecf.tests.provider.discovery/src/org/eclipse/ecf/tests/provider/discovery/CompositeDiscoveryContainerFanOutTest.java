@@ -0,0 +1,174 @@
+/****************************************************************************
+ * Copyright (c) 2026 Composent, Inc. and others.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * Contributors:
+ *   Composent, Inc. - initial API and implementation
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *****************************************************************************/
+package org.eclipse.ecf.tests.provider.discovery;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.eclipse.ecf.core.ContainerConnectException;
+import org.eclipse.ecf.core.identity.ID;
+import org.eclipse.ecf.core.identity.IDFactory;
+import org.eclipse.ecf.core.security.IConnectContext;
+import org.eclipse.ecf.discovery.AbstractDiscoveryContainerAdapter;
+import org.eclipse.ecf.discovery.DiscoveryContainerConfig;
+import org.eclipse.ecf.discovery.IDiscoveryLocator;
+import org.eclipse.ecf.discovery.IServiceInfo;
+import org.eclipse.ecf.discovery.identity.IServiceID;
+import org.eclipse.ecf.discovery.identity.IServiceTypeID;
+import org.eclipse.ecf.provider.discovery.CompositeDiscoveryContainer;
+import org.eclipse.ecf.provider.discovery.IServiceInfoCallback;
+import org.eclipse.ecf.provider.discovery.LocatorLatencyHistogram;
+
+public class CompositeDiscoveryContainerFanOutTest extends TestCase {
+
+	/**
+	 * How long a locator waits to be released before it gives up. A test
+	 * only runs into it if the composite does not behave as expected.
+	 */
+	static final long TIMEOUT = 10000;
+
+	/**
+	 * Locator that returns one service once it is released.
+	 */
+	static class BlockingLocator extends AbstractDiscoveryContainerAdapter {
+
+		private final CountDownLatch arrived;
+		private final CountDownLatch release;
+		volatile boolean released;
+
+		BlockingLocator(String name, CountDownLatch arrived, CountDownLatch release) {
+			super("ecf.namespace.test", new DiscoveryContainerConfig(IDFactory.getDefault().createStringID(name)));
+			this.arrived = arrived;
+			this.release = release;
+		}
+
+		private void await() {
+			arrived.countDown();
+			try {
+				released = release.await(TIMEOUT, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		public IServiceInfo[] getServices() {
+			await();
+			return new IServiceInfo[] {new CompositeDiscoveryContainer.CompositeServiceInfoWrapper(null, getID())};
+		}
+
+		public IServiceInfo[] getServices(IServiceTypeID type) {
+			return getServices();
+		}
+
+		public IServiceInfo getServiceInfo(IServiceID aServiceID) {
+			return getServices()[0];
+		}
+
+		public IServiceTypeID[] getServiceTypes() {
+			await();
+			return new IServiceTypeID[0];
+		}
+
+		public void registerService(IServiceInfo serviceInfo) {
+		}
+
+		public void unregisterService(IServiceInfo serviceInfo) {
+		}
+
+		public String getContainerName() {
+			return "ecf.discovery.test.blocking";
+		}
+
+		public void connect(ID targetID, IConnectContext connectContext) throws ContainerConnectException {
+		}
+
+		public void disconnect() {
+		}
+
+		public ID getConnectedID() {
+			return null;
+		}
+	}
+
+	private final CountDownLatch release = new CountDownLatch(1);
+	private CompositeDiscoveryContainer composite;
+
+	protected void tearDown() throws Exception {
+		release.countDown();
+		if (composite != null) {
+			composite.dispose();
+		}
+		super.tearDown();
+	}
+
+	private CompositeDiscoveryContainer createComposite(IDiscoveryLocator[] locators) {
+		final Collection containers = new ArrayList();
+		for (int i = 0; i < locators.length; i++) {
+			containers.add(locators[i]);
+		}
+		return new CompositeDiscoveryContainer(containers);
+	}
+
+	private long getTimeoutCount() {
+		final LocatorLatencyHistogram[] histograms = composite.getLatencyHistograms();
+		long timeouts = 0;
+		for (int i = 0; i < histograms.length; i++) {
+			timeouts += histograms[i].getTimeoutCount();
+		}
+		return timeouts;
+	}
+
+	public void testDeadlineReturnsPartialResults() {
+		final BlockingLocator fast = new BlockingLocator("fast", new CountDownLatch(1), new CountDownLatch(0));
+		final BlockingLocator slow = new BlockingLocator("slow", new CountDownLatch(1), release);
+		composite = createComposite(new IDiscoveryLocator[] {fast, slow});
+		final List found = new ArrayList();
+		final IServiceInfo[] services = composite.getServices(200, new IServiceInfoCallback() {
+			public void servicesFound(IDiscoveryLocator locator, IServiceInfo[] infos) {
+				found.add(locator);
+			}
+		});
+		// the slow locator would only have returned after giving up on its release
+		assertEquals(1, services.length);
+		assertEquals(1, found.size());
+		assertSame(fast, found.get(0));
+		assertEquals(2, composite.getLatencyHistograms().length);
+		assertEquals(1, getTimeoutCount());
+	}
+
+	public void testDeadlineWithSingleLocator() {
+		final BlockingLocator slow = new BlockingLocator("slow", new CountDownLatch(1), release);
+		composite = createComposite(new IDiscoveryLocator[] {slow});
+		final IServiceInfo[] services = composite.getServices(200, null);
+		assertEquals(0, services.length);
+		assertEquals(1, getTimeoutCount());
+	}
+
+	public void testNoDeadlineWaitsForAllInParallel() {
+		// each locator only returns once both have been called
+		final CountDownLatch both = new CountDownLatch(2);
+		final BlockingLocator first = new BlockingLocator("first", both, both);
+		final BlockingLocator second = new BlockingLocator("second", both, both);
+		composite = createComposite(new IDiscoveryLocator[] {first, second});
+		final IServiceInfo[] services = composite.getServices(0, null);
+		assertEquals(2, services.length);
+		assertTrue(first.released);
+		assertTrue(second.released);
+		assertEquals(0, getTimeoutCount());
+	}
+}
@@ -0,0 +1,145 @@
+/****************************************************************************
+ * Copyright (c) 2026 Composent, Inc. and others.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * Contributors:
+ *    Composent, Inc. - initial API and implementation
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *****************************************************************************/
+package org.eclipse.ecf.tests.remoteservice.generic;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.ecf.provider.remoteservice.generic.PooledRequestExecutor;
+import org.eclipse.equinox.concurrent.future.IFuture;
+import org.eclipse.equinox.concurrent.future.IProgressRunnable;
+
+/**
+ * Holds back requests that exceed their key's limit, and answers the held
+ * requests that are dropped when the executor is shut down.
+ */
+public class PooledRequestExecutorTest extends TestCase {
+
+	private static final long TIMEOUT = 10000;
+
+	private static final String KEY = "registration";
+
+	/**
+	 * Waits for the release, like a call of a slow service.
+	 */
+	static class BlockedRunnable implements IProgressRunnable {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+
+		public Object run(IProgressMonitor monitor) throws Exception {
+			started.countDown();
+			release.await(TIMEOUT, TimeUnit.MILLISECONDS);
+			return null;
+		}
+	}
+
+	static class RejectableRunnable implements IProgressRunnable, PooledRequestExecutor.IRejectable {
+		boolean ran;
+		RejectedExecutionException rejected;
+
+		public synchronized Object run(IProgressMonitor monitor) throws Exception {
+			ran = true;
+			return null;
+		}
+
+		public synchronized void rejected(RejectedExecutionException e) {
+			rejected = e;
+		}
+	}
+
+	PooledRequestExecutor executor;
+	BlockedRunnable blocked;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		blocked = new BlockedRunnable();
+	}
+
+	protected void tearDown() throws Exception {
+		blocked.release.countDown();
+		if (executor != null)
+			executor.shutdown();
+		super.tearDown();
+	}
+
+	private IFuture execute(IProgressRunnable runnable) {
+		return executor.execute(runnable, new NullProgressMonitor(), KEY, 1);
+	}
+
+	public void testHeldRequestsAreBoundedWithCallerRuns() throws Exception {
+		executor = new PooledRequestExecutor("test", 2, 2, PooledRequestExecutor.REJECT_CALLER_RUNS);
+		final IFuture running = execute(blocked);
+		assertTrue(blocked.started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+		final RejectableRunnable[] held = new RejectableRunnable[2];
+		final IFuture[] futures = new IFuture[held.length];
+		for (int i = 0; i < held.length; i++) {
+			held[i] = new RejectableRunnable();
+			futures[i] = execute(held[i]);
+		}
+		assertEquals(held.length, executor.getQueueSize());
+		try {
+			// running it here would exceed the key's limit
+			execute(new RejectableRunnable());
+			fail();
+		} catch (RejectedExecutionException expected) {
+		}
+		assertEquals(1, executor.getRejectedCount());
+		assertEquals(held.length, executor.getQueueSize());
+
+		blocked.release.countDown();
+		running.get(TIMEOUT);
+		for (int i = 0; i < held.length; i++) {
+			futures[i].get(TIMEOUT);
+			assertTrue(held[i].ran);
+			assertNull(held[i].rejected);
+		}
+		assertEquals(0, executor.getQueueSize());
+	}
+
+	public void testHeldRequestsAreRejectedAtShutdown() throws Exception {
+		executor = new PooledRequestExecutor("test", 2, 10, PooledRequestExecutor.REJECT_CALLER_RUNS);
+		final IFuture running = execute(blocked);
+		assertTrue(blocked.started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+		final RejectableRunnable[] held = new RejectableRunnable[3];
+		final IFuture[] futures = new IFuture[held.length];
+		for (int i = 0; i < held.length; i++) {
+			held[i] = new RejectableRunnable();
+			futures[i] = execute(held[i]);
+		}
+
+		executor.shutdown();
+		assertEquals(0, executor.getQueueSize());
+		for (int i = 0; i < held.length; i++) {
+			assertNotNull(held[i].rejected);
+			assertTrue(futures[i].isDone());
+			assertFalse(futures[i].getStatus().isOK());
+		}
+		try {
+			execute(new RejectableRunnable());
+			fail();
+		} catch (RejectedExecutionException expected) {
+		}
+
+		// the running request still completes
+		blocked.release.countDown();
+		running.get(TIMEOUT);
+		assertTrue(running.getStatus().isOK());
+		for (int i = 0; i < held.length; i++)
+			assertFalse(held[i].ran);
+	}
+}
@@ -0,0 +1,147 @@
+/****************************************************************************
+ * Copyright (c) 2026 Composent, Inc. and others.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * Contributors:
+ *    Composent, Inc. - initial API and implementation
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *****************************************************************************/
+package org.eclipse.ecf.tests.remoteservice.generic;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import junit.framework.TestCase;
+
+import org.eclipse.ecf.core.identity.ID;
+import org.eclipse.ecf.core.identity.IDFactory;
+import org.eclipse.ecf.provider.remoteservice.generic.RegistrySharedObject;
+import org.eclipse.ecf.provider.remoteservice.generic.RemoteCallImpl;
+import org.eclipse.ecf.provider.remoteservice.generic.RemoteServiceImpl;
+import org.eclipse.ecf.provider.remoteservice.generic.RemoteServiceRegistrationImpl;
+import org.eclipse.ecf.provider.remoteservice.generic.Request;
+import org.eclipse.ecf.provider.remoteservice.generic.Response;
+import org.eclipse.ecf.remoteservice.IRemoteCall;
+import org.eclipse.ecf.remoteservice.IRemoteCallListener;
+import org.eclipse.ecf.remoteservice.events.IRemoteCallCompleteEvent;
+import org.eclipse.ecf.remoteservice.events.IRemoteCallEvent;
+import org.eclipse.equinox.concurrent.future.IFuture;
+
+/**
+ * Completes asynchronous remote calls whose completion handlers make nested
+ * synchronous calls. The responses are received on a single thread, like the
+ * shared object's receive thread.
+ */
+public class RemoteCallCompletionTest extends TestCase {
+
+	private static final long TIMEOUT = 10000;
+
+	/**
+	 * Answers every call request with the call's first parameter.
+	 */
+	static class TestRegistrySharedObject extends RegistrySharedObject {
+		final ExecutorService receiver = Executors.newSingleThreadExecutor();
+		final ID containerID;
+
+		TestRegistrySharedObject(ID containerID) {
+			this.containerID = containerID;
+		}
+
+		protected Request sendCallRequest(RemoteServiceRegistrationImpl remoteRegistration, IRemoteCall call) throws IOException {
+			final Request request = new Request(containerID, 1, RemoteCallImpl.createRemoteCall(null, call.getMethod(), call.getParameters(), call.getTimeout()), null);
+			addRequest(request);
+			final Response response = new Response(request.getRequestId(), call.getParameters()[0]);
+			receiver.execute(new Runnable() {
+				public void run() {
+					handleCallResponse(response);
+				}
+			});
+			return request;
+		}
+
+		Object callSync(IRemoteCall call) throws Exception {
+			return callSynch(null, call);
+		}
+	}
+
+	static class TestRemoteService extends RemoteServiceImpl {
+		TestRemoteService(RegistrySharedObject sharedObject) {
+			super(sharedObject, null);
+		}
+
+		CompletableFuture callCompletable(IRemoteCall call) {
+			return (CompletableFuture) callFutureAsync(call);
+		}
+
+		void close() {
+			dispose();
+		}
+	}
+
+	TestRegistrySharedObject registry;
+	TestRemoteService remoteService;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		registry = new TestRegistrySharedObject(IDFactory.getDefault().createStringID("completion"));
+		remoteService = new TestRemoteService(registry);
+	}
+
+	protected void tearDown() throws Exception {
+		remoteService.close();
+		registry.receiver.shutdownNow();
+		super.tearDown();
+	}
+
+	private IRemoteCall createCall(String parameter) {
+		return RemoteCallImpl.createRemoteCall(null, "echo", new Object[] {parameter}, TIMEOUT);
+	}
+
+	public void testListenerMakesNestedCall() throws Exception {
+		final CountDownLatch done = new CountDownLatch(1);
+		final Object[] results = new Object[2];
+		remoteService.callAsync(createCall("outer"), new IRemoteCallListener() {
+			public void handleEvent(IRemoteCallEvent event) {
+				if (!(event instanceof IRemoteCallCompleteEvent))
+					return;
+				results[0] = ((IRemoteCallCompleteEvent) event).getResponse();
+				try {
+					results[1] = registry.callSync(createCall("nested"));
+				} catch (Exception e) {
+					results[1] = e;
+				}
+				done.countDown();
+			}
+		});
+		assertTrue(done.await(TIMEOUT, TimeUnit.MILLISECONDS));
+		assertEquals("outer", results[0]);
+		assertEquals("nested", results[1]);
+	}
+
+	public void testDependentStageMakesNestedCall() throws Exception {
+		final Object nested = remoteService.callCompletable(createCall("outer")).thenApply(new Function() {
+			public Object apply(Object result) {
+				try {
+					return result + "," + registry.callSync(createCall("nested"));
+				} catch (Exception e) {
+					return e;
+				}
+			}
+		}).get(TIMEOUT, TimeUnit.MILLISECONDS);
+		assertEquals("outer,nested", nested);
+	}
+
+	public void testFutureResult() throws Exception {
+		final IFuture future = remoteService.callAsync(createCall("result"));
+		assertEquals("result", future.get(TIMEOUT));
+	}
+}
@@ -0,0 +1,155 @@
+/****************************************************************************
+ * Copyright (c) 2026 Composent, Inc. and others.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * Contributors:
+ *    Composent, Inc. - initial API and implementation
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *****************************************************************************/
+package org.eclipse.ecf.tests.remoteservice.generic;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.eclipse.ecf.core.identity.ID;
+import org.eclipse.ecf.core.identity.IDFactory;
+import org.eclipse.ecf.provider.remoteservice.generic.RegistrySharedObject;
+import org.eclipse.ecf.provider.remoteservice.generic.RemoteCallImpl;
+import org.eclipse.ecf.provider.remoteservice.generic.Request;
+import org.eclipse.ecf.provider.remoteservice.generic.Response;
+import org.eclipse.ecf.remoteservice.IRemoteCallListener;
+import org.eclipse.ecf.remoteservice.events.IRemoteCallCompleteEvent;
+import org.eclipse.ecf.remoteservice.events.IRemoteCallEvent;
+
+/**
+ * Adds, looks up and removes many outstanding remote call requests, as done
+ * for each call and its response, and checks that responses complete the
+ * requests' futures and that requests that never get a response are expired.
+ */
+public class RequestTableTest extends TestCase {
+
+	private static final int OUTSTANDING = 10000;
+	private static final int ITERATIONS = 5;
+	private static final long EXPIRY_TIMEOUT = 200;
+
+	static class TestRegistrySharedObject extends RegistrySharedObject {
+		boolean add(Request request) {
+			return addRequest(request);
+		}
+
+		Request get(long requestId) {
+			return getRequest(requestId);
+		}
+
+		boolean remove(Request request) {
+			return removeRequest(request);
+		}
+
+		void respond(Response response) {
+			handleCallResponse(response);
+		}
+	}
+
+	TestRegistrySharedObject registry;
+	ID containerID;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		registry = new TestRegistrySharedObject();
+		containerID = IDFactory.getDefault().createStringID("requesttable");
+	}
+
+	protected void tearDown() throws Exception {
+		registry = null;
+		super.tearDown();
+	}
+
+	private Request[] createRequests(int count, long timeout, IRemoteCallListener listener) {
+		final Request[] requests = new Request[count];
+		for (int i = 0; i < count; i++)
+			requests[i] = new Request(containerID, 1, RemoteCallImpl.createRemoteCall(null, "concat", new Object[] {"a", "b"}, timeout), listener);
+		return requests;
+	}
+
+	private void shuffle(Request[] requests, Random random) {
+		for (int i = requests.length - 1; i > 0; i--) {
+			final int j = random.nextInt(i + 1);
+			final Request r = requests[i];
+			requests[i] = requests[j];
+			requests[j] = r;
+		}
+	}
+
+	public void testOutstandingCalls() throws Exception {
+		final Random random = new Random(0);
+		for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+			final Request[] requests = createRequests(OUTSTANDING, 30000, null);
+			for (int i = 0; i < requests.length; i++)
+				assertTrue(registry.add(requests[i]));
+			// A request can only be added once
+			assertFalse(registry.add(requests[0]));
+			// Responses arrive in any order
+			shuffle(requests, random);
+			for (int i = 0; i < requests.length; i++) {
+				final Request request = registry.get(requests[i].getRequestId());
+				assertSame(requests[i], request);
+				assertTrue(registry.remove(request));
+				assertFalse(registry.remove(request));
+			}
+			for (int i = 0; i < requests.length; i++)
+				assertNull(registry.get(requests[i].getRequestId()));
+		}
+	}
+
+	public void testOutstandingResponseFutures() throws Exception {
+		final Request[] requests = createRequests(OUTSTANDING, 30000, null);
+		final int threads = Thread.activeCount();
+		for (int i = 0; i < requests.length; i++) {
+			assertTrue(registry.add(requests[i]));
+			assertFalse(requests[i].getResponseFuture().isDone());
+		}
+		// Waiting for responses must not take a thread per outstanding call
+		assertTrue(Thread.activeCount() < threads + 10);
+		shuffle(requests, new Random(1));
+		for (int i = 0; i < requests.length; i++)
+			registry.respond(new Response(requests[i].getRequestId(), "ab"));
+		for (int i = 0; i < requests.length; i++) {
+			assertTrue(requests[i].getResponseFuture().isDone());
+			assertEquals("ab", ((Response) requests[i].getResponseFuture().get()).getResponse());
+			assertNull(registry.get(requests[i].getRequestId()));
+		}
+	}
+
+	public void testExpiry() throws Exception {
+		final int count = 1000;
+		final int[] expired = new int[1];
+		final IRemoteCallListener listener = new IRemoteCallListener() {
+			public void handleEvent(IRemoteCallEvent event) {
+				if (event instanceof IRemoteCallCompleteEvent && ((IRemoteCallCompleteEvent) event).hadException()) {
+					synchronized (expired) {
+						expired[0]++;
+						expired.notifyAll();
+					}
+				}
+			}
+		};
+		final Request[] requests = createRequests(count, EXPIRY_TIMEOUT, listener);
+		for (int i = 0; i < requests.length; i++)
+			assertTrue(registry.add(requests[i]));
+		final long end = System.currentTimeMillis() + EXPIRY_TIMEOUT + 10000;
+		synchronized (expired) {
+			while (expired[0] < count && System.currentTimeMillis() < end)
+				expired.wait(100);
+			assertEquals(count, expired[0]);
+		}
+		for (int i = 0; i < requests.length; i++)
+			assertTrue(requests[i].getResponseFuture().isCompletedExceptionally());
+		for (int i = 0; i < requests.length; i++)
+			assertNull(registry.get(requests[i].getRequestId()));
+	}
+}
@@ -0,0 +1,99 @@
+/****************************************************************************
+ * Copyright (c) 2026 Composent, Inc. and others.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * Contributors:
+ *    Composent, Inc. - initial API and implementation
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *****************************************************************************/
+package org.eclipse.ecf.tests.server.generic;
+
+import junit.framework.TestCase;
+
+import org.eclipse.ecf.core.identity.GUID;
+import org.eclipse.ecf.core.identity.ID;
+import org.eclipse.ecf.core.identity.IDFactory;
+import org.eclipse.ecf.core.identity.Namespace;
+import org.eclipse.ecf.core.identity.StringID;
+import org.eclipse.ecf.provider.generic.ContainerMessage;
+import org.eclipse.ecf.provider.generic.ContainerMessageCodec;
+
+/**
+ * Checks that ids keep their class and namespace when a container message is
+ * encoded and decoded.
+ */
+public class ContainerMessageCodecTest extends TestCase {
+
+	static class CustomStringIDNamespace extends StringID.StringIDNamespace {
+		private static final long serialVersionUID = 1L;
+
+		CustomStringIDNamespace() {
+			super(ContainerMessageCodecTest.class.getName(), "Custom StringID Namespace");
+		}
+	}
+
+	private ContainerMessage roundTrip(ID from, ID to, ID fromSharedObject) throws Exception {
+		final byte[] data = new byte[] {1, 2, 3};
+		final ContainerMessage message = ContainerMessage.createSharedObjectMessage(from, to, 42, fromSharedObject, data);
+		final byte[] bytes = ContainerMessageCodec.encode(message);
+		assertTrue(ContainerMessageCodec.isEncoded(bytes));
+		final ContainerMessage decoded = ContainerMessageCodec.decode(bytes);
+		assertEquals(42, decoded.getSequence());
+		final ContainerMessage.SharedObjectMessage som = (ContainerMessage.SharedObjectMessage) decoded.getData();
+		final byte[] decodedData = (byte[]) som.getData();
+		assertEquals(data.length, decodedData.length);
+		for (int i = 0; i < data.length; i++)
+			assertEquals(data[i], decodedData[i]);
+		return decoded;
+	}
+
+	private void assertSameID(ID expected, ID actual) {
+		assertNotNull(actual);
+		assertEquals(expected.getClass(), actual.getClass());
+		assertEquals(expected.getName(), actual.getName());
+		assertEquals(expected.getNamespace(), actual.getNamespace());
+		assertEquals(expected, actual);
+	}
+
+	public void testDefaultNamespaceIDs() throws Exception {
+		final ID from = IDFactory.getDefault().createStringID("from");
+		final ID to = IDFactory.getDefault().createGUID();
+		final ID fromSharedObject = IDFactory.getDefault().createStringID("sharedObject");
+		final ContainerMessage decoded = roundTrip(from, to, fromSharedObject);
+		assertSameID(from, decoded.getFromContainerID());
+		assertSameID(to, decoded.getToContainerID());
+		assertSameID(fromSharedObject, ((ContainerMessage.SharedObjectMessage) decoded.getData()).getFromSharedObjectID());
+	}
+
+	public void testNullToID() throws Exception {
+		final ID from = IDFactory.getDefault().createStringID("from");
+		final ContainerMessage decoded = roundTrip(from, null, from);
+		assertNull(decoded.getToContainerID());
+	}
+
+	public void testCustomNamespaceStringID() throws Exception {
+		final Namespace namespace = new CustomStringIDNamespace();
+		final ID from = namespace.createInstance(new Object[] {"from"});
+		final ID fromSharedObject = namespace.createInstance(new Object[] {"sharedObject"});
+		assertEquals(StringID.class, from.getClass());
+		final ContainerMessage decoded = roundTrip(from, null, fromSharedObject);
+		assertSameID(from, decoded.getFromContainerID());
+		assertSameID(fromSharedObject, ((ContainerMessage.SharedObjectMessage) decoded.getData()).getFromSharedObjectID());
+		assertFalse(IDFactory.getDefault().createStringID("from").getNamespace().equals(decoded.getFromContainerID().getNamespace()));
+	}
+
+	public void testLongNameStringID() throws Exception {
+		final StringBuffer name = new StringBuffer();
+		while (name.length() <= 0xFFFF)
+			name.append("0123456789");
+		final ID from = IDFactory.getDefault().createStringID(name.toString());
+		final ID to = IDFactory.getDefault().createID(GUID.class.getName(), new Object[] {"guid"});
+		final ContainerMessage decoded = roundTrip(from, to, from);
+		assertSameID(from, decoded.getFromContainerID());
+		assertSameID(to, decoded.getToContainerID());
+	}
+}
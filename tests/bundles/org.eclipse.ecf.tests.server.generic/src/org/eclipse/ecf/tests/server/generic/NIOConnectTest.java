@@ -0,0 +1,187 @@
+/****************************************************************************
+ * Copyright (c) 2026 Composent, Inc. and others.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * Contributors:
+ *    Composent, Inc. - initial API and implementation
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *****************************************************************************/
+package org.eclipse.ecf.tests.server.generic;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+
+import org.eclipse.ecf.core.identity.ID;
+import org.eclipse.ecf.core.identity.IDFactory;
+import org.eclipse.ecf.provider.comm.nio.NIOClient;
+import org.eclipse.ecf.provider.generic.ContainerMessage;
+import org.eclipse.ecf.provider.generic.SOContainerConfig;
+import org.eclipse.ecf.provider.generic.TCPClientSOContainer;
+import org.eclipse.ecf.provider.generic.TCPServerSOContainer;
+
+/**
+ * Connects, exchanges shared object messages and disconnects over the nio
+ * transport.
+ */
+public class NIOConnectTest extends TestCase {
+
+	private static final long TIMEOUT = 30000;
+
+	/**
+	 * Collects the data of received shared object messages. The handler may
+	 * be held up until it is released.
+	 */
+	static class Receiver {
+		final List received = Collections.synchronizedList(new ArrayList());
+		volatile CountDownLatch release = new CountDownLatch(0);
+
+		void handle(ContainerMessage mess) throws IOException {
+			try {
+				release.await();
+			} catch (final InterruptedException e) {
+				throw new IOException("Interrupted");
+			}
+			received.add(((ContainerMessage.SharedObjectMessage) mess.getData()).getData());
+		}
+
+		void waitForReceived(int count) throws InterruptedException {
+			final long end = System.currentTimeMillis() + TIMEOUT;
+			while (received.size() < count && System.currentTimeMillis() < end)
+				Thread.sleep(20);
+			assertEquals(count, received.size());
+		}
+	}
+
+	static class ServerContainer extends TCPServerSOContainer {
+		final Receiver receiver = new Receiver();
+
+		ServerContainer(ID id) throws Exception {
+			super(new SOContainerConfig(id), (InetAddress) null, 0, true);
+		}
+
+		protected void handleSharedObjectMessage(ContainerMessage mess) throws IOException {
+			receiver.handle(mess);
+		}
+
+		void send(ID toContainerID, ID fromSharedObject, Serializable data) throws IOException {
+			sendSharedObjectMessage(toContainerID, fromSharedObject, data);
+		}
+	}
+
+	static class ClientContainer extends TCPClientSOContainer {
+		final Receiver receiver = new Receiver();
+
+		ClientContainer(String id) throws Exception {
+			super(new SOContainerConfig(IDFactory.getDefault().createStringID(id)), 0, true);
+		}
+
+		protected void handleSharedObjectMessage(ContainerMessage mess) throws IOException {
+			receiver.handle(mess);
+		}
+
+		void send(ID toContainerID, ID fromSharedObject, Serializable data) throws IOException {
+			sendSharedObjectMessage(toContainerID, fromSharedObject, data);
+		}
+
+		NIOClient getNIOClient() {
+			return (NIOClient) getConnection();
+		}
+	}
+
+	ServerContainer server;
+	ClientContainer client;
+	ID serverID;
+	ID sharedObjectID;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		final ServerSocket s = new ServerSocket(0);
+		final int port = s.getLocalPort();
+		s.close();
+		serverID = IDFactory.getDefault().createStringID("ecftcp://localhost:" + port + "/server");
+		server = new ServerContainer(serverID);
+		client = new ClientContainer("client");
+		sharedObjectID = IDFactory.getDefault().createStringID("nio");
+	}
+
+	protected void tearDown() throws Exception {
+		server.receiver.release.countDown();
+		client.receiver.release.countDown();
+		client.dispose();
+		server.dispose();
+		server = null;
+		client = null;
+		super.tearDown();
+	}
+
+	private void waitForMembers(int count) throws InterruptedException {
+		final long end = System.currentTimeMillis() + TIMEOUT;
+		while (server.getGroupMemberIDs().length != count && System.currentTimeMillis() < end)
+			Thread.sleep(20);
+		assertEquals(count, server.getGroupMemberIDs().length);
+	}
+
+	private static byte[] createData(int sequence, int length) {
+		final byte[] data = new byte[length];
+		data[0] = (byte) (sequence >>> 24);
+		data[1] = (byte) (sequence >>> 16);
+		data[2] = (byte) (sequence >>> 8);
+		data[3] = (byte) sequence;
+		return data;
+	}
+
+	private static int getSequence(Object data) {
+		final byte[] bytes = (byte[]) data;
+		return ((bytes[0] & 0xFF) << 24) | ((bytes[1] & 0xFF) << 16) | ((bytes[2] & 0xFF) << 8) | (bytes[3] & 0xFF);
+	}
+
+	public void testConnectSendDisconnect() throws Exception {
+		client.connect(serverID, null);
+		assertTrue(client.getNIOClient().isConnected());
+		waitForMembers(2);
+
+		client.send(serverID, sharedObjectID, createData(1, 100));
+		server.receiver.waitForReceived(1);
+		assertEquals(1, getSequence(server.receiver.received.get(0)));
+
+		server.send(client.getID(), sharedObjectID, createData(2, 100));
+		client.receiver.waitForReceived(1);
+		assertEquals(2, getSequence(client.receiver.received.get(0)));
+
+		client.disconnect();
+		assertNull(client.getConnectedID());
+		waitForMembers(1);
+	}
+
+	public void testSlowReceiverGetsAllMessagesInOrder() throws Exception {
+		client.connect(serverID, null);
+		waitForMembers(2);
+
+		// more than the inbound high watermark is sent while the server's
+		// handler is held up
+		final int size = 1024 * 1024;
+		final int count = NIOClient.DEFAULT_INBOUND_HIGH_WATERMARK / size * 2;
+		server.receiver.release = new CountDownLatch(1);
+		for (int i = 0; i < count; i++)
+			client.send(serverID, sharedObjectID, createData(i, size));
+		Thread.sleep(500);
+		assertTrue(server.receiver.received.size() == 0);
+		server.receiver.release.countDown();
+
+		server.receiver.waitForReceived(count);
+		for (int i = 0; i < count; i++)
+			assertEquals(i, getSequence(server.receiver.received.get(i)));
+	}
+}
@@ -0,0 +1,153 @@
+/****************************************************************************
+ * Copyright (c) 2026 Composent, Inc. and others.
+ *
+ * This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License 2.0
+ * which is available at https://www.eclipse.org/legal/epl-2.0/
+ *
+ * Contributors:
+ *    Composent, Inc. - initial API and implementation
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ *****************************************************************************/
+package org.eclipse.ecf.tests.server.generic;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.eclipse.ecf.core.identity.ID;
+import org.eclipse.ecf.core.identity.IDFactory;
+import org.eclipse.ecf.provider.comm.ICodecConnection;
+import org.eclipse.ecf.provider.comm.IConnection;
+import org.eclipse.ecf.provider.generic.ContainerMessage;
+import org.eclipse.ecf.provider.generic.ContainerMessageCodec;
+import org.eclipse.ecf.provider.generic.SOContainerConfig;
+import org.eclipse.ecf.provider.generic.TCPClientSOContainer;
+import org.eclipse.ecf.provider.generic.TCPServerSOContainer;
+
+/**
+ * Checks that a message sent to all members of a server container is
+ * serialized once, rather than once per member.
+ */
+public class ServerFanOutSerializationTest extends TestCase {
+
+	private static final int CLIENTS = 5;
+	private static final int DATA_SIZE = 200 * 1024;
+	private static final long TIMEOUT = 10000;
+
+	static class CountingServerContainer extends TCPServerSOContainer {
+		final AtomicInteger serializations = new AtomicInteger();
+		final AtomicInteger bodyEncodings = new AtomicInteger();
+
+		CountingServerContainer(ID id) throws Exception {
+			super(new SOContainerConfig(id), (InetAddress) null, 0);
+		}
+
+		protected byte[] serializeContainerMessage(IConnection conn, ContainerMessage message) throws IOException {
+			serializations.incrementAndGet();
+			return super.serializeContainerMessage(conn, message);
+		}
+
+		protected byte[] encodeContainerMessageBody(Serializable data) throws IOException {
+			bodyEncodings.incrementAndGet();
+			return super.encodeContainerMessageBody(data);
+		}
+
+		void sendToAll(ID fromSharedObject, byte[] data) throws IOException {
+			sendSharedObjectMessage(null, fromSharedObject, data);
+		}
+
+		void reset() {
+			serializations.set(0);
+			bodyEncodings.set(0);
+		}
+	}
+
+	static class ReceivingClientContainer extends TCPClientSOContainer {
+		final AtomicInteger received = new AtomicInteger();
+
+		ReceivingClientContainer(String id) throws Exception {
+			super(new SOContainerConfig(IDFactory.getDefault().createStringID(id)));
+		}
+
+		protected void handleSharedObjectMessage(ContainerMessage mess) throws IOException {
+			received.incrementAndGet();
+		}
+
+		void sendToAll(ID fromSharedObject, byte[] data) throws IOException {
+			sendSharedObjectMessage(null, fromSharedObject, data);
+		}
+
+		String getCodec() {
+			return ((ICodecConnection) getConnection()).getCodec();
+		}
+	}
+
+	CountingServerContainer server;
+	ReceivingClientContainer[] clients;
+	ID sharedObjectID;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		final ServerSocket s = new ServerSocket(0);
+		final int port = s.getLocalPort();
+		s.close();
+		final ID serverID = IDFactory.getDefault().createStringID("ecftcp://localhost:" + port + "/server");
+		server = new CountingServerContainer(serverID);
+		clients = new ReceivingClientContainer[CLIENTS];
+		for (int i = 0; i < CLIENTS; i++) {
+			clients[i] = new ReceivingClientContainer("client" + i);
+			clients[i].connect(serverID, null);
+		}
+		waitForMembers(CLIENTS + 1);
+		sharedObjectID = IDFactory.getDefault().createStringID("fanout");
+		server.reset();
+	}
+
+	protected void tearDown() throws Exception {
+		for (int i = 0; i < clients.length; i++)
+			clients[i].dispose();
+		server.dispose();
+		server = null;
+		clients = null;
+		super.tearDown();
+	}
+
+	private void waitForMembers(int count) throws InterruptedException {
+		final long end = System.currentTimeMillis() + TIMEOUT;
+		while (server.getGroupMemberIDs().length < count && System.currentTimeMillis() < end)
+			Thread.sleep(20);
+		assertEquals(count, server.getGroupMemberIDs().length);
+	}
+
+	private void waitForReceived(int first, int expected) throws InterruptedException {
+		final long end = System.currentTimeMillis() + TIMEOUT;
+		for (int i = first; i < clients.length; i++) {
+			while (clients[i].received.get() < expected && System.currentTimeMillis() < end)
+				Thread.sleep(20);
+			assertEquals(expected, clients[i].received.get());
+		}
+	}
+
+	public void testForwardedMessageEncodedOnce() throws Exception {
+		if (!ContainerMessageCodec.DEFAULT_ENABLED)
+			return;
+		assertEquals(ContainerMessageCodec.CODEC_ID, clients[0].getCodec());
+		clients[0].sendToAll(sharedObjectID, new byte[DATA_SIZE]);
+		waitForReceived(1, 1);
+		// forwarded from client0 to the other clients
+		assertEquals(1, server.bodyEncodings.get());
+		assertEquals(0, server.serializations.get());
+	}
+
+	public void testServerMessageSerializedOnce() throws Exception {
+		server.sendToAll(sharedObjectID, new byte[DATA_SIZE]);
+		waitForReceived(0, 1);
+		assertEquals(1, server.serializations.get());
+	}
+}